@@ -0,0 +1,59 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.bench;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class AllBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+		System.out.println("java "+System.getProperty("java.version")+", "+
+			Runtime.getRuntime().availableProcessors()+" processors");
+		fork(PopulateBenchmark.class, args);
+		BenchmarkRunner.section("proxies");
+		fork(ProxyBenchmark.class, args);
+		fork(InterfaceBenchmark.class, args);
+		BenchmarkRunner.section("injectors");
+		fork(InjectorBenchmark.class, args);
+		fork(TypedPropertiesBenchmark.class, args);
+		fork(ConverterBenchmark.class, args);
+		fork(ResolveBenchmark.class, args);
+	}
+
+	// every suite gets its own JVM, so the profile of the shared Operation.run()
+	// call site left by one suite does not slow down the next
+	protected static void fork(Class<?> suite, String[] args) throws Exception {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		for (String name : System.getProperties().stringPropertyNames())
+			if (name.startsWith("bench."))
+				command.add("-D"+name+"="+System.getProperty(name));
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(suite.getName());
+		command.addAll(Arrays.asList(args));
+		System.out.flush();
+		int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+		if (exitCode != 0)
+			throw new IllegalStateException(suite.getSimpleName()+" exited with code "+exitCode);
+	}
+}
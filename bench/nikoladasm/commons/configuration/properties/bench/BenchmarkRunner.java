@@ -0,0 +1,171 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class BenchmarkRunner {
+
+	@FunctionalInterface
+	public static interface Operation {
+		Object run() throws Exception;
+	}
+
+	// each worker thread owns one, so consuming a result is an uncontended volatile read;
+	// the results are never equal to both fields, which the JIT can't prove
+	protected static final class Blackhole {
+		protected volatile Object first = new Object();
+		protected volatile Object second = new Object();
+
+		protected void consume(Object result) {
+			if (result == first & result == second)
+				first = result;
+		}
+	}
+
+	public static final int DEFAULT_WARMUP_ITERATIONS = 5;
+	public static final int DEFAULT_ITERATIONS = 5;
+	public static final long DEFAULT_ITERATION_MILLIS = 500;
+
+	protected static volatile Object sink;
+
+	protected int warmupIterations = Integer.getInteger("bench.warmup", DEFAULT_WARMUP_ITERATIONS);
+	protected int iterations = Integer.getInteger("bench.iterations", DEFAULT_ITERATIONS);
+	protected long iterationMillis = Long.getLong("bench.millis", DEFAULT_ITERATION_MILLIS);
+
+	public BenchmarkRunner warmupIterations(int warmupIterations) {
+		this.warmupIterations = warmupIterations;
+		return this;
+	}
+
+	public BenchmarkRunner iterations(int iterations) {
+		this.iterations = iterations;
+		return this;
+	}
+
+	public BenchmarkRunner iterationMillis(long iterationMillis) {
+		this.iterationMillis = iterationMillis;
+		return this;
+	}
+
+	public static int[] intParams(String property, int... defaults) {
+		String value = System.getProperty(property);
+		if (value == null || value.trim().isEmpty()) return defaults;
+		String[] parts = value.split(",");
+		int[] params = new int[parts.length];
+		for (int i=0; i < parts.length; i++)
+			params[i] = Integer.parseInt(parts[i].trim());
+		return params;
+	}
+
+	public static void section(String name) {
+		System.out.println();
+		System.out.println("# "+name);
+	}
+
+	public double run(String name, Operation operation) throws Exception {
+		for (int i=0; i < warmupIterations; i++)
+			iteration(operation);
+		List<Double> results = new ArrayList<>();
+		for (int i=0; i < iterations; i++)
+			results.add(iteration(operation));
+		double mean = mean(results);
+		System.out.println(String.format("%-50s %14.1f ns/op  +- %.1f", name, mean, deviation(results, mean)));
+		return mean;
+	}
+
+	public double run(String name, int threads, Operation operation) throws Exception {
+		for (int i=0; i < warmupIterations; i++)
+			iteration(threads, operation);
+		List<Double> results = new ArrayList<>();
+		for (int i=0; i < iterations; i++)
+			results.add(iteration(threads, operation));
+		double mean = mean(results);
+		System.out.println(String.format("%-50s %14.1f ops/us  +- %.1f", name+" ("+threads+" threads)", mean, deviation(results, mean)));
+		return mean;
+	}
+
+	protected double iteration(int threads, Operation operation) throws Exception {
+		long[] operations = new long[threads];
+		Exception[] failures = new Exception[threads];
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		long deadline = System.nanoTime() + iterationMillis * 1_000_000L + 10_000_000L;
+		for (int t=0; t < threads; t++) {
+			int index = t;
+			workers[t] = new Thread(() -> {
+				try {
+					Blackhole blackhole = new Blackhole();
+					start.await();
+					long count = 0;
+					do {
+						for (int i=0; i < 16; i++)
+							blackhole.consume(operation.run());
+						count += 16;
+					} while (System.nanoTime() < deadline);
+					operations[index] = count;
+				} catch (Exception e) {
+					failures[index] = e;
+				}
+			});
+			workers[t].start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Thread worker : workers)
+			worker.join();
+		long elapsed = System.nanoTime() - begin;
+		long total = 0;
+		for (int t=0; t < threads; t++) {
+			if (failures[t] != null) throw failures[t];
+			total += operations[t];
+		}
+		return total * 1000.0 / elapsed;
+	}
+
+	protected double iteration(Operation operation) throws Exception {
+		long deadline = System.nanoTime() + iterationMillis * 1_000_000L;
+		long operations = 0;
+		long start = System.nanoTime();
+		long now;
+		do {
+			for (int i=0; i < 16; i++)
+				sink = operation.run();
+			operations += 16;
+			now = System.nanoTime();
+		} while (now < deadline);
+		return (double) (now - start) / operations;
+	}
+
+	protected static double mean(List<Double> results) {
+		double sum = 0;
+		for (double result : results)
+			sum += result;
+		return sum / results.size();
+	}
+
+	protected static double deviation(List<Double> results, double mean) {
+		double sum = 0;
+		for (double result : results)
+			sum += (result - mean) * (result - mean);
+		return Math.sqrt(sum / results.size());
+	}
+}
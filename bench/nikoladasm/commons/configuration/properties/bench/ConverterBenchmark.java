@@ -0,0 +1,64 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.bench;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import nikoladasm.commons.configuration.properties.converters.Converter;
+import nikoladasm.commons.configuration.properties.converters.Converters;
+import nikoladasm.commons.configuration.properties.converters.StringSplitter;
+
+public class ConverterBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		Converters converters = new Converters();
+		BenchmarkRunner.section("Converters lookup");
+		runner.run("converter(int)", () -> converters.converter(int.class, null));
+		runner.run("converter(String)", () -> converters.converter(String.class, null));
+		runner.run("converter(TimeUnit)", () -> converters.converter(TimeUnit.class, null));
+		runner.run("converter(int[])", () -> converters.converter(int[].class, null));
+		runner.run("converter(List<Integer>)", () -> converters.converter(List.class, new Class<?>[]{Integer.class}));
+		runner.run("converter(Map<String,Integer>)", () -> converters.converter(Map.class, new Class<?>[]{String.class, Integer.class}));
+		BenchmarkRunner.section("Converters lookup + convert");
+		Converter<Integer> intConverter = converters.converter(int.class, null);
+		runner.run("convert int (cached converter)", () -> intConverter.convert("42"));
+		runner.run("converter(int) + convert", () -> converters.converter(int.class, null).convert("42"));
+		runner.run("converter(TimeUnit) + convert", () -> converters.converter(TimeUnit.class, null).convert("SECONDS"));
+		runner.run("converter(int[]) + convert", () -> converters.converter(int[].class, null).convert("1,2,3,4"));
+		runner.run("converter(List<Integer>) + convert",
+			() -> converters.converter(List.class, new Class<?>[]{Integer.class}).convert("1,2,3,4"));
+		runner.run("converter(Map<String,Integer>) + convert",
+			() -> converters.converter(Map.class, new Class<?>[]{String.class, Integer.class}).convert("a:1,b:2,c:3"));
+		BenchmarkRunner.section("StringSplitter");
+		for (int components : BenchmarkRunner.intParams("bench.components", 4, 64)) {
+			StringBuilder builder = new StringBuilder();
+			for (int i=0; i < components; i++) {
+				if (i > 0) builder.append(',');
+				builder.append("component").append(i);
+			}
+			String value = builder.toString();
+			runner.run("splitComponents ("+components+" components)", () -> StringSplitter.splitComponents(value, ",").components());
+		}
+		runner.run("splitComponents (escaped delimiter)", () -> StringSplitter.splitComponents("a\\,b,c,d", ",").components());
+		runner.run("splitKeyValue", () -> StringSplitter.splitKeyValue("key:value", ":").keyValue());
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.bench;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class FixtureGenerator {
+
+	public static final String PACKAGE = FixtureGenerator.class.getPackage().getName();
+	public static final String SETTER_CONFIG = "LargeMethodConfig";
+	public static final String FIELD_CONFIG = "LargeConfig";
+
+	private static final String[] TYPES = {"String", "int", "Integer", "long", "boolean", "double"};
+
+	// args: output directory, comma separated setter counts, field count
+	public static void main(String[] args) throws IOException {
+		Path packageDir = Paths.get(args[0], PACKAGE.split("\\."));
+		Files.createDirectories(packageDir);
+		for (String setters : args[1].split(","))
+			setterConfig(packageDir, Integer.parseInt(setters.trim()));
+		fieldConfig(packageDir, Integer.parseInt(args[2].trim()));
+	}
+
+	public static Class<?> setterConfig(int setters) {
+		try {
+			return Class.forName(PACKAGE+"."+SETTER_CONFIG+setters);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("No fixture with "+setters+" setters, "+
+				"build the benchmarks with -Dbench.setters="+setters, e);
+		}
+	}
+
+	protected static void setterConfig(Path packageDir, int setters) throws IOException {
+		String className = SETTER_CONFIG+setters;
+		String resource = className+".properties";
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(packageDir.resolve(className+".java"), StandardCharsets.UTF_8))) {
+			out.println("package "+PACKAGE+";");
+			out.println();
+			out.println("import nikoladasm.commons.configuration.properties.annotations.Property;");
+			out.println("import nikoladasm.commons.configuration.properties.annotations.Resource;");
+			out.println();
+			out.println("@Resource(\""+PACKAGE.replace('.', '/')+"/"+resource+"\")");
+			out.println("public class "+className+" {");
+			for (int i=0; i < setters; i++)
+				out.println("\tprivate "+type(i)+" value"+i+";");
+			for (int i=0; i < setters; i++) {
+				out.println();
+				out.println("\t@Property(\"large.key"+i+"\")");
+				out.println("\tpublic void value"+i+"("+type(i)+" value) {");
+				out.println("\t\tvalue"+i+" = value;");
+				out.println("\t}");
+			}
+			out.println("}");
+		}
+		properties(packageDir.resolve(resource), setters);
+	}
+
+	protected static void fieldConfig(Path packageDir, int fields) throws IOException {
+		String resource = FIELD_CONFIG+".properties";
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(packageDir.resolve(FIELD_CONFIG+".java"), StandardCharsets.UTF_8))) {
+			out.println("package "+PACKAGE+";");
+			out.println();
+			out.println("import nikoladasm.commons.configuration.properties.annotations.Property;");
+			out.println("import nikoladasm.commons.configuration.properties.annotations.Resource;");
+			out.println();
+			out.println("@Resource(\""+PACKAGE.replace('.', '/')+"/"+resource+"\")");
+			out.println("public class "+FIELD_CONFIG+" {");
+			for (int i=0; i < fields; i++) {
+				out.println();
+				out.println("\t@Property(\"large.key"+i+"\")");
+				out.println("\tpublic "+type(i)+" value"+i+";");
+			}
+			out.println("}");
+		}
+		properties(packageDir.resolve(resource), fields);
+	}
+
+	protected static void properties(Path file, int keys) throws IOException {
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.ISO_8859_1))) {
+			for (int i=0; i < keys; i++)
+				out.println("large.key"+i+"="+value(i));
+		}
+	}
+
+	protected static String type(int index) {
+		return TYPES[index % TYPES.length];
+	}
+
+	protected static String value(int index) {
+		switch (type(index)) {
+			case "String" : return "value"+index;
+			case "long" : return String.valueOf(index * 1000L);
+			case "boolean" : return "true";
+			case "double" : return index+".5";
+			default : return String.valueOf(index);
+		}
+	}
+}
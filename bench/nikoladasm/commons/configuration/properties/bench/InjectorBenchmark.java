@@ -0,0 +1,113 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.bench;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import nikoladasm.commons.configuration.properties.BindingPlan;
+import nikoladasm.commons.configuration.properties.Injectors;
+
+public class InjectorBenchmark {
+
+	public static class Target {
+		public int intValue;
+		public String stringValue;
+		private String methodValue;
+		private int intMethodValue;
+
+		public void methodValue(String value) {
+			methodValue = value;
+		}
+
+		public void intMethodValue(int value) {
+			intMethodValue = value;
+		}
+
+		public int intMethodValue() {
+			return intMethodValue;
+		}
+
+		public String methodValue() {
+			return methodValue;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		Target target = new Target();
+		Integer intValue = 42;
+		String stringValue = "value";
+		Field intField = Target.class.getField("intValue");
+		Field stringField = Target.class.getField("stringValue");
+		Method method = Target.class.getMethod("methodValue", String.class);
+		Method intMethod = Target.class.getMethod("intMethodValue", int.class);
+		runner.run("Field.set int (setAccessible per call)", () -> {
+			intField.setAccessible(true);
+			intField.set(target, intValue);
+			return target;
+		});
+		BindingPlan.Injector intInjector = Injectors.field(intField);
+		runner.run("Injectors.field int", () -> {
+			intInjector.inject(target, intValue);
+			return target;
+		});
+		runner.run("Injectors.field injectInt", () -> {
+			intInjector.injectInt(target, 42);
+			return target;
+		});
+		runner.run("Field.set String (setAccessible per call)", () -> {
+			stringField.setAccessible(true);
+			stringField.set(target, stringValue);
+			return target;
+		});
+		BindingPlan.Injector stringInjector = Injectors.field(stringField);
+		runner.run("Injectors.field String", () -> {
+			stringInjector.inject(target, stringValue);
+			return target;
+		});
+		runner.run("Method.invoke (setAccessible per call)", () -> {
+			method.setAccessible(true);
+			method.invoke(target, stringValue);
+			return target;
+		});
+		BindingPlan.Injector methodInjector = Injectors.method(method);
+		runner.run("Injectors.method", () -> {
+			methodInjector.inject(target, stringValue);
+			return target;
+		});
+		runner.run("Method.invoke int (setAccessible per call)", () -> {
+			intMethod.setAccessible(true);
+			intMethod.invoke(target, intValue);
+			return target;
+		});
+		BindingPlan.Injector intMethodInjector = Injectors.method(intMethod);
+		runner.run("Injectors.method int", () -> {
+			intMethodInjector.inject(target, intValue);
+			return target;
+		});
+		runner.run("Injectors.method injectInt", () -> {
+			intMethodInjector.injectInt(target, 42);
+			return target;
+		});
+		runner.run("Class.newInstance", () -> Target.class.newInstance());
+		Injectors.Instantiator<Target> instantiator = Injectors.constructor(Target.class);
+		runner.run("Injectors.constructor", () -> instantiator.newInstance());
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.bench;
+
+import nikoladasm.commons.configuration.properties.PropertyLoader;
+import nikoladasm.commons.configuration.properties.annotations.DefaultValue;
+import nikoladasm.commons.configuration.properties.annotations.Property;
+
+public class InterfaceBenchmark {
+
+	public static interface Config {
+		@Property("bench.string")
+		@DefaultValue("value")
+		String stringValue();
+
+		@Property("bench.int")
+		@DefaultValue("42")
+		int intValue();
+
+		@Property("bench.long")
+		@DefaultValue("42")
+		long longValue();
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		PropertyLoader proxyLoader = PropertyLoader.getInstance();
+		PropertyLoader generatedLoader = PropertyLoader.getInstance().generatedImplementations(true);
+		Config proxy = proxyLoader.populate(Config.class);
+		Config generated = generatedLoader.populate(Config.class);
+		Config proxy2 = proxyLoader.populate(Config.class);
+		Config generated2 = generatedLoader.populate(Config.class);
+		runner.run("proxy String getter", () -> proxy.stringValue());
+		runner.run("generated String getter", () -> generated.stringValue());
+		runner.run("proxy int getter", () -> proxy.intValue() + proxy.longValue());
+		runner.run("generated int getter", () -> generated.intValue() + generated.longValue());
+		runner.run("proxy equals", () -> proxy.equals(proxy2));
+		runner.run("generated equals", () -> generated.equals(generated2));
+		runner.run("proxy populate", () -> proxyLoader.populate(Config.class));
+		runner.run("generated populate", () -> generatedLoader.populate(Config.class));
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.bench;
+
+import java.util.Arrays;
+import java.util.List;
+
+import nikoladasm.commons.configuration.properties.PropertyLoader;
+import nikoladasm.commons.configuration.properties.annotations.DefaultValue;
+import nikoladasm.commons.configuration.properties.annotations.Property;
+
+public class PopulateBenchmark {
+
+	public static class SmallConfig {
+		@Property("small.string")
+		@DefaultValue("value")
+		public String stringValue;
+
+		@Property("small.int")
+		@DefaultValue("42")
+		public int intValue;
+
+		@Property("small.long")
+		@DefaultValue("42")
+		public long longValue;
+
+		@Property("small.boolean")
+		@DefaultValue("true")
+		public boolean booleanValue;
+
+		@Property("small.list")
+		@DefaultValue("1,2,3")
+		public List<Integer> listValue;
+	}
+
+	public static class SmallMethodConfig {
+		private String stringValue;
+		private int intValue;
+		private long longValue;
+		private boolean booleanValue;
+		private List<Integer> listValue;
+
+		@Property("small.string")
+		@DefaultValue("value")
+		public void stringValue(String value) {
+			stringValue = value;
+		}
+
+		@Property("small.int")
+		@DefaultValue("42")
+		public void intValue(int value) {
+			intValue = value;
+		}
+
+		@Property("small.long")
+		@DefaultValue("42")
+		public void longValue(long value) {
+			longValue = value;
+		}
+
+		@Property("small.boolean")
+		@DefaultValue("true")
+		public void booleanValue(boolean value) {
+			booleanValue = value;
+		}
+
+		@Property("small.list")
+		@DefaultValue("1,2,3")
+		public void listValue(List<Integer> value) {
+			listValue = value;
+		}
+
+		@Override
+		public String toString() {
+			return stringValue+intValue+longValue+booleanValue+listValue;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		PropertyLoader loader = PropertyLoader.getInstance();
+		BenchmarkRunner.section("populate");
+		runner.run("populate(SmallConfig.class) fields", () -> loader.populate(SmallConfig.class));
+		runner.run("populate(SmallMethodConfig.class) setters", () -> loader.populate(SmallMethodConfig.class));
+		runner.run("populate(LargeConfig.class) shared loader", () -> loader.populate(LargeConfig.class));
+		runner.run("populate(LargeConfig.class) new loader", () -> PropertyLoader.getInstance().populate(LargeConfig.class));
+		for (int setters : BenchmarkRunner.intParams("bench.setters", 64, 512, 2048)) {
+			Class<?> clazz = FixtureGenerator.setterConfig(setters);
+			runner.run("populate(LargeMethodConfig"+setters+".class) setters", () -> loader.populate(clazz));
+		}
+		LargeConfig config = new LargeConfig();
+		runner.run("populate(LargeConfig object) shared loader", () -> loader.populate(config));
+		Class<?>[] classes = new Class<?>[10];
+		Arrays.fill(classes, LargeConfig.class);
+		runner.run("10 x populate(LargeConfig.class)", () -> {
+			for (Class<?> clazz : classes)
+				loader.populate(clazz);
+			return classes;
+		});
+		runner.run("populateAll(10 x LargeConfig.class)", () -> loader.populateAll(classes));
+		runner.run("populateAsync(LargeConfig.class).join()", () -> loader.populateAsync(LargeConfig.class).join());
+		runner.run("populateAllAsync(10 x LargeConfig.class).join()", () -> loader.populateAllAsync(classes).join());
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import nikoladasm.commons.configuration.properties.PropertyLoader;
+import nikoladasm.commons.configuration.properties.annotations.DefaultValue;
+import nikoladasm.commons.configuration.properties.annotations.Property;
+
+public class ProxyBenchmark {
+
+	public static interface Config {
+		@Property("bench.value1")
+		@DefaultValue("value1")
+		String value1();
+
+		@Property("bench.value2")
+		@DefaultValue("value2")
+		String value2();
+
+		@Property("bench.value3")
+		@DefaultValue("3")
+		int value3();
+
+		@Property("bench.value4")
+		@DefaultValue("4")
+		long value4();
+	}
+
+	public static class MapHandler implements InvocationHandler {
+		private final Map<Method,Object> values;
+
+		public MapHandler(Map<Method,Object> values) {
+			this.values = values;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			return values.get(method);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		Config config = PropertyLoader.getInstance().populate(Config.class);
+		Map<Method,Object> values = new HashMap<>();
+		for (Method method : Config.class.getMethods())
+			values.put(method, method.invoke(config));
+		Config mapConfig = (Config) Proxy.newProxyInstance(
+			Config.class.getClassLoader(), new Class[]{Config.class}, new MapHandler(values));
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int threads : new int[]{1, Math.max(2, processors / 2), Math.max(4, processors)}) {
+			runner.run("HashMap handler getters", threads, () -> mapConfig.value1().length() + mapConfig.value3());
+			runner.run("slot handler getters", threads, () -> config.value1().length() + config.value3());
+		}
+		runner.run("HashMap handler getter", () -> mapConfig.value2());
+		runner.run("slot handler getter", () -> config.value2());
+		runner.run("slot handler hashCode", () -> config.hashCode());
+		runner.run("slot handler toString", () -> config.toString());
+	}
+}
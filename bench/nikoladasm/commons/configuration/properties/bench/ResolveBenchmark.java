@@ -0,0 +1,60 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.bench;
+
+import nikoladasm.commons.configuration.properties.extproperties.PrepProperties;
+import nikoladasm.commons.configuration.properties.extproperties.RefProperties;
+
+public class ResolveBenchmark {
+
+	public static final int DEPTH = 4;
+
+	public static PrepProperties properties(int keys) {
+		PrepProperties properties = new PrepProperties();
+		for (int i=0; i < keys; i++) {
+			if (i % DEPTH == 0)
+				properties.setProperty("key"+i, "value"+i);
+			else
+				properties.setProperty("key"+i, "${key"+(i-1)+"}.value"+i);
+			properties.setProperty("%ctx.key"+i, "context"+i);
+		}
+		return properties;
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		for (int keys : BenchmarkRunner.intParams("bench.keys", 16, 256, 4096)) {
+			BenchmarkRunner.section("resolution ("+keys+" keys)");
+			PrepProperties properties = properties(keys);
+			String plain = "key"+(keys - DEPTH);
+			String nested = "key"+(keys - 1);
+			runner.run("getProperty plain value", () -> properties.getProperty(plain));
+			runner.run("getProperty "+(DEPTH-1)+" nested references", () -> properties.getProperty(nested));
+			PrepProperties memoized = properties(keys);
+			memoized.memoize(true);
+			runner.run("getProperty "+(DEPTH-1)+" nested references memoized", () -> memoized.getProperty(nested));
+			runner.run("RefProperties.resolve nested", () -> RefProperties.resolve(properties, "${"+nested+"}"));
+			runner.run("RefProperties.resolve SYS reference", () -> RefProperties.resolve(properties, "${SYS:java.version}"));
+			runner.run("RefProperties.resolve no reference", () -> RefProperties.resolve(properties, "no reference"));
+			PrepProperties context = properties(keys);
+			context.context("ctx");
+			runner.run("getProperty with context", () -> context.getProperty(nested));
+		}
+	}
+}
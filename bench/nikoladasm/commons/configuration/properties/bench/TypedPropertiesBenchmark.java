@@ -0,0 +1,93 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import nikoladasm.commons.configuration.properties.extproperties.TypedProperties;
+
+public class TypedPropertiesBenchmark {
+
+	public static TypedProperties properties() throws IOException {
+		TypedProperties properties = new TypedProperties();
+		properties.load(new StringReader(
+			"byte=1\n"+
+			"short=2\n"+
+			"integer=3\n"+
+			"long=4\n"+
+			"float=5.5\n"+
+			"double=6.6\n"+
+			"character=c\n"+
+			"boolean=true\n"+
+			"bigdecimal=12345.678\n"+
+			"biginteger=1234567890123\n"+
+			"charset=UTF-8\n"+
+			"file=/tmp/file\n"+
+			"locale=en_US\n"+
+			"path=/tmp/path\n"+
+			"uri=http://localhost/uri\n"+
+			"url=http://localhost/url\n"+
+			"array=1,2,3,4\n"+
+			"enum=SECONDS\n"+
+			"pattern=[a-z]+\n"+
+			"list=1,2,3,4\n"+
+			"map=a:1,b:2,c:3\n"));
+		return properties;
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		TypedProperties properties = properties();
+		BenchmarkRunner.section("TypedProperties getters");
+		runner.run("getProperty", () -> properties.getProperty("integer"));
+		runner.run("getByte", () -> properties.getByte("byte"));
+		runner.run("getShort", () -> properties.getShort("short"));
+		runner.run("getInteger", () -> properties.getInteger("integer"));
+		runner.run("getLong", () -> properties.getLong("long"));
+		runner.run("getFloat", () -> properties.getFloat("float"));
+		runner.run("getDouble", () -> properties.getDouble("double"));
+		runner.run("getCharacter", () -> properties.getCharacter("character"));
+		runner.run("getBoolean", () -> properties.getBoolean("boolean"));
+		runner.run("getBigDecimal", () -> properties.getBigDecimal("bigdecimal"));
+		runner.run("getBigInteger", () -> properties.getBigInteger("biginteger"));
+		runner.run("getCharset", () -> properties.getCharset("charset"));
+		runner.run("getFile", () -> properties.getFile("file"));
+		runner.run("getLocale", () -> properties.getLocale("locale"));
+		runner.run("getPath", () -> properties.getPath("path"));
+		runner.run("getURI", () -> properties.getURI("uri"));
+		runner.run("getURL", () -> properties.getURL("url"));
+		runner.run("getArray(int[])", () -> properties.getArray(int[].class, "array"));
+		runner.run("getEnum(TimeUnit)", () -> properties.getEnum(TimeUnit.class, "enum"));
+		runner.run("getAtomicBoolean", () -> properties.getAtomicBoolean("boolean"));
+		runner.run("getAtomicInteger", () -> properties.getAtomicInteger("integer"));
+		runner.run("getAtomicLong", () -> properties.getAtomicLong("long"));
+		runner.run("getPattern", () -> properties.getPattern("pattern"));
+		runner.run("getAtomicReference(Integer)", () -> properties.getAtomicReference(Integer.class, "integer"));
+		runner.run("getList(Integer)", () -> properties.getList(Integer.class, "list"));
+		runner.run("getCollection(Integer)", () -> properties.getCollection(Integer.class, "list"));
+		runner.run("getSet(Integer)", () -> properties.getSet(Integer.class, "list"));
+		runner.run("getArrayList(Integer)", () -> properties.getArrayList(Integer.class, "list"));
+		runner.run("getTreeSet(Integer)", () -> properties.getTreeSet(Integer.class, "list"));
+		runner.run("getMap(String,Integer)", () -> properties.getMap(String.class, Integer.class, "map"));
+		runner.run("getHashMap(String,Integer)", () -> properties.getHashMap(String.class, Integer.class, "map"));
+		runner.run("getTreeMap(String,Integer)", () -> properties.getTreeMap(String.class, Integer.class, "map"));
+	}
+}
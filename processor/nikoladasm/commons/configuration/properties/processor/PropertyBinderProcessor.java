@@ -0,0 +1,458 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import nikoladasm.commons.configuration.properties.PropertyBinder;
+import nikoladasm.commons.configuration.properties.annotations.*;
+
+public class PropertyBinderProcessor extends AbstractProcessor {
+
+	public static final String VERBOSE_OPTION = "nikoladasm.properties.binder.verbose";
+
+	protected static class UnsupportedException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		public UnsupportedException(String message) {
+			super(message);
+		}
+	}
+
+	protected static class Binding {
+		private final Element element;
+		private final TypeMirror type;
+		private final int priority;
+
+		public Binding(Element element, TypeMirror type, int priority) {
+			this.element = element;
+			this.type = type;
+			this.priority = priority;
+		}
+	}
+
+	private final Set<String> processed = new HashSet<>();
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		Set<String> types = new HashSet<>();
+		types.add(Property.class.getCanonicalName());
+		types.add(Child.class.getCanonicalName());
+		return types;
+	}
+
+	@Override
+	public Set<String> getSupportedOptions() {
+		return Collections.singleton(VERBOSE_OPTION);
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		Set<TypeElement> types = new LinkedHashSet<>();
+		for (Element element : roundEnv.getElementsAnnotatedWith(Property.class))
+			addEnclosingClass(types, element);
+		for (Element element : roundEnv.getElementsAnnotatedWith(Child.class))
+			addEnclosingClass(types, element);
+		for (TypeElement type : types) {
+			String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+			if (!processed.add(binaryName)) continue;
+			try {
+				generate(type);
+			} catch (UnsupportedException e) {
+				if (processingEnv.getOptions().containsKey(VERBOSE_OPTION))
+					processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+						"Property binder is not generated, reflection is used: "+e.getMessage(), type);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+					"Can't write property binder: "+e.getMessage(), type);
+			}
+		}
+		return false;
+	}
+
+	protected void addEnclosingClass(Set<TypeElement> types, Element element) {
+		Element enclosing = element.getEnclosingElement();
+		if (enclosing != null && enclosing.getKind() == ElementKind.CLASS)
+			types.add((TypeElement) enclosing);
+	}
+
+	protected void generate(TypeElement type) throws UnsupportedException, IOException {
+		if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS)
+			throw new UnsupportedException("local or anonymous class");
+		PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+		checkAccessible(type, packageElement);
+		List<Binding> bindings = new ArrayList<>();
+		for (TypeElement current = type; current != null; current = superclass(current)) {
+			for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+				if (!isBinding(field)) continue;
+				checkAccessible(field, packageElement);
+				if (field.getModifiers().contains(Modifier.FINAL))
+					throw new UnsupportedException("final field "+field.getSimpleName());
+				bindings.add(new Binding(field, field.asType(), 0));
+			}
+		}
+		List<Binding> setters = new ArrayList<>();
+		for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+			if (!isBinding(method) || !method.getModifiers().contains(Modifier.PUBLIC) || method.getParameters().size() != 1)
+				continue;
+			checkAccessible(method, packageElement);
+			MethodPriority priority = method.getAnnotation(MethodPriority.class);
+			setters.add(new Binding(method, method.getParameters().get(0).asType(),
+				(priority == null || method.getAnnotation(Child.class) != null) ? MethodPriority.DEFAULT_PRIORITY : priority.value()));
+		}
+		setters.sort((binding1, binding2) -> Integer.compare(binding1.priority, binding2.priority));
+		bindings.addAll(setters);
+		String packageName = packageElement.getQualifiedName().toString();
+		String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+		String binderName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length()+1))+PropertyBinder.CLASS_NAME_SUFFIX;
+		StringBuilder source = new StringBuilder();
+		if (!packageName.isEmpty())
+			source.append("package ").append(packageName).append(";\n\n");
+		source.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+		source.append("public final class ").append(binderName).append(" implements nikoladasm.commons.configuration.properties.PropertyBinder {\n\n");
+		appendType(source, type);
+		appendClassPropertyInfo(source, type);
+		appendClassResources(source, type);
+		appendElements(source, type, bindings, packageElement);
+		appendInstantiator(source, type);
+		source.append("}\n");
+		try (Writer writer = processingEnv.getFiler().createSourceFile(
+				(packageName.isEmpty() ? "" : packageName+".")+binderName, type).openWriter()) {
+			writer.write(source.toString());
+		}
+	}
+
+	protected TypeElement superclass(TypeElement type) {
+		TypeMirror superclass = type.getSuperclass();
+		if (superclass.getKind() != TypeKind.DECLARED) return null;
+		TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+		return element.getQualifiedName().contentEquals(Object.class.getName()) ? null : element;
+	}
+
+	protected boolean isBinding(Element element) {
+		return element.getAnnotation(Child.class) != null || element.getAnnotation(Property.class) != null;
+	}
+
+	protected void appendType(StringBuilder source, TypeElement type) {
+		source.append("\t@Override\n");
+		source.append("\tpublic Class<?> type() {\n");
+		source.append("\t\treturn ").append(type.getQualifiedName()).append(".class;\n");
+		source.append("\t}\n\n");
+	}
+
+	protected void appendClassPropertyInfo(StringBuilder source, TypeElement type) {
+		source.append("\t@Override\n");
+		source.append("\tpublic nikoladasm.commons.configuration.properties.PropertyInfo classPropertyInfo() {\n");
+		source.append("\t\tnikoladasm.commons.configuration.properties.PropertyInfo info = new nikoladasm.commons.configuration.properties.PropertyInfo();\n");
+		Context context = type.getAnnotation(Context.class);
+		if (context != null)
+			appendSetter(source, "context", literal(context.value()));
+		ComponentsDelimiter componentsDelimiter = type.getAnnotation(ComponentsDelimiter.class);
+		if (componentsDelimiter != null)
+			appendSetter(source, "componentsDelimiter", literal(componentsDelimiter.value()));
+		KeyValueDelimiter keyValueDelimiter = type.getAnnotation(KeyValueDelimiter.class);
+		if (keyValueDelimiter != null)
+			appendSetter(source, "keyValueDelimiter", literal(keyValueDelimiter.value()));
+		Required required = type.getAnnotation(Required.class);
+		if (required != null)
+			appendSetter(source, "required", String.valueOf(required.value()));
+		ContextPrefix contextPrefix = type.getAnnotation(ContextPrefix.class);
+		if (contextPrefix != null)
+			appendSetter(source, "contextPrefix", literal(contextPrefix.value()));
+		IncludeKey includeKey = type.getAnnotation(IncludeKey.class);
+		if (includeKey != null)
+			appendSetter(source, "includeKey", literal(includeKey.value()));
+		IncludesDelimiter includesDelimiter = type.getAnnotation(IncludesDelimiter.class);
+		if (includesDelimiter != null)
+			appendSetter(source, "includesDelimiter", literal(includesDelimiter.value()));
+		source.append("\t\treturn info;\n");
+		source.append("\t}\n\n");
+	}
+
+	protected void appendClassResources(StringBuilder source, TypeElement type) {
+		source.append("\t@Override\n");
+		source.append("\tpublic nikoladasm.commons.configuration.properties.ResourceInfo[] classResources() {\n");
+		source.append("\t\treturn ").append(resources(type)).append(";\n");
+		source.append("\t}\n\n");
+	}
+
+	protected void appendElements(StringBuilder source, TypeElement type, List<Binding> bindings, PackageElement packageElement) throws UnsupportedException {
+		source.append("\t@Override\n");
+		source.append("\tpublic java.util.List<nikoladasm.commons.configuration.properties.PropertyMetadata.Element<?>> elements() {\n");
+		source.append("\t\tjava.util.List<nikoladasm.commons.configuration.properties.PropertyMetadata.Element<?>> elements = new java.util.ArrayList<>();\n");
+		source.append("\t\tnikoladasm.commons.configuration.properties.PropertyInfo info;\n");
+		for (Binding binding : bindings) {
+			Element element = binding.element;
+			TypeMirror erasure = processingEnv.getTypeUtils().erasure(binding.type);
+			checkAccessible(erasure, packageElement);
+			source.append("\t\tinfo = new nikoladasm.commons.configuration.properties.PropertyInfo();\n");
+			Child child = element.getAnnotation(Child.class);
+			Context context = element.getAnnotation(Context.class);
+			if (child != null) {
+				appendSetter(source, "prefix", literal(child.prefix()));
+				if (child.lazy())
+					appendSetter(source, "lazy", "true");
+				if (context != null)
+					appendSetter(source, "context", literal(context.value()));
+			} else {
+				if (context != null)
+					appendSetter(source, "context", literal(context.value()));
+				ComponentsDelimiter componentsDelimiter = element.getAnnotation(ComponentsDelimiter.class);
+				if (componentsDelimiter != null)
+					appendSetter(source, "componentsDelimiter", literal(componentsDelimiter.value()));
+				KeyValueDelimiter keyValueDelimiter = element.getAnnotation(KeyValueDelimiter.class);
+				if (keyValueDelimiter != null)
+					appendSetter(source, "keyValueDelimiter", literal(keyValueDelimiter.value()));
+				TypeMirror converter = converter(element);
+				if (converter != null) {
+					checkAccessible(converter, packageElement);
+					appendSetter(source, "converter", typeName(converter)+".class");
+				}
+				appendSetter(source, "key", literal(element.getAnnotation(Property.class).value()));
+				DefaultValue defaultValue = element.getAnnotation(DefaultValue.class);
+				if (defaultValue != null)
+					appendSetter(source, "defaultValue", literal(defaultValue.value()));
+				Required required = element.getAnnotation(Required.class);
+				if (required != null)
+					appendSetter(source, "required", String.valueOf(required.value()));
+				ContextPrefix contextPrefix = element.getAnnotation(ContextPrefix.class);
+				if (contextPrefix != null)
+					appendSetter(source, "contextPrefix", literal(contextPrefix.value()));
+				IncludeKey includeKey = element.getAnnotation(IncludeKey.class);
+				if (includeKey != null)
+					appendSetter(source, "includeKey", literal(includeKey.value()));
+				IncludesDelimiter includesDelimiter = element.getAnnotation(IncludesDelimiter.class);
+				if (includesDelimiter != null)
+					appendSetter(source, "includesDelimiter", literal(includesDelimiter.value()));
+				MethodPriority priority = element.getAnnotation(MethodPriority.class);
+				if (priority != null)
+					appendSetter(source, "priority", String.valueOf(priority.value()));
+			}
+			appendSetter(source, "type", typeName(erasure)+".class");
+			appendSetter(source, "genericParameters", genericParameters(binding.type, packageElement));
+			String name = element.getSimpleName().toString();
+			String value = valueCast(erasure);
+			String injector;
+			if (element.getKind() == ElementKind.FIELD) {
+				String owner = ((TypeElement) element.getEnclosingElement()).getQualifiedName().toString();
+				String target = element.getModifiers().contains(Modifier.STATIC) ? owner : "(("+owner+") target)";
+				injector = "nikoladasm.commons.configuration.properties.Injectors.field("+literal(name)+
+					", (target, value) -> "+target+"."+name+" = "+value+")";
+			} else {
+				String target = element.getModifiers().contains(Modifier.STATIC) ?
+					((TypeElement) element.getEnclosingElement()).getQualifiedName().toString() :
+					"(("+typeName(processingEnv.getTypeUtils().erasure(type.asType()))+") target)";
+				injector = "nikoladasm.commons.configuration.properties.Injectors.method("+literal(name)+
+					", (target, value) -> "+target+"."+name+"("+value+"))";
+			}
+			source.append("\t\telements.add(new nikoladasm.commons.configuration.properties.PropertyMetadata.Element<>(")
+				.append(literal(name)).append(", info, ")
+				.append((child == null) ? resources(element) : "null").append(",\n\t\t\t")
+				.append(injector).append("));\n");
+		}
+		source.append("\t\treturn elements;\n");
+		source.append("\t}\n\n");
+	}
+
+	protected void appendInstantiator(StringBuilder source, TypeElement type) {
+		String typeName = type.getQualifiedName().toString();
+		source.append("\t@Override\n");
+		source.append("\tpublic nikoladasm.commons.configuration.properties.Injectors.Instantiator<?> instantiator() {\n");
+		if (isInstantiable(type))
+			source.append("\t\treturn nikoladasm.commons.configuration.properties.Injectors.constructor(")
+				.append(typeName).append(".class, () -> new ").append(typeName).append("());\n");
+		else
+			source.append("\t\treturn nikoladasm.commons.configuration.properties.Injectors.constructor(")
+				.append(typeName).append(".class);\n");
+		source.append("\t}\n");
+	}
+
+	protected boolean isInstantiable(TypeElement type) {
+		if (type.getModifiers().contains(Modifier.ABSTRACT) || !type.getTypeParameters().isEmpty()) return false;
+		if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) return false;
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements()))
+			if (constructor.getParameters().isEmpty())
+				return !constructor.getModifiers().contains(Modifier.PRIVATE) && constructor.getThrownTypes().isEmpty();
+		return false;
+	}
+
+	protected void appendSetter(StringBuilder source, String name, String value) {
+		source.append("\t\tinfo.").append(name).append("(").append(value).append(");\n");
+	}
+
+	protected String resources(Element element) {
+		Resource[] resources = element.getAnnotationsByType(Resource.class);
+		StringBuilder source = new StringBuilder();
+		source.append("nikoladasm.commons.configuration.properties.ResourceInfo.sorted(new nikoladasm.commons.configuration.properties.ResourceInfo[] {");
+		for (int i=0; i < resources.length; i++) {
+			Resource resource = resources[i];
+			if (i > 0) source.append(",");
+			source.append("\n\t\t\tnew nikoladasm.commons.configuration.properties.ResourceInfo(new String[] {");
+			String[] paths = resource.value();
+			for (int j=0; j < paths.length; j++) {
+				if (j > 0) source.append(", ");
+				source.append(literal(paths[j]));
+			}
+			source.append("}, nikoladasm.commons.configuration.properties.annotations.Resource.Type.")
+				.append(resource.source().name()).append(", ")
+				.append(resource.priority()).append(", ")
+				.append(literal(resource.includeKey())).append(", ")
+				.append(literal(resource.includesDelimiter())).append(")");
+		}
+		source.append("})");
+		return source.toString();
+	}
+
+	protected TypeMirror converter(Element element) {
+		UseConverter useConverter = element.getAnnotation(UseConverter.class);
+		if (useConverter == null) return null;
+		try {
+			useConverter.value();
+		} catch (MirroredTypeException e) {
+			return processingEnv.getTypeUtils().erasure(e.getTypeMirror());
+		}
+		return null;
+	}
+
+	protected String genericParameters(TypeMirror type, PackageElement packageElement) throws UnsupportedException {
+		if (type.getKind() != TypeKind.DECLARED) return "null";
+		List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+		if (arguments.isEmpty()) return "null";
+		StringBuilder source = new StringBuilder("new Class<?>[] {");
+		for (int i=0; i < arguments.size(); i++) {
+			TypeMirror argument = arguments.get(i);
+			TypeMirror component = argument;
+			while (component.getKind() == TypeKind.ARRAY)
+				component = ((ArrayType) component).getComponentType();
+			if (!component.getKind().isPrimitive() &&
+					(component.getKind() != TypeKind.DECLARED || !((DeclaredType) component).getTypeArguments().isEmpty()))
+				throw new UnsupportedException("generic type argument "+argument);
+			checkAccessible(argument, packageElement);
+			if (i > 0) source.append(", ");
+			source.append(typeName(argument)).append(".class");
+		}
+		return source.append("}").toString();
+	}
+
+	protected String valueCast(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			TypeElement boxed = processingEnv.getTypeUtils().boxedClass((PrimitiveType) type);
+			return "("+typeName(type)+") ("+boxed.getQualifiedName()+") value";
+		}
+		return "("+typeName(type)+") value";
+	}
+
+	protected String typeName(TypeMirror type) {
+		switch (type.getKind()) {
+			case ARRAY :
+				return typeName(((ArrayType) type).getComponentType())+"[]";
+			case DECLARED :
+				return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+			default :
+				return type.toString();
+		}
+	}
+
+	protected void checkAccessible(TypeMirror type, PackageElement packageElement) throws UnsupportedException {
+		while (type.getKind() == TypeKind.ARRAY)
+			type = ((ArrayType) type).getComponentType();
+		if (type.getKind().isPrimitive()) return;
+		if (type.getKind() != TypeKind.DECLARED)
+			throw new UnsupportedException("type "+type);
+		checkAccessible((TypeElement) ((DeclaredType) type).asElement(), packageElement);
+	}
+
+	protected void checkAccessible(TypeElement type, PackageElement packageElement) throws UnsupportedException {
+		for (Element current = type; current instanceof TypeElement; current = current.getEnclosingElement()) {
+			TypeElement currentType = (TypeElement) current;
+			if (currentType.getNestingKind() == NestingKind.LOCAL || currentType.getNestingKind() == NestingKind.ANONYMOUS)
+				throw new UnsupportedException("local or anonymous type "+type);
+			if (!isAccessible(currentType, packageElement))
+				throw new UnsupportedException("inaccessible type "+type);
+		}
+	}
+
+	protected void checkAccessible(Element member, PackageElement packageElement) throws UnsupportedException {
+		checkAccessible((TypeElement) member.getEnclosingElement(), packageElement);
+		if (!isAccessible(member, packageElement))
+			throw new UnsupportedException("inaccessible member "+member.getSimpleName());
+	}
+
+	protected boolean isAccessible(Element element, PackageElement packageElement) {
+		Set<Modifier> modifiers = element.getModifiers();
+		if (modifiers.contains(Modifier.PUBLIC)) return true;
+		if (modifiers.contains(Modifier.PRIVATE)) return false;
+		if (element.getKind() != ElementKind.FIELD && element.getKind() != ElementKind.METHOD &&
+				element.getEnclosingElement().getKind().isInterface())
+			return true;
+		return processingEnv.getElementUtils().getPackageOf(element).equals(packageElement);
+	}
+
+	protected static String literal(String value) {
+		StringBuilder literal = new StringBuilder("\"");
+		for (int i=0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"' : literal.append("\\\""); break;
+				case '\\' : literal.append("\\\\"); break;
+				case '\n' : literal.append("\\n"); break;
+				case '\r' : literal.append("\\r"); break;
+				case '\t' : literal.append("\\t"); break;
+				default :
+					if (c < 0x20 || c > 0x7e)
+						literal.append(String.format("\\u%04x", (int) c));
+					else
+						literal.append(c);
+			}
+		}
+		return literal.append("\"").toString();
+	}
+}
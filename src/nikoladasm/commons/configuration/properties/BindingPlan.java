@@ -0,0 +1,316 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nikoladasm.commons.configuration.properties.converters.Converter;
+
+public final class BindingPlan {
+
+	@FunctionalInterface
+	public static interface Injector {
+		void inject(Object target, Object value);
+
+		default void injectInt(Object target, int value) {
+			inject(target, value);
+		}
+
+		default void injectLong(Object target, long value) {
+			inject(target, value);
+		}
+
+		default void injectDouble(Object target, double value) {
+			inject(target, value);
+		}
+
+		default void injectBoolean(Object target, boolean value) {
+			inject(target, value);
+		}
+	}
+
+	public static final class ResourceSlot {
+		private final ResourceInfo[] resources;
+		private final String includeKey;
+		private final String includesDelimiter;
+
+		public ResourceSlot(ResourceInfo[] resources, String includeKey, String includesDelimiter) {
+			this.resources = resources;
+			this.includeKey = includeKey;
+			this.includesDelimiter = includesDelimiter;
+		}
+
+		public ResourceInfo[] resources() {
+			return resources;
+		}
+
+		public String includeKey() {
+			return includeKey;
+		}
+
+		public String includesDelimiter() {
+			return includesDelimiter;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = Arrays.hashCode(resources);
+			result = 31 * result + ((includeKey == null) ? 0 : includeKey.hashCode());
+			result = 31 * result + ((includesDelimiter == null) ? 0 : includesDelimiter.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (this == object) return true;
+			if (object == null || !(object instanceof ResourceSlot)) return false;
+			ResourceSlot slot = (ResourceSlot) object;
+			return Arrays.equals(resources, slot.resources) &&
+				(includeKey == null ? slot.includeKey == null : includeKey.equals(slot.includeKey)) &&
+				(includesDelimiter == null ? slot.includesDelimiter == null : includesDelimiter.equals(slot.includesDelimiter));
+		}
+	}
+
+	public static enum ChildMode {EAGER, LAZY_VALUE, LAZY_PROXY}
+
+	public static final class Step {
+		private final Object member;
+		private final String key;
+		private final String contextPrefix;
+		private final String context;
+		private final boolean required;
+		private final String defaultValue;
+		private final Converter<?> converter;
+		private final Exception converterFailure;
+		private final Class<?> childType;
+		private final String childPrefix;
+		private final ChildMode childMode;
+		private final int elementSlot;
+		private final int classSlot;
+		private final Injector injector;
+
+		private Step(Object member, String key, String contextPrefix, String context, boolean required,
+				String defaultValue, Converter<?> converter, Exception converterFailure,
+				Class<?> childType, String childPrefix, ChildMode childMode, int elementSlot, int classSlot, Injector injector) {
+			this.member = member;
+			this.key = key;
+			this.contextPrefix = contextPrefix;
+			this.context = context;
+			this.required = required;
+			this.defaultValue = defaultValue;
+			this.converter = converter;
+			this.converterFailure = converterFailure;
+			this.childType = childType;
+			this.childPrefix = childPrefix;
+			this.childMode = childMode;
+			this.elementSlot = elementSlot;
+			this.classSlot = classSlot;
+			this.injector = injector;
+		}
+
+		public static Step property(Object member, String key, String contextPrefix, String context, boolean required,
+				String defaultValue, Converter<?> converter, Exception converterFailure,
+				int elementSlot, int classSlot, Injector injector) {
+			return new Step(member, key, contextPrefix, context, required, defaultValue,
+				converter, converterFailure, null, null, null, elementSlot, classSlot, injector);
+		}
+
+		public static Step child(Object member, Class<?> childType, String childPrefix, String context, Injector injector) {
+			return child(member, childType, childPrefix, context, ChildMode.EAGER, injector);
+		}
+
+		public static Step child(Object member, Class<?> childType, String childPrefix, String context, ChildMode childMode, Injector injector) {
+			return new Step(member, null, null, context, false, null, null, null, childType, childPrefix, childMode, -1, -1, injector);
+		}
+
+		public Object member() {
+			return member;
+		}
+
+		public String key() {
+			return key;
+		}
+
+		public String contextPrefix() {
+			return contextPrefix;
+		}
+
+		public String context() {
+			return context;
+		}
+
+		public boolean required() {
+			return required;
+		}
+
+		public String defaultValue() {
+			return defaultValue;
+		}
+
+		public boolean isChild() {
+			return childType != null;
+		}
+
+		public Class<?> childType() {
+			return childType;
+		}
+
+		public String childPrefix() {
+			return childPrefix;
+		}
+
+		public ChildMode childMode() {
+			return childMode;
+		}
+
+		public boolean isLazyChild() {
+			return childMode == ChildMode.LAZY_VALUE || childMode == ChildMode.LAZY_PROXY;
+		}
+
+		public int elementSlot() {
+			return elementSlot;
+		}
+
+		public int classSlot() {
+			return classSlot;
+		}
+
+		public Injector injector() {
+			return injector;
+		}
+
+		public Object convert(String value) throws Exception {
+			if (converter == null)
+				throw (converterFailure == null) ? new PropertyLoaderException("Converter not found") : converterFailure;
+			return converter.convert(value);
+		}
+
+		public boolean isPrimitive() {
+			return converter instanceof Converter.OfInt || converter instanceof Converter.OfLong ||
+				converter instanceof Converter.OfDouble || converter instanceof Converter.OfBoolean;
+		}
+
+		public void convertAndInject(Object target, String value) throws Exception {
+			if (converter instanceof Converter.OfInt)
+				injector.injectInt(target, ((Converter.OfInt) converter).convertInt(value));
+			else if (converter instanceof Converter.OfLong)
+				injector.injectLong(target, ((Converter.OfLong) converter).convertLong(value));
+			else if (converter instanceof Converter.OfDouble)
+				injector.injectDouble(target, ((Converter.OfDouble) converter).convertDouble(value));
+			else if (converter instanceof Converter.OfBoolean)
+				injector.injectBoolean(target, ((Converter.OfBoolean) converter).convertBoolean(value));
+			else
+				injector.inject(target, convert(value));
+		}
+	}
+
+	public static final class Builder {
+		private final Class<?> type;
+		private final Class<?> resourceClazz;
+		private final List<ResourceSlot> slots = new ArrayList<>();
+		private final Map<ResourceSlot,Integer> slotIndexes = new HashMap<>();
+		private final List<Step> steps = new ArrayList<>();
+
+		public Builder(Class<?> type, Class<?> resourceClazz) {
+			this.type = type;
+			this.resourceClazz = resourceClazz;
+		}
+
+		public int slot(ResourceInfo[] resources, String includeKey, String includesDelimiter) {
+			if (resources == null || resources.length == 0) return -1;
+			ResourceSlot slot = new ResourceSlot(resources, includeKey, includesDelimiter);
+			Integer index = slotIndexes.get(slot);
+			if (index == null) {
+				index = slots.size();
+				slots.add(slot);
+				slotIndexes.put(slot, index);
+			}
+			return index;
+		}
+
+		public Builder step(Step step) {
+			steps.add(step);
+			return this;
+		}
+
+		public BindingPlan build() {
+			return new BindingPlan(type, resourceClazz,
+				slots.toArray(new ResourceSlot[slots.size()]),
+				steps.toArray(new Step[steps.size()]));
+		}
+	}
+
+	private final Class<?> type;
+	private final Class<?> resourceClazz;
+	private final ResourceSlot[] slots;
+	private final Step[] steps;
+	private final int childStepsCount;
+	private final int propertyStepsCount;
+
+	private BindingPlan(Class<?> type, Class<?> resourceClazz, ResourceSlot[] slots, Step[] steps) {
+		this.type = type;
+		this.resourceClazz = resourceClazz;
+		this.slots = slots;
+		this.steps = steps;
+		int childStepsCount = 0;
+		int propertyStepsCount = 0;
+		for (Step step : steps) {
+			if (!step.isChild()) propertyStepsCount++;
+			else if (!step.isLazyChild()) childStepsCount++;
+		}
+		this.childStepsCount = childStepsCount;
+		this.propertyStepsCount = propertyStepsCount;
+	}
+
+	public Class<?> type() {
+		return type;
+	}
+
+	public Class<?> resourceClazz() {
+		return resourceClazz;
+	}
+
+	public int slotsCount() {
+		return slots.length;
+	}
+
+	public ResourceSlot slot(int index) {
+		return slots[index];
+	}
+
+	public int stepsCount() {
+		return steps.length;
+	}
+
+	public Step step(int index) {
+		return steps[index];
+	}
+
+	public int childStepsCount() {
+		return childStepsCount;
+	}
+
+	public int propertyStepsCount() {
+		return propertyStepsCount;
+	}
+}
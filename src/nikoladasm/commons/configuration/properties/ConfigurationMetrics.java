@@ -0,0 +1,316 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.function.Function;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import nikoladasm.commons.configuration.properties.extproperties.ResourceCache;
+
+public class ConfigurationMetrics implements ConfigurationMXBean, ResourceCache.Listener {
+
+	public static final String DOMAIN = "nikoladasm.commons.configuration";
+	public static final String DEFAULT_NAME = "default";
+
+	protected static final class ClassMetrics {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0L);
+	}
+
+	private final String name;
+	private final Map<Class<?>,ClassMetrics> classes = Collections.synchronizedMap(new WeakHashMap<>());
+	private final Map<String,Long> lastLoads = new ConcurrentHashMap<>();
+	private final LongAdder reloads = new LongAdder();
+	private final LongAdder reloadFailures = new LongAdder();
+	private final LongAdder planCompilations = new LongAdder();
+	private final LongAdder planCompileNanos = new LongAdder();
+	private final LongAdder converterLookups = new LongAdder();
+	private final LongAdder converterFailures = new LongAdder();
+	private final LongAdder converterLookupNanos = new LongAdder();
+	private final LongAdder converterReuses = new LongAdder();
+	private final LongAdder resourceCacheHits = new LongAdder();
+	private final LongAdder resourceCacheMisses = new LongAdder();
+	private volatile ResourceCache resourceCache;
+	private ObjectName objectName;
+
+	public ConfigurationMetrics() {
+		this(DEFAULT_NAME);
+	}
+
+	public ConfigurationMetrics(String name) {
+		this.name = name;
+	}
+
+	public String name() {
+		return name;
+	}
+
+	public ConfigurationMetrics resourceCache(ResourceCache resourceCache) {
+		this.resourceCache = resourceCache;
+		return this;
+	}
+
+	public ResourceCache resourceCache() {
+		return resourceCache;
+	}
+
+	public synchronized ObjectName register() {
+		if (objectName != null) return objectName;
+		try {
+			ObjectName newName = new ObjectName(DOMAIN+":type=Configuration,name="+ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, newName);
+			objectName = newName;
+			return objectName;
+		} catch (JMException e) {
+			throw new PropertyLoaderException("Can't register configuration MBean \""+name+"\"", e);
+		}
+	}
+
+	public synchronized void unregister() {
+		if (objectName == null) return;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+		} catch (JMException e) {
+			throw new PropertyLoaderException("Can't unregister configuration MBean \""+name+"\"", e);
+		} finally {
+			objectName = null;
+		}
+	}
+
+	public synchronized ObjectName objectName() {
+		return objectName;
+	}
+
+	protected ClassMetrics classMetrics(Class<?> clazz) {
+		return classes.computeIfAbsent(clazz, key -> new ClassMetrics());
+	}
+
+	// Same-named classes from different loaders get the loader identity appended
+	protected <T> Map<String,T> byClassName(Function<ClassMetrics,T> value) {
+		List<Map.Entry<Class<?>,ClassMetrics>> entries;
+		synchronized (classes) {
+			entries = new ArrayList<>(classes.entrySet());
+		}
+		Map<String,Integer> names = new HashMap<>();
+		for (Map.Entry<Class<?>,ClassMetrics> entry : entries)
+			names.merge(entry.getKey().getName(), 1, Integer::sum);
+		Map<String,T> result = new TreeMap<>();
+		for (Map.Entry<Class<?>,ClassMetrics> entry : entries) {
+			Class<?> clazz = entry.getKey();
+			String className = clazz.getName();
+			if (names.get(className) > 1)
+				className += "@"+Integer.toHexString(System.identityHashCode(clazz.getClassLoader()));
+			result.put(className, value.apply(entry.getValue()));
+		}
+		return result;
+	}
+
+	public void populated(Class<?> clazz, long nanos) {
+		ClassMetrics metrics = classMetrics(clazz);
+		metrics.count.increment();
+		metrics.nanos.add(nanos);
+		metrics.maxNanos.accumulate(nanos);
+	}
+
+	public void populateFailed(Class<?> clazz) {
+		classMetrics(clazz).failures.increment();
+	}
+
+	public void reloaded() {
+		reloads.increment();
+	}
+
+	public void reloadFailed() {
+		reloadFailures.increment();
+	}
+
+	public void planCompiled(long nanos) {
+		planCompilations.increment();
+		planCompileNanos.add(nanos);
+	}
+
+	public void converterResolved(boolean found, long nanos) {
+		converterLookups.increment();
+		converterLookupNanos.add(nanos);
+		if (!found) converterFailures.increment();
+	}
+
+	public void convertersReused(int count) {
+		converterReuses.add(count);
+	}
+
+	@Override
+	public void cached(String location, boolean hit) {
+		if (hit) resourceCacheHits.increment(); else resourceCacheMisses.increment();
+	}
+
+	@Override
+	public void read(String location, long bytes, long nanos) {
+		lastLoads.put(location, System.currentTimeMillis());
+	}
+
+	@Override
+	public void parsed(String location, long nanos) {
+	}
+
+	@Override
+	public long getPopulateCount() {
+		long count = 0L;
+		synchronized (classes) {
+			for (ClassMetrics metrics : classes.values())
+				count += metrics.count.sum();
+		}
+		return count;
+	}
+
+	@Override
+	public long getPopulateFailures() {
+		long failures = 0L;
+		synchronized (classes) {
+			for (ClassMetrics metrics : classes.values())
+				failures += metrics.failures.sum();
+		}
+		return failures;
+	}
+
+	@Override
+	public Map<String,Long> getPopulateCounts() {
+		return byClassName(metrics -> metrics.count.sum());
+	}
+
+	@Override
+	public Map<String,Double> getPopulateAverageMillis() {
+		return byClassName(metrics -> {
+			long count = metrics.count.sum();
+			return (count == 0) ? 0.0 : millis(metrics.nanos.sum()) / count;
+		});
+	}
+
+	@Override
+	public Map<String,Double> getPopulateMaxMillis() {
+		return byClassName(metrics -> millis(metrics.maxNanos.get()));
+	}
+
+	@Override
+	public long getReloadCount() {
+		return reloads.sum();
+	}
+
+	@Override
+	public long getReloadFailures() {
+		return reloadFailures.sum();
+	}
+
+	@Override
+	public int getResourceCacheSize() {
+		ResourceCache cache = resourceCache;
+		return (cache == null) ? 0 : cache.size();
+	}
+
+	@Override
+	public long getResourceCacheHits() {
+		return resourceCacheHits.sum();
+	}
+
+	@Override
+	public long getResourceCacheMisses() {
+		return resourceCacheMisses.sum();
+	}
+
+	@Override
+	public double getResourceCacheHitRatio() {
+		long hits = getResourceCacheHits();
+		long total = hits + getResourceCacheMisses();
+		return (total == 0) ? 0.0 : (double) hits / total;
+	}
+
+	@Override
+	public long getBindingPlanCompilations() {
+		return planCompilations.sum();
+	}
+
+	@Override
+	public double getBindingPlanCompileMillis() {
+		return millis(planCompileNanos.sum());
+	}
+
+	@Override
+	public long getConverterLookups() {
+		return converterLookups.sum();
+	}
+
+	@Override
+	public long getConverterFailures() {
+		return converterFailures.sum();
+	}
+
+	@Override
+	public double getConverterLookupMillis() {
+		return millis(converterLookupNanos.sum());
+	}
+
+	@Override
+	public long getConverterReuses() {
+		return converterReuses.sum();
+	}
+
+	@Override
+	public Map<String,Long> getLastLoadTimestamps() {
+		return new TreeMap<>(lastLoads);
+	}
+
+	@Override
+	public void reset() {
+		classes.clear();
+		lastLoads.clear();
+		reloads.reset();
+		reloadFailures.reset();
+		planCompilations.reset();
+		planCompileNanos.reset();
+		converterLookups.reset();
+		converterFailures.reset();
+		converterLookupNanos.reset();
+		converterReuses.reset();
+		resourceCacheHits.reset();
+		resourceCacheMisses.reset();
+	}
+
+	protected static double millis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
@@ -0,0 +1,457 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+
+// fields are set reflectively through the accessible Field and its primitive setters; public setters
+// and public no-argument constructors of visible classes are linked once through LambdaMetafactory,
+// everything else goes through Method.invoke and Constructor.newInstance
+public final class Injectors {
+
+	@FunctionalInterface
+	public static interface Instantiator<T> {
+		T newInstance();
+	}
+
+	@FunctionalInterface
+	public static interface IntSetter {
+		void set(Object target, int value);
+	}
+
+	@FunctionalInterface
+	public static interface LongSetter {
+		void set(Object target, long value);
+	}
+
+	@FunctionalInterface
+	public static interface DoubleSetter {
+		void set(Object target, double value);
+	}
+
+	@FunctionalInterface
+	public static interface BooleanSetter {
+		void set(Object target, boolean value);
+	}
+
+	protected static final class FieldInjector implements BindingPlan.Injector {
+		private final Field field;
+		private final boolean primitive;
+
+		protected FieldInjector(Field field) {
+			this.field = field;
+			this.primitive = field.getType().isPrimitive();
+		}
+
+		@Override
+		public void inject(Object target, Object value) {
+			try {
+				field.set(target, value);
+			} catch (IllegalAccessException | RuntimeException e) {
+				throw failure(e);
+			}
+		}
+
+		@Override
+		public void injectInt(Object target, int value) {
+			if (!primitive) {
+				inject(target, value);
+				return;
+			}
+			try {
+				field.setInt(target, value);
+			} catch (IllegalAccessException | RuntimeException e) {
+				throw failure(e);
+			}
+		}
+
+		@Override
+		public void injectLong(Object target, long value) {
+			if (!primitive) {
+				inject(target, value);
+				return;
+			}
+			try {
+				field.setLong(target, value);
+			} catch (IllegalAccessException | RuntimeException e) {
+				throw failure(e);
+			}
+		}
+
+		@Override
+		public void injectDouble(Object target, double value) {
+			if (!primitive) {
+				inject(target, value);
+				return;
+			}
+			try {
+				field.setDouble(target, value);
+			} catch (IllegalAccessException | RuntimeException e) {
+				throw failure(e);
+			}
+		}
+
+		@Override
+		public void injectBoolean(Object target, boolean value) {
+			if (!primitive) {
+				inject(target, value);
+				return;
+			}
+			try {
+				field.setBoolean(target, value);
+			} catch (IllegalAccessException | RuntimeException e) {
+				throw failure(e);
+			}
+		}
+
+		private PropertyLoaderException failure(Exception e) {
+			return new PropertyLoaderException("Can't set value for field \""+field.getName()+"\"", e);
+		}
+	}
+
+	protected static final class MethodInjector implements BindingPlan.Injector {
+		private final Method method;
+
+		protected MethodInjector(Method method) {
+			this.method = method;
+		}
+
+		@Override
+		public void inject(Object target, Object value) {
+			try {
+				method.invoke(target, value);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				throw new PropertyLoaderException("Can't call method \""+method.getName()+"\"", rethrowError(e));
+			}
+		}
+	}
+
+	protected static final class IntMethodInjector implements BindingPlan.Injector {
+		private final String name;
+		private final IntSetter setter;
+
+		protected IntMethodInjector(String name, IntSetter setter) {
+			this.name = name;
+			this.setter = setter;
+		}
+
+		@Override
+		public void inject(Object target, Object value) {
+			try {
+				setter.set(target, (Integer) value);
+			} catch (RuntimeException e) {
+				throw new PropertyLoaderException("Can't call method \""+name+"\"", e);
+			}
+		}
+
+		@Override
+		public void injectInt(Object target, int value) {
+			try {
+				setter.set(target, value);
+			} catch (RuntimeException e) {
+				throw new PropertyLoaderException("Can't call method \""+name+"\"", e);
+			}
+		}
+	}
+
+	protected static final class LongMethodInjector implements BindingPlan.Injector {
+		private final String name;
+		private final LongSetter setter;
+
+		protected LongMethodInjector(String name, LongSetter setter) {
+			this.name = name;
+			this.setter = setter;
+		}
+
+		@Override
+		public void inject(Object target, Object value) {
+			try {
+				setter.set(target, (Long) value);
+			} catch (RuntimeException e) {
+				throw new PropertyLoaderException("Can't call method \""+name+"\"", e);
+			}
+		}
+
+		@Override
+		public void injectLong(Object target, long value) {
+			try {
+				setter.set(target, value);
+			} catch (RuntimeException e) {
+				throw new PropertyLoaderException("Can't call method \""+name+"\"", e);
+			}
+		}
+	}
+
+	protected static final class DoubleMethodInjector implements BindingPlan.Injector {
+		private final String name;
+		private final DoubleSetter setter;
+
+		protected DoubleMethodInjector(String name, DoubleSetter setter) {
+			this.name = name;
+			this.setter = setter;
+		}
+
+		@Override
+		public void inject(Object target, Object value) {
+			try {
+				setter.set(target, (Double) value);
+			} catch (RuntimeException e) {
+				throw new PropertyLoaderException("Can't call method \""+name+"\"", e);
+			}
+		}
+
+		@Override
+		public void injectDouble(Object target, double value) {
+			try {
+				setter.set(target, value);
+			} catch (RuntimeException e) {
+				throw new PropertyLoaderException("Can't call method \""+name+"\"", e);
+			}
+		}
+	}
+
+	protected static final class BooleanMethodInjector implements BindingPlan.Injector {
+		private final String name;
+		private final BooleanSetter setter;
+
+		protected BooleanMethodInjector(String name, BooleanSetter setter) {
+			this.name = name;
+			this.setter = setter;
+		}
+
+		@Override
+		public void inject(Object target, Object value) {
+			try {
+				setter.set(target, (Boolean) value);
+			} catch (RuntimeException e) {
+				throw new PropertyLoaderException("Can't call method \""+name+"\"", e);
+			}
+		}
+
+		@Override
+		public void injectBoolean(Object target, boolean value) {
+			try {
+				setter.set(target, value);
+			} catch (RuntimeException e) {
+				throw new PropertyLoaderException("Can't call method \""+name+"\"", e);
+			}
+		}
+	}
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private Injectors() {}
+
+	public static BindingPlan.Injector field(Field field) {
+		try {
+			field.setAccessible(true);
+		} catch (RuntimeException e) {
+			return (target, value) -> {
+				throw new PropertyLoaderException("Can't set value for field \""+field.getName()+"\"", e);
+			};
+		}
+		return new FieldInjector(field);
+	}
+
+	public static BindingPlan.Injector field(String name, BindingPlan.Injector setter) {
+		return (target, value) -> {
+			try {
+				setter.inject(target, value);
+			} catch (RuntimeException e) {
+				throw new PropertyLoaderException("Can't set value for field \""+name+"\"", e);
+			}
+		};
+	}
+
+	public static BindingPlan.Injector method(Method method) {
+		BindingPlan.Injector injector = lambdaMethod(method);
+		if (injector != null) return injector;
+		try {
+			method.setAccessible(true);
+		} catch (RuntimeException e) {
+			return (target, value) -> {
+				throw new PropertyLoaderException("Can't call method \""+method.getName()+"\"", e);
+			};
+		}
+		return new MethodInjector(method);
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static BindingPlan.Injector lambdaMethod(Method method) {
+		int modifiers = method.getModifiers();
+		Class<?> declaringClass = method.getDeclaringClass();
+		if (!Modifier.isPublic(modifiers) || Modifier.isStatic(modifiers) || declaringClass.isInterface() ||
+			method.getParameterCount() != 1 || !isPublicClass(declaringClass) || !isVisible(declaringClass))
+			return null;
+		String name = method.getName();
+		Class<?> parameterType = method.getParameterTypes()[0];
+		if (!isVisible(parameterType)) return null;
+		try {
+			MethodHandle handle = LOOKUP.unreflect(method);
+			if (parameterType == int.class)
+				return new IntMethodInjector(name, (IntSetter) setter(IntSetter.class, handle, declaringClass, int.class));
+			if (parameterType == long.class)
+				return new LongMethodInjector(name, (LongSetter) setter(LongSetter.class, handle, declaringClass, long.class));
+			if (parameterType == double.class)
+				return new DoubleMethodInjector(name, (DoubleSetter) setter(DoubleSetter.class, handle, declaringClass, double.class));
+			if (parameterType == boolean.class)
+				return new BooleanMethodInjector(name, (BooleanSetter) setter(BooleanSetter.class, handle, declaringClass, boolean.class));
+			Class<?> valueType = parameterType.isPrimitive() ? wrapper(parameterType) : parameterType;
+			CallSite site = LambdaMetafactory.metafactory(
+				LOOKUP,
+				"accept",
+				methodType(BiConsumer.class),
+				methodType(void.class, Object.class, Object.class),
+				handle,
+				methodType(void.class, declaringClass, valueType));
+			BiConsumer<Object,Object> consumer = (BiConsumer<Object,Object>) site.getTarget().invokeExact();
+			return (target, value) -> {
+				try {
+					consumer.accept(target, value);
+				} catch (RuntimeException e) {
+					throw new PropertyLoaderException("Can't call method \""+name+"\"", e);
+				}
+			};
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			return null;
+		}
+	}
+
+	protected static Object setter(Class<?> setterType, MethodHandle handle, Class<?> declaringClass, Class<?> valueType) throws Throwable {
+		CallSite site = LambdaMetafactory.metafactory(
+			LOOKUP,
+			"set",
+			methodType(setterType),
+			methodType(void.class, Object.class, valueType),
+			handle,
+			methodType(void.class, declaringClass, valueType));
+		return site.getTarget().invoke();
+	}
+
+	public static BindingPlan.Injector method(String name, BindingPlan.Injector setter) {
+		return (target, value) -> {
+			try {
+				setter.inject(target, value);
+			} catch (RuntimeException e) {
+				throw new PropertyLoaderException("Can't call method \""+name+"\"", e);
+			}
+		};
+	}
+
+	protected static boolean isPublicClass(Class<?> clazz) {
+		for (Class<?> current = clazz; current != null; current = current.getEnclosingClass())
+			if (!Modifier.isPublic(current.getModifiers())) return false;
+		return true;
+	}
+
+	// the generated lambda links the class by name from this class loader
+	protected static boolean isVisible(Class<?> clazz) {
+		if (clazz.isPrimitive()) return true;
+		try {
+			return Class.forName(clazz.getName(), false, Injectors.class.getClassLoader()) == clazz;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	protected static Class<?> wrapper(Class<?> primitive) {
+		return MethodType.methodType(primitive).wrap().returnType();
+	}
+
+	// an Error thrown by the target is not a configuration failure and is rethrown as is
+	protected static Exception rethrowError(Exception e) {
+		if (e instanceof InvocationTargetException && e.getCause() instanceof Error)
+			throw (Error) e.getCause();
+		return e;
+	}
+
+	public static <T> Instantiator<T> constructor(Class<T> clazz) {
+		Constructor<T> declaredConstructor;
+		try {
+			declaredConstructor = clazz.getDeclaredConstructor();
+			declaredConstructor.setAccessible(true);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return () -> {
+				throw new PropertyLoaderException("Can't create instance of class"+clazz, e);
+			};
+		}
+		Instantiator<T> instantiator = lambdaConstructor(declaredConstructor);
+		if (instantiator != null) return instantiator;
+		return () -> {
+			try {
+				return declaredConstructor.newInstance();
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				throw new PropertyLoaderException("Can't create instance of class"+clazz, rethrowError(e));
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static <T> Instantiator<T> lambdaConstructor(Constructor<T> constructor) {
+		Class<T> clazz = constructor.getDeclaringClass();
+		if (!Modifier.isPublic(constructor.getModifiers()) || Modifier.isAbstract(clazz.getModifiers()) ||
+			!isPublicClass(clazz) || !isVisible(clazz))
+			return null;
+		try {
+			CallSite site = LambdaMetafactory.metafactory(
+				LOOKUP,
+				"newInstance",
+				methodType(Instantiator.class),
+				methodType(Object.class),
+				LOOKUP.unreflectConstructor(constructor),
+				methodType(clazz));
+			Instantiator<T> instantiator = (Instantiator<T>) site.getTarget().invokeExact();
+			return () -> {
+				try {
+					return instantiator.newInstance();
+				} catch (RuntimeException e) {
+					throw new PropertyLoaderException("Can't create instance of class"+clazz, e);
+				}
+			};
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			return null;
+		}
+	}
+
+	public static <T> Instantiator<T> constructor(Class<T> clazz, Instantiator<T> constructor) {
+		return () -> {
+			try {
+				return constructor.newInstance();
+			} catch (RuntimeException e) {
+				throw new PropertyLoaderException("Can't create instance of class"+clazz, e);
+			}
+		};
+	}
+}
@@ -0,0 +1,487 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static java.lang.invoke.MethodType.methodType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// alternative to a slot-dispatch proxy; InterfaceBenchmark compares the two (bench/BASELINE.md)
+public final class InterfaceImplementations {
+
+	protected static final class Implementation {
+		private final Class<?> iface;
+		private final Method[] slotMethods;
+		private final boolean[] primitiveSlots;
+		private final MethodHandle constructor;
+
+		protected Implementation(Class<?> iface, Method[] slotMethods, boolean[] primitiveSlots, MethodHandle constructor) {
+			this.iface = iface;
+			this.slotMethods = slotMethods;
+			this.primitiveSlots = primitiveSlots;
+			this.constructor = constructor;
+		}
+	}
+
+	public static interface Generated {
+		Values propertiesValues();
+	}
+
+	public static final class Values {
+		private final Implementation implementation;
+		private final Object[] values;
+		private int hashCode;
+		private String toString;
+
+		protected Values(Implementation implementation, Object[] values) {
+			this.implementation = implementation;
+			this.values = values;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (this == object) return true;
+			if (!(object instanceof Values)) return false;
+			Values other = (Values) object;
+			return implementation.iface == other.implementation.iface &&
+				Arrays.equals(implementation.slotMethods, other.implementation.slotMethods) &&
+				Arrays.deepEquals(values, other.values);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = hashCode;
+			if (result == 0) {
+				result = PropertiesProxyHandler.valuesHashCode(implementation.iface, values);
+				hashCode = result;
+			}
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			String result = toString;
+			if (result == null) {
+				result = PropertiesProxyHandler.valuesToString(implementation.iface, implementation.slotMethods, values);
+				toString = result;
+			}
+			return result;
+		}
+	}
+
+	protected static final class DefiningClassLoader extends ClassLoader {
+		protected DefiningClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		protected Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	private static final Implementation UNSUPPORTED = new Implementation(null, null, null, null);
+
+	private static final ClassValue<Implementation> IMPLEMENTATIONS = new ClassValue<Implementation>() {
+		@Override
+		protected Implementation computeValue(Class<?> type) {
+			// only an interface the writer can't link is cached as unsupported; an Error, such
+			// as a VerifyError from a bug in the writer, propagates and is not cached
+			try {
+				return implementation(type);
+			} catch (ReflectiveOperationException | IOException | IllegalArgumentException e) {
+				return UNSUPPORTED;
+			}
+		}
+	};
+
+	public static final String CLASS_NAME_SUFFIX = "$$PropertiesImpl";
+
+	private static final String VALUES_FIELD = "propertiesValues";
+
+	private InterfaceImplementations() {}
+
+	public static boolean isSupported(Class<?> iface) {
+		return IMPLEMENTATIONS.get(iface) != UNSUPPORTED;
+	}
+
+	public static <T> T newInstance(Class<T> iface, Map<Method,Object> propertyValues) {
+		Implementation implementation = IMPLEMENTATIONS.get(iface);
+		if (implementation == UNSUPPORTED) return null;
+		Object[] values = new Object[implementation.slotMethods.length];
+		for (int i=0; i < values.length; i++) {
+			values[i] = propertyValues.get(implementation.slotMethods[i]);
+			if (values[i] == null && implementation.primitiveSlots[i]) return null;
+		}
+		try {
+			return iface.cast((Object) implementation.constructor.invokeExact(values, new Values(implementation, values)));
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new PropertyLoaderException("Can't create implementation of interface "+iface.getName(), t);
+		}
+	}
+
+	public static boolean equals(Values values, Object object) {
+		return (object instanceof Generated) && values.equals(((Generated) object).propertiesValues());
+	}
+
+	protected static Implementation implementation(Class<?> iface) throws ReflectiveOperationException, IOException {
+		if (!iface.isInterface() || !isAccessible(iface)) return UNSUPPORTED;
+		ClassLoader parent = iface.getClassLoader();
+		if (parent == null || Class.forName(InterfaceImplementations.class.getName(), false, parent) != InterfaceImplementations.class)
+			return UNSUPPORTED;
+		Map<String,Method> methods = new LinkedHashMap<>();
+		for (Method method : iface.getMethods()) {
+			if (Modifier.isStatic(method.getModifiers()) || isObjectMethod(method)) continue;
+			if (!isAccessible(method.getReturnType())) return UNSUPPORTED;
+			for (Class<?> parameterType : method.getParameterTypes())
+				if (!isAccessible(parameterType)) return UNSUPPORTED;
+			methods.putIfAbsent(method.getName()+descriptor(method), method);
+		}
+		List<Method> slotMethods = new ArrayList<>();
+		for (PropertyMetadata.Element<Method> element : PropertyMetadata.of(iface).getters())
+			if (methods.containsValue(element.member()) && !slotMethods.contains(element.member()))
+				slotMethods.add(element.member());
+		String className = iface.getName()+CLASS_NAME_SUFFIX;
+		byte[] bytes = new ClassWriter(className, iface, methods.values(), slotMethods).toByteArray();
+		Class<?> implementationClass = new DefiningClassLoader(parent).define(className, bytes);
+		MethodHandle constructor = MethodHandles.publicLookup()
+			.findConstructor(implementationClass, methodType(void.class, Object[].class, Values.class))
+			.asType(methodType(Object.class, Object[].class, Values.class));
+		boolean[] primitiveSlots = new boolean[slotMethods.size()];
+		for (int i=0; i < primitiveSlots.length; i++)
+			primitiveSlots[i] = slotMethods.get(i).getReturnType().isPrimitive();
+		return new Implementation(iface, slotMethods.toArray(new Method[slotMethods.size()]), primitiveSlots, constructor);
+	}
+
+	// redeclared equals/hashCode/toString are not emitted per interface: the class always gets
+	// the Values based versions, as a proxy hands them to the handler as Object's methods
+	protected static boolean isObjectMethod(Method method) {
+		switch (method.getName()) {
+			case "equals" : return Arrays.equals(method.getParameterTypes(), new Class<?>[]{Object.class});
+			case "hashCode" :
+			case "toString" : return method.getParameterCount() == 0;
+			default : return false;
+		}
+	}
+
+	protected static boolean isAccessible(Class<?> clazz) {
+		while (clazz.isArray())
+			clazz = clazz.getComponentType();
+		if (clazz.isPrimitive()) return true;
+		for (Class<?> current = clazz; current != null; current = current.getEnclosingClass())
+			if (!Modifier.isPublic(current.getModifiers())) return false;
+		return true;
+	}
+
+	protected static String descriptor(Method method) {
+		return methodType(method.getReturnType(), method.getParameterTypes()).toMethodDescriptorString();
+	}
+
+	protected static String descriptor(Class<?> clazz) {
+		return methodType(clazz).toMethodDescriptorString().substring(2);
+	}
+
+	protected static String internalName(Class<?> clazz) {
+		return clazz.isArray() ? descriptor(clazz) : clazz.getName().replace('.', '/');
+	}
+
+	protected static final class ClassWriter {
+		private static final int ACC_PUBLIC = 0x0001;
+		private static final int ACC_PRIVATE = 0x0002;
+		private static final int ACC_FINAL = 0x0010;
+		private static final int ACC_SUPER = 0x0020;
+
+		private static final int ACONST_NULL = 0x01;
+		private static final int BIPUSH = 0x10;
+		private static final int SIPUSH = 0x11;
+		private static final int ALOAD_0 = 0x2a;
+		private static final int ALOAD_1 = 0x2b;
+		private static final int ALOAD_2 = 0x2c;
+		private static final int AALOAD = 0x32;
+		private static final int DUP = 0x59;
+		private static final int IRETURN = 0xac;
+		private static final int LRETURN = 0xad;
+		private static final int FRETURN = 0xae;
+		private static final int DRETURN = 0xaf;
+		private static final int ARETURN = 0xb0;
+		private static final int RETURN = 0xb1;
+		private static final int GETFIELD = 0xb4;
+		private static final int PUTFIELD = 0xb5;
+		private static final int INVOKEVIRTUAL = 0xb6;
+		private static final int INVOKESPECIAL = 0xb7;
+		private static final int INVOKESTATIC = 0xb8;
+		private static final int NEW = 0xbb;
+		private static final int ATHROW = 0xbf;
+		private static final int CHECKCAST = 0xc0;
+
+		private final ByteArrayOutputStream constantsBytes = new ByteArrayOutputStream();
+		private final DataOutputStream constants = new DataOutputStream(constantsBytes);
+		private final Map<String,Integer> constantIndexes = new HashMap<>();
+		private int constantsCount = 1;
+
+		private final String className;
+		private final Class<?> iface;
+		private final Iterable<Method> methods;
+		private final List<Method> slotMethods;
+
+		protected ClassWriter(String className, Class<?> iface, Iterable<Method> methods, List<Method> slotMethods) {
+			this.className = className.replace('.', '/');
+			this.iface = iface;
+			this.methods = methods;
+			this.slotMethods = slotMethods;
+		}
+
+		protected byte[] toByteArray() throws IOException {
+			ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+			DataOutputStream body = new DataOutputStream(bodyBytes);
+			body.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			body.writeShort(classConstant(className));
+			body.writeShort(classConstant("java/lang/Object"));
+			body.writeShort(2);
+			body.writeShort(classConstant(internalName(iface)));
+			body.writeShort(classConstant(internalName(Generated.class)));
+			body.writeShort(slotMethods.size()+1);
+			for (int i=0; i < slotMethods.size(); i++) {
+				body.writeShort(ACC_PRIVATE | ACC_FINAL);
+				body.writeShort(utf8Constant(fieldName(i)));
+				body.writeShort(utf8Constant(descriptor(slotMethods.get(i).getReturnType())));
+				body.writeShort(0);
+			}
+			body.writeShort(ACC_PRIVATE | ACC_FINAL);
+			body.writeShort(utf8Constant(VALUES_FIELD));
+			body.writeShort(utf8Constant(descriptor(Values.class)));
+			body.writeShort(0);
+			List<byte[]> methodsBytes = new ArrayList<>();
+			methodsBytes.add(constructor());
+			for (Method method : methods)
+				methodsBytes.add(method(method));
+			methodsBytes.add(valuesMethod("propertiesValues", "()"+descriptor(Values.class), ARETURN));
+			methodsBytes.add(valuesMethod("hashCode", "()I", IRETURN));
+			methodsBytes.add(valuesMethod("toString", "()Ljava/lang/String;", ARETURN));
+			methodsBytes.add(equalsMethod());
+			body.writeShort(methodsBytes.size());
+			for (byte[] methodBytes : methodsBytes)
+				body.write(methodBytes);
+			body.writeShort(0);
+			ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(classBytes);
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(52);
+			out.writeShort(constantsCount);
+			out.write(constantsBytes.toByteArray());
+			out.write(bodyBytes.toByteArray());
+			return classBytes.toByteArray();
+		}
+
+		private String fieldName(int index) {
+			return "value"+index;
+		}
+
+		private byte[] valuesMethod(String name, String descriptor, int returnOpcode) throws IOException {
+			ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+			DataOutputStream code = new DataOutputStream(codeBytes);
+			code.writeByte(ALOAD_0);
+			code.writeByte(GETFIELD);
+			code.writeShort(fieldConstant(className, VALUES_FIELD, descriptor(Values.class)));
+			if (!name.equals("propertiesValues")) {
+				code.writeByte(INVOKEVIRTUAL);
+				code.writeShort(methodConstant(internalName(Values.class), name, descriptor));
+			}
+			code.writeByte(returnOpcode);
+			return method(ACC_PUBLIC, name, descriptor, 1, 1, codeBytes.toByteArray());
+		}
+
+		private byte[] equalsMethod() throws IOException {
+			String descriptor = "("+descriptor(Values.class)+"Ljava/lang/Object;)Z";
+			ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+			DataOutputStream code = new DataOutputStream(codeBytes);
+			code.writeByte(ALOAD_0);
+			code.writeByte(GETFIELD);
+			code.writeShort(fieldConstant(className, VALUES_FIELD, descriptor(Values.class)));
+			code.writeByte(ALOAD_1);
+			code.writeByte(INVOKESTATIC);
+			code.writeShort(methodConstant(internalName(InterfaceImplementations.class), "equals", descriptor));
+			code.writeByte(IRETURN);
+			return method(ACC_PUBLIC, "equals", "(Ljava/lang/Object;)Z", 2, 2, codeBytes.toByteArray());
+		}
+
+		private byte[] constructor() throws IOException {
+			ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+			DataOutputStream code = new DataOutputStream(codeBytes);
+			code.writeByte(ALOAD_0);
+			code.writeByte(INVOKESPECIAL);
+			code.writeShort(methodConstant("java/lang/Object", "<init>", "()V"));
+			for (int i=0; i < slotMethods.size(); i++) {
+				Class<?> type = slotMethods.get(i).getReturnType();
+				code.writeByte(ALOAD_0);
+				code.writeByte(ALOAD_1);
+				if (i < 128) {
+					code.writeByte(BIPUSH);
+					code.writeByte(i);
+				} else {
+					code.writeByte(SIPUSH);
+					code.writeShort(i);
+				}
+				code.writeByte(AALOAD);
+				if (type.isPrimitive()) {
+					Class<?> wrapper = methodType(type).wrap().returnType();
+					code.writeByte(CHECKCAST);
+					code.writeShort(classConstant(internalName(wrapper)));
+					code.writeByte(INVOKEVIRTUAL);
+					code.writeShort(methodConstant(internalName(wrapper), type.getName()+"Value", "()"+descriptor(type)));
+				} else if (type != Object.class) {
+					code.writeByte(CHECKCAST);
+					code.writeShort(classConstant(internalName(type)));
+				}
+				code.writeByte(PUTFIELD);
+				code.writeShort(fieldConstant(className, fieldName(i), descriptor(type)));
+			}
+			code.writeByte(ALOAD_0);
+			code.writeByte(ALOAD_2);
+			code.writeByte(PUTFIELD);
+			code.writeShort(fieldConstant(className, VALUES_FIELD, descriptor(Values.class)));
+			code.writeByte(RETURN);
+			return method(ACC_PUBLIC, "<init>", "([Ljava/lang/Object;"+descriptor(Values.class)+")V", 4, 3, codeBytes.toByteArray());
+		}
+
+		private byte[] method(Method method) throws IOException {
+			Class<?> type = method.getReturnType();
+			int slot = slotMethods.indexOf(method);
+			int locals = 1;
+			for (Class<?> parameterType : method.getParameterTypes())
+				locals += (parameterType == long.class || parameterType == double.class) ? 2 : 1;
+			ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+			DataOutputStream code = new DataOutputStream(codeBytes);
+			if (type == void.class) {
+				code.writeByte(RETURN);
+			} else if (slot >= 0) {
+				code.writeByte(ALOAD_0);
+				code.writeByte(GETFIELD);
+				code.writeShort(fieldConstant(className, fieldName(slot), descriptor(type)));
+				code.writeByte(returnOpcode(type));
+			} else if (type.isPrimitive()) {
+				code.writeByte(NEW);
+				code.writeShort(classConstant("java/lang/NullPointerException"));
+				code.writeByte(DUP);
+				code.writeByte(INVOKESPECIAL);
+				code.writeShort(methodConstant("java/lang/NullPointerException", "<init>", "()V"));
+				code.writeByte(ATHROW);
+			} else {
+				code.writeByte(ACONST_NULL);
+				code.writeByte(ARETURN);
+			}
+			return method(ACC_PUBLIC, method.getName(), descriptor(method), 2, locals, codeBytes.toByteArray());
+		}
+
+		private byte[] method(int access, String name, String descriptor, int maxStack, int maxLocals, byte[] code) throws IOException {
+			ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(methodBytes);
+			out.writeShort(access);
+			out.writeShort(utf8Constant(name));
+			out.writeShort(utf8Constant(descriptor));
+			out.writeShort(1);
+			out.writeShort(utf8Constant("Code"));
+			out.writeInt(12 + code.length);
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(code.length);
+			out.write(code);
+			out.writeShort(0);
+			out.writeShort(0);
+			return methodBytes.toByteArray();
+		}
+
+		private int returnOpcode(Class<?> type) {
+			if (!type.isPrimitive()) return ARETURN;
+			if (type == long.class) return LRETURN;
+			if (type == float.class) return FRETURN;
+			if (type == double.class) return DRETURN;
+			return IRETURN;
+		}
+
+		private int utf8Constant(String value) throws IOException {
+			Integer index = constantIndexes.get("U"+value);
+			if (index != null) return index;
+			constants.writeByte(1);
+			constants.writeUTF(value);
+			return register("U"+value);
+		}
+
+		private int classConstant(String internalName) throws IOException {
+			Integer index = constantIndexes.get("C"+internalName);
+			if (index != null) return index;
+			int nameIndex = utf8Constant(internalName);
+			constants.writeByte(7);
+			constants.writeShort(nameIndex);
+			return register("C"+internalName);
+		}
+
+		private int nameAndTypeConstant(String name, String descriptor) throws IOException {
+			String key = "N"+name+" "+descriptor;
+			Integer index = constantIndexes.get(key);
+			if (index != null) return index;
+			int nameIndex = utf8Constant(name);
+			int descriptorIndex = utf8Constant(descriptor);
+			constants.writeByte(12);
+			constants.writeShort(nameIndex);
+			constants.writeShort(descriptorIndex);
+			return register(key);
+		}
+
+		private int fieldConstant(String owner, String name, String descriptor) throws IOException {
+			return memberConstant(9, owner, name, descriptor);
+		}
+
+		private int methodConstant(String owner, String name, String descriptor) throws IOException {
+			return memberConstant(10, owner, name, descriptor);
+		}
+
+		private int memberConstant(int tag, String owner, String name, String descriptor) throws IOException {
+			String key = tag+owner+"."+name+" "+descriptor;
+			Integer index = constantIndexes.get(key);
+			if (index != null) return index;
+			int classIndex = classConstant(owner);
+			int nameAndTypeIndex = nameAndTypeConstant(name, descriptor);
+			constants.writeByte(tag);
+			constants.writeShort(classIndex);
+			constants.writeShort(nameAndTypeIndex);
+			return register(key);
+		}
+
+		private int register(String key) {
+			int index = constantsCount++;
+			constantIndexes.put(key, index);
+			return index;
+		}
+	}
+}
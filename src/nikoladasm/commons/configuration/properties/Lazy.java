@@ -0,0 +1,66 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.function.Supplier;
+
+public final class Lazy<T> implements Supplier<T> {
+
+	private Supplier<? extends T> supplier;
+	private volatile boolean loaded;
+	private T value;
+
+	public Lazy(Supplier<? extends T> supplier) {
+		this.supplier = requireNonNull(supplier, "Supplier can't be null");
+	}
+
+	public static <T> Lazy<T> of(Supplier<? extends T> supplier) {
+		return new Lazy<>(supplier);
+	}
+
+	public static <T> Lazy<T> value(T value) {
+		Lazy<T> lazy = new Lazy<>(() -> value);
+		lazy.get();
+		return lazy;
+	}
+
+	@Override
+	public T get() {
+		if (loaded) return value;
+		synchronized (this) {
+			if (!loaded) {
+				value = supplier.get();
+				supplier = null;
+				loaded = true;
+			}
+		}
+		return value;
+	}
+
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	@Override
+	public String toString() {
+		return loaded ? "Lazy["+value+"]" : "Lazy[not loaded]";
+	}
+}
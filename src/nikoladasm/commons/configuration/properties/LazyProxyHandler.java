@@ -0,0 +1,187 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import nikoladasm.commons.configuration.properties.extproperties.PrepProperties;
+
+public class LazyProxyHandler extends PropertiesProxyHandler {
+
+	private static final Object UNRESOLVED = new Object();
+
+	protected static final class Environment {
+		private final PrepProperties sysProperties;
+		private final PrepProperties[] slotProperties;
+
+		protected Environment(PrepProperties sysProperties, PrepProperties[] slotProperties) {
+			this.sysProperties = sysProperties;
+			this.slotProperties = slotProperties;
+		}
+	}
+
+	// a slot being resolved holds its task, so callers of other slots never wait for it
+	protected static final class Resolution extends FutureTask<Object> {
+		protected Resolution(LazyProxyHandler handler, int slot) {
+			super(() -> handler.resolve(slot));
+		}
+
+		protected Object await() {
+			boolean interrupted = false;
+			try {
+				while (true) {
+					try {
+						return get();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+				if (cause instanceof Error) throw (Error) cause;
+				throw new PropertyLoaderException("Can't resolve property value", cause);
+			} finally {
+				if (interrupted) Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private final PropertyLoader loader;
+	private final BindingPlan plan;
+	private final int[] steps;
+	private final AtomicReferenceArray<Object> values;
+	private final Object environmentLock = new Object();
+	private volatile Environment environment;
+	private volatile boolean preloaded;
+
+	public LazyProxyHandler(PropertyLoader loader, Class<?> type, BindingPlan plan) {
+		super(type, new HashMap<>());
+		this.loader = loader;
+		this.plan = plan;
+		MethodIndex index = index();
+		steps = new int[index.size()];
+		Arrays.fill(steps, -1);
+		for (int i=0; i < plan.stepsCount(); i++) {
+			int slot = index.resolve((Method) plan.step(i).member());
+			if (slot >= 0) steps[slot] = i;
+		}
+		values = new AtomicReferenceArray<>(steps.length);
+		for (int i=0; i < steps.length; i++)
+			values.set(i, UNRESOLVED);
+	}
+
+	public boolean isPreloaded() {
+		return preloaded;
+	}
+
+	public boolean isResolved(Method method) {
+		int slot = index().resolve(method);
+		if (slot < 0) return false;
+		Object value = values.get(slot);
+		return value != UNRESOLVED && !(value instanceof Resolution);
+	}
+
+	public void preload() {
+		if (preloaded) return;
+		synchronized (this) {
+			if (preloaded) return;
+			Map<Method,Object> propertyValues = new HashMap<>();
+			for (int i=0; i < steps.length; i++)
+				propertyValues.put(index().method(i), value(i));
+			super.update(propertyValues);
+			preloaded = true;
+			environment = null;
+		}
+	}
+
+	@Override
+	public void update(Map<Method,Object> propertyValues) {
+		synchronized (this) {
+			for (int i=0; i < steps.length; i++)
+				values.set(i, propertyValues.get(index().method(i)));
+			super.update(propertyValues);
+			preloaded = true;
+		}
+	}
+
+	@Override
+	protected Snapshot snapshot() {
+		preload();
+		return super.snapshot();
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		int slot = index().slot(method);
+		if (slot >= 0) return value(slot);
+		return super.invoke(proxy, method, args);
+	}
+
+	protected Object value(int slot) {
+		while (true) {
+			Object value = values.get(slot);
+			if (value instanceof Resolution)
+				return ((Resolution) value).await();
+			if (value != UNRESOLVED)
+				return value;
+			Resolution resolution = new Resolution(this, slot);
+			if (!values.compareAndSet(slot, UNRESOLVED, resolution))
+				continue;
+			resolution.run();
+			try {
+				value = resolution.await();
+			} catch (RuntimeException | Error e) {
+				values.compareAndSet(slot, resolution, UNRESOLVED);
+				throw e;
+			}
+			values.compareAndSet(slot, resolution, value);
+			return value;
+		}
+	}
+
+	protected Object resolve(int slot) {
+		int stepIndex = steps[slot];
+		if (stepIndex < 0) return null;
+		BindingPlan.Step step = plan.step(stepIndex);
+		if (step.isChild())
+			return loader.childValue(step, null);
+		Environment current = environment();
+		return loader.stepValue(plan, step, current.sysProperties, current.slotProperties, null);
+	}
+
+	protected Environment environment() {
+		Environment current = environment;
+		if (current != null) return current;
+		synchronized (environmentLock) {
+			current = environment;
+			if (current == null) {
+				current = new Environment(new PrepProperties(System.getProperties()), loader.slotProperties(plan, null));
+				environment = current;
+			}
+		}
+		return current;
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import nikoladasm.commons.configuration.properties.extproperties.ResourceCache;
+
+public class LoadStats implements ResourceCache.Listener {
+
+	public static enum Phase {IO, PARSE, INCLUDE, RESOLVE, CONVERT, INJECT}
+
+	public static final class Counter {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+
+		protected void add(long elapsedNanos) {
+			count.increment();
+			nanos.add(elapsedNanos);
+		}
+
+		protected void add(Counter counter) {
+			count.add(counter.count());
+			nanos.add(counter.nanos());
+		}
+
+		public long count() {
+			return count.sum();
+		}
+
+		public long nanos() {
+			return nanos.sum();
+		}
+
+		@Override
+		public String toString() {
+			return count()+" x "+TimeUnit.NANOSECONDS.toMicros(nanos())+" us";
+		}
+	}
+
+	protected static final class Scope {
+		private final Counter[] counters = new Counter[Phase.values().length];
+		private final LongAdder bytes = new LongAdder();
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+
+		protected Scope() {
+			for (int i=0; i < counters.length; i++)
+				counters[i] = new Counter();
+		}
+	}
+
+	private final Map<String,Scope> scopes = new ConcurrentHashMap<>();
+
+	protected Scope scope(String name) {
+		Scope scope = scopes.get(name);
+		return (scope == null) ? scopes.computeIfAbsent(name, key -> new Scope()) : scope;
+	}
+
+	public void record(String scope, Phase phase, long nanos) {
+		scope(scope).counters[phase.ordinal()].add(nanos);
+	}
+
+	@Override
+	public void cached(String location, boolean hit) {
+		Scope scope = scope(location);
+		if (hit) scope.hits.increment(); else scope.misses.increment();
+	}
+
+	@Override
+	public void read(String location, long bytes, long nanos) {
+		Scope scope = scope(location);
+		scope.bytes.add(bytes);
+		scope.counters[Phase.IO.ordinal()].add(nanos);
+	}
+
+	@Override
+	public void parsed(String location, long nanos) {
+		record(location, Phase.PARSE, nanos);
+	}
+
+	public Set<String> scopes() {
+		return new TreeMap<>(scopes).keySet();
+	}
+
+	public Counter counter(String scope, Phase phase) {
+		Scope current = scopes.get(scope);
+		return (current == null) ? new Counter() : current.counters[phase.ordinal()];
+	}
+
+	public Counter total(Phase phase) {
+		Counter total = new Counter();
+		for (Scope scope : scopes.values())
+			total.add(scope.counters[phase.ordinal()]);
+		return total;
+	}
+
+	public long bytesRead(String scope) {
+		Scope current = scopes.get(scope);
+		return (current == null) ? 0L : current.bytes.sum();
+	}
+
+	public long bytesRead() {
+		long bytes = 0L;
+		for (Scope scope : scopes.values())
+			bytes += scope.bytes.sum();
+		return bytes;
+	}
+
+	public long cacheHits() {
+		long hits = 0L;
+		for (Scope scope : scopes.values())
+			hits += scope.hits.sum();
+		return hits;
+	}
+
+	public long cacheMisses() {
+		long misses = 0L;
+		for (Scope scope : scopes.values())
+			misses += scope.misses.sum();
+		return misses;
+	}
+
+	public double cacheHitRate() {
+		long hits = cacheHits();
+		long total = hits + cacheMisses();
+		return (total == 0) ? 0.0 : (double) hits / total;
+	}
+
+	public void reset() {
+		scopes.clear();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (Map.Entry<String,Scope> entry : new TreeMap<>(scopes).entrySet()) {
+			builder.append(entry.getKey()).append(':');
+			Scope scope = entry.getValue();
+			for (Phase phase : Phase.values()) {
+				Counter counter = scope.counters[phase.ordinal()];
+				if (counter.count() > 0)
+					builder.append(' ').append(phase).append('=').append(counter);
+			}
+			if (scope.bytes.sum() > 0)
+				builder.append(" bytes=").append(scope.bytes.sum());
+			long hits = scope.hits.sum();
+			long misses = scope.misses.sum();
+			if (hits + misses > 0)
+				builder.append(" cache=").append(hits).append('/').append(hits + misses);
+			builder.append('\n');
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nikoladasm.commons.configuration.properties.extproperties.PropertiesDiff;
+
+public class PropertiesChanges {
+
+	protected static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+	protected static final class Subscription {
+		private final String key;
+		private final boolean prefix;
+		private final PropertiesChangeListener listener;
+
+		protected Subscription(String key, boolean prefix, PropertiesChangeListener listener) {
+			this.key = key;
+			this.prefix = prefix;
+			this.listener = listener;
+		}
+
+		protected boolean matches(String changedKey) {
+			return prefix ? changedKey.startsWith(key) : changedKey.equals(key);
+		}
+	}
+
+	protected final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+	protected final AtomicLong failures = new AtomicLong();
+	protected volatile Executor executor = DIRECT_EXECUTOR;
+	protected volatile Throwable lastFailure;
+
+	public PropertiesChanges executor(Executor executor) {
+		this.executor = (executor == null) ? DIRECT_EXECUTOR : executor;
+		return this;
+	}
+
+	public Executor executor() {
+		return executor;
+	}
+
+	public long failures() {
+		return failures.get();
+	}
+
+	public Throwable lastFailure() {
+		return lastFailure;
+	}
+
+	public PropertiesChanges addListener(String key, PropertiesChangeListener listener) {
+		requireNonNull(key,"Key can't be null");
+		requireNonNull(listener,"Listener can't be null");
+		subscriptions.add(new Subscription(key, false, listener));
+		return this;
+	}
+
+	public PropertiesChanges addPrefixListener(String prefix, PropertiesChangeListener listener) {
+		requireNonNull(prefix,"Prefix can't be null");
+		requireNonNull(listener,"Listener can't be null");
+		subscriptions.add(new Subscription(prefix, true, listener));
+		return this;
+	}
+
+	public boolean removeListener(PropertiesChangeListener listener) {
+		List<Subscription> removed = new ArrayList<>();
+		for (Subscription subscription : subscriptions)
+			if (subscription.listener == listener) removed.add(subscription);
+		return subscriptions.removeAll(removed);
+	}
+
+	public boolean hasListeners() {
+		return !subscriptions.isEmpty();
+	}
+
+	public List<PropertiesDiff.Change> publish(Map<String,String> oldSnapshot, Map<String,String> newSnapshot) {
+		List<PropertiesDiff.Change> changes = PropertiesDiff.diff(oldSnapshot, newSnapshot);
+		publish(changes);
+		return changes;
+	}
+
+	public void publish(List<PropertiesDiff.Change> changes) {
+		if (changes.isEmpty()) return;
+		for (Subscription subscription : subscriptions) {
+			List<PropertiesDiff.Change> matched = new ArrayList<>();
+			for (PropertiesDiff.Change change : changes)
+				if (subscription.matches(change.key())) matched.add(change);
+			if (matched.isEmpty()) continue;
+			List<PropertiesDiff.Change> events = Collections.unmodifiableList(matched);
+			try {
+				executor.execute(() -> notify(subscription.listener, events));
+			} catch (RuntimeException e) {
+				failures.incrementAndGet();
+				lastFailure = e;
+			}
+		}
+	}
+
+	protected void notify(PropertiesChangeListener listener, List<PropertiesDiff.Change> changes) {
+		try {
+			listener.changed(changes);
+		} catch (RuntimeException e) {
+			failures.incrementAndGet();
+			lastFailure = e;
+		}
+	}
+}
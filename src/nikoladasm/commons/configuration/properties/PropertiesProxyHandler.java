@@ -20,19 +20,234 @@ package nikoladasm.commons.configuration.properties;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class PropertiesProxyHandler implements InvocationHandler {
 
-	private Map<Method,Object> propertyValues;
+	protected static final class MethodIndex {
+		protected static final int MISSING = Integer.MIN_VALUE;
+		protected static final int NONE = -1;
+		protected static final int EQUALS = -2;
+		protected static final int HASH_CODE = -3;
+		protected static final int TO_STRING = -4;
+
+		private final Class<?> type;
+		private final Method[] methods;
+		private final Map<Method,Integer> slots = new HashMap<>();
+		private volatile SlotTable table = new SlotTable(new Method[2], new int[2]);
+
+		protected MethodIndex(Class<?> type, Collection<Method> methods) {
+			this.type = type;
+			List<Method> slotMethods = new ArrayList<>();
+			for (Method method : methods) {
+				if (slots.containsKey(method)) continue;
+				slots.put(method, slotMethods.size());
+				slotMethods.add(method);
+			}
+			this.methods = slotMethods.toArray(new Method[slotMethods.size()]);
+		}
+
+		protected int size() {
+			return methods.length;
+		}
+
+		protected Method method(int slot) {
+			return methods[slot];
+		}
+
+		protected int slot(Method method) {
+			int slot = table.get(method);
+			if (slot != MISSING) return slot;
+			slot = resolve(method);
+			synchronized (this) {
+				if (table.get(method) == MISSING)
+					table = table.with(method, slot);
+			}
+			return slot;
+		}
+
+		protected int resolve(Method method) {
+			if (method.getDeclaringClass() == Object.class) {
+				switch (method.getName()) {
+					case "equals" : return EQUALS;
+					case "hashCode" : return HASH_CODE;
+					case "toString" : return TO_STRING;
+				}
+			}
+			Integer slot = slots.get(method);
+			return (slot == null) ? NONE : slot;
+		}
+	}
+
+	protected static final class SlotTable {
+		private final Method[] keys;
+		private final int[] slots;
+		private final int count;
+
+		protected SlotTable(Method[] keys, int[] slots) {
+			this.keys = keys;
+			this.slots = slots;
+			int count = 0;
+			for (Method key : keys)
+				if (key != null) count++;
+			this.count = count;
+		}
+
+		protected int get(Method method) {
+			int mask = keys.length - 1;
+			int i = System.identityHashCode(method) & mask;
+			Method key;
+			while ((key = keys[i]) != null) {
+				if (key == method) return slots[i];
+				i = (i + 1) & mask;
+			}
+			return MethodIndex.MISSING;
+		}
+
+		protected SlotTable with(Method method, int slot) {
+			int capacity = keys.length;
+			while ((count + 1) * 2 > capacity)
+				capacity <<= 1;
+			Method[] newKeys = new Method[capacity];
+			int[] newSlots = new int[capacity];
+			for (int i=0; i < keys.length; i++)
+				if (keys[i] != null) put(newKeys, newSlots, keys[i], slots[i]);
+			put(newKeys, newSlots, method, slot);
+			return new SlotTable(newKeys, newSlots);
+		}
+
+		private static void put(Method[] keys, int[] slots, Method method, int slot) {
+			int mask = keys.length - 1;
+			int i = System.identityHashCode(method) & mask;
+			while (keys[i] != null)
+				i = (i + 1) & mask;
+			keys[i] = method;
+			slots[i] = slot;
+		}
+	}
+
+	private static final ClassValue<MethodIndex> INDEXES = new ClassValue<MethodIndex>() {
+		@Override
+		protected MethodIndex computeValue(Class<?> type) {
+			List<Method> methods = new ArrayList<>();
+			for (PropertyMetadata.Element<Method> element : PropertyMetadata.of(type).getters())
+				methods.add(element.member());
+			return new MethodIndex(type, methods);
+		}
+	};
+
+	protected static final class Snapshot {
+		private final Object[] values;
+		private int hashCode;
+		private String toString;
+
+		protected Snapshot(Object[] values) {
+			this.values = values;
+		}
+
+		protected Object value(int slot) {
+			return values[slot];
+		}
+	}
+
+	private final MethodIndex index;
+	private volatile Snapshot snapshot;
 	
 	public PropertiesProxyHandler(Map<Method,Object> propertyValues) {
-		this.propertyValues = propertyValues;
+		this(new MethodIndex(null, propertyValues.keySet()), propertyValues);
+	}
+	
+	public PropertiesProxyHandler(Class<?> type, Map<Method,Object> propertyValues) {
+		this(INDEXES.get(type), propertyValues);
+	}
+	
+	protected PropertiesProxyHandler(MethodIndex index, Map<Method,Object> propertyValues) {
+		this.index = index;
+		snapshot = snapshot(propertyValues);
+	}
+	
+	public void update(Map<Method,Object> propertyValues) {
+		snapshot = snapshot(propertyValues);
+	}
+	
+	protected MethodIndex index() {
+		return index;
+	}
+	
+	protected Snapshot snapshot() {
+		return snapshot;
+	}
+	
+	protected Snapshot snapshot(Map<Method,Object> propertyValues) {
+		Object[] values = new Object[index.size()];
+		for (Map.Entry<Method,Object> entry : propertyValues.entrySet()) {
+			int slot = index.resolve(entry.getKey());
+			if (slot >= 0) values[slot] = entry.getValue();
+		}
+		return new Snapshot(values);
 	}
 	
 	@Override
 	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-		return propertyValues.get(method);
+		int slot = index.slot(method);
+		if (slot >= 0) return snapshot.value(slot);
+		switch (slot) {
+			case MethodIndex.EQUALS : return proxyEquals(proxy, args[0]);
+			case MethodIndex.HASH_CODE : return proxyHashCode();
+			case MethodIndex.TO_STRING : return proxyToString();
+			default : return null;
+		}
+	}
+	
+	protected boolean proxyEquals(Object proxy, Object object) {
+		if (proxy == object) return true;
+		if (object == null || !Proxy.isProxyClass(object.getClass())) return false;
+		Object handler = Proxy.getInvocationHandler(object);
+		if (!(handler instanceof PropertiesProxyHandler)) return false;
+		PropertiesProxyHandler proxyHandler = (PropertiesProxyHandler) handler;
+		if (index.type != proxyHandler.index.type || !Arrays.equals(index.methods, proxyHandler.index.methods))
+			return false;
+		return Arrays.deepEquals(snapshot().values, proxyHandler.snapshot().values);
+	}
+	
+	protected int proxyHashCode() {
+		Snapshot current = snapshot();
+		int result = current.hashCode;
+		if (result == 0) {
+			result = valuesHashCode(index.type, current.values);
+			current.hashCode = result;
+		}
+		return result;
+	}
+	
+	protected String proxyToString() {
+		Snapshot current = snapshot();
+		String result = current.toString;
+		if (result == null) {
+			result = valuesToString(index.type, index.methods, current.values);
+			current.toString = result;
+		}
+		return result;
+	}
+	
+	protected static int valuesHashCode(Class<?> type, Object[] values) {
+		return 31 * ((type == null) ? 0 : type.getName().hashCode()) + Arrays.deepHashCode(values);
+	}
+	
+	protected static String valuesToString(Class<?> type, Method[] methods, Object[] values) {
+		StringBuilder builder = new StringBuilder();
+		builder.append((type == null) ? "Proxy" : type.getSimpleName()).append('{');
+		for (int i=0; i < values.length; i++) {
+			if (i > 0) builder.append(", ");
+			String value = Arrays.deepToString(new Object[]{values[i]});
+			builder.append(methods[i].getName()).append('=').append(value, 1, value.length()-1);
+		}
+		return builder.append('}').toString();
 	}
-
 }
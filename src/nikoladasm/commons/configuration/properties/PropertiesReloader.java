@@ -0,0 +1,491 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nikoladasm.commons.configuration.properties.extproperties.PropertiesDiff;
+import nikoladasm.commons.configuration.properties.extproperties.ResourceCache;
+
+public class PropertiesReloader implements AutoCloseable {
+
+	public static final long DEFAULT_DEBOUNCE_MILLIS = 200;
+	public static final long DEFAULT_POLL_MILLIS = 1000;
+
+	protected abstract static class Registration {
+		protected final String context;
+		protected final String prefix;
+		protected Set<Path> files = Collections.emptySet();
+		protected Map<String,String> snapshot;
+
+		protected Registration(String context, String prefix) {
+			this.context = context;
+			this.prefix = prefix;
+		}
+
+		protected abstract Object config();
+
+		protected abstract Class<?> type();
+
+		protected abstract void reload(PropertyLoader loader, PropertyLoader.Session session);
+	}
+
+	protected static class ObjectRegistration extends Registration {
+		private final Object object;
+
+		protected ObjectRegistration(String context, String prefix, Object object) {
+			super(context, prefix);
+			this.object = object;
+		}
+
+		@Override
+		protected Object config() {
+			return object;
+		}
+
+		@Override
+		protected Class<?> type() {
+			return object.getClass();
+		}
+
+		// values are converted before any field is written, so a failed reload keeps the old values;
+		// a concurrent reader can still see a mix of old and new values while they are written,
+		// register an interface to get an atomically swapped proxy
+		@Override
+		protected void reload(PropertyLoader loader, PropertyLoader.Session session) {
+			loader.repopulate(context, prefix, object, session);
+		}
+	}
+
+	protected static class ProxyRegistration extends Registration {
+		private final ReloadableProxyHandler handler;
+		private final Object proxy;
+
+		protected ProxyRegistration(String context, String prefix, Class<?> clazz, Map<Method,Object> propertyValues) {
+			super(context, prefix);
+			handler = new ReloadableProxyHandler(context, prefix, clazz, propertyValues);
+			proxy = Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[]{clazz}, handler);
+		}
+
+		@Override
+		protected Object config() {
+			return proxy;
+		}
+
+		@Override
+		protected Class<?> type() {
+			return handler.type();
+		}
+
+		@Override
+		protected void reload(PropertyLoader loader, PropertyLoader.Session session) {
+			handler.reload(loader, session);
+		}
+	}
+
+	protected static final class FileState {
+		private final boolean exists;
+		private final long lastModified;
+		private final long length;
+
+		protected FileState(boolean exists, long lastModified, long length) {
+			this.exists = exists;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+
+		protected static FileState of(Path path) {
+			File file = path.toFile();
+			return new FileState(file.exists(), file.lastModified(), file.length());
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * Boolean.hashCode(exists) + Long.hashCode(lastModified)) + Long.hashCode(length);
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (this == object) return true;
+			if (object == null || !(object instanceof FileState)) return false;
+			FileState state = (FileState) object;
+			return exists == state.exists && lastModified == state.lastModified && length == state.length;
+		}
+	}
+
+	protected final PropertyLoader loader;
+	protected final List<Registration> registrations = new ArrayList<>();
+	protected final Map<WatchKey,Path> watchKeys = new HashMap<>();
+	protected final Set<Path> watchedDirectories = new HashSet<>();
+	protected final Map<Path,FileState> fileStates = new HashMap<>();
+	protected final AtomicLong reloads = new AtomicLong();
+	protected final AtomicLong failures = new AtomicLong();
+	protected final PropertiesChanges changes = new PropertiesChanges();
+	protected long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+	protected long pollMillis = DEFAULT_POLL_MILLIS;
+	protected boolean polling;
+	protected volatile Throwable lastFailure;
+	protected volatile boolean running;
+	protected WatchService watchService;
+	protected Thread thread;
+
+	public PropertiesReloader(PropertyLoader loader) {
+		this.loader = requireNonNull(loader, "Property loader can't be null");
+	}
+
+	public PropertiesReloader debounceMillis(long debounceMillis) {
+		this.debounceMillis = debounceMillis;
+		return this;
+	}
+
+	public long debounceMillis() {
+		return debounceMillis;
+	}
+
+	public PropertiesReloader pollMillis(long pollMillis) {
+		this.pollMillis = pollMillis;
+		return this;
+	}
+
+	public long pollMillis() {
+		return pollMillis;
+	}
+
+	public PropertiesReloader polling(boolean polling) {
+		this.polling = polling;
+		return this;
+	}
+
+	public boolean polling() {
+		return polling;
+	}
+
+	public PropertyLoader loader() {
+		return loader;
+	}
+
+	public PropertiesChanges changes() {
+		return changes;
+	}
+
+	public long reloads() {
+		return reloads.get();
+	}
+
+	public long failures() {
+		return failures.get();
+	}
+
+	public Throwable lastFailure() {
+		return lastFailure;
+	}
+
+	public <T> T register(Class<T> clazz) {
+		return register(null, clazz);
+	}
+
+	public <T> T register(String context, Class<T> clazz) {
+		return register(context, null, clazz);
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T register(String context, String prefix, Class<T> clazz) {
+		requireNonNull(clazz,"Class can't be null");
+		if (!clazz.isInterface())
+			return register(context, prefix, PropertyMetadata.of(clazz).<T>instantiator().newInstance());
+		synchronized (this) {
+			Set<Path> files = new LinkedHashSet<>();
+			PropertyLoader.Session session = session(files);
+			ProxyRegistration registration =
+				new ProxyRegistration(context, prefix, clazz, loader.proxyValues(context, prefix, clazz, session));
+			add(registration, files, session);
+			return (T) registration.config();
+		}
+	}
+
+	public <T> T register(T object) {
+		return register(null, object);
+	}
+
+	public <T> T register(String context, T object) {
+		return register(context, null, object);
+	}
+
+	public <T> T register(String context, String prefix, T object) {
+		requireNonNull(object,"Object can't be null");
+		synchronized (this) {
+			ObjectRegistration registration = new ObjectRegistration(context, prefix, object);
+			Set<Path> files = new LinkedHashSet<>();
+			PropertyLoader.Session session = session(files);
+			registration.reload(loader, session);
+			add(registration, files, session);
+			return object;
+		}
+	}
+
+	public synchronized boolean unregister(Object config) {
+		for (int i=0; i < registrations.size(); i++) {
+			if (registrations.get(i).config() == config) {
+				registrations.remove(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public synchronized Set<Path> trackedFiles() {
+		Set<Path> files = new LinkedHashSet<>();
+		for (Registration registration : registrations)
+			files.addAll(registration.files);
+		return files;
+	}
+
+	public void reload() {
+		reload(null);
+	}
+
+	// listeners run after the monitor is released, so they may register, unregister or close
+	public void reload(Set<Path> changedFiles) {
+		List<PropertiesDiff.Change> changed = reloadRegistrations(changedFiles);
+		if (!changed.isEmpty())
+			changes.publish(changed);
+	}
+
+	protected synchronized List<PropertiesDiff.Change> reloadRegistrations(Set<Path> changedFiles) {
+		ResourceCache cache = loader.resourceCache();
+		if (cache != null)
+			for (Path file : (changedFiles == null) ? trackedFiles() : changedFiles)
+				cache.invalidate(file.toFile());
+		boolean reloaded = false;
+		Set<PropertiesDiff.Change> changed = new LinkedHashSet<>();
+		for (Registration registration : registrations) {
+			if (changedFiles != null && Collections.disjoint(registration.files, changedFiles)) continue;
+			Set<Path> files = new LinkedHashSet<>();
+			PropertyLoader.Session session = session(files);
+			try {
+				registration.reload(loader, session);
+				registration.files = files;
+				recordStates(files);
+				reloaded = true;
+				changed.addAll(changes(registration, session));
+				if (loader.metrics() != null) loader.metrics().reloaded();
+			} catch (RuntimeException e) {
+				failures.incrementAndGet();
+				lastFailure = e;
+				if (loader.metrics() != null) loader.metrics().reloadFailed();
+			}
+		}
+		if (reloaded) reloads.incrementAndGet();
+		watchDirectories();
+		return new ArrayList<>(changed);
+	}
+
+	public synchronized PropertiesReloader start() {
+		if (running) return this;
+		running = true;
+		watchService = null;
+		if (!polling) {
+			try {
+				watchService = FileSystems.getDefault().newWatchService();
+			} catch (IOException | UnsupportedOperationException e) {
+				watchService = null;
+			}
+		}
+		watchDirectories();
+		thread = new Thread((watchService == null) ? this::poll : this::watch, "properties-reloader");
+		thread.setDaemon(true);
+		thread.start();
+		return this;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public void close() {
+		Thread current;
+		synchronized (this) {
+			if (!running) return;
+			running = false;
+			current = thread;
+			thread = null;
+			if (watchService != null) {
+				try {
+					watchService.close();
+				} catch (IOException e) {}
+			}
+			watchKeys.clear();
+			watchedDirectories.clear();
+		}
+		current.interrupt();
+		if (current == Thread.currentThread()) return;
+		try {
+			current.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	protected PropertyLoader.Session session(Set<Path> files) {
+		return new PropertyLoader.Session(System.getProperties(), file -> {
+			synchronized (files) {
+				files.add(file.toPath().toAbsolutePath().normalize());
+			}
+		});
+	}
+
+	// the snapshot is read through the session the registration was just populated from, so it
+	// shows the values populate applied even if a file changes again in between; it is kept
+	// without listeners too, so a listener added later hears about the next change
+	protected List<PropertiesDiff.Change> changes(Registration registration, PropertyLoader.Session session) {
+		Map<String,String> previous = registration.snapshot;
+		registration.snapshot = loader.snapshot(registration.context, registration.prefix, registration.type(), session);
+		return PropertiesDiff.diff(previous, registration.snapshot);
+	}
+
+	protected void add(Registration registration, Set<Path> files, PropertyLoader.Session session) {
+		registration.files = files;
+		recordStates(files);
+		registration.snapshot = loader.snapshot(registration.context, registration.prefix, registration.type(), session);
+		registrations.add(registration);
+		watchDirectories();
+	}
+
+	protected synchronized void watchDirectories() {
+		if (watchService == null) return;
+		for (Path file : trackedFiles()) {
+			Path directory = file.getParent();
+			if (directory == null || watchedDirectories.contains(directory) || !directory.toFile().isDirectory()) continue;
+			try {
+				watchKeys.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), directory);
+				watchedDirectories.add(directory);
+			} catch (IOException | ClosedWatchServiceException e) {}
+		}
+	}
+
+	protected void watch() {
+		WatchService service = watchService;
+		try {
+			while (running) {
+				WatchKey key = service.take();
+				Set<Path> changed = new HashSet<>();
+				collect(key, changed);
+				while ((key = service.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null)
+					collect(key, changed);
+				if (!changed.isEmpty() && running)
+					reload(changed);
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// closed
+		}
+	}
+
+	protected void collect(WatchKey key, Set<Path> changed) {
+		Path directory;
+		synchronized (this) {
+			directory = watchKeys.get(key);
+		}
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (directory == null) continue;
+			Set<Path> tracked = trackedFiles();
+			if (event.kind() == OVERFLOW) {
+				for (Path file : tracked)
+					if (directory.equals(file.getParent())) changed.add(file);
+				continue;
+			}
+			Path file = directory.resolve((Path) event.context()).toAbsolutePath().normalize();
+			if (tracked.contains(file)) changed.add(file);
+		}
+		key.reset();
+	}
+
+	protected void poll() {
+		try {
+			while (running) {
+				Thread.sleep(pollMillis);
+				Set<Path> changed = changedFiles();
+				if (changed.isEmpty()) continue;
+				Set<Path> settled;
+				do {
+					Thread.sleep(debounceMillis);
+					settled = changedFiles();
+					changed.addAll(settled);
+				} while (!settled.isEmpty() && running);
+				if (running) reload(changed);
+			}
+		} catch (InterruptedException e) {
+			// closed
+		}
+	}
+
+	// a file without a recorded state is only being tracked now, so its state is the baseline
+	protected Set<Path> changedFiles() {
+		Set<Path> tracked = trackedFiles();
+		Map<Path,FileState> current = fileStates(tracked);
+		Set<Path> changed = new HashSet<>();
+		synchronized (this) {
+			fileStates.keySet().retainAll(tracked);
+			for (Map.Entry<Path,FileState> entry : current.entrySet()) {
+				FileState previous = fileStates.put(entry.getKey(), entry.getValue());
+				if (previous != null && !previous.equals(entry.getValue()))
+					changed.add(entry.getKey());
+			}
+		}
+		return changed;
+	}
+
+	protected synchronized void recordStates(Set<Path> files) {
+		Set<Path> recorded;
+		synchronized (files) {
+			recorded = new HashSet<>(files);
+		}
+		recorded.removeAll(fileStates.keySet());
+		fileStates.putAll(fileStates(recorded));
+	}
+
+	protected static Map<Path,FileState> fileStates(Set<Path> files) {
+		Map<Path,FileState> states = new HashMap<>();
+		for (Path path : files)
+			states.put(path, FileState.of(path));
+		return states;
+	}
+}
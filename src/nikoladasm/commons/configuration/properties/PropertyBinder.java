@@ -0,0 +1,36 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import java.util.List;
+
+public interface PropertyBinder {
+	String CLASS_NAME_SUFFIX = "$$PropertyBinder";
+	String DISABLED_PROPERTY = "nikoladasm.properties.binders.disabled";
+
+	Class<?> type();
+
+	PropertyInfo classPropertyInfo();
+
+	ResourceInfo[] classResources();
+
+	List<PropertyMetadata.Element<?>> elements();
+
+	Injectors.Instantiator<?> instantiator();
+}
@@ -39,6 +39,7 @@ public class PropertyInfo {
 	private String includesDelimiter;
 	private PropertyInfo parentInfo;
 	private int priority = MethodPriority.DEFAULT_PRIORITY;
+	private boolean lazy;
 	
 	public PropertyInfo() {
 	}
@@ -47,6 +48,27 @@ public class PropertyInfo {
 		this.parentInfo = defaultInfo;
 	}
 	
+	public PropertyInfo copy(PropertyInfo parentInfo) {
+		PropertyInfo info = new PropertyInfo(parentInfo);
+		info.key = key;
+		info.defaultValue = defaultValue;
+		info.required = required;
+		info.context = context;
+		info.prefix = prefix;
+		info.properies = properies;
+		info.type = type;
+		info.genericParameters = genericParameters;
+		info.converter = converter;
+		info.componentsDelimiter = componentsDelimiter;
+		info.keyValueDelimiter = keyValueDelimiter;
+		info.contextPrefix = contextPrefix;
+		info.includeKey = includeKey;
+		info.includesDelimiter = includesDelimiter;
+		info.priority = priority;
+		info.lazy = lazy;
+		return info;
+	}
+
 	public void parentInfo(PropertyInfo defaultInfo) {
 		this.parentInfo = defaultInfo;
 	}
@@ -178,4 +200,12 @@ public class PropertyInfo {
 	public int priority() {
 		return priority;
 	}
+	
+	public void lazy(boolean lazy) {
+		this.lazy = lazy;
+	}
+	
+	public boolean lazy() {
+		return lazy;
+	}
 }
@@ -24,24 +24,39 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.AnnotatedElement;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Proxy;
-import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
-import nikoladasm.commons.configuration.properties.annotations.*;
+import nikoladasm.commons.configuration.properties.annotations.Resource;
 import nikoladasm.commons.configuration.properties.converters.Converter;
 import nikoladasm.commons.configuration.properties.converters.Converters;
 import nikoladasm.commons.configuration.properties.extproperties.PrepProperties;
+import nikoladasm.commons.configuration.properties.extproperties.PropertiesDiff;
+import nikoladasm.commons.configuration.properties.extproperties.ResourceCache;
 
 public class PropertyLoader {
 
@@ -50,18 +65,205 @@ public class PropertyLoader {
 		FIRST_PARAMETER
 	}
 	
-	@FunctionalInterface
-	protected static interface elementValueAction<K> {
-		void doIt(K element, Object value);
+	protected static final class BindingPlanKey {
+		private final WeakReference<Class<?>> loaderClass;
+		private final WeakReference<Class<?>> convertersClass;
+		private final Object[] values;
+		private final int hash;
+		
+		protected BindingPlanKey(PropertyLoader loader, boolean proxy, String context, String prefix) {
+			loaderClass = new WeakReference<>(loader.getClass(), PropertyMetadata.COLLECTED_CLASSES);
+			convertersClass = new WeakReference<>(loader.converters.getClass(), PropertyMetadata.COLLECTED_CLASSES);
+			values = new Object[] {
+				loader.required,
+				loader.componentsDelimiter,
+				loader.keyValueDelimiter,
+				loader.contextPrefix,
+				loader.includeKey,
+				loader.includesDelimiter,
+				proxy,
+				context,
+				prefix
+			};
+			hash = 31 * (31 * System.identityHashCode(loader.getClass()) +
+				System.identityHashCode(loader.converters.getClass())) + Arrays.hashCode(values);
+		}
+		
+		protected boolean references(ClassLoader classLoader) {
+			Class<?> loaderType = loaderClass.get();
+			Class<?> convertersType = convertersClass.get();
+			return loaderType == null || convertersType == null ||
+				loaderType.getClassLoader() == classLoader || convertersType.getClassLoader() == classLoader;
+		}
+		
+		protected boolean stale() {
+			return loaderClass.get() == null || convertersClass.get() == null;
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object object) {
+			if (this == object) return true;
+			if (object == null || !(object instanceof BindingPlanKey)) return false;
+			BindingPlanKey key = (BindingPlanKey) object;
+			// a key whose classes were collected equals only itself
+			Class<?> loaderType = loaderClass.get();
+			Class<?> convertersType = convertersClass.get();
+			return loaderType != null && convertersType != null &&
+				loaderType == key.loaderClass.get() && convertersType == key.convertersClass.get() &&
+				Arrays.equals(values, key.values);
+		}
 	}
 	
-	protected static class ObjectPropertyInfo<T> {
-		public T object;
-		public PropertyInfo info;
+	protected static final class Session {
+		private static final String NULL_VALUE = new String();
+		
+		private final Properties systemProperties = new Properties();
+		private final PrepProperties sysProperties;
+		private final ConcurrentMap<List<Object>,CompletableFuture<PrepProperties>> slots = new ConcurrentHashMap<>();
+		private final ConcurrentMap<LookupKey,String> values = new ConcurrentHashMap<>();
+		private final Consumer<File> fileListener;
+		private final boolean async;
+		
+		protected Session(Properties systemProperties) {
+			this(systemProperties, null);
+		}
+		
+		protected Session(Properties systemProperties, Consumer<File> fileListener) {
+			this(systemProperties, fileListener, false);
+		}
+		
+		protected Session(Properties systemProperties, Consumer<File> fileListener, boolean async) {
+			this.fileListener = fileListener;
+			this.async = async;
+			for (String name : systemProperties.stringPropertyNames())
+				this.systemProperties.setProperty(name, systemProperties.getProperty(name));
+			sysProperties = new PrepProperties(this.systemProperties);
+		}
+		
+		public Properties systemProperties() {
+			return systemProperties;
+		}
+		
+		public PrepProperties sysProperties() {
+			return sysProperties;
+		}
 		
-		public ObjectPropertyInfo(T object, PropertyInfo info) {
-			this.object = object;
-			this.info = info;
+		public Consumer<File> fileListener() {
+			return fileListener;
+		}
+		
+		public boolean async() {
+			return async;
+		}
+		
+		public PrepProperties slotProperties(BindingPlan.ResourceSlot slot, Class<?> resourceClazz, Supplier<PrepProperties> loader) {
+			List<Object> key = slotKey(slot, resourceClazz);
+			CompletableFuture<PrepProperties> properties = slots.get(key);
+			if (properties == null) {
+				CompletableFuture<PrepProperties> loading = new CompletableFuture<>();
+				properties = slots.putIfAbsent(key, loading);
+				if (properties == null) {
+					properties = loading;
+					try {
+						loading.complete(loader.get());
+					} catch (Throwable t) {
+						loading.completeExceptionally(t);
+					}
+				}
+			}
+			return join(properties);
+		}
+		
+		// keeps only the resource slots of the plan that this session has already read, not the
+		// whole session, so a lazy child holds no more than it needs until it is loaded
+		public Seed seed(BindingPlan plan) {
+			Map<List<Object>,PrepProperties> loaded = new HashMap<>();
+			for (int i=0; i < plan.slotsCount(); i++) {
+				List<Object> key = slotKey(plan.slot(i), plan.resourceClazz());
+				CompletableFuture<PrepProperties> properties = slots.get(key);
+				if (properties != null && properties.isDone() && !properties.isCompletedExceptionally())
+					loaded.put(key, properties.join());
+			}
+			return new Seed(loaded, fileListener, async);
+		}
+		
+		protected static List<Object> slotKey(BindingPlan.ResourceSlot slot, Class<?> resourceClazz) {
+			String name = resourceClazz.getName();
+			String packageName = (name.lastIndexOf('.') < 0) ? "" : name.substring(0, name.lastIndexOf('.'));
+			return Arrays.asList(slot, resourceClazz.getClassLoader(), packageName);
+		}
+		
+		public String value(PrepProperties properties, String key, String contextPrefix, String context, Supplier<String> resolver) {
+			LookupKey lookupKey = new LookupKey(properties, key, contextPrefix, context);
+			String value = values.get(lookupKey);
+			if (value == null) {
+				value = resolver.get();
+				if (value == null) value = NULL_VALUE;
+				values.putIfAbsent(lookupKey, value);
+			}
+			return (value == NULL_VALUE) ? null : value;
+		}
+		
+		public int slotsCount() {
+			return slots.size();
+		}
+		
+		public int valuesCount() {
+			return values.size();
+		}
+	}
+	
+	protected static final class Seed {
+		private final Map<List<Object>,PrepProperties> slots;
+		private final Consumer<File> fileListener;
+		private final boolean async;
+		
+		protected Seed(Map<List<Object>,PrepProperties> slots, Consumer<File> fileListener, boolean async) {
+			this.slots = slots;
+			this.fileListener = fileListener;
+			this.async = async;
+		}
+		
+		public Session session() {
+			Session session = new Session(System.getProperties(), fileListener, async);
+			slots.forEach((key, properties) -> session.slots.put(key, CompletableFuture.completedFuture(properties)));
+			return session;
+		}
+	}
+	
+	protected static final class LookupKey {
+		private final PrepProperties properties;
+		private final String key;
+		private final String contextPrefix;
+		private final String context;
+		private final int hash;
+		
+		protected LookupKey(PrepProperties properties, String key, String contextPrefix, String context) {
+			this.properties = properties;
+			this.key = key;
+			this.contextPrefix = contextPrefix;
+			this.context = context;
+			hash = 31 * (31 * (31 * System.identityHashCode(properties) + key.hashCode()) +
+				Objects.hashCode(contextPrefix)) + Objects.hashCode(context);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object object) {
+			if (this == object) return true;
+			if (object == null || !(object instanceof LookupKey)) return false;
+			LookupKey lookupKey = (LookupKey) object;
+			return properties == lookupKey.properties && key.equals(lookupKey.key) &&
+				Objects.equals(contextPrefix, lookupKey.contextPrefix) && Objects.equals(context, lookupKey.context);
 		}
 	}
 	
@@ -72,6 +274,16 @@ public class PropertyLoader {
 	protected String contextPrefix;
 	protected String includeKey;
 	protected String includesDelimiter;
+	protected ResourceCache resourceCache = ResourceCache.shared();
+	protected boolean generatedImplementations;
+	protected boolean reloadableProxies;
+	protected boolean lazyProxies;
+	protected Executor childExecutor;
+	protected Executor includeExecutor;
+	protected Executor asyncExecutor;
+	protected volatile Consumer<File> fileListener;
+	protected LoadStats loadStats;
+	protected ConfigurationMetrics metrics;
 	
 	protected PropertyLoader() {}
 	
@@ -124,6 +336,108 @@ public class PropertyLoader {
 		return contextPrefix;
 	}
 	
+	public PropertyLoader resourceCache(ResourceCache resourceCache) {
+		this.resourceCache = resourceCache;
+		if (metrics != null) metrics.resourceCache(resourceCache);
+		return this;
+	}
+	
+	public ResourceCache resourceCache() {
+		return resourceCache;
+	}
+	
+	// generated implementations, reloadable proxies and lazy proxies each replace the
+	// plain proxy in their own way, so at most one of them can be turned on
+	public PropertyLoader generatedImplementations(boolean generatedImplementations) {
+		if (generatedImplementations) requireNoOtherProxyMode(reloadableProxies || lazyProxies);
+		this.generatedImplementations = generatedImplementations;
+		return this;
+	}
+	
+	public boolean generatedImplementations() {
+		return generatedImplementations;
+	}
+	
+	public PropertyLoader reloadableProxies(boolean reloadableProxies) {
+		if (reloadableProxies) requireNoOtherProxyMode(generatedImplementations || lazyProxies);
+		this.reloadableProxies = reloadableProxies;
+		return this;
+	}
+	
+	public boolean reloadableProxies() {
+		return reloadableProxies;
+	}
+	
+	public PropertyLoader lazyProxies(boolean lazyProxies) {
+		if (lazyProxies) requireNoOtherProxyMode(generatedImplementations || reloadableProxies);
+		this.lazyProxies = lazyProxies;
+		return this;
+	}
+	
+	public boolean lazyProxies() {
+		return lazyProxies;
+	}
+	
+	protected static void requireNoOtherProxyMode(boolean otherMode) {
+		if (otherMode)
+			throw new IllegalStateException("Only one of generatedImplementations, reloadableProxies and lazyProxies can be turned on");
+	}
+	
+	public PropertyLoader childExecutor(Executor childExecutor) {
+		this.childExecutor = childExecutor;
+		return this;
+	}
+	
+	public Executor childExecutor() {
+		return childExecutor;
+	}
+	
+	public PropertyLoader includeExecutor(Executor includeExecutor) {
+		this.includeExecutor = includeExecutor;
+		return this;
+	}
+	
+	public Executor includeExecutor() {
+		return includeExecutor;
+	}
+	
+	public PropertyLoader asyncExecutor(Executor asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+		return this;
+	}
+	
+	public Executor asyncExecutor() {
+		return asyncExecutor;
+	}
+	
+	public PropertyLoader fileListener(Consumer<File> fileListener) {
+		this.fileListener = fileListener;
+		return this;
+	}
+	
+	public Consumer<File> fileListener() {
+		return fileListener;
+	}
+	
+	public PropertyLoader loadStats(LoadStats loadStats) {
+		this.loadStats = loadStats;
+		return this;
+	}
+	
+	public LoadStats loadStats() {
+		return loadStats;
+	}
+	
+	public PropertyLoader metrics(ConfigurationMetrics metrics) {
+		this.metrics = metrics;
+		if (metrics != null) metrics.resourceCache(resourceCache);
+		return this;
+	}
+	
+	public ConfigurationMetrics metrics() {
+		return metrics;
+	}
+	
 	public <T> T populate(Class<T> clazz) {
 		return populate(null, clazz);
 	}
@@ -133,16 +447,7 @@ public class PropertyLoader {
 	}
 
 	public <T> T populate(String context, String prefix, Class<T> clazz) {
-		requireNonNull(clazz,"Class can't be null");
-		if (clazz.isInterface()) {
-			return proxyInstance(context, prefix, clazz);
-		} else {
-			try {
-				return populate(context, prefix, clazz.newInstance());
-			} catch (InstantiationException | IllegalAccessException e) {
-				throw new PropertyLoaderException("Can't create instance of class"+clazz);
-			}
-		}
+		return populate(context, prefix, clazz, null);
 	}
 	
 	public <T> T populate(T object) {
@@ -154,319 +459,689 @@ public class PropertyLoader {
 	}
 
 	public <T> T populate(String context, String prefix, T object) {
+		return populate(context, prefix, object, null);
+	}
+	
+	public Object[] populateAll(Class<?>... classes) {
+		Session session = new Session(System.getProperties());
+		Object[] objects = new Object[classes.length];
+		for (int i=0; i < classes.length; i++)
+			objects[i] = populate(null, null, classes[i], session);
+		return objects;
+	}
+	
+	public Object[] populateAll(Object... objects) {
+		Session session = new Session(System.getProperties());
+		for (Object object : objects)
+			populate(null, null, object, session);
+		return objects;
+	}
+	
+	public <T> CompletableFuture<T> populateAsync(Class<T> clazz) {
+		return populateAsync(null, clazz);
+	}
+	
+	public <T> CompletableFuture<T> populateAsync(String context, Class<T> clazz) {
+		return populateAsync(context, null, clazz);
+	}
+	
+	public <T> CompletableFuture<T> populateAsync(String context, String prefix, Class<T> clazz) {
+		requireNonNull(clazz,"Class can't be null");
+		Session session = asyncSession();
+		return populateAsync(context, prefix, clazz, session, () -> populate(context, prefix, clazz, session));
+	}
+	
+	public <T> CompletableFuture<T> populateAsync(T object) {
+		return populateAsync(null, object);
+	}
+	
+	public <T> CompletableFuture<T> populateAsync(String context, T object) {
+		return populateAsync(context, null, object);
+	}
+	
+	public <T> CompletableFuture<T> populateAsync(String context, String prefix, T object) {
 		requireNonNull(object,"Object can't be null");
-		PropertyInfo info = new PropertyInfo();
-		info.context(context);
-		info.required(required);
-		info.componentsDelimiter(componentsDelimiter);
-		info.keyValueDelimiter(keyValueDelimiter);
-		info.contextPrefix(contextPrefix);
-		info.includeKey(includeKey);
-		info.includesDelimiter(includesDelimiter);
-		Class<?> clazz = object.getClass();
-		Class<?> resourceClazz = object.getClass();
-		PropertyInfo classPropertyInfo = classPropertyInfo(clazz, resourceClazz, info);
-		if (object instanceof Properties) {
-			Properties properties = (Properties) object;
-			populate(
-					context,
-					prefix,
-					propertyEntries(clazz, resourceClazz, classPropertyInfo),
-					converters.newInstance(),
-					(key, value) -> properties.setProperty(key, (String) value));
-		}
-		populate(
-				context,
-				prefix,
-				propertyFields(clazz, resourceClazz, classPropertyInfo),
-				converters.newInstance(),
-				(element, elementValue) -> setValueToField(element, object, elementValue));
-		populate(
-				context,
-				prefix,
-				propertyMethods(clazz, resourceClazz, ValueTypeSource.FIRST_PARAMETER, classPropertyInfo),
-				converters.newInstance(),
-				(element, elementValue) -> callMethod(element, object, elementValue));
+		Session session = asyncSession();
+		return populateAsync(context, prefix, object.getClass(), session, () -> populate(context, prefix, object, session));
+	}
+	
+	public CompletableFuture<Object[]> populateAllAsync(Class<?>... classes) {
+		Session session = asyncSession();
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[classes.length];
+		for (int i=0; i < classes.length; i++) {
+			Class<?> clazz = requireNonNull(classes[i],"Class can't be null");
+			futures[i] = populateAsync(null, null, clazz, session, () -> populate(null, null, clazz, session));
+		}
+		return CompletableFuture.allOf(futures).thenApply(ignored -> {
+			Object[] objects = new Object[futures.length];
+			for (int i=0; i < futures.length; i++)
+				objects[i] = futures[i].join();
+			return objects;
+		});
+	}
+	
+	public CompletableFuture<Object[]> populateAllAsync(Object... objects) {
+		Session session = asyncSession();
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[objects.length];
+		for (int i=0; i < objects.length; i++) {
+			Object object = requireNonNull(objects[i],"Object can't be null");
+			futures[i] = populateAsync(null, null, object.getClass(), session, () -> populate(null, null, object, session));
+		}
+		return CompletableFuture.allOf(futures).thenApply(ignored -> objects);
+	}
+	
+	public boolean reload(Object proxy) {
+		requireNonNull(proxy,"Proxy can't be null");
+		if (!Proxy.isProxyClass(proxy.getClass())) return false;
+		InvocationHandler handler = Proxy.getInvocationHandler(proxy);
+		if (!(handler instanceof ReloadableProxyHandler)) return false;
+		ConfigurationMetrics currentMetrics = metrics;
+		try {
+			((ReloadableProxyHandler) handler).reload(this);
+		} catch (RuntimeException e) {
+			if (currentMetrics != null) currentMetrics.reloadFailed();
+			throw e;
+		}
+		if (currentMetrics != null) currentMetrics.reloaded();
+		return true;
+	}
+	
+	public <T> T preload(T proxy) {
+		requireNonNull(proxy,"Proxy can't be null");
+		if (Proxy.isProxyClass(proxy.getClass())) {
+			InvocationHandler handler = Proxy.getInvocationHandler(proxy);
+			if (handler instanceof LazyProxyHandler)
+				((LazyProxyHandler) handler).preload();
+		}
+		return proxy;
+	}
+	
+	protected Session asyncSession() {
+		return new Session(System.getProperties(), null, true);
+	}
+	
+	protected Executor populateExecutor() {
+		return (asyncExecutor == null) ? ForkJoinPool.commonPool() : asyncExecutor;
+	}
+	
+	protected <T> CompletableFuture<T> populateAsync(String context, String prefix, Class<?> clazz, Session session, Supplier<T> populate) {
+		Executor executor = populateExecutor();
+		return prefetch(context, prefix, clazz, session, executor)
+			.thenCompose(ignored -> submit(executor, populate));
+	}
+	
+	protected static <T> CompletableFuture<T> submit(Executor executor, Supplier<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		try {
+			executor.execute(() -> {
+				try {
+					future.complete(task.get());
+				} catch (Throwable t) {
+					future.completeExceptionally(t);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+	
+	protected CompletableFuture<Void> prefetch(String context, String prefix, Class<?> clazz, Session session, Executor executor) {
+		return submit(executor, () -> {
+			List<CompletableFuture<?>> loads = new ArrayList<>();
+			prefetch(context, prefix, clazz, session, executor, new HashSet<>(), loads);
+			return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[loads.size()]));
+		}).thenCompose(Function.identity());
+	}
+	
+	protected void prefetch(String context, String prefix, Class<?> clazz, Session session, Executor executor, Set<BindingPlan> visited, List<CompletableFuture<?>> loads) {
+		boolean proxy = clazz.isInterface();
+		if (proxy && lazyProxies) return;
+		BindingPlan plan = bindingPlan(clazz, proxy, context, prefix);
+		if (!visited.add(plan)) return;
+		for (int i=0; i < plan.slotsCount(); i++) {
+			int index = i;
+			loads.add(submit(executor, () -> slotProperties(plan, index, session)));
+		}
+		for (int i=0; i < plan.stepsCount(); i++) {
+			BindingPlan.Step step = plan.step(i);
+			if (step.isChild() && !step.isLazyChild())
+				prefetch(step.context(), step.childPrefix(), step.childType(), session, executor, visited, loads);
+		}
+	}
+	
+	protected <T> T populate(String context, String prefix, Class<T> clazz, Session session) {
+		requireNonNull(clazz,"Class can't be null");
+		if (clazz.isInterface()) {
+			return proxyInstance(context, prefix, clazz, session);
+		} else {
+			Injectors.Instantiator<T> instantiator = PropertyMetadata.of(clazz).instantiator();
+			return populate(context, prefix, instantiator.newInstance(), session);
+		}
+	}
+	
+	protected <T> T populate(String context, String prefix, T object, Session session) {
+		requireNonNull(object,"Object can't be null");
+		execute(bindingPlan(object.getClass(), false, context, prefix), object, session);
+		return object;
+	}
+	
+	// every value is converted before the first one is injected, so a failure leaves the object unchanged
+	protected <T> T repopulate(String context, String prefix, T object, Session session) {
+		requireNonNull(object,"Object can't be null");
+		execute(bindingPlan(object.getClass(), false, context, prefix), object, session, true);
 		return object;
 	}
 	
-	@SuppressWarnings("unchecked")
 	protected <T> T proxyInstance(String context, String prefix, Class<T> clazz) {
-		Map<Method,Object> propertyValues = new HashMap<>();
-		PropertyInfo info = new PropertyInfo();
-		info.context(context);
-		info.required(required);
-		info.componentsDelimiter(componentsDelimiter);
-		info.keyValueDelimiter(keyValueDelimiter);
-		info.contextPrefix(contextPrefix);
-		info.includeKey(includeKey);
-		info.includesDelimiter(includesDelimiter);
-		Class<?> resourceClazz = this.getClass();
-		PropertyInfo classPropertyInfo = classPropertyInfo(clazz, resourceClazz, info);
-		populate(
-				context,
-				prefix,
-				propertyMethods(clazz, resourceClazz, ValueTypeSource.RETURN_VALUE, classPropertyInfo),
-				converters.newInstance(),
-				(element, elementValue) -> propertyValues.put(element, elementValue));
+		return proxyInstance(context, prefix, clazz, null);
+	}
+	
+	@SuppressWarnings("unchecked")
+	protected <T> T proxyInstance(String context, String prefix, Class<T> clazz, Session session) {
+		if (lazyProxies)
+			return (T) Proxy.newProxyInstance(
+				clazz.getClassLoader(),
+				new Class<?>[]{clazz},
+				new LazyProxyHandler(this, clazz, bindingPlan(clazz, true, context, prefix)));
+		Map<Method,Object> propertyValues = proxyValues(context, prefix, clazz, session);
+		if (reloadableProxies)
+			return (T) Proxy.newProxyInstance(
+				clazz.getClassLoader(),
+				new Class<?>[]{clazz},
+				new ReloadableProxyHandler(context, prefix, clazz, propertyValues));
+		if (generatedImplementations) {
+			T instance = InterfaceImplementations.newInstance(clazz, propertyValues);
+			if (instance != null) return instance;
+		}
 		return (T) Proxy.newProxyInstance(
 			clazz.getClassLoader(),
-			new Class[]{clazz},
-			new PropertiesProxyHandler(propertyValues));
-	}
-	
-	protected <S> void populate(String context, String prefix, List<ObjectPropertyInfo<S>> propertyList, Converters converters, elementValueAction<S> action) {
-		prefix = (prefix == null) ? "" : prefix+".";
-		PrepProperties sysProperties = 
-				new PrepProperties(System.getProperties());
-		for (ObjectPropertyInfo<S> propertyElement : propertyList) {
-			PropertyInfo elementPropertyInfo = propertyElement.info;
-			String elementContext = elementPropertyInfo.context();
-			Boolean elementRequired = elementPropertyInfo.required();
-			String elementComponentsDelimiter = elementPropertyInfo.componentsDelimiter();
-			String elementKeyValueDelimiter = elementPropertyInfo.keyValueDelimiter();
-			String elementContextPrefix = elementPropertyInfo.contextPrefix();
-			S element = propertyElement.object;
-			Object elementValue = null;
-			if (elementPropertyInfo.isChild()) {
-				Class<?> childClazz = elementPropertyInfo.type();
-				if (childClazz.isPrimitive()) {
-					throw new PropertyLoaderException("Child can't be primitive");
-				}
-				elementValue = populate(elementContext, elementPropertyInfo.prefix(), childClazz);
-				action.doIt(element, elementValue);
-			} else {
-				sysProperties.context(elementContextPrefix, elementContext);
-				String key = prefix+elementPropertyInfo.key();
-				String value = sysProperties.getProperty(key);
-				value = (value == null) ?
-					getValueFromProperties(key, elementContextPrefix, elementContext, elementPropertyInfo.properies()) : value;
-				PropertyInfo classPropertyinfo = elementPropertyInfo.parentInfo();
-				classPropertyinfo.properies().context(elementContextPrefix, elementContext);
-				value = (value == null) ?
-					getValueFromProperties(key, elementContextPrefix, elementContext, classPropertyinfo.properies()) : value;
-				value = (value == null) ? elementPropertyInfo.defaultValue() : value;
-				if (elementRequired != null && elementRequired && value == null)
-					throw new PropertyLoaderException("Required property \""+key+"\" not found");
-				if (value == null) {
-					elementValue = value;
-				} else {
-					try {
-						Converter<?> converter = null;
-						if (elementPropertyInfo.converter() != null)
-							converter = elementPropertyInfo.converter().newInstance();
-						if (converter == null)
-							converter = converters.converter(elementPropertyInfo.type(), elementPropertyInfo.genericType(), elementComponentsDelimiter, elementKeyValueDelimiter);
-						elementValue = converter.convert(value);
-					} catch (Exception e) {
-						throw new PropertyLoaderException("Unsupported property type or illegal property value format for proprty \""+key+"\"", e);
-					}
-				}
-				action.doIt(element, elementValue);
+			new Class<?>[]{clazz},
+			new PropertiesProxyHandler(clazz, propertyValues));
+	}
+	
+	protected Map<Method,Object> proxyValues(String context, String prefix, Class<?> clazz, Session session) {
+		Map<Method,Object> propertyValues = new HashMap<>();
+		execute(bindingPlan(clazz, true, context, prefix), propertyValues, session);
+		return propertyValues;
+	}
+	
+	public Map<String,String> snapshot(Class<?> clazz) {
+		return snapshot(null, clazz);
+	}
+	
+	public Map<String,String> snapshot(String context, Class<?> clazz) {
+		return snapshot(context, null, clazz);
+	}
+	
+	public Map<String,String> snapshot(String context, String prefix, Class<?> clazz) {
+		requireNonNull(clazz,"Class can't be null");
+		return snapshot(context, prefix, clazz, new Session(System.getProperties()));
+	}
+	
+	protected Map<String,String> snapshot(String context, String prefix, Class<?> clazz, Session session) {
+		Map<String,String> snapshot = new TreeMap<>();
+		snapshot(context, prefix, clazz, session, snapshot);
+		return Collections.unmodifiableMap(snapshot);
+	}
+	
+	// bound keys are read exactly as populate reads them through the same session, other keys of the
+	// resources under the prefix with the class context, system properties first
+	protected void snapshot(String context, String prefix, Class<?> clazz, Session session, Map<String,String> snapshot) {
+		BindingPlan plan = bindingPlan(clazz, clazz.isInterface(), context, prefix);
+		PrepProperties sysProperties = session.sysProperties();
+		PrepProperties[] slotProperties = slotProperties(plan, session);
+		for (int i=0; i < plan.stepsCount(); i++) {
+			BindingPlan.Step step = plan.step(i);
+			if (step.isChild()) {
+				snapshot(step.context(), step.childPrefix(), step.childType(), session, snapshot);
+				continue;
+			}
+			String value = rawStepValue(step, sysProperties, slotProperties, session);
+			if (value != null) snapshot.put(step.key(), value);
+		}
+		String keyPrefix = (prefix == null) ? "" : prefix+".";
+		for (PrepProperties properties : slotProperties) {
+			for (String key : PropertiesDiff.keys(properties, contextPrefix, context)) {
+				if (!key.startsWith(keyPrefix) || snapshot.containsKey(key)) continue;
+				String value = getValueFromProperties(key, contextPrefix, context, sysProperties, session);
+				if (value == null)
+					value = getValueFromProperties(key, contextPrefix, context, properties, session);
+				if (value != null) snapshot.put(key, value);
 			}
 		}
 	}
 	
-	protected void setValueToField(Field field, Object object, Object value) {
+	protected void execute(BindingPlan plan, Object target) {
+		execute(plan, target, null);
+	}
+	
+	protected void execute(BindingPlan plan, Object target, Session session) {
+		execute(plan, target, session, false);
+	}
+	
+	protected void execute(BindingPlan plan, Object target, Session session, boolean staged) {
+		ConfigurationMetrics currentMetrics = metrics;
+		if (currentMetrics == null) {
+			executePlan(plan, target, session, staged);
+			return;
+		}
+		long start = System.nanoTime();
 		try {
-			field.setAccessible(true);
-			field.set(object, value);
+			executePlan(plan, target, session, staged);
+		} catch (RuntimeException e) {
+			currentMetrics.populateFailed(plan.type());
+			throw e;
 		}
-		catch (IllegalAccessException e) {
-			throw new PropertyLoaderException("Can't set value for field \""+field.getName()+"\"");
+		currentMetrics.populated(plan.type(), System.nanoTime() - start);
+	}
+	
+	protected void executePlan(BindingPlan plan, Object target, Session session) {
+		executePlan(plan, target, session, false);
+	}
+	
+	protected void executePlan(BindingPlan plan, Object target, Session session, boolean staged) {
+		PrepProperties sysProperties = (session == null) ?
+				new PrepProperties(System.getProperties()) : session.sysProperties();
+		PrepProperties[] slotProperties = slotProperties(plan, session);
+		if (childExecutor != null && plan.childStepsCount() > 0) {
+			executeConcurrently(plan, target, sysProperties, slotProperties, session);
+			return;
+		}
+		if (staged) {
+			Object[] values = new Object[plan.stepsCount()];
+			for (int i=0; i < values.length; i++) {
+				BindingPlan.Step step = plan.step(i);
+				values[i] = step.isChild() ?
+					childValue(step, session) :
+					stepValue(plan, step, sysProperties, slotProperties, session);
+			}
+			for (int i=0; i < values.length; i++)
+				inject(plan, plan.step(i), target, values[i]);
+			return;
+		}
+		for (int i=0; i < plan.stepsCount(); i++) {
+			BindingPlan.Step step = plan.step(i);
+			if (step.isPrimitive() && loadStats == null) {
+				String value = rawStepValue(step, sysProperties, slotProperties, session);
+				if (value == null)
+					inject(plan, step, target, convertStepValue(step, null));
+				else
+					injectPrimitive(step, target, value);
+				continue;
+			}
+			Object elementValue = step.isChild() ?
+				childValue(step, session) :
+				stepValue(plan, step, sysProperties, slotProperties, session);
+			inject(plan, step, target, elementValue);
 		}
 	}
-
-	protected void callMethod(Method method, Object object, Object value) {
-		method.setAccessible(true);
+	
+	protected void injectPrimitive(BindingPlan.Step step, Object target, String value) {
 		try {
-			method.invoke(object, value);
-		} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-			throw new PropertyLoaderException("Can't call method \""+method.getName()+"\"");
+			step.convertAndInject(target, value);
+		} catch (PropertyLoaderException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new PropertyLoaderException("Unsupported property type or illegal property value format for proprty \""+step.key()+"\"", e);
 		}
 	}
 	
-	protected String getValueFromProperties(String key, String contextPrefix, String context, PrepProperties properties) {
-		if (properties == null) return null;
-		properties.context(contextPrefix, context);
-		return properties.getProperty(key);
-	}
-	
-	protected List<ObjectPropertyInfo<Field>> propertyFields(Class<?> clazz, Class<?> resourceClazz, PropertyInfo defaultInfo) {
-		List<ObjectPropertyInfo<Field>> fieldsList = new LinkedList<>();
-		while (clazz != Object.class) {
-			Field[] fields = clazz.getDeclaredFields();
-			for (Field field : fields) {
-				PropertyInfo info = fieldAndMethodPropertyInfo(field, resourceClazz, defaultInfo);
-				if (info != null) {
-					info.type(field.getType());
-					info.genericParameters(genericTypeToParameters(field.getGenericType()));
-					fieldsList.add(new ObjectPropertyInfo<>(field, info));
-				}
+	protected PrepProperties[] slotProperties(BindingPlan plan, Session session) {
+		PrepProperties[] slotProperties = new PrepProperties[plan.slotsCount()];
+		for (int i=0; i < slotProperties.length; i++)
+			slotProperties[i] = slotProperties(plan, i, session);
+		return slotProperties;
+	}
+	
+	protected PrepProperties slotProperties(BindingPlan plan, int index, Session session) {
+		BindingPlan.ResourceSlot slot = plan.slot(index);
+		return (session == null) ?
+			orderedProperies(slot.resources(), plan.resourceClazz(), slot.includeKey(), slot.includesDelimiter()) :
+			session.slotProperties(slot, plan.resourceClazz(), () -> orderedProperies(slot.resources(), plan.resourceClazz(),
+				slot.includeKey(), slot.includesDelimiter(), session.systemProperties(), session.fileListener()));
+	}
+	
+	protected void executeConcurrently(BindingPlan plan, Object target, PrepProperties sysProperties, PrepProperties[] slotProperties, Session session) {
+		ChildTask[] children = new ChildTask[plan.stepsCount()];
+		for (int i=0; i < children.length; i++) {
+			BindingPlan.Step step = plan.step(i);
+			if (!step.isChild() || step.isLazyChild()) continue;
+			children[i] = new ChildTask(step, session);
+			try {
+				childExecutor.execute(children[i]);
+			} catch (RejectedExecutionException e) {
+				// the task is run by the joining thread unless the population is asynchronous
+				if (session != null && session.async()) children[i].reject(e);
+			}
+		}
+		Object[] values = new Object[children.length];
+		RuntimeException[] failures = new RuntimeException[children.length];
+		for (int i=0; i < children.length; i++) {
+			if (children[i] != null) continue;
+			BindingPlan.Step step = plan.step(i);
+			try {
+				values[i] = step.isChild() ?
+					childValue(step, session) :
+					stepValue(plan, step, sysProperties, slotProperties, session);
+			} catch (RuntimeException e) {
+				failures[i] = e;
 			}
-			clazz = clazz.getSuperclass();
 		}
-		return fieldsList;
+		for (int i=0; i < children.length; i++) {
+			if (children[i] == null) continue;
+			try {
+				values[i] = children[i].join();
+			} catch (RuntimeException e) {
+				failures[i] = e;
+			}
+		}
+		List<RuntimeException> errors = new ArrayList<>();
+		for (RuntimeException failure : failures)
+			if (failure != null) errors.add(failure);
+		if (errors.size() == 1) throw errors.get(0);
+		if (errors.size() > 1) {
+			PropertyLoaderException exception = new PropertyLoaderException(
+				errors.size()+" errors while populating "+plan.type().getName(), errors.get(0));
+			for (int i=1; i < errors.size(); i++)
+				exception.addSuppressed(errors.get(i));
+			throw exception;
+		}
+		for (int i=0; i < children.length; i++)
+			inject(plan, plan.step(i), target, values[i]);
 	}
 	
-	protected List<ObjectPropertyInfo<Method>> propertyMethods(Class<?> clazz, Class<?> resourceClazz, ValueTypeSource valueTypeSource, PropertyInfo defaultInfo) {
-		List<ObjectPropertyInfo<Method>> methodsList = new LinkedList<>();
-		Method[] methods = clazz.getMethods();
-		for (Method method : methods) {
-			PropertyInfo info = fieldAndMethodPropertyInfo(method, resourceClazz, defaultInfo);
-			if (info == null) continue;
-			info = populateMethodType(method, info, valueTypeSource);
-			if (info == null) continue;
-			methodsList.add(new ObjectPropertyInfo<>(method, info));
+	protected final class ChildTask implements Runnable {
+		private final BindingPlan.Step step;
+		private final Session session;
+		private final AtomicBoolean started = new AtomicBoolean();
+		private final CompletableFuture<Object> result = new CompletableFuture<>();
+		
+		protected ChildTask(BindingPlan.Step step, Session session) {
+			this.step = step;
+			this.session = session;
+		}
+		
+		@Override
+		public void run() {
+			if (!started.compareAndSet(false, true)) return;
+			try {
+				result.complete(childValue(step, session));
+			} catch (Throwable t) {
+				result.completeExceptionally(t);
+			}
+		}
+		
+		protected void reject(RejectedExecutionException e) {
+			if (started.compareAndSet(false, true))
+				result.completeExceptionally(new PropertyLoaderException("Can't populate child "+step.childType().getName(), e));
+		}
+		
+		protected Object join() {
+			run();
+			return PropertyLoader.join(result);
 		}
-		methodsList.sort((pInfo1, pInfo2) -> Integer.compare(pInfo1.info.priority(), pInfo2.info.priority()));
-		return methodsList;
 	}
-
-	protected List<ObjectPropertyInfo<String>> propertyEntries(Class<?> clazz, Class<?> resourceClazz, PropertyInfo defaultInfo) {
-		List<ObjectPropertyInfo<String>> entryList = new LinkedList<>();
-		PropertiesEntry[] entries = clazz.getAnnotationsByType(PropertiesEntry.class);
-		for (PropertiesEntry entry : entries) {
-			PropertyInfo info = new PropertyInfo(defaultInfo);
-			String key = entry.property();
-			info.key(key);
-			String alias = entry.alias();
-			if (alias.equals(PropertiesEntry.EMPTY_VALUE))
-				alias = key;
-			String context = entry.context();
-			if (!context.equals(PropertiesEntry.EMPTY_VALUE))
-				info.context(context);
-			String contextPrefix = entry.contextPrefix();
-			if (!contextPrefix.equals(PropertiesEntry.EMPTY_VALUE))
-				info.contextPrefix(contextPrefix);
-			String defaultValue = entry.defaultValue();
-			if (!defaultValue.equals(PropertiesEntry.EMPTY_VALUE))
-				info.defaultValue(defaultValue);
-			String includeKey = entry.includeKey();
-			if (!includeKey.equals(PropertiesEntry.EMPTY_VALUE))
-				info.includeKey(includeKey);
-			String includesDelimiter = entry.includesDelimiter();
-			if (!includesDelimiter.equals(PropertiesEntry.EMPTY_VALUE))
-				info.includesDelimiter(includesDelimiter);
-			String required = entry.required();
-			if (!required.equals(PropertiesEntry.EMPTY_VALUE))
-				info.required("true".equals(required));
-			info.properies(orderedProperies(entry.resources(), resourceClazz, info));
-			info.type(String.class);
-			entryList.add(new ObjectPropertyInfo<>(alias, info));
-		}
-		return entryList;
-	}
-	
-	protected PropertyInfo populateMethodType(Method method, PropertyInfo info, ValueTypeSource valueTypeSource) {
-		switch (valueTypeSource) {
-			case RETURN_VALUE : {
-				info.type(method.getReturnType());
-				info.genericParameters(genericTypeToParameters(method.getGenericReturnType()));
-				return info;
+	
+	protected static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw e;
+		}
+	}
+	
+	protected void inject(BindingPlan plan, BindingPlan.Step step, Object target, Object value) {
+		LoadStats stats = loadStats;
+		if (stats == null) {
+			step.injector().inject(target, value);
+			return;
+		}
+		long start = System.nanoTime();
+		step.injector().inject(target, value);
+		stats.record(plan.type().getName(), LoadStats.Phase.INJECT, System.nanoTime() - start);
+	}
+	
+	@SuppressWarnings("unchecked")
+	protected Object childValue(BindingPlan.Step step, Session session) {
+		switch (step.childMode()) {
+			case LAZY_VALUE : {
+				String context = step.context();
+				String prefix = step.childPrefix();
+				Class<?> type = step.childType();
+				if (session == null)
+					return new Lazy<>(() -> populate(context, prefix, type, null));
+				Seed seed = session.seed(bindingPlan(type, type.isInterface(), context, prefix));
+				return new Lazy<>(() -> populate(context, prefix, type, seed.session()));
 			}
-			case FIRST_PARAMETER : {
-				Class<?>[] types = method.getParameterTypes();
-				if (types.length != 1) return null;
-				Type[] genericTypes = method.getGenericParameterTypes();
-				if (genericTypes.length != 1) return null;
-				info.type(types[0]);
-				info.genericParameters(genericTypeToParameters(genericTypes[0]));
-				return info;
+			case LAZY_PROXY : {
+				Class<Object> clazz = (Class<Object>) step.childType();
+				return Proxy.newProxyInstance(
+					clazz.getClassLoader(),
+					new Class<?>[]{clazz},
+					new LazyProxyHandler(this, clazz, bindingPlan(clazz, true, step.context(), step.childPrefix())));
 			}
+			default : return populate(step.context(), step.childPrefix(), step.childType(), session);
 		}
-		return null;
-	}
-	
-	protected Class<?>[] genericTypeToParameters(Type type) {
-		if (type != null && type instanceof ParameterizedType) {
-			ParameterizedType paramType = (ParameterizedType) type;
-			Type[] genericTypes = paramType.getActualTypeArguments();
-			Class<?>[] genericTypeClasses = new Class<?>[genericTypes.length];
-			for (int i=0; i < genericTypes.length; i++ )
-				genericTypeClasses[i] = (Class<?>) genericTypes[i];
-			return genericTypeClasses;
-		}
-		return null;
-	}
-	
-	protected PropertyInfo fieldAndMethodPropertyInfo(AnnotatedElement element, Class<?> resourceClazz, PropertyInfo defaultInfo) {
-		PropertyInfo info = new PropertyInfo(defaultInfo);
-		if (element.isAnnotationPresent(Child.class)) {
-			info.prefix(element.getAnnotation(Child.class).prefix());
-			if (element.isAnnotationPresent(Context.class))
-				info.context(element.getAnnotation(Context.class).value());
-		} else if (element.isAnnotationPresent(Property.class)) {
-			if (element.isAnnotationPresent(Context.class))
-				info.context(element.getAnnotation(Context.class).value());
-			if (element.isAnnotationPresent(ComponentsDelimiter.class))
-				info.componentsDelimiter(element.getAnnotation(ComponentsDelimiter.class).value());
-			if (element.isAnnotationPresent(KeyValueDelimiter.class))
-				info.keyValueDelimiter(element.getAnnotation(KeyValueDelimiter.class).value());
-			if (element.isAnnotationPresent(UseConverter.class))
-				info.converter(element.getAnnotation(UseConverter.class).value());
-			info.key(element.getAnnotation(Property.class).value());
-			if (element.isAnnotationPresent(DefaultValue.class))
-				info.defaultValue(element.getAnnotation(DefaultValue.class).value());
-			if (element.isAnnotationPresent(Required.class))
-				info.required(element.getAnnotation(Required.class).value());
-			if (element.isAnnotationPresent(ContextPrefix.class))
-				info.contextPrefix(element.getAnnotation(ContextPrefix.class).value());
-			if (element.isAnnotationPresent(IncludeKey.class))
-				info.includeKey(element.getAnnotation(IncludeKey.class).value());
-			if (element.isAnnotationPresent(IncludesDelimiter.class))
-				info.includesDelimiter(element.getAnnotation(IncludesDelimiter.class).value());
-			if (element.isAnnotationPresent(MethodPriority.class))
-				info.priority(element.getAnnotation(MethodPriority.class).value());
-			info.properies(orderedProperies(element.getAnnotationsByType(Resource.class), resourceClazz, info));
-		} else {
+	}
+	
+	protected Object stepValue(BindingPlan plan, BindingPlan.Step step, PrepProperties sysProperties, PrepProperties[] slotProperties, Session session) {
+		LoadStats stats = loadStats;
+		if (stats == null)
+			return stepValue(step, sysProperties, slotProperties, session);
+		String scope = plan.type().getName();
+		long start = System.nanoTime();
+		String value = rawStepValue(step, sysProperties, slotProperties, session);
+		long resolved = System.nanoTime();
+		stats.record(scope, LoadStats.Phase.RESOLVE, resolved - start);
+		Object converted = convertStepValue(step, value);
+		if (value != null)
+			stats.record(scope, LoadStats.Phase.CONVERT, System.nanoTime() - resolved);
+		return converted;
+	}
+	
+	protected Object stepValue(BindingPlan.Step step, PrepProperties sysProperties, PrepProperties[] slotProperties, Session session) {
+		return convertStepValue(step, rawStepValue(step, sysProperties, slotProperties, session));
+	}
+	
+	protected String rawStepValue(BindingPlan.Step step, PrepProperties sysProperties, PrepProperties[] slotProperties, Session session) {
+		String key = step.key();
+		String elementContextPrefix = step.contextPrefix();
+		String elementContext = step.context();
+		String value = getValueFromProperties(key, elementContextPrefix, elementContext, sysProperties, session);
+		if (value == null && step.elementSlot() >= 0)
+			value = getValueFromProperties(key, elementContextPrefix, elementContext, slotProperties[step.elementSlot()], session);
+		if (value == null && step.classSlot() >= 0)
+			value = getValueFromProperties(key, elementContextPrefix, elementContext, slotProperties[step.classSlot()], session);
+		return (value == null) ? step.defaultValue() : value;
+	}
+	
+	protected Object convertStepValue(BindingPlan.Step step, String value) {
+		String key = step.key();
+		if (value == null) {
+			if (step.required())
+				throw new PropertyLoaderException("Required property \""+key+"\" not found");
 			return null;
 		}
-		return info;
-	}
-	
-	protected PropertyInfo classPropertyInfo(Class<?> clazz, Class<?> resourceClazz, PropertyInfo defaultInfo) {
-		PropertyInfo info = new PropertyInfo(defaultInfo);
-		if (clazz.isAnnotationPresent(Context.class))
-			info.context(clazz.getAnnotation(Context.class).value());
-		if (clazz.isAnnotationPresent(ComponentsDelimiter.class))
-			info.componentsDelimiter(clazz.getAnnotation(ComponentsDelimiter.class).value());
-		if (clazz.isAnnotationPresent(KeyValueDelimiter.class))
-			info.keyValueDelimiter(clazz.getAnnotation(KeyValueDelimiter.class).value());
-		if (clazz.isAnnotationPresent(Required.class))
-			info.required(clazz.getAnnotation(Required.class).value());
-		if (clazz.isAnnotationPresent(ContextPrefix.class))
-			info.contextPrefix(clazz.getAnnotation(ContextPrefix.class).value());
-		if (clazz.isAnnotationPresent(IncludeKey.class))
-			info.includeKey(clazz.getAnnotation(IncludeKey.class).value());
-		if (clazz.isAnnotationPresent(IncludesDelimiter.class))
-			info.includesDelimiter(clazz.getAnnotation(IncludesDelimiter.class).value());
-		info.properies(orderedProperies(clazz.getAnnotationsByType(Resource.class), resourceClazz, info));
-		return info;
-	}
-	
-	protected PrepProperties orderedProperies(Resource[] resources, Class<?> resourceClazz, PropertyInfo info) {
-		Arrays.sort(resources, (r1, r2) -> Integer.compare(r2.priority(), r1.priority()));
-		PrepProperties prop = new PrepProperties(System.getProperties());
+		try {
+			return step.convert(value);
+		} catch (Exception e) {
+			throw new PropertyLoaderException("Unsupported property type or illegal property value format for proprty \""+key+"\"", e);
+		}
+	}
+	
+	protected BindingPlan bindingPlan(Class<?> clazz, boolean proxy, String context, String prefix) {
+		BindingPlanKey key = new BindingPlanKey(this, proxy, context, prefix);
+		ConfigurationMetrics currentMetrics = metrics;
+		if (currentMetrics == null)
+			return PropertyMetadata.of(clazz).bindingPlan(key, planKey -> compileBindingPlan(clazz, proxy, context, prefix));
+		boolean[] compiled = {false};
+		BindingPlan plan = PropertyMetadata.of(clazz).bindingPlan(key, planKey -> {
+			long start = System.nanoTime();
+			BindingPlan compiledPlan = compileBindingPlan(clazz, proxy, context, prefix);
+			currentMetrics.planCompiled(System.nanoTime() - start);
+			compiled[0] = true;
+			return compiledPlan;
+		});
+		if (!compiled[0]) currentMetrics.convertersReused(plan.propertyStepsCount());
+		return plan;
+	}
+	
+	protected BindingPlan compileBindingPlan(Class<?> clazz, boolean proxy, String context, String prefix) {
+		PropertyInfo info = new PropertyInfo();
+		info.context(context);
+		info.required(required);
+		info.componentsDelimiter(componentsDelimiter);
+		info.keyValueDelimiter(keyValueDelimiter);
+		info.contextPrefix(contextPrefix);
+		info.includeKey(includeKey);
+		info.includesDelimiter(includesDelimiter);
+		PropertyMetadata metadata = PropertyMetadata.of(clazz);
+		Class<?> resourceClazz = proxy ? this.getClass() : clazz;
+		BindingPlan.Builder builder = new BindingPlan.Builder(clazz, resourceClazz);
+		PropertyInfo classPropertyInfo = metadata.classPropertyInfo(info);
+		int classSlot = builder.slot(metadata.classResources(), classPropertyInfo.includeKey(), classPropertyInfo.includesDelimiter());
+		Converters converters = this.converters.newInstance();
+		String keyPrefix = (prefix == null) ? "" : prefix+".";
+		if (proxy) {
+			for (PropertyMetadata.Element<Method> element : metadata.getters()) {
+				Method method = element.member();
+				addBindingStep(builder, element, classPropertyInfo, classSlot, keyPrefix, converters,
+					(target, value) -> propertyValue(target, method, value));
+			}
+			return builder.build();
+		}
+		if (Properties.class.isAssignableFrom(clazz)) {
+			for (PropertyMetadata.Element<String> element : metadata.entries()) {
+				String alias = element.member();
+				addBindingStep(builder, element, classPropertyInfo, classSlot, keyPrefix, converters,
+					(target, value) -> ((Properties) target).setProperty(alias, (String) value));
+			}
+		}
+		for (PropertyMetadata.Element<?> element : metadata.bindings()) {
+			addBindingStep(builder, element, classPropertyInfo, classSlot, keyPrefix, converters,
+				element.injector());
+		}
+		return builder.build();
+	}
+	
+	protected void addBindingStep(BindingPlan.Builder builder, PropertyMetadata.Element<?> element, PropertyInfo classPropertyInfo, int classSlot, String keyPrefix, Converters converters, BindingPlan.Injector injector) {
+		PropertyInfo info = element.propertyInfo(classPropertyInfo);
+		if (info.isChild()) {
+			Class<?> childClazz = info.type();
+			if (childClazz.isPrimitive()) {
+				throw new PropertyLoaderException("Child can't be primitive");
+			}
+			BindingPlan.ChildMode childMode = BindingPlan.ChildMode.EAGER;
+			if (childClazz == Lazy.class) {
+				Class<?>[] genericParameters = info.genericType();
+				if (genericParameters == null || genericParameters.length != 1)
+					throw new PropertyLoaderException("Lazy child must declare its type");
+				childClazz = genericParameters[0];
+				childMode = BindingPlan.ChildMode.LAZY_VALUE;
+			} else if (info.lazy()) {
+				if (!childClazz.isInterface())
+					throw new PropertyLoaderException("Lazy child must be an interface or Lazy");
+				childMode = BindingPlan.ChildMode.LAZY_PROXY;
+			}
+			builder.step(BindingPlan.Step.child(element.member(), childClazz, info.prefix(), info.context(), childMode, injector));
+			return;
+		}
+		Converter<?> converter = null;
+		Exception converterFailure = null;
+		long start = (metrics == null) ? 0L : System.nanoTime();
+		try {
+			if (info.converter() != null)
+				converter = Injectors.constructor(info.converter()).newInstance();
+			if (converter == null)
+				converter = converters.converter(info.type(), info.genericType(), info.componentsDelimiter(), info.keyValueDelimiter());
+		} catch (Exception e) {
+			converterFailure = e;
+		}
+		if (metrics != null)
+			metrics.converterResolved(converter != null, System.nanoTime() - start);
+		int elementSlot = builder.slot(element.resources(), info.includeKey(), info.includesDelimiter());
+		builder.step(BindingPlan.Step.property(
+			element.member(),
+			keyPrefix+info.key(),
+			info.contextPrefix(),
+			info.context(),
+			Boolean.TRUE.equals(info.required()),
+			info.defaultValue(),
+			converter,
+			converterFailure,
+			elementSlot,
+			classSlot,
+			injector));
+	}
+	
+	@SuppressWarnings("unchecked")
+	protected static void propertyValue(Object target, Method method, Object value) {
+		((Map<Method,Object>) target).put(method, value);
+	}
+	
+	protected String getValueFromProperties(String key, String contextPrefix, String context, PrepProperties properties) {
+		if (properties == null) return null;
+		synchronized (properties) {
+			properties.context(contextPrefix, context);
+			return properties.getProperty(key);
+		}
+	}
+	
+	protected String getValueFromProperties(String key, String contextPrefix, String context, PrepProperties properties, Session session) {
+		if (session == null || properties == null)
+			return getValueFromProperties(key, contextPrefix, context, properties);
+		return session.value(properties, key, contextPrefix, context,
+			() -> getValueFromProperties(key, contextPrefix, context, properties));
+	}
+	
+	protected PrepProperties orderedProperies(ResourceInfo[] resources, Class<?> resourceClazz, PropertyInfo info) {
+		return orderedProperies(resources, resourceClazz, info.includeKey(), info.includesDelimiter());
+	}
+	
+	protected PrepProperties orderedProperies(ResourceInfo[] resources, Class<?> resourceClazz, String defaultIncludeKey, String defaultIncludesDelimiter) {
+		return orderedProperies(resources, resourceClazz, defaultIncludeKey, defaultIncludesDelimiter, System.getProperties());
+	}
+	
+	protected PrepProperties orderedProperies(ResourceInfo[] resources, Class<?> resourceClazz, String defaultIncludeKey, String defaultIncludesDelimiter, Properties systemProperties) {
+		return orderedProperies(resources, resourceClazz, defaultIncludeKey, defaultIncludesDelimiter, systemProperties, null);
+	}
+	
+	protected PrepProperties orderedProperies(ResourceInfo[] resources, Class<?> resourceClazz, String defaultIncludeKey, String defaultIncludesDelimiter, Properties systemProperties, Consumer<File> sessionListener) {
+		PrepProperties prop = new PrepProperties(systemProperties);
 		PrepProperties fprop = null; 
-		for (Resource resource : resources) {
+		for (ResourceInfo resource : resources) {
 			String includeKey = resource.includeKey();
 			if (includeKey.equals(Resource.EMPTY_VALUE))
-				includeKey = info.includeKey();
+				includeKey = defaultIncludeKey;
 			String includesDelimiter = resource.includeKey();
 			if (includesDelimiter.equals(Resource.EMPTY_VALUE))
-				includesDelimiter = info.includesDelimiter();
+				includesDelimiter = defaultIncludesDelimiter;
 			if (fprop != null) {
 				prop = new PrepProperties(fprop);
 				fprop = null;
 			}
 			prop.includeKey(includeKey);
 			prop.includesDelimiter(includesDelimiter);
-			for (String path : resource.value()) {
+			prop.includeExecutor(includeExecutor);
+			LoadStats stats = loadStats;
+			if (resourceCache != null)
+				prop.propertyLoader(resourceCache.propertyLoader(resourceListener()));
+			if (stats != null)
+				prop.propertyLoader(timedPropertyLoader(prop.propertyLoader(), stats));
+			Consumer<File> listener = combinedFileListener(sessionListener);
+			if (listener != null)
+				prop.propertyLoader(trackingPropertyLoader(prop.propertyLoader(), listener));
+			for (String path : resource.paths()) {
 				if (path == null || path.trim().isEmpty()) continue;
-				String resolvedPath = PrepProperties.resolve(System.getProperties(), path);
+				String resolvedPath = PrepProperties.resolve(systemProperties, path);
 				switch(resource.source()) {
 					case FILE : {
+						if (listener != null)
+							listener.accept(new File(resolvedPath));
 						fprop = getPropertiesFromFile(resolvedPath, prop);
 						break;
 					}
@@ -481,15 +1156,77 @@ public class PropertyLoader {
 		return (fprop == null) ? prop : fprop;
 	}
 	
+	protected Consumer<File> combinedFileListener(Consumer<File> sessionListener) {
+		Consumer<File> listener = fileListener;
+		if (sessionListener == null) return listener;
+		return (listener == null) ? sessionListener : listener.andThen(sessionListener);
+	}
+	
+	protected PrepProperties.PropertyLoader trackingPropertyLoader(PrepProperties.PropertyLoader loader, Consumer<File> listener) {
+		return (path, resourceClazz, properties) -> {
+			File file = new File(path);
+			if (file.isFile())
+				listener.accept(file);
+			loader.load(path, resourceClazz, properties);
+		};
+	}
+	
+	protected PrepProperties.PropertyLoader timedPropertyLoader(PrepProperties.PropertyLoader loader, LoadStats stats) {
+		return (path, resourceClazz, properties) -> {
+			long start = System.nanoTime();
+			loader.load(path, resourceClazz, properties);
+			stats.record(path, LoadStats.Phase.INCLUDE, System.nanoTime() - start);
+		};
+	}
+	
+	protected ResourceCache.Listener resourceListener() {
+		LoadStats stats = loadStats;
+		ConfigurationMetrics currentMetrics = metrics;
+		if (currentMetrics == null) return stats;
+		if (stats == null) return currentMetrics;
+		return new ResourceCache.Listener() {
+			@Override
+			public void cached(String location, boolean hit) {
+				stats.cached(location, hit);
+				currentMetrics.cached(location, hit);
+			}
+
+			@Override
+			public void read(String location, long bytes, long nanos) {
+				stats.read(location, bytes, nanos);
+				currentMetrics.read(location, bytes, nanos);
+			}
+
+			@Override
+			public void parsed(String location, long nanos) {
+				stats.parsed(location, nanos);
+				currentMetrics.parsed(location, nanos);
+			}
+		};
+	}
+	
+	protected void load(String location, InputStream is, PrepProperties prop) throws IOException {
+		ResourceCache.Listener listener = resourceListener();
+		if (listener == null) {
+			prop.load(is);
+			return;
+		}
+		Properties properties = new Properties();
+		ResourceCache.load(location, is, properties, listener);
+		prop.load(properties);
+	}
+	
 	protected PrepProperties getPropertiesFromClassPath(String path, Class<?> resourceClazz, PrepProperties prop) {
+		if (resourceCache != null)
+			return resourceCache.loadFromClassPath(path, resourceClazz, prop, resourceListener()) ? prop : null;
 		try (InputStream cis = resourceClazz.getResourceAsStream(path);
 			 InputStream clis = resourceClazz.getClassLoader().getResourceAsStream(path)
 		) {
 			if (cis != null) {
-				prop.load(cis);
+				load(path, cis, prop);
 				return prop;
 			} else if (clis != null) {
-				prop.load(clis);
+				load(path, clis, prop);
 				return prop;
 			}
 			return null;
@@ -499,10 +1236,12 @@ public class PropertyLoader {
 	}
 	
 	protected PrepProperties getPropertiesFromFile(String path, PrepProperties prop) {
+		if (resourceCache != null)
+			return resourceCache.loadFromFile(path, prop, resourceListener()) ? prop : null;
 		File file = new File(path);
 		if (!file.exists() || file.isDirectory()) return null;
 		try (InputStream is = new FileInputStream(file)) {
-			prop.load(is);
+			load(file.getAbsolutePath(), is, prop);
 			return prop;
 		} catch (IOException e) {
 			return null;
@@ -0,0 +1,440 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static java.util.Collections.unmodifiableList;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Function;
+
+import nikoladasm.commons.configuration.properties.annotations.*;
+
+public class PropertyMetadata {
+
+	public static class Element<T> {
+		private final T member;
+		private final PropertyInfo info;
+		private final ResourceInfo[] resources;
+		private final BindingPlan.Injector injector;
+
+		public Element(T member, PropertyInfo info, ResourceInfo[] resources) {
+			this(member, info, resources, null);
+		}
+
+		public Element(T member, PropertyInfo info, ResourceInfo[] resources, BindingPlan.Injector injector) {
+			this.member = member;
+			this.info = info;
+			this.resources = resources;
+			this.injector = injector;
+		}
+
+		public T member() {
+			return member;
+		}
+
+		public PropertyInfo propertyInfo(PropertyInfo parentInfo) {
+			return info.copy(parentInfo);
+		}
+
+		public ResourceInfo[] resources() {
+			return resources;
+		}
+
+		public BindingPlan.Injector injector() {
+			return injector;
+		}
+	}
+
+	public static final int MAX_BINDING_PLANS = 64;
+
+	private static final ClassValue<PropertyMetadata> METADATA = new ClassValue<PropertyMetadata>() {
+		@Override
+		protected PropertyMetadata computeValue(Class<?> type) {
+			PropertyMetadata metadata = new PropertyMetadata(type);
+			CLASSES.put(type, Boolean.TRUE);
+			return metadata;
+		}
+	};
+
+	private static final Map<Class<?>,Boolean> CLASSES =
+		Collections.synchronizedMap(new WeakHashMap<>());
+
+	// generated binders are ignored, every class is bound through reflection
+	private static final boolean BINDERS_DISABLED = Boolean.getBoolean(PropertyBinder.DISABLED_PROPERTY);
+
+	// loader and converters classes referenced by plan keys are enqueued here when collected
+	protected static final ReferenceQueue<Class<?>> COLLECTED_CLASSES = new ReferenceQueue<>();
+
+	public static PropertyMetadata of(Class<?> clazz) {
+		return METADATA.get(clazz);
+	}
+
+	public static void evict(Class<?> clazz) {
+		CLASSES.remove(clazz);
+		METADATA.remove(clazz);
+	}
+
+	public static void evict(ClassLoader classLoader) {
+		for (Class<?> clazz : cachedClasses()) {
+			if (clazz.getClassLoader() == classLoader)
+				evict(clazz);
+			else
+				of(clazz).evictPlans(classLoader);
+		}
+	}
+
+	public static void evictAll() {
+		for (Class<?> clazz : cachedClasses())
+			evict(clazz);
+	}
+
+	private static List<Class<?>> cachedClasses() {
+		synchronized (CLASSES) {
+			return new ArrayList<>(CLASSES.keySet());
+		}
+	}
+
+	private final Class<?> type;
+	private final PropertyBinder binder;
+	private final PropertyInfo classInfo;
+	private final ResourceInfo[] classResources;
+	private final List<Element<String>> entries;
+	private final Map<Object,BindingPlan> plans = new LinkedHashMap<Object,BindingPlan>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object,BindingPlan> eldest) {
+			return size() > MAX_BINDING_PLANS;
+		}
+	};
+	private volatile List<Element<Field>> fields;
+	private volatile List<Element<Method>> setters;
+	private volatile List<Element<Method>> getters;
+	private volatile List<Element<?>> bindings;
+	private volatile Injectors.Instantiator<?> instantiator;
+
+	protected PropertyMetadata(Class<?> type) {
+		this.type = type;
+		binder = binder(type);
+		if (binder == null) {
+			classInfo = classPropertyInfo(type);
+			classResources = ResourceInfo.sorted(type.getAnnotationsByType(Resource.class));
+		} else {
+			classInfo = binder.classPropertyInfo();
+			classResources = binder.classResources();
+			bindings = unmodifiableList(binder.elements());
+		}
+		entries = unmodifiableList(propertyEntries(type));
+	}
+
+	public Class<?> type() {
+		return type;
+	}
+
+	public PropertyBinder binder() {
+		return binder;
+	}
+
+	public PropertyInfo classPropertyInfo(PropertyInfo parentInfo) {
+		return classInfo.copy(parentInfo);
+	}
+
+	public ResourceInfo[] classResources() {
+		return classResources;
+	}
+
+	public List<Element<Field>> fields() {
+		List<Element<Field>> result = fields;
+		if (result == null) {
+			result = unmodifiableList(propertyFields(type));
+			fields = result;
+		}
+		return result;
+	}
+
+	public List<Element<Method>> setters() {
+		List<Element<Method>> result = setters;
+		if (result == null) {
+			result = unmodifiableList(propertyMethods(type, PropertyLoader.ValueTypeSource.FIRST_PARAMETER));
+			setters = result;
+		}
+		return result;
+	}
+
+	public List<Element<Method>> getters() {
+		List<Element<Method>> result = getters;
+		if (result == null) {
+			result = unmodifiableList(propertyMethods(type, PropertyLoader.ValueTypeSource.RETURN_VALUE));
+			getters = result;
+		}
+		return result;
+	}
+
+	public List<Element<String>> entries() {
+		return entries;
+	}
+
+	public List<Element<?>> bindings() {
+		List<Element<?>> result = bindings;
+		if (result == null) {
+			List<Element<?>> elements = new ArrayList<>();
+			for (Element<Field> element : fields())
+				elements.add(new Element<>(element.member, element.info, element.resources, Injectors.field(element.member)));
+			for (Element<Method> element : setters())
+				elements.add(new Element<>(element.member, element.info, element.resources, Injectors.method(element.member)));
+			result = unmodifiableList(elements);
+			bindings = result;
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> Injectors.Instantiator<T> instantiator() {
+		Injectors.Instantiator<?> result = instantiator;
+		if (result == null) {
+			result = (binder == null) ? Injectors.constructor(type) : binder.instantiator();
+			instantiator = result;
+		}
+		return (Injectors.Instantiator<T>) result;
+	}
+
+	protected static PropertyBinder binder(Class<?> clazz) {
+		if (BINDERS_DISABLED || clazz.isInterface() || clazz.isPrimitive() || clazz.isArray()) return null;
+		Class<?> binderClazz;
+		try {
+			binderClazz = Class.forName(clazz.getName()+PropertyBinder.CLASS_NAME_SUFFIX, true, clazz.getClassLoader());
+		} catch (ClassNotFoundException | LinkageError e) {
+			return null;
+		}
+		if (!PropertyBinder.class.isAssignableFrom(binderClazz)) return null;
+		PropertyBinder binder = (PropertyBinder) Injectors.constructor(binderClazz).newInstance();
+		return (binder.type() == clazz) ? binder : null;
+	}
+
+	// plans are compiled outside the lock; the least recently used plan is evicted when full
+	public BindingPlan bindingPlan(Object key, Function<Object,BindingPlan> compiler) {
+		purgePlans();
+		BindingPlan plan;
+		synchronized (plans) {
+			plan = plans.get(key);
+		}
+		if (plan != null) return plan;
+		BindingPlan compiled = compiler.apply(key);
+		synchronized (plans) {
+			plan = plans.putIfAbsent(key, compiled);
+		}
+		return (plan == null) ? compiled : plan;
+	}
+
+	protected void evictPlans(ClassLoader classLoader) {
+		synchronized (plans) {
+			plans.keySet().removeIf(key ->
+				(key instanceof PropertyLoader.BindingPlanKey) && ((PropertyLoader.BindingPlanKey) key).references(classLoader));
+		}
+	}
+
+	protected static void purgePlans() {
+		boolean collected = false;
+		while (COLLECTED_CLASSES.poll() != null)
+			collected = true;
+		if (!collected) return;
+		for (Class<?> clazz : cachedClasses())
+			of(clazz).evictStalePlans();
+	}
+
+	protected void evictStalePlans() {
+		synchronized (plans) {
+			plans.keySet().removeIf(key ->
+				(key instanceof PropertyLoader.BindingPlanKey) && ((PropertyLoader.BindingPlanKey) key).stale());
+		}
+	}
+
+	public int bindingPlansCount() {
+		synchronized (plans) {
+			return plans.size();
+		}
+	}
+
+	protected static List<Element<Field>> propertyFields(Class<?> clazz) {
+		List<Element<Field>> fieldsList = new ArrayList<>();
+		while (clazz != null && clazz != Object.class) {
+			Field[] fields = clazz.getDeclaredFields();
+			for (Field field : fields) {
+				PropertyInfo info = elementPropertyInfo(field);
+				if (info != null) {
+					info.type(field.getType());
+					info.genericParameters(genericTypeToParameters(field.getGenericType()));
+					fieldsList.add(new Element<>(field, info, elementResources(field)));
+				}
+			}
+			clazz = clazz.getSuperclass();
+		}
+		return fieldsList;
+	}
+
+	protected static List<Element<Method>> propertyMethods(Class<?> clazz, PropertyLoader.ValueTypeSource valueTypeSource) {
+		List<Element<Method>> methodsList = new ArrayList<>();
+		Method[] methods = clazz.getMethods();
+		for (Method method : methods) {
+			PropertyInfo info = elementPropertyInfo(method);
+			if (info == null) continue;
+			info = populateMethodType(method, info, valueTypeSource);
+			if (info == null) continue;
+			methodsList.add(new Element<>(method, info, elementResources(method)));
+		}
+		methodsList.sort((element1, element2) -> Integer.compare(element1.info.priority(), element2.info.priority()));
+		return methodsList;
+	}
+
+	protected static List<Element<String>> propertyEntries(Class<?> clazz) {
+		List<Element<String>> entryList = new ArrayList<>();
+		PropertiesEntry[] entries = clazz.getAnnotationsByType(PropertiesEntry.class);
+		for (PropertiesEntry entry : entries) {
+			PropertyInfo info = new PropertyInfo();
+			String key = entry.property();
+			info.key(key);
+			String alias = entry.alias();
+			if (alias.equals(PropertiesEntry.EMPTY_VALUE))
+				alias = key;
+			String context = entry.context();
+			if (!context.equals(PropertiesEntry.EMPTY_VALUE))
+				info.context(context);
+			String contextPrefix = entry.contextPrefix();
+			if (!contextPrefix.equals(PropertiesEntry.EMPTY_VALUE))
+				info.contextPrefix(contextPrefix);
+			String defaultValue = entry.defaultValue();
+			if (!defaultValue.equals(PropertiesEntry.EMPTY_VALUE))
+				info.defaultValue(defaultValue);
+			String includeKey = entry.includeKey();
+			if (!includeKey.equals(PropertiesEntry.EMPTY_VALUE))
+				info.includeKey(includeKey);
+			String includesDelimiter = entry.includesDelimiter();
+			if (!includesDelimiter.equals(PropertiesEntry.EMPTY_VALUE))
+				info.includesDelimiter(includesDelimiter);
+			String required = entry.required();
+			if (!required.equals(PropertiesEntry.EMPTY_VALUE))
+				info.required("true".equals(required));
+			info.type(String.class);
+			entryList.add(new Element<>(alias, info, ResourceInfo.sorted(entry.resources())));
+		}
+		return entryList;
+	}
+
+	protected static PropertyInfo populateMethodType(Method method, PropertyInfo info, PropertyLoader.ValueTypeSource valueTypeSource) {
+		switch (valueTypeSource) {
+			case RETURN_VALUE : {
+				info.type(method.getReturnType());
+				info.genericParameters(genericTypeToParameters(method.getGenericReturnType()));
+				return info;
+			}
+			case FIRST_PARAMETER : {
+				Class<?>[] types = method.getParameterTypes();
+				if (types.length != 1) return null;
+				Type[] genericTypes = method.getGenericParameterTypes();
+				if (genericTypes.length != 1) return null;
+				info.type(types[0]);
+				info.genericParameters(genericTypeToParameters(genericTypes[0]));
+				return info;
+			}
+		}
+		return null;
+	}
+
+	protected static Class<?>[] genericTypeToParameters(Type type) {
+		if (type != null && type instanceof ParameterizedType) {
+			ParameterizedType paramType = (ParameterizedType) type;
+			Type[] genericTypes = paramType.getActualTypeArguments();
+			Class<?>[] genericTypeClasses = new Class<?>[genericTypes.length];
+			for (int i=0; i < genericTypes.length; i++ )
+				genericTypeClasses[i] = (Class<?>) genericTypes[i];
+			return genericTypeClasses;
+		}
+		return null;
+	}
+
+	protected static ResourceInfo[] elementResources(AnnotatedElement element) {
+		if (element.isAnnotationPresent(Child.class)) return null;
+		return ResourceInfo.sorted(element.getAnnotationsByType(Resource.class));
+	}
+
+	protected static PropertyInfo elementPropertyInfo(AnnotatedElement element) {
+		PropertyInfo info = new PropertyInfo();
+		if (element.isAnnotationPresent(Child.class)) {
+			info.prefix(element.getAnnotation(Child.class).prefix());
+			info.lazy(element.getAnnotation(Child.class).lazy());
+			if (element.isAnnotationPresent(Context.class))
+				info.context(element.getAnnotation(Context.class).value());
+		} else if (element.isAnnotationPresent(Property.class)) {
+			if (element.isAnnotationPresent(Context.class))
+				info.context(element.getAnnotation(Context.class).value());
+			if (element.isAnnotationPresent(ComponentsDelimiter.class))
+				info.componentsDelimiter(element.getAnnotation(ComponentsDelimiter.class).value());
+			if (element.isAnnotationPresent(KeyValueDelimiter.class))
+				info.keyValueDelimiter(element.getAnnotation(KeyValueDelimiter.class).value());
+			if (element.isAnnotationPresent(UseConverter.class))
+				info.converter(element.getAnnotation(UseConverter.class).value());
+			info.key(element.getAnnotation(Property.class).value());
+			if (element.isAnnotationPresent(DefaultValue.class))
+				info.defaultValue(element.getAnnotation(DefaultValue.class).value());
+			if (element.isAnnotationPresent(Required.class))
+				info.required(element.getAnnotation(Required.class).value());
+			if (element.isAnnotationPresent(ContextPrefix.class))
+				info.contextPrefix(element.getAnnotation(ContextPrefix.class).value());
+			if (element.isAnnotationPresent(IncludeKey.class))
+				info.includeKey(element.getAnnotation(IncludeKey.class).value());
+			if (element.isAnnotationPresent(IncludesDelimiter.class))
+				info.includesDelimiter(element.getAnnotation(IncludesDelimiter.class).value());
+			if (element.isAnnotationPresent(MethodPriority.class))
+				info.priority(element.getAnnotation(MethodPriority.class).value());
+		} else {
+			return null;
+		}
+		return info;
+	}
+
+	protected static PropertyInfo classPropertyInfo(Class<?> clazz) {
+		PropertyInfo info = new PropertyInfo();
+		if (clazz.isAnnotationPresent(Context.class))
+			info.context(clazz.getAnnotation(Context.class).value());
+		if (clazz.isAnnotationPresent(ComponentsDelimiter.class))
+			info.componentsDelimiter(clazz.getAnnotation(ComponentsDelimiter.class).value());
+		if (clazz.isAnnotationPresent(KeyValueDelimiter.class))
+			info.keyValueDelimiter(clazz.getAnnotation(KeyValueDelimiter.class).value());
+		if (clazz.isAnnotationPresent(Required.class))
+			info.required(clazz.getAnnotation(Required.class).value());
+		if (clazz.isAnnotationPresent(ContextPrefix.class))
+			info.contextPrefix(clazz.getAnnotation(ContextPrefix.class).value());
+		if (clazz.isAnnotationPresent(IncludeKey.class))
+			info.includeKey(clazz.getAnnotation(IncludeKey.class).value());
+		if (clazz.isAnnotationPresent(IncludesDelimiter.class))
+			info.includesDelimiter(clazz.getAnnotation(IncludesDelimiter.class).value());
+		return info;
+	}
+}
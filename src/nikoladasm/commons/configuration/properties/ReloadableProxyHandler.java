@@ -0,0 +1,56 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+public class ReloadableProxyHandler extends PropertiesProxyHandler {
+
+	private final String context;
+	private final String prefix;
+	private final Class<?> type;
+
+	public ReloadableProxyHandler(String context, String prefix, Class<?> type, Map<Method,Object> propertyValues) {
+		super(type, propertyValues);
+		this.context = context;
+		this.prefix = prefix;
+		this.type = type;
+	}
+
+	public String context() {
+		return context;
+	}
+
+	public String prefix() {
+		return prefix;
+	}
+
+	public Class<?> type() {
+		return type;
+	}
+
+	public void reload(PropertyLoader loader) {
+		reload(loader, null);
+	}
+
+	protected void reload(PropertyLoader loader, PropertyLoader.Session session) {
+		update(loader.proxyValues(context, prefix, type, session));
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import java.util.Arrays;
+
+import nikoladasm.commons.configuration.properties.annotations.Resource;
+
+public final class ResourceInfo {
+	private final String[] paths;
+	private final Resource.Type source;
+	private final int priority;
+	private final String includeKey;
+	private final String includesDelimiter;
+
+	public ResourceInfo(Resource resource) {
+		this(resource.value(), resource.source(), resource.priority(), resource.includeKey(), resource.includesDelimiter());
+	}
+
+	public ResourceInfo(String[] paths, Resource.Type source, int priority, String includeKey, String includesDelimiter) {
+		this.paths = paths.clone();
+		this.source = source;
+		this.priority = priority;
+		this.includeKey = includeKey;
+		this.includesDelimiter = includesDelimiter;
+	}
+
+	public static ResourceInfo[] sorted(Resource[] resources) {
+		ResourceInfo[] infos = new ResourceInfo[resources.length];
+		for (int i=0; i < resources.length; i++)
+			infos[i] = new ResourceInfo(resources[i]);
+		return sorted(infos);
+	}
+
+	public static ResourceInfo[] sorted(ResourceInfo[] resources) {
+		ResourceInfo[] infos = resources.clone();
+		Arrays.sort(infos, (r1, r2) -> Integer.compare(r2.priority(), r1.priority()));
+		return infos;
+	}
+
+	public String[] paths() {
+		return paths.clone();
+	}
+
+	public int pathsCount() {
+		return paths.length;
+	}
+
+	public String path(int index) {
+		return paths[index];
+	}
+
+	public Resource.Type source() {
+		return source;
+	}
+
+	public int priority() {
+		return priority;
+	}
+
+	public String includeKey() {
+		return includeKey;
+	}
+
+	public String includesDelimiter() {
+		return includesDelimiter;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = Arrays.hashCode(paths);
+		result = 31 * result + source.hashCode();
+		result = 31 * result + priority;
+		result = 31 * result + includeKey.hashCode();
+		result = 31 * result + includesDelimiter.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if (this == object) return true;
+		if (object == null || !(object instanceof ResourceInfo)) return false;
+		ResourceInfo info = (ResourceInfo) object;
+		return priority == info.priority &&
+			source == info.source &&
+			includeKey.equals(info.includeKey) &&
+			includesDelimiter.equals(info.includesDelimiter) &&
+			Arrays.equals(paths, info.paths);
+	}
+
+	@Override
+	public String toString() {
+		return source+Arrays.toString(paths);
+	}
+}
@@ -24,4 +24,5 @@ import java.lang.annotation.*;
 @Target({ElementType.METHOD, ElementType.FIELD})
 public @interface Child {
 	String prefix();
+	boolean lazy() default false;
 }
\ No newline at end of file
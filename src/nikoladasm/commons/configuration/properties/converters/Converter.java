@@ -21,4 +21,44 @@ package nikoladasm.commons.configuration.properties.converters;
 @FunctionalInterface
 public interface Converter<T> {
 	T convert(String source) throws Exception;
+
+	@FunctionalInterface
+	public static interface OfInt extends Converter<Integer> {
+		int convertInt(String source) throws Exception;
+
+		@Override
+		default Integer convert(String source) throws Exception {
+			return convertInt(source);
+		}
+	}
+
+	@FunctionalInterface
+	public static interface OfLong extends Converter<Long> {
+		long convertLong(String source) throws Exception;
+
+		@Override
+		default Long convert(String source) throws Exception {
+			return convertLong(source);
+		}
+	}
+
+	@FunctionalInterface
+	public static interface OfDouble extends Converter<Double> {
+		double convertDouble(String source) throws Exception;
+
+		@Override
+		default Double convert(String source) throws Exception {
+			return convertDouble(source);
+		}
+	}
+
+	@FunctionalInterface
+	public static interface OfBoolean extends Converter<Boolean> {
+		boolean convertBoolean(String source) throws Exception;
+
+		@Override
+		default Boolean convert(String source) throws Exception {
+			return convertBoolean(source);
+		}
+	}
 }
@@ -187,11 +187,11 @@ public class Converters {
 	}
 
 	protected Converter<Integer> integerConverter() {
-		return (source) -> Integer.valueOf(source.trim());
+		return (Converter.OfInt) (source) -> Integer.parseInt(source.trim());
 	}
 
 	protected Converter<Long> longConverter() {
-		return (source) -> Long.valueOf(source.trim());
+		return (Converter.OfLong) (source) -> Long.parseLong(source.trim());
 	}
 
 	protected Converter<Float> floatConverter() {
@@ -199,7 +199,7 @@ public class Converters {
 	}
 
 	protected Converter<Double> doubleConverter() {
-		return (source) -> Double.valueOf(source.trim());
+		return (Converter.OfDouble) (source) -> Double.parseDouble(source.trim());
 	}
 
 	protected Converter<Character> characterConverter() {
@@ -211,7 +211,7 @@ public class Converters {
 	}
 
 	protected Converter<Boolean> booleanConverter() {
-		return (source) -> Boolean.valueOf(source.trim());
+		return (Converter.OfBoolean) (source) -> Boolean.parseBoolean(source.trim());
 	}
 
 	protected Converter<String> stringConverter() {
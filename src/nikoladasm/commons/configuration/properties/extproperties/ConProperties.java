@@ -18,16 +18,95 @@
 
 package nikoladasm.commons.configuration.properties.extproperties;
 
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 public class ConProperties extends Properties {
 	private static final long serialVersionUID = 1L;
 	public static final String DEFAULT_CONTEXT_PREFIX = "%";
 	
+	// the views of Properties write through to the table without put or remove,
+	// so these wrap them to report every change made through them
+	protected class ChangeReportingIterator<E> implements Iterator<E> {
+		private final Iterator<Map.Entry<Object,Object>> iterator;
+		private final Function<Map.Entry<Object,Object>,E> element;
+		private Object lastKey;
+
+		protected ChangeReportingIterator(Function<Map.Entry<Object,Object>,E> element) {
+			this.iterator = ConProperties.super.entrySet().iterator();
+			this.element = element;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return iterator.hasNext();
+		}
+
+		@Override
+		public E next() {
+			Map.Entry<Object,Object> entry = iterator.next();
+			lastKey = entry.getKey();
+			return element.apply(entry);
+		}
+
+		@Override
+		public void remove() {
+			iterator.remove();
+			changed(lastKey);
+		}
+	}
+
+	protected class ChangeReportingEntry implements Map.Entry<Object,Object> {
+		private final Map.Entry<Object,Object> entry;
+
+		protected ChangeReportingEntry(Map.Entry<Object,Object> entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public Object getKey() {
+			return entry.getKey();
+		}
+
+		@Override
+		public Object getValue() {
+			return entry.getValue();
+		}
+
+		@Override
+		public Object setValue(Object value) {
+			Object previous = entry.setValue(value);
+			changed(entry.getKey());
+			return previous;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			return entry.equals(object);
+		}
+
+		@Override
+		public int hashCode() {
+			return entry.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return entry.toString();
+		}
+	}
+
 	protected String context;
 	protected String prefix;
 	protected String contextPrefix = DEFAULT_CONTEXT_PREFIX;
+	protected transient volatile long modifications;
 	
 	public ConProperties() {
 		super();
@@ -73,6 +152,18 @@ public class ConProperties extends Properties {
 		return contextPrefix;
 	}
 
+	public Properties defaults() {
+		return defaults;
+	}
+
+	public long modifications() {
+		return modifications;
+	}
+
+	protected void changed(Object key) {
+		modifications++;
+	}
+
 	public void load(Properties properties) {
 		this.putAll(properties);
 	}
@@ -83,13 +174,195 @@ public class ConProperties extends Properties {
 	
 	@Override
 	public String getProperty(String key) {
+		if (prefix == null || prefix.isEmpty()) return super.getProperty(key);
 		String value = super.getProperty(prefix+key);
 		return (value == null) ? super.getProperty(key) : value;
 	}
 
 	@Override
 	public String getProperty(String key, String defaultValue) {
+		if (prefix == null || prefix.isEmpty()) return super.getProperty(key, defaultValue);
 		String value = super.getProperty(prefix+key);
 		return (value == null) ? super.getProperty(key, defaultValue) : value;
 	}
+
+	@Override
+	public synchronized Object put(Object key, Object value) {
+		Object previous = super.put(key, value);
+		changed(key);
+		return previous;
+	}
+
+	@Override
+	public synchronized void putAll(Map<?,?> map) {
+		super.putAll(map);
+		for (Object key : map.keySet())
+			changed(key);
+	}
+
+	@Override
+	public synchronized Object putIfAbsent(Object key, Object value) {
+		Object previous = super.putIfAbsent(key, value);
+		if (previous == null) changed(key);
+		return previous;
+	}
+
+	@Override
+	public synchronized Object remove(Object key) {
+		Object previous = super.remove(key);
+		changed(key);
+		return previous;
+	}
+
+	@Override
+	public synchronized boolean remove(Object key, Object value) {
+		boolean removed = super.remove(key, value);
+		if (removed) changed(key);
+		return removed;
+	}
+
+	@Override
+	public synchronized Object replace(Object key, Object value) {
+		Object previous = super.replace(key, value);
+		if (previous != null) changed(key);
+		return previous;
+	}
+
+	@Override
+	public synchronized boolean replace(Object key, Object oldValue, Object newValue) {
+		boolean replaced = super.replace(key, oldValue, newValue);
+		if (replaced) changed(key);
+		return replaced;
+	}
+
+	@Override
+	public synchronized Object compute(Object key, BiFunction<? super Object,? super Object,?> function) {
+		Object value = super.compute(key, function);
+		changed(key);
+		return value;
+	}
+
+	@Override
+	public synchronized Object computeIfAbsent(Object key, Function<? super Object,?> function) {
+		Object value = super.computeIfAbsent(key, function);
+		changed(key);
+		return value;
+	}
+
+	@Override
+	public synchronized Object computeIfPresent(Object key, BiFunction<? super Object,? super Object,?> function) {
+		Object value = super.computeIfPresent(key, function);
+		changed(key);
+		return value;
+	}
+
+	@Override
+	public synchronized Object merge(Object key, Object value, BiFunction<? super Object,? super Object,?> function) {
+		Object merged = super.merge(key, value, function);
+		changed(key);
+		return merged;
+	}
+
+	@Override
+	public synchronized void replaceAll(BiFunction<? super Object,? super Object,?> function) {
+		super.replaceAll(function);
+		changed(null);
+	}
+
+	@Override
+	public synchronized void clear() {
+		super.clear();
+		changed(null);
+	}
+
+	@Override
+	public Set<Object> keySet() {
+		return new AbstractSet<Object>() {
+			@Override
+			public Iterator<Object> iterator() {
+				return new ChangeReportingIterator<>(Map.Entry::getKey);
+			}
+
+			@Override
+			public int size() {
+				return ConProperties.this.size();
+			}
+
+			@Override
+			public boolean contains(Object key) {
+				return containsKey(key);
+			}
+
+			@Override
+			public boolean remove(Object key) {
+				synchronized (ConProperties.this) {
+					if (!containsKey(key)) return false;
+					ConProperties.this.remove(key);
+					return true;
+				}
+			}
+
+			@Override
+			public void clear() {
+				ConProperties.this.clear();
+			}
+		};
+	}
+
+	@Override
+	public Set<Map.Entry<Object,Object>> entrySet() {
+		return new AbstractSet<Map.Entry<Object,Object>>() {
+			@Override
+			public Iterator<Map.Entry<Object,Object>> iterator() {
+				return new ChangeReportingIterator<>(ChangeReportingEntry::new);
+			}
+
+			@Override
+			public int size() {
+				return ConProperties.this.size();
+			}
+
+			@Override
+			public boolean contains(Object object) {
+				return ConProperties.super.entrySet().contains(object);
+			}
+
+			@Override
+			public boolean remove(Object object) {
+				if (!(object instanceof Map.Entry)) return false;
+				Map.Entry<?,?> entry = (Map.Entry<?,?>) object;
+				return ConProperties.this.remove(entry.getKey(), entry.getValue());
+			}
+
+			@Override
+			public void clear() {
+				ConProperties.this.clear();
+			}
+		};
+	}
+
+	@Override
+	public Collection<Object> values() {
+		return new AbstractCollection<Object>() {
+			@Override
+			public Iterator<Object> iterator() {
+				return new ChangeReportingIterator<>(Map.Entry::getValue);
+			}
+
+			@Override
+			public int size() {
+				return ConProperties.this.size();
+			}
+
+			@Override
+			public boolean contains(Object value) {
+				return containsValue(value);
+			}
+
+			@Override
+			public void clear() {
+				ConProperties.this.clear();
+			}
+		};
+	}
 }
@@ -0,0 +1,141 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.extproperties;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public final class EnvironmentSnapshot {
+
+	private static final AtomicLong VERSIONS = new AtomicLong();
+
+	private static final AtomicReference<EnvironmentSnapshot> CURRENT =
+		new AtomicReference<>(new EnvironmentSnapshot(System.getenv(), System.getProperties(), false));
+	private static ScheduledExecutorService refresher;
+
+	private final long version;
+	private final Map<String,String> env;
+	private final Properties sys;
+	private final boolean frozen;
+
+	private EnvironmentSnapshot(Map<String,String> env, Properties sys, boolean frozen) {
+		this.version = VERSIONS.incrementAndGet();
+		this.env = env;
+		this.sys = sys;
+		this.frozen = frozen;
+	}
+
+	public static EnvironmentSnapshot current() {
+		return CURRENT.get();
+	}
+
+	public static EnvironmentSnapshot of(Map<String,String> env, Properties sys) {
+		Map<String,String> envCopy = (env == null) ?
+			Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(env));
+		Properties sysCopy = new Properties();
+		if (sys != null)
+			for (String name : sys.stringPropertyNames())
+				sysCopy.setProperty(name, sys.getProperty(name));
+		return new EnvironmentSnapshot(envCopy, sysCopy, true);
+	}
+
+	public static EnvironmentSnapshot live() {
+		EnvironmentSnapshot snapshot = liveSnapshot();
+		CURRENT.set(snapshot);
+		return snapshot;
+	}
+
+	public static EnvironmentSnapshot freeze() {
+		EnvironmentSnapshot snapshot = of(System.getenv(), System.getProperties());
+		CURRENT.set(snapshot);
+		return snapshot;
+	}
+
+	public static EnvironmentSnapshot refresh() {
+		// the mode is re-read on every attempt, so a concurrent live() or freeze() is never undone
+		return CURRENT.updateAndGet(snapshot -> snapshot.frozen ? of(System.getenv(), System.getProperties()) : liveSnapshot());
+	}
+
+	private static EnvironmentSnapshot liveSnapshot() {
+		return new EnvironmentSnapshot(System.getenv(), System.getProperties(), false);
+	}
+
+	public static synchronized void refreshEvery(long period, TimeUnit unit) {
+		if (period <= 0)
+			throw new IllegalArgumentException("Refresh period must be positive");
+		stopRefresh();
+		refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "environment-snapshot-refresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+		refresher.scheduleAtFixedRate(EnvironmentSnapshot::refresh, period, period, unit);
+	}
+
+	public static synchronized void stopRefresh() {
+		if (refresher == null) return;
+		ScheduledExecutorService stopped = refresher;
+		refresher = null;
+		stopped.shutdownNow();
+		try {
+			stopped.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public static synchronized boolean isRefreshing() {
+		return refresher != null;
+	}
+
+	public long version() {
+		return version;
+	}
+
+	public boolean frozen() {
+		return frozen;
+	}
+
+	public String env(String name) {
+		return env.get(name);
+	}
+
+	public String env(String prefix, String name) {
+		if (prefix == null || prefix.isEmpty()) return env.get(name);
+		String value = env.get(prefix+name);
+		return (value == null) ? env.get(name) : value;
+	}
+
+	public String sys(String name) {
+		return sys.getProperty(name);
+	}
+
+	public String sys(String prefix, String name) {
+		if (prefix == null || prefix.isEmpty()) return sys.getProperty(name);
+		String value = sys.getProperty(prefix+name);
+		return (value == null) ? sys.getProperty(name) : value;
+	}
+}
@@ -0,0 +1,288 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.extproperties;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+public final class IncludeGraph {
+
+	public static final class Node {
+		private final String path;
+		private final String location;
+		private final List<Node> includes = Collections.synchronizedList(new ArrayList<>());
+		private volatile PrepProperties fragment;
+		private volatile String includeValue;
+		private volatile int contentHash;
+		private volatile int size;
+		private volatile long loadNanos;
+		private volatile Node duplicateOf;
+		private volatile boolean deferred;
+
+		Node(String path, String location) {
+			this.path = path;
+			this.location = location;
+		}
+
+		void includeValue(String includeValue) {
+			this.includeValue = includeValue;
+		}
+
+		String includeValue() {
+			return includeValue;
+		}
+
+		void deferred(boolean deferred) {
+			this.deferred = deferred;
+		}
+
+		PrepProperties fragment() {
+			return fragment;
+		}
+
+		void loaded(PrepProperties fragment, long loadNanos) {
+			this.fragment = fragment;
+			this.size = fragment.size();
+			this.contentHash = Objects.hash(fragment.hashCode(), includeValue);
+			this.loadNanos = loadNanos;
+		}
+
+		boolean sameContent(Node node) {
+			return contentHash == node.contentHash &&
+				Objects.equals(includeValue, node.includeValue) &&
+				fragment.equals(node.fragment);
+		}
+
+		public String path() {
+			return path;
+		}
+
+		public String location() {
+			return location;
+		}
+
+		List<Node> includesList() {
+			return includes;
+		}
+
+		public List<Node> includes() {
+			synchronized (includes) {
+				return Collections.unmodifiableList(new ArrayList<>(includes));
+			}
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public int contentHash() {
+			return contentHash;
+		}
+
+		public long loadNanos() {
+			return loadNanos;
+		}
+
+		public Node duplicateOf() {
+			return duplicateOf;
+		}
+
+		public boolean isDuplicate() {
+			return duplicateOf != null;
+		}
+
+		@Override
+		public String toString() {
+			return path+" ("+location+")";
+		}
+	}
+
+	private final List<Node> roots = Collections.synchronizedList(new ArrayList<>());
+	private final ConcurrentMap<String,Node> nodes = new ConcurrentHashMap<>();
+	private final List<Node> discovered = Collections.synchronizedList(new ArrayList<>());
+	private final List<Node> merged = new ArrayList<>();
+	private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+	IncludeGraph() {}
+
+	Node include(List<Node> parent, String path, String location) {
+		Node node = new Node(path, location);
+		Node existing = nodes.putIfAbsent(location, node);
+		if (existing != null) {
+			parent.add(existing);
+			return null;
+		}
+		discovered.add(node);
+		parent.add(node);
+		return node;
+	}
+
+	List<Node> rootIncludes() {
+		return roots;
+	}
+
+	Queue<Runnable> pending() {
+		return pending;
+	}
+
+	void checkCycles() {
+		Map<Node,Boolean> visiting = new IdentityHashMap<>();
+		List<Node> path = new ArrayList<>();
+		for (Node root : roots())
+			checkCycles(root, visiting, path);
+	}
+
+	private void checkCycles(Node node, Map<Node,Boolean> visiting, List<Node> path) {
+		Boolean state = visiting.get(node);
+		if (Boolean.FALSE.equals(state)) return;
+		path.add(node);
+		if (Boolean.TRUE.equals(state)) {
+			StringBuilder builder = new StringBuilder();
+			for (Node element : path.subList(path.indexOf(node), path.size()-1))
+				builder.append(element.path).append(" -> ");
+			throw new PropertiesException("Cyclic include: "+builder.append(node.path));
+		}
+		visiting.put(node, Boolean.TRUE);
+		for (Node include : node.includes())
+			checkCycles(include, visiting, path);
+		visiting.put(node, Boolean.FALSE);
+		path.remove(path.size()-1);
+	}
+
+	List<Node> deferred() {
+		List<Node> deferred = new ArrayList<>();
+		for (Node node : order())
+			if (node.deferred) deferred.add(node);
+		return deferred;
+	}
+
+	void merge(Properties target) {
+		for (Node node : order())
+			if (node.fragment != null) target.putAll(node.fragment);
+	}
+
+	void apply(PrepProperties target) {
+		List<Node> order = order();
+		Map<Integer,List<Node>> contents = new HashMap<>();
+		List<Node> kept = new ArrayList<>();
+		// of fragments with the same content only the last one counts, the earlier ones are overridden
+		for (int i = order.size()-1; i >= 0; i--) {
+			Node node = order.get(i);
+			List<Node> sameHash = contents.computeIfAbsent(node.contentHash, hash -> new ArrayList<>());
+			Node same = null;
+			for (Node candidate : sameHash)
+				if (node.sameContent(candidate)) same = candidate;
+			if (same != null) {
+				node.duplicateOf = same;
+				continue;
+			}
+			sameHash.add(node);
+			kept.add(node);
+		}
+		for (int i = kept.size()-1; i >= 0; i--) {
+			Node node = kept.get(i);
+			merged.add(node);
+			target.putAll(node.fragment);
+		}
+		for (Node node : nodes())
+			node.fragment = null;
+	}
+
+	// sequential loading loads an include again each time it is reached, so the last include wins;
+	// a fragment reached through several parents is merged at its last position in that order
+	List<Node> order() {
+		List<Node> reversed = new ArrayList<>();
+		Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<Node> roots = roots();
+		for (int i = roots.size()-1; i >= 0; i--)
+			reverseOrder(roots.get(i), visited, reversed);
+		Collections.reverse(reversed);
+		return reversed;
+	}
+
+	private void reverseOrder(Node node, Set<Node> visited, List<Node> reversed) {
+		if (!visited.add(node)) return;
+		List<Node> includes = node.includes();
+		for (int i = includes.size()-1; i >= 0; i--)
+			reverseOrder(includes.get(i), visited, reversed);
+		reversed.add(node);
+	}
+
+	public List<Node> roots() {
+		synchronized (roots) {
+			return Collections.unmodifiableList(new ArrayList<>(roots));
+		}
+	}
+
+	public List<Node> nodes() {
+		synchronized (discovered) {
+			return Collections.unmodifiableList(new ArrayList<>(discovered));
+		}
+	}
+
+	public List<Node> merged() {
+		return Collections.unmodifiableList(merged);
+	}
+
+	public Node node(String location) {
+		return nodes.get(location);
+	}
+
+	public int size() {
+		return nodes.size();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		Set<Node> printed = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Node root : roots())
+			print(builder, root, 0, printed);
+		return builder.toString();
+	}
+
+	private void print(StringBuilder builder, Node node, int depth, Set<Node> printed) {
+		for (int i = 0; i < depth; i++)
+			builder.append("  ");
+		builder.append(node.path);
+		if (!printed.add(node)) {
+			builder.append(" (already included)\n");
+			return;
+		}
+		if (node.duplicateOf != null) {
+			builder.append(" (same content as ").append(node.duplicateOf.path).append(")\n");
+			return;
+		}
+		builder.append(" [").append(node.size).append(" properties, ")
+			.append(node.loadNanos / 1_000).append(" us] ").append(node.location).append('\n');
+		for (Node include : node.includes())
+			print(builder, include, depth+1, printed);
+	}
+}
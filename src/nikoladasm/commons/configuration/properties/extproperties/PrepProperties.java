@@ -23,8 +23,26 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import nikoladasm.commons.configuration.properties.extproperties.ReferenceTemplate.Segment;
 
 public class PrepProperties extends RefProperties {
 	private static final long serialVersionUID = 1L;
@@ -34,6 +52,67 @@ public class PrepProperties extends RefProperties {
 		void load(String path, Class<?> resourceClazz, PrepProperties properties);
 	}
 	
+	protected static final class Frozen {
+		protected final String prefix;
+		protected final Map<String,String> values;
+		protected final Map<String,String> failures;
+		protected final long environmentVersion;
+		protected final long defaultsVersion;
+
+		protected Frozen(String prefix, Map<String,String> values, Map<String,String> failures, long environmentVersion, long defaultsVersion) {
+			this.prefix = prefix;
+			this.values = values;
+			this.failures = failures;
+			this.environmentVersion = environmentVersion;
+			this.defaultsVersion = defaultsVersion;
+		}
+
+		protected boolean valid(String prefix, EnvironmentSnapshot environment, long defaultsVersion) {
+			return this.prefix.equals(prefix) &&
+				environmentVersion == environment.version() &&
+				this.defaultsVersion == defaultsVersion;
+		}
+	}
+	
+	protected static final class IncludeTask implements Runnable {
+		private final IncludeGraph.Node node;
+		private final Class<?> resourceClazz;
+		private final PrepProperties fragment;
+		private final AtomicBoolean started = new AtomicBoolean();
+		private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+		protected IncludeTask(IncludeGraph.Node node, Class<?> resourceClazz, PrepProperties fragment) {
+			this.node = node;
+			this.resourceClazz = resourceClazz;
+			this.fragment = fragment;
+		}
+
+		@Override
+		public void run() {
+			if (!started.compareAndSet(false, true)) return;
+			try {
+				long start = System.nanoTime();
+				fragment.propertyLoader.load(node.path(), resourceClazz, fragment);
+				node.loaded(fragment, System.nanoTime()-start);
+				result.complete(null);
+			} catch (Throwable t) {
+				result.completeExceptionally(t);
+			}
+		}
+
+		protected void join() {
+			run();
+			try {
+				result.join();
+			} catch (CompletionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+				if (cause instanceof Error) throw (Error) cause;
+				throw e;
+			}
+		}
+	}
+	
 	public static final String DEFAULT_INCLUDES_DELIMITER = ",";
 	public static final PropertyLoader DEFAULT_PROPERTY_LOADER =
 		(path, resourceClazz, properties) -> {
@@ -58,6 +137,13 @@ public class PrepProperties extends RefProperties {
 	protected String includeKey;
 	protected String includesDelimiter = DEFAULT_INCLUDES_DELIMITER;
 	protected PropertyLoader propertyLoader = DEFAULT_PROPERTY_LOADER;
+	protected transient Executor includeExecutor;
+	protected transient Class<?> includeClazz;
+	protected transient volatile IncludeGraph includeGraph;
+	protected transient IncludeGraph.Node includeNode;
+	protected boolean resolveOnce;
+	protected transient volatile Frozen frozen;
+	protected transient int loading;
 	
 	public PrepProperties() {
 		super();
@@ -102,39 +188,387 @@ public class PrepProperties extends RefProperties {
 		return propertyLoader;
 	}
 	
+	public PrepProperties includeExecutor(Executor executor) {
+		includeExecutor = executor;
+		return this;
+	}
+	
+	public Executor includeExecutor() {
+		return includeExecutor;
+	}
+	
+	public IncludeGraph includeGraph() {
+		return includeGraph;
+	}
+	
+	public PrepProperties resolveOnce(boolean resolveOnce) {
+		this.resolveOnce = resolveOnce;
+		if (resolveOnce)
+			freeze();
+		else
+			frozen = null;
+		return this;
+	}
+	
+	public boolean resolveOnce() {
+		return resolveOnce;
+	}
+	
+	public boolean frozen() {
+		return frozen != null;
+	}
+	
 	@Override
 	public void load(Properties properties) {
-		super.load(properties);
-		include();
+		loading++;
+		try {
+			super.load(properties);
+			include();
+		} finally {
+			loading--;
+		}
+		loaded();
 	}
 	
 	@Override
 	public void load(Map<String,String> map) {
-		super.load(map);
-		include();
+		loading++;
+		try {
+			super.load(map);
+			include();
+		} finally {
+			loading--;
+		}
+		loaded();
 	}
 	
 	@Override
 	public void load(InputStream inStream) throws IOException {
-		super.load(inStream);
-		include();
+		loading++;
+		try {
+			super.load(inStream);
+			include();
+		} finally {
+			loading--;
+		}
+		loaded();
 	}
 	
 	@Override
 	public void load(Reader reader) throws IOException {
-		super.load(reader);
-		include();
+		loading++;
+		try {
+			super.load(reader);
+			include();
+		} finally {
+			loading--;
+		}
+		loaded();
 	}
 	
 	protected void include() {
 		if (includeKey == null) return;
+		if (includeNode != null) {
+			// a value with references may need keys of sibling fragments, which are not loaded yet
+			String rawValue = rawProperty(includeKey);
+			if (rawValue != null && rawValue.indexOf('$') >= 0) {
+				this.remove(includeKey);
+				includeNode.includeValue(rawValue);
+				includeNode.deferred(true);
+				return;
+			}
+		}
 		String includeValue = this.getProperty(includeKey);
 		if (includeValue == null) return;
-		String[] includes = includeValue.split(includesDelimiter);
 		this.remove(includeKey);
-		Class<?> clazz = this.getClass();
-		for (String include : includes) {
-			propertyLoader.load(include.trim(), clazz, this);
+		Class<?> clazz = (includeClazz == null) ? this.getClass() : includeClazz;
+		IncludeGraph graph = (includeNode == null) ? new IncludeGraph() : includeGraph;
+		List<IncludeGraph.Node> parent;
+		if (includeNode == null) {
+			parent = graph.rootIncludes();
+		} else {
+			includeNode.includeValue(includeValue);
+			parent = includeNode.includesList();
+		}
+		include(includeValue, parent, clazz, graph);
+		if (includeNode == null) {
+			joinIncludes(graph);
+			includeDeferred(graph, clazz);
+			graph.checkCycles();
+			graph.apply(this);
+			includeGraph = graph;
+		}
+	}
+	
+	protected void include(String includeValue, List<IncludeGraph.Node> parent, Class<?> clazz, IncludeGraph graph) {
+		for (String include : includeValue.split(includesDelimiter)) {
+			String path = include.trim();
+			IncludeGraph.Node node = graph.include(parent, path, includeLocation(path, clazz));
+			if (node == null) continue;
+			IncludeTask task = new IncludeTask(node, clazz, fragment(clazz, graph, node));
+			graph.pending().add(task);
+			if (includeExecutor == null) {
+				task.run();
+				continue;
+			}
+			try {
+				includeExecutor.execute(task);
+			} catch (RejectedExecutionException e) {
+				// the task is run by the joining thread
+			}
 		}
 	}
+	
+	// deferred include values are resolved against everything loaded so far, merged in include order
+	protected void includeDeferred(IncludeGraph graph, Class<?> clazz) {
+		List<IncludeGraph.Node> deferred;
+		while (!(deferred = graph.deferred()).isEmpty()) {
+			graph.checkCycles();
+			ConProperties view = new ConProperties(this);
+			graph.merge(view);
+			for (IncludeGraph.Node node : deferred) {
+				node.deferred(false);
+				String includeValue = resolve(environment(), view, contextPrefix, context, node.includeValue());
+				if (includeValue != null)
+					node.fragment().include(includeValue, node.includesList(), clazz, graph);
+			}
+			joinIncludes(graph);
+		}
+	}
+	
+	protected void joinIncludes(IncludeGraph graph) {
+		RuntimeException failure = null;
+		Runnable task;
+		while ((task = graph.pending().poll()) != null) {
+			try {
+				((IncludeTask) task).join();
+			} catch (RuntimeException e) {
+				if (failure == null)
+					failure = e;
+				else
+					failure.addSuppressed(e);
+			}
+		}
+		if (failure != null) throw failure;
+	}
+	
+	protected String includeLocation(String path, Class<?> clazz) {
+		URL url = clazz.getResource(path);
+		if (url == null && clazz.getClassLoader() != null)
+			url = clazz.getClassLoader().getResource(path);
+		File file = new File(path);
+		if (url != null) {
+			if (!"file".equals(url.getProtocol())) return url.toExternalForm();
+			try {
+				file = new File(url.toURI());
+			} catch (URISyntaxException | IllegalArgumentException e) {
+				return url.toExternalForm();
+			}
+		}
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException e) {
+			return file.getAbsolutePath();
+		}
+	}
+	
+	protected PrepProperties fragment(Class<?> clazz, IncludeGraph graph, IncludeGraph.Node node) {
+		PrepProperties fragment = new PrepProperties(this);
+		fragment.context = context;
+		fragment.prefix = prefix;
+		fragment.contextPrefix = contextPrefix;
+		fragment.doResolving = doResolving;
+		fragment.environment = environment;
+		fragment.includeKey = includeKey;
+		fragment.includesDelimiter = includesDelimiter;
+		fragment.propertyLoader = propertyLoader;
+		fragment.includeExecutor = includeExecutor;
+		fragment.includeClazz = clazz;
+		fragment.includeGraph = graph;
+		fragment.includeNode = node;
+		return fragment;
+	}
+	
+	protected void loaded() {
+		if (loading == 0 && resolveOnce) freeze();
+	}
+	
+	@Override
+	protected void changed(Object key) {
+		super.changed(key);
+		frozen = null;
+	}
+	
+	// the own keys, the keys they reference and the keys of plain Properties defaults are
+	// frozen; plain defaults can't report their changes, so freezing takes a snapshot of them.
+	// A key in or behind a cycle reports it when it is read while the other keys stay usable
+	public void freeze() {
+		long modifications = this.modifications;
+		EnvironmentSnapshot environment = environment();
+		long defaultsVersion = frozenVersion(environment);
+		String keyPrefix = (prefix == null) ? "" : prefix;
+		Deque<String> names = new ArrayDeque<>();
+		for (Object key : new ArrayList<>(keySet()))
+			if (key instanceof String)
+				freezeName((String) key, keyPrefix, names);
+		Properties plainDefaults = plainDefaults();
+		if (plainDefaults != null)
+			for (String name : plainDefaults.stringPropertyNames())
+				freezeName(name, keyPrefix, names);
+		Frozen current = resolveAll(names, keyPrefix, environment, defaultsVersion);
+		if (modifications == this.modifications)
+			frozen = current;
+	}
+	
+	protected static void freezeName(String name, String keyPrefix, Deque<String> names) {
+		names.add(name);
+		if (!keyPrefix.isEmpty() && name.startsWith(keyPrefix))
+			names.add(name.substring(keyPrefix.length()));
+	}
+	
+	// plain defaults are taken as a snapshot, so only the ConProperties before them are versioned
+	protected long frozenVersion(EnvironmentSnapshot environment) {
+		long version = defaultsVersion(environment);
+		return (version == UNVERSIONED) ? chainVersion() : version;
+	}
+	
+	// resolves the names and every key they reference, in dependency order
+	protected Frozen resolveAll(Deque<String> queue, String keyPrefix, EnvironmentSnapshot environment, long defaultsVersion) {
+		String envPrefix = contextKeyPrefix(contextPrefix, context);
+		Set<String> visited = new HashSet<>();
+		Map<String,String> raw = new HashMap<>();
+		Map<String,Set<String>> dependencies = new HashMap<>();
+		Map<String,String> errors = new HashMap<>();
+		while (!queue.isEmpty()) {
+			String name = queue.poll();
+			if (!visited.add(name)) continue;
+			String value = rawProperty(name);
+			if (value == null) continue;
+			raw.put(name, value);
+			Set<String> references = new HashSet<>();
+			try {
+				collect(value, environment, envPrefix, references, 0);
+			} catch (PropertiesException e) {
+				errors.put(name, e.getMessage());
+				continue;
+			}
+			dependencies.put(name, references);
+			queue.addAll(references);
+		}
+		Map<String,List<String>> dependents = new HashMap<>();
+		Map<String,int[]> pending = new HashMap<>();
+		Deque<String> ready = new ArrayDeque<>();
+		for (Map.Entry<String,Set<String>> entry : dependencies.entrySet()) {
+			String name = entry.getKey();
+			Set<String> references = entry.getValue();
+			references.retainAll(raw.keySet());
+			pending.put(name, new int[]{references.size()});
+			if (references.isEmpty()) ready.add(name);
+			for (String reference : references)
+				dependents.computeIfAbsent(reference, r -> new ArrayList<>()).add(name);
+		}
+		Map<String,String> values = new HashMap<>();
+		while (!ready.isEmpty()) {
+			String name = ready.poll();
+			values.put(name, render(raw.get(name), values, environment, envPrefix));
+			for (String dependent : dependents.getOrDefault(name, Collections.emptyList()))
+				if (--pending.get(dependent)[0] == 0) ready.add(dependent);
+		}
+		Map<String,String> failures = new HashMap<>();
+		for (String name : raw.keySet())
+			if (!values.containsKey(name))
+				failures.put(name, failure(name, dependencies, values, errors));
+		return new Frozen(keyPrefix, values, failures, environment.version(), defaultsVersion);
+	}
+	
+	protected void collect(String value, EnvironmentSnapshot environment, String envPrefix, Set<String> references, int depth) {
+		if (value == null || value.indexOf('$') < 0) return;
+		if (depth > MAX_REFERENCE_DEPTH)
+			throw new PropertiesException("Cyclic environment reference: "+value);
+		for (Segment segment : ReferenceTemplate.template(value).segments()) {
+			if (!segment.isReference()) continue;
+			switch (segment.kind()) {
+				case ENV:
+					collect(environment.env(envPrefix, segment.name()), environment, envPrefix, references, depth+1);
+					break;
+				case SYS:
+					collect(environment.sys(envPrefix, segment.name()), environment, envPrefix, references, depth+1);
+					break;
+				default:
+					references.add(segment.name());
+			}
+		}
+	}
+	
+	protected String render(String value, Map<String,String> values, EnvironmentSnapshot environment, String envPrefix) {
+		if (value == null || value.indexOf('$') < 0) return value;
+		return ReferenceTemplate.template(value).render((kind, name) -> {
+			switch (kind) {
+				case ENV:
+					return render(environment.env(envPrefix, name), values, environment, envPrefix);
+				case SYS:
+					return render(environment.sys(envPrefix, name), values, environment, envPrefix);
+				default:
+					return values.get(name);
+			}
+		});
+	}
+	
+	// follows unresolved references from the key until they reach an error or repeat
+	protected String failure(String name, Map<String,Set<String>> dependencies, Map<String,String> values, Map<String,String> errors) {
+		Set<String> path = new LinkedHashSet<>();
+		while (!errors.containsKey(name) && path.add(name)) {
+			String next = null;
+			for (String reference : dependencies.get(name))
+				if (!values.containsKey(reference) && (next == null || reference.compareTo(next) < 0))
+					next = reference;
+			name = next;
+		}
+		if (errors.containsKey(name)) return errors.get(name);
+		StringBuilder builder = new StringBuilder("Cyclic property reference: ");
+		for (String element : path)
+			builder.append(element).append(" -> ");
+		return builder.append(name).toString();
+	}
+	
+	protected Frozen frozenState() {
+		if (!resolveOnce || !doResolving || loading > 0) return null;
+		Frozen current = frozen;
+		String keyPrefix = (prefix == null) ? "" : prefix;
+		EnvironmentSnapshot environment = environment();
+		long defaultsVersion = frozenVersion(environment);
+		if (current != null && current.valid(keyPrefix, environment, defaultsVersion)) return current;
+		freeze();
+		return frozen;
+	}
+	
+	// keys that only ConProperties defaults hold are not frozen and are resolved on each read
+	protected String frozenProperty(Frozen current, String key) {
+		String value = current.values.get(key);
+		if (value == null && !current.failures.containsKey(key)) {
+			String raw = rawProperty(key);
+			if (raw == null || raw.indexOf('$') < 0) return raw;
+			Deque<String> names = new ArrayDeque<>();
+			names.add(key);
+			current = resolveAll(names, current.prefix, environment(), current.defaultsVersion);
+			value = current.values.get(key);
+		}
+		String failure = current.failures.get(key);
+		if (failure != null) throw new PropertiesException(failure);
+		return value;
+	}
+	
+	@Override
+	public String getProperty(String key) {
+		Frozen current = frozenState();
+		return (current == null) ? super.getProperty(key) : frozenProperty(current, key);
+	}
+	
+	@Override
+	public String getProperty(String key, String defaultValue) {
+		Frozen current = frozenState();
+		if (current == null) return super.getProperty(key, defaultValue);
+		String value = frozenProperty(current, key);
+		return (value == null) ? resolve(environment(), this, contextPrefix, context, defaultValue) : value;
+	}
 }
@@ -0,0 +1,151 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.extproperties;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+public final class PropertiesDiff {
+
+	public static enum Type {ADDED, REMOVED, MODIFIED}
+
+	public static final class Change {
+		private final String key;
+		private final String oldValue;
+		private final String newValue;
+
+		public Change(String key, String oldValue, String newValue) {
+			this.key = key;
+			this.oldValue = oldValue;
+			this.newValue = newValue;
+		}
+
+		public String key() {
+			return key;
+		}
+
+		public String oldValue() {
+			return oldValue;
+		}
+
+		public String newValue() {
+			return newValue;
+		}
+
+		public Type type() {
+			if (oldValue == null) return Type.ADDED;
+			if (newValue == null) return Type.REMOVED;
+			return Type.MODIFIED;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (this == object) return true;
+			if (!(object instanceof Change)) return false;
+			Change change = (Change) object;
+			return key.equals(change.key) &&
+				Objects.equals(oldValue, change.oldValue) &&
+				Objects.equals(newValue, change.newValue);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(key, oldValue, newValue);
+		}
+
+		@Override
+		public String toString() {
+			return type()+" "+key+": "+oldValue+" -> "+newValue;
+		}
+	}
+
+	private PropertiesDiff() {}
+
+	public static Map<String,String> snapshot(ConProperties properties) {
+		return snapshot(properties, properties.contextPrefix(), properties.context());
+	}
+
+	public static Map<String,String> snapshot(ConProperties properties, String contextPrefix, String context) {
+		Map<String,String> snapshot = new TreeMap<>();
+		if (properties == null) return snapshot;
+		synchronized (properties) {
+			// the snapshot reads under its own context, the caller keeps the active one
+			String previousContext = properties.context;
+			String previousPrefix = properties.prefix;
+			try {
+				for (String key : keys(properties, contextPrefix, context)) {
+					properties.context(contextPrefix, context);
+					String value = properties.getProperty(key);
+					if (value != null) snapshot.put(key, value);
+				}
+			} finally {
+				properties.context = previousContext;
+				properties.prefix = previousPrefix;
+			}
+		}
+		return Collections.unmodifiableMap(snapshot);
+	}
+
+	public static Set<String> keys(ConProperties properties, String contextPrefix, String context) {
+		Set<String> keys = new TreeSet<>();
+		if (properties == null) return keys;
+		String effectiveContextPrefix = (contextPrefix == null) ? ConProperties.DEFAULT_CONTEXT_PREFIX : contextPrefix;
+		String keyPrefix = (context == null || context.isEmpty()) ? null : effectiveContextPrefix+context+".";
+		synchronized (properties) {
+			for (String key : keys(properties)) {
+				if (keyPrefix != null && key.startsWith(keyPrefix))
+					keys.add(key.substring(keyPrefix.length()));
+				else if (!key.startsWith(effectiveContextPrefix))
+					keys.add(key);
+			}
+		}
+		return keys;
+	}
+
+	protected static TreeSet<String> keys(ConProperties properties) {
+		TreeSet<String> keys = new TreeSet<>();
+		Properties current = properties;
+		while (current instanceof ConProperties) {
+			for (Object key : current.keySet())
+				if (key instanceof String) keys.add((String) key);
+			current = ((ConProperties) current).defaults();
+		}
+		return keys;
+	}
+
+	public static List<Change> diff(Map<String,String> oldSnapshot, Map<String,String> newSnapshot) {
+		TreeSet<String> keys = new TreeSet<>(oldSnapshot.keySet());
+		keys.addAll(newSnapshot.keySet());
+		List<Change> changes = new ArrayList<>();
+		for (String key : keys) {
+			String oldValue = oldSnapshot.get(key);
+			String newValue = newSnapshot.get(key);
+			if (!Objects.equals(oldValue, newValue))
+				changes.add(new Change(key, oldValue, newValue));
+		}
+		return changes;
+	}
+}
@@ -18,12 +18,12 @@
 
 package nikoladasm.commons.configuration.properties.extproperties;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Properties;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class RefProperties extends ConProperties {
 	private static final long serialVersionUID = 1L;
@@ -31,10 +31,79 @@ public class RefProperties extends ConProperties {
 	public static final String ENV_PREFIX = "ENV:";
 	public static final String SYS_PREFIX = "SYS:";
 	
-	protected static final String REFERENCE_PATTERN = "\\$\\{((?:SYS:|ENV:)?[^\\}]+)\\}";
-	protected static final Pattern PATTERN = Pattern.compile(REFERENCE_PATTERN);
+	public static final int MAX_REFERENCE_DEPTH = 64;
+	
+	protected static final long UNVERSIONED = -1L;
+	
+	protected static final class Resolution {
+		protected final String value;
+		protected final Set<Object> dependencies;
+		protected final boolean environmentDependent;
+		protected final boolean memoizable;
+		protected final long environmentVersion;
+		protected final long defaultsVersion;
+
+		protected Resolution(String value, Tracker tracker, long environmentVersion, long defaultsVersion) {
+			this.value = value;
+			this.dependencies = tracker.dependencies;
+			this.environmentDependent = tracker.environmentDependent;
+			this.memoizable = tracker.memoizable;
+			this.environmentVersion = environmentVersion;
+			this.defaultsVersion = defaultsVersion;
+		}
+
+		protected boolean valid(EnvironmentSnapshot environment, long defaultsVersion) {
+			return this.defaultsVersion == defaultsVersion &&
+				(!environmentDependent || environment.version() == environmentVersion);
+		}
+	}
+
+	protected static final class MemoKey {
+		protected final String prefix;
+		protected final String key;
+
+		protected MemoKey(String prefix, String key) {
+			this.prefix = prefix;
+			this.key = key;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * prefix.hashCode() + key.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (this == object) return true;
+			if (object == null || !(object instanceof MemoKey)) return false;
+			MemoKey memoKey = (MemoKey) object;
+			return prefix.equals(memoKey.prefix) && key.equals(memoKey.key);
+		}
+	}
+
+	protected static final class Tracker {
+		protected final Set<Object> dependencies = new HashSet<>();
+		// keys whose resolution is in progress, shared by nested trackers
+		protected final Set<String> resolving;
+		protected boolean environmentDependent;
+		protected boolean memoizable = true;
+
+		protected Tracker(Set<String> resolving) {
+			this.resolving = resolving;
+		}
+
+		protected void merge(Resolution resolution) {
+			dependencies.addAll(resolution.dependencies);
+			environmentDependent |= resolution.environmentDependent;
+			memoizable &= resolution.memoizable;
+		}
+	}
 
 	protected boolean doResolving = true;
+	protected boolean memoize;
+	protected transient EnvironmentSnapshot environment;
+	protected transient volatile ConcurrentMap<String,ConcurrentMap<String,Resolution>> resolutions;
+	protected transient volatile ConcurrentMap<Object,Set<MemoKey>> dependents;
 	
 	public static String resolve(Properties properties, String value) {
 		ConProperties conProperties;
@@ -50,43 +119,44 @@ public class RefProperties extends ConProperties {
 	}
 	
 	public static String resolve(ConProperties properties, String contextPrefix, String context, String value) {
-		ConProperties envProperties = new ConProperties();
-		envProperties.load(System.getenv());
-		ConProperties sysProperties = new ConProperties(System.getProperties());
-		return resolve(envProperties, sysProperties, properties, contextPrefix, context, value);
-	}
-	
-	protected static String resolve(ConProperties envProperties, ConProperties sysProperties, ConProperties properties, String contextPrefix, String context, String value) {
-		if (value == null) return value;
-		Matcher refMatcher = PATTERN.matcher(value);
-		Map<String,String> refMap = new HashMap<>();
-		while (refMatcher.find())
-			refMap.put(refMatcher.group(0), refMatcher.group(1));
-		if(refMap.size() < 1) return value;
-		Map<String,String> resolvedRefMap = new HashMap<>();
-		envProperties.context(contextPrefix, context);
-		sysProperties.context(contextPrefix, context);
-		refMap.forEach((ref, refName) -> {
-			String ucRefName = refName.toUpperCase();
-			if (ucRefName.startsWith(ENV_PREFIX)) {
-				String envValue = envProperties.getProperty(refName.substring(4));
-				if (envValue != null)
-					resolvedRefMap.put(ref, resolve(envProperties, sysProperties, properties, contextPrefix, context, envValue));
-			} else if (ucRefName.startsWith(SYS_PREFIX)) {
-				String sysValue = sysProperties.getProperty(refName.substring(4));
-				if (sysValue != null)
-					resolvedRefMap.put(ref, resolve(envProperties, sysProperties, properties, contextPrefix, context, sysValue));
-			} else if (properties != null) {
-				properties.context(contextPrefix, context);
-				String propValue = properties.getProperty(refName);
-				if (propValue != null)
-					resolvedRefMap.put(ref, resolve(envProperties, sysProperties, properties, contextPrefix, context, propValue));
+		return resolve(EnvironmentSnapshot.current(), properties, contextPrefix, context, value);
+	}
+	
+	protected static String resolve(EnvironmentSnapshot environment, ConProperties properties, String contextPrefix, String context, String value) {
+		return resolve(environment, properties, contextPrefix, context, value, 0);
+	}
+	
+	// a cycle nests references without end, so too deep a nesting is reported as one
+	protected static String resolve(EnvironmentSnapshot environment, ConProperties properties, String contextPrefix, String context, String value, int depth) {
+		if (value == null || value.indexOf('$') < 0) return value;
+		ReferenceTemplate template = ReferenceTemplate.template(value);
+		if (!template.hasReferences()) return value;
+		String prefix = contextKeyPrefix(contextPrefix, context);
+		return template.render((kind, name) -> {
+			if (depth >= MAX_REFERENCE_DEPTH)
+				throw new PropertiesException("Cyclic property reference: "+name+" nests deeper than "+MAX_REFERENCE_DEPTH);
+			String refValue;
+			switch (kind) {
+				case ENV:
+					refValue = environment.env(prefix, name);
+					break;
+				case SYS:
+					refValue = environment.sys(prefix, name);
+					break;
+				default:
+					if (properties == null) return null;
+					properties.context(contextPrefix, context);
+					// a RefProperties would resolve the value again and restart the depth
+					refValue = (properties instanceof RefProperties) ?
+						((RefProperties) properties).rawProperty(name) : properties.getProperty(name);
 			}
+			return (refValue == null) ? null : resolve(environment, properties, contextPrefix, context, refValue, depth+1);
 		});
-		for (Entry<String,String> entry : resolvedRefMap.entrySet()) {
-			value = value.replace(entry.getKey(), entry.getValue());
-		}
-		return value;
+	}
+	
+	protected static String contextKeyPrefix(String contextPrefix, String context) {
+		return (context == null || context.isEmpty()) ? "" :
+			((contextPrefix == null) ? DEFAULT_CONTEXT_PREFIX : contextPrefix)+context+".";
 	}
 	
 	public RefProperties() {
@@ -114,21 +184,214 @@ public class RefProperties extends ConProperties {
 		return doResolving;
 	}
 	
+	public RefProperties environment(EnvironmentSnapshot environment) {
+		this.environment = environment;
+		return this;
+	}
+	
+	public EnvironmentSnapshot environment() {
+		return (environment == null) ? EnvironmentSnapshot.current() : environment;
+	}
+	
+	// values are memoized only while defaultsVersion() can version the defaults chain:
+	// a chain ending in plain Properties is read unmemoized unless it ends in the System
+	// properties and the environment is frozen, see memoizing()
+	public RefProperties memoize(boolean memoize) {
+		this.memoize = memoize;
+		if (!memoize) {
+			resolutions = null;
+			dependents = null;
+		}
+		return this;
+	}
+	
+	public boolean memoize() {
+		return memoize;
+	}
+	
+	public boolean memoizing() {
+		return memoize && doResolving && defaultsVersion(environment()) != UNVERSIONED;
+	}
+	
+	public int memoized() {
+		ConcurrentMap<String,ConcurrentMap<String,Resolution>> current = resolutions;
+		if (current == null) return 0;
+		int size = 0;
+		for (ConcurrentMap<String,Resolution> memo : current.values())
+			size += memo.size();
+		return size;
+	}
+	
+	// only the memoized values that read the key are dropped
+	@Override
+	protected void changed(Object key) {
+		super.changed(key);
+		ConcurrentMap<String,ConcurrentMap<String,Resolution>> current = resolutions;
+		ConcurrentMap<Object,Set<MemoKey>> index = dependents;
+		if (current == null || index == null) return;
+		if (key == null) {
+			current.clear();
+			index.clear();
+			return;
+		}
+		Set<MemoKey> memoKeys = index.remove(key);
+		if (memoKeys == null) return;
+		for (MemoKey memoKey : memoKeys) {
+			ConcurrentMap<String,Resolution> memo = current.get(memoKey.prefix);
+			if (memo != null) memo.remove(memoKey.key);
+		}
+	}
+	
+	// plain Properties defaults can't report their changes, so a chain with one has no version;
+	// the System properties are the exception under a frozen environment, whose version they share
+	protected long defaultsVersion(EnvironmentSnapshot environment) {
+		Properties properties = plainDefaults();
+		if (properties == null) return chainVersion();
+		if (properties == System.getProperties() && environment.frozen())
+			return chainVersion()+environment.version();
+		return UNVERSIONED;
+	}
+	
+	// every counter only grows, so the sum changes whenever one of them does
+	protected long chainVersion() {
+		long version = 0;
+		Properties properties = defaults;
+		while (properties instanceof ConProperties) {
+			ConProperties conProperties = (ConProperties) properties;
+			version += conProperties.modifications()+1;
+			properties = conProperties.defaults();
+		}
+		return version;
+	}
+	
+	protected Properties plainDefaults() {
+		Properties properties = defaults;
+		while (properties instanceof ConProperties)
+			properties = ((ConProperties) properties).defaults();
+		return properties;
+	}
+	
+	protected ConcurrentMap<String,Resolution> resolutions(String prefix) {
+		ConcurrentMap<String,ConcurrentMap<String,Resolution>> current = resolutions;
+		if (current == null) {
+			current = new ConcurrentHashMap<>();
+			resolutions = current;
+		}
+		ConcurrentMap<String,Resolution> memo = current.get(prefix);
+		return (memo == null) ? current.computeIfAbsent(prefix, p -> new ConcurrentHashMap<>()) : memo;
+	}
+	
+	protected Set<MemoKey> dependents(Object dependency) {
+		ConcurrentMap<Object,Set<MemoKey>> index = dependents;
+		if (index == null) {
+			index = new ConcurrentHashMap<>();
+			dependents = index;
+		}
+		Set<MemoKey> memoKeys = index.get(dependency);
+		return (memoKeys == null) ? index.computeIfAbsent(dependency, d -> ConcurrentHashMap.newKeySet()) : memoKeys;
+	}
+	
+	protected String rawProperty(String key) {
+		return super.getProperty(key);
+	}
+	
+	protected Resolution resolution(String key, EnvironmentSnapshot environment, long defaultsVersion) {
+		return resolution(key, environment, defaultsVersion, null);
+	}
+	
+	protected Resolution resolution(String key, EnvironmentSnapshot environment, long defaultsVersion, Tracker parent) {
+		String keyPrefix = (prefix == null) ? "" : prefix;
+		ConcurrentMap<String,Resolution> memo = resolutions(keyPrefix);
+		Resolution resolution = memo.get(key);
+		if (resolution != null && resolution.valid(environment, defaultsVersion)) return resolution;
+		long modifications = this.modifications;
+		Tracker tracker = new Tracker((parent == null) ? new LinkedHashSet<>() : parent.resolving);
+		if (!tracker.resolving.add(key))
+			throw new PropertiesException("Cyclic property reference: "+cycle(tracker.resolving, key));
+		tracker.dependencies.add(key);
+		if (!keyPrefix.isEmpty()) tracker.dependencies.add(keyPrefix+key);
+		String value;
+		try {
+			value = resolve(environment, defaultsVersion, tracker, super.getProperty(key));
+		} finally {
+			tracker.resolving.remove(key);
+		}
+		resolution = new Resolution(value, tracker, environment.version(), defaultsVersion);
+		if (resolution.memoizable && modifications == this.modifications) {
+			MemoKey memoKey = new MemoKey(keyPrefix, key);
+			for (Object dependency : resolution.dependencies)
+				dependents(dependency).add(memoKey);
+			memo.put(key, resolution);
+			// a change that raced the put may have missed it in changed()
+			if (modifications != this.modifications) memo.remove(key, resolution);
+		}
+		return resolution;
+	}
+	
+	protected String resolve(EnvironmentSnapshot environment, long defaultsVersion, Tracker tracker, String value) {
+		return resolve(environment, defaultsVersion, tracker, value, 0);
+	}
+	
+	// property keys are checked through the tracker, ENV and SYS values only through the depth
+	protected String resolve(EnvironmentSnapshot environment, long defaultsVersion, Tracker tracker, String value, int depth) {
+		if (value == null || value.indexOf('$') < 0) return value;
+		ReferenceTemplate template = ReferenceTemplate.template(value);
+		if (!template.hasReferences()) return value;
+		String prefix = contextKeyPrefix(contextPrefix, context);
+		return template.render((kind, name) -> {
+			if (depth >= MAX_REFERENCE_DEPTH)
+				throw new PropertiesException("Cyclic property reference: "+name+" nests deeper than "+MAX_REFERENCE_DEPTH);
+			String refValue;
+			switch (kind) {
+				case ENV:
+					tracker.environmentDependent = true;
+					refValue = environment.env(prefix, name);
+					break;
+				case SYS:
+					tracker.environmentDependent = true;
+					tracker.memoizable &= environment.frozen();
+					refValue = environment.sys(prefix, name);
+					break;
+				default:
+					Resolution resolution = resolution(name, environment, defaultsVersion, tracker);
+					tracker.merge(resolution);
+					return resolution.value;
+			}
+			return resolve(environment, defaultsVersion, tracker, refValue, depth+1);
+		});
+	}
+	
+	protected static String cycle(Set<String> resolving, String key) {
+		StringBuilder builder = new StringBuilder();
+		boolean inCycle = false;
+		for (String element : resolving) {
+			inCycle |= element.equals(key);
+			if (inCycle) builder.append(element).append(" -> ");
+		}
+		return builder.append(key).toString();
+	}
+	
 	@Override
 	public String getProperty(String key) {
-		String value = super.getProperty(key);
-		ConProperties envProperties = new ConProperties();
-		envProperties.load(System.getenv());
-		ConProperties sysProperties = new ConProperties(System.getProperties());
-		return doResolving ? resolve(envProperties, sysProperties, this, contextPrefix, context, value) : value;
+		if (!doResolving) return super.getProperty(key);
+		EnvironmentSnapshot environment = environment();
+		if (memoize) {
+			long defaultsVersion = defaultsVersion(environment);
+			if (defaultsVersion != UNVERSIONED) return resolution(key, environment, defaultsVersion).value;
+		}
+		return resolve(environment, this, contextPrefix, context, super.getProperty(key));
 	}
 
 	@Override
 	public String getProperty(String key, String defaultValue) {
-		String value = super.getProperty(key, defaultValue);
-		ConProperties envProperties = new ConProperties();
-		envProperties.load(System.getenv());
-		ConProperties sysProperties = new ConProperties(System.getProperties());
-		return doResolving ? resolve(envProperties, sysProperties, this, contextPrefix, context, value) : value;
+		if (!doResolving) return super.getProperty(key, defaultValue);
+		EnvironmentSnapshot environment = environment();
+		long defaultsVersion = memoize ? defaultsVersion(environment) : UNVERSIONED;
+		if (defaultsVersion != UNVERSIONED) {
+			String value = resolution(key, environment, defaultsVersion).value;
+			if (value != null) return value;
+			return resolve(environment, this, contextPrefix, context, defaultValue);
+		}
+		return resolve(environment, this, contextPrefix, context, super.getProperty(key, defaultValue));
 	}
 }
@@ -0,0 +1,186 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.extproperties;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ReferenceTemplate {
+
+	public static enum Kind {
+		ENV,
+		SYS,
+		PROPERTY
+	}
+
+	@FunctionalInterface
+	public static interface Resolver {
+		String resolve(Kind kind, String name);
+	}
+
+	public static final class Segment {
+		private final int start;
+		private final String text;
+		private final Kind kind;
+		private final String name;
+
+		private Segment(int start, String text, Kind kind, String name) {
+			this.start = start;
+			this.text = text;
+			this.kind = kind;
+			this.name = name;
+		}
+
+		public String text() {
+			return text;
+		}
+
+		public Kind kind() {
+			return kind;
+		}
+
+		public String name() {
+			return name;
+		}
+
+		public boolean isReference() {
+			return kind != null;
+		}
+	}
+
+	public static final int DEFAULT_CACHE_SIZE = 1024;
+
+	private static final Segment[] NO_SEGMENTS = new Segment[0];
+	private static final ConcurrentMap<String,ReferenceTemplate> CACHE = new ConcurrentHashMap<>();
+	private static final AtomicInteger SIZE = new AtomicInteger();
+
+	private final String source;
+	private final Segment[] segments;
+	private final int references;
+
+	private ReferenceTemplate(String source, Segment[] segments, int references) {
+		this.source = source;
+		this.segments = segments;
+		this.references = references;
+	}
+
+	// a full cache keeps the templates it has and compiles the others on every call,
+	// since evicting without access order would drop hot entries as well as cold ones;
+	// a slot is reserved before the put, so concurrent misses can't overshoot the bound
+	public static ReferenceTemplate template(String value) {
+		ReferenceTemplate template = CACHE.get(value);
+		if (template != null) return template;
+		template = compile(value);
+		if (SIZE.incrementAndGet() > DEFAULT_CACHE_SIZE) {
+			SIZE.decrementAndGet();
+			return template;
+		}
+		ReferenceTemplate previous = CACHE.putIfAbsent(value, template);
+		if (previous == null) return template;
+		SIZE.decrementAndGet();
+		return previous;
+	}
+
+	public static ReferenceTemplate compile(String value) {
+		int length = value.length();
+		int literalStart = 0;
+		int references = 0;
+		List<Segment> segments = null;
+		int index = value.indexOf('$');
+		while (index >= 0 && index < length-1) {
+			if (value.charAt(index+1) != '{') {
+				index = value.indexOf('$', index+1);
+				continue;
+			}
+			int end = value.indexOf('}', index+2);
+			if (end < 0) break;
+			if (end == index+2) {
+				index = value.indexOf('$', index+1);
+				continue;
+			}
+			if (segments == null) segments = new ArrayList<>();
+			if (index > literalStart)
+				segments.add(new Segment(literalStart, value.substring(literalStart, index), null, null));
+			segments.add(reference(index, value.substring(index, end+1), value.substring(index+2, end)));
+			references++;
+			literalStart = end+1;
+			index = value.indexOf('$', literalStart);
+		}
+		if (segments == null) return new ReferenceTemplate(value, NO_SEGMENTS, 0);
+		if (literalStart < length)
+			segments.add(new Segment(literalStart, value.substring(literalStart), null, null));
+		return new ReferenceTemplate(value, segments.toArray(NO_SEGMENTS), references);
+	}
+
+	private static Segment reference(int start, String text, String name) {
+		if (name.regionMatches(true, 0, RefProperties.ENV_PREFIX, 0, RefProperties.ENV_PREFIX.length()))
+			return new Segment(start, text, Kind.ENV, name.substring(RefProperties.ENV_PREFIX.length()));
+		if (name.regionMatches(true, 0, RefProperties.SYS_PREFIX, 0, RefProperties.SYS_PREFIX.length()))
+			return new Segment(start, text, Kind.SYS, name.substring(RefProperties.SYS_PREFIX.length()));
+		return new Segment(start, text, Kind.PROPERTY, name);
+	}
+
+	public static int cacheSize() {
+		return CACHE.size();
+	}
+
+	public static void clearCache() {
+		for (String value : CACHE.keySet())
+			if (CACHE.remove(value) != null) SIZE.decrementAndGet();
+	}
+
+	public String source() {
+		return source;
+	}
+
+	public int references() {
+		return references;
+	}
+
+	public boolean hasReferences() {
+		return references > 0;
+	}
+
+	public List<Segment> segments() {
+		return Collections.unmodifiableList(Arrays.asList(segments));
+	}
+
+	public String render(Resolver resolver) {
+		if (references == 0) return source;
+		StringBuilder builder = null;
+		for (Segment segment : segments) {
+			String value = (segment.kind == null) ? null : resolver.resolve(segment.kind, segment.name);
+			if (value == null) {
+				if (builder != null) builder.append(segment.text);
+				continue;
+			}
+			if (builder == null) {
+				builder = new StringBuilder(source.length()+value.length());
+				builder.append(source, 0, segment.start);
+			}
+			builder.append(value);
+		}
+		return (builder == null) ? source : builder.toString();
+	}
+}
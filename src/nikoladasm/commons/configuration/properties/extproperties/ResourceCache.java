@@ -0,0 +1,287 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.extproperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ResourceCache {
+
+	public static final int DEFAULT_MAX_SIZE = 256;
+
+	public static interface Listener {
+		void cached(String location, boolean hit);
+		void read(String location, long bytes, long nanos);
+		void parsed(String location, long nanos);
+	}
+
+	private static final ResourceCache SHARED = new ResourceCache(DEFAULT_MAX_SIZE);
+
+	protected static final class LoaderReference extends WeakReference<ClassLoader> {
+		private Key key;
+
+		protected LoaderReference(ClassLoader classLoader, ReferenceQueue<ClassLoader> queue) {
+			super(classLoader, queue);
+		}
+	}
+
+	protected static final class Key {
+		private final String location;
+		private final boolean file;
+		private final LoaderReference classLoader;
+		private final int hash;
+
+		protected Key(String location, boolean file, ClassLoader classLoader) {
+			this(location, file, classLoader, null);
+		}
+
+		protected Key(String location, boolean file, ClassLoader classLoader, ReferenceQueue<ClassLoader> queue) {
+			this.location = location;
+			this.file = file;
+			if (classLoader == null) {
+				this.classLoader = null;
+			} else {
+				this.classLoader = new LoaderReference(classLoader, queue);
+				this.classLoader.key = this;
+			}
+			hash = 31 * (31 * location.hashCode() + Boolean.hashCode(file)) + System.identityHashCode(classLoader);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (this == object) return true;
+			if (object == null || !(object instanceof Key)) return false;
+			Key key = (Key) object;
+			if (file != key.file || !location.equals(key.location)) return false;
+			// a key whose loader was collected equals only itself
+			if (classLoader == null || key.classLoader == null) return classLoader == key.classLoader;
+			ClassLoader loader = classLoader.get();
+			return loader != null && loader == key.classLoader.get();
+		}
+	}
+
+	protected static final class Entry {
+		private final Properties properties;
+		private final long lastModified;
+		private final long size;
+
+		protected Entry(Properties properties, long lastModified, long size) {
+			this.properties = properties;
+			this.lastModified = lastModified;
+			this.size = size;
+		}
+	}
+
+	private final int maxSize;
+	private final Map<Key,Entry> entries;
+	private final ReferenceQueue<ClassLoader> collectedLoaders = new ReferenceQueue<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final PrepProperties.PropertyLoader propertyLoader =
+		(path, resourceClazz, properties) -> {
+			if (!loadFromClassPath(path, resourceClazz, properties))
+				loadFromFile(path, properties);
+		};
+
+	public static ResourceCache shared() {
+		return SHARED;
+	}
+
+	public ResourceCache(int maxSize) {
+		if (maxSize < 1) throw new IllegalArgumentException("Cache size must be positive");
+		this.maxSize = maxSize;
+		entries = new LinkedHashMap<Key,Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key,Entry> eldest) {
+				return size() > ResourceCache.this.maxSize;
+			}
+		};
+	}
+
+	public PrepProperties.PropertyLoader propertyLoader() {
+		return propertyLoader;
+	}
+
+	public PrepProperties.PropertyLoader propertyLoader(Listener listener) {
+		if (listener == null) return propertyLoader;
+		return (path, resourceClazz, properties) -> {
+			if (!loadFromClassPath(path, resourceClazz, properties, listener))
+				loadFromFile(path, properties, listener);
+		};
+	}
+
+	public boolean loadFromFile(String path, ConProperties properties) {
+		return loadFromFile(path, properties, null);
+	}
+
+	public boolean loadFromFile(String path, ConProperties properties, Listener listener) {
+		File file = new File(path);
+		if (!file.exists() || file.isDirectory()) return false;
+		Properties cached = cached(new Key(file.getAbsolutePath(), true, null), file, () -> new FileInputStream(file), listener);
+		if (cached == null) return false;
+		properties.load(cached);
+		return true;
+	}
+
+	public boolean loadFromClassPath(String path, Class<?> resourceClazz, ConProperties properties) {
+		return loadFromClassPath(path, resourceClazz, properties, null);
+	}
+
+	public boolean loadFromClassPath(String path, Class<?> resourceClazz, ConProperties properties, Listener listener) {
+		ClassLoader classLoader = resourceClazz.getClassLoader();
+		URL url = resourceClazz.getResource(path);
+		if (url == null && classLoader != null)
+			url = classLoader.getResource(path);
+		if (url == null) return false;
+		URL resourceUrl = url;
+		Properties cached = cached(new Key(url.toExternalForm(), false, classLoader), urlFile(url), () -> resourceUrl.openStream(), listener);
+		if (cached == null) return false;
+		properties.load(cached);
+		return true;
+	}
+
+	public int size() {
+		synchronized (entries) {
+			purge();
+			return entries.size();
+		}
+	}
+
+	public int maxSize() {
+		return maxSize;
+	}
+
+	public long hits() {
+		return hits.get();
+	}
+
+	public long misses() {
+		return misses.get();
+	}
+
+	public void invalidate(File file) {
+		synchronized (entries) {
+			entries.remove(new Key(file.getAbsolutePath(), true, null));
+		}
+	}
+
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	@FunctionalInterface
+	protected static interface StreamSource {
+		InputStream open() throws IOException;
+	}
+
+	protected Properties cached(Key key, File file, StreamSource source) {
+		return cached(key, file, source, null);
+	}
+
+	protected Properties cached(Key key, File file, StreamSource source, Listener listener) {
+		long lastModified = (file == null) ? 0L : file.lastModified();
+		long size = (file == null) ? 0L : file.length();
+		Entry entry;
+		synchronized (entries) {
+			purge();
+			entry = entries.get(key);
+		}
+		if (entry != null && entry.lastModified == lastModified && entry.size == size) {
+			hits.incrementAndGet();
+			if (listener != null) listener.cached(key.location, true);
+			return entry.properties;
+		}
+		misses.incrementAndGet();
+		if (listener != null) listener.cached(key.location, false);
+		Properties properties = new Properties();
+		try (InputStream is = source.open()) {
+			if (listener == null)
+				properties.load(is);
+			else
+				load(key.location, is, properties, listener);
+		} catch (IOException e) {
+			return null;
+		}
+		Key storedKey = storedKey(key);
+		if (storedKey != null) {
+			synchronized (entries) {
+				entries.put(storedKey, new Entry(properties, lastModified, size));
+			}
+		}
+		return properties;
+	}
+
+	// lookups use a probe key; only the stored copy is registered with the queue,
+	// so a collected loader enqueues one reference per entry, not one per lookup
+	protected Key storedKey(Key key) {
+		if (key.classLoader == null) return key;
+		ClassLoader classLoader = key.classLoader.get();
+		return (classLoader == null) ? null : new Key(key.location, key.file, classLoader, collectedLoaders);
+	}
+
+	// entries of collected class loaders, called with the entries lock held
+	protected void purge() {
+		for (Reference<? extends ClassLoader> reference; (reference = collectedLoaders.poll()) != null;)
+			entries.remove(((LoaderReference) reference).key);
+	}
+
+	public static void load(String location, InputStream is, Properties properties, Listener listener) throws IOException {
+		long start = System.nanoTime();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = is.read(buffer)) != -1)
+			bytes.write(buffer, 0, read);
+		long loaded = System.nanoTime();
+		listener.read(location, bytes.size(), loaded - start);
+		properties.load(new ByteArrayInputStream(bytes.toByteArray()));
+		listener.parsed(location, System.nanoTime() - loaded);
+	}
+
+	protected File urlFile(URL url) {
+		if (!"file".equals(url.getProtocol())) return null;
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import java.lang.management.ManagementFactory;
+
+public final class AllocationMeter {
+
+	@FunctionalInterface
+	public static interface Call {
+		Object call() throws Exception;
+	}
+
+	public static final int DEFAULT_WARMUP = 20_000;
+	public static final int DEFAULT_ITERATIONS = 10_000;
+
+	private static final com.sun.management.ThreadMXBean THREAD_BEAN = threadBean();
+
+	private static volatile Object sink;
+
+	private AllocationMeter() {}
+
+	private static com.sun.management.ThreadMXBean threadBean() {
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+			com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+			if (!threadBean.isThreadAllocatedMemorySupported()) return null;
+			threadBean.setThreadAllocatedMemoryEnabled(true);
+			return threadBean.isThreadAllocatedMemoryEnabled() ? threadBean : null;
+		} catch (LinkageError | RuntimeException e) {
+			return null;
+		}
+	}
+
+	public static boolean isSupported() {
+		return THREAD_BEAN != null;
+	}
+
+	public static long bytesPerCall(Call call) {
+		return bytesPerCall(DEFAULT_WARMUP, DEFAULT_ITERATIONS, call);
+	}
+
+	public static long bytesPerCall(int warmup, int iterations, Call call) {
+		if (!isSupported())
+			throw new UnsupportedOperationException("Thread allocation measurement is not supported");
+		try {
+			for (int i = 0; i < warmup; i++)
+				sink = call.call();
+			long threadId = Thread.currentThread().getId();
+			long empty = THREAD_BEAN.getThreadAllocatedBytes(threadId);
+			empty = THREAD_BEAN.getThreadAllocatedBytes(threadId)-empty;
+			long start = THREAD_BEAN.getThreadAllocatedBytes(threadId);
+			for (int i = 0; i < iterations; i++)
+				sink = call.call();
+			long allocated = THREAD_BEAN.getThreadAllocatedBytes(threadId)-start-empty;
+			return Math.max(0, allocated/iterations);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
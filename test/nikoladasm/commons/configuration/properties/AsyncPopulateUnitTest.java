@@ -0,0 +1,224 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import nikoladasm.commons.configuration.properties.annotations.Child;
+import nikoladasm.commons.configuration.properties.annotations.DefaultValue;
+import nikoladasm.commons.configuration.properties.annotations.Property;
+import nikoladasm.commons.configuration.properties.annotations.Required;
+import nikoladasm.commons.configuration.properties.annotations.Resource;
+import nikoladasm.commons.configuration.properties.extproperties.PrepProperties;
+
+public class AsyncPopulateUnitTest {
+
+	public static class AsyncClass1 {
+		@Property("value5")
+		@Resource("resources/res1.properties")
+		String value5;
+
+		@Property("value6")
+		@Resource("resources/res2.properties")
+		String value6;
+
+		@Property("async.value")
+		@DefaultValue("default1")
+		String value;
+
+		@Child(prefix="sub")
+		AsyncClass2 child;
+	}
+
+	public static class AsyncClass2 {
+		@Property("value1")
+		@Resource("resources/res1.properties")
+		String value1;
+	}
+
+	public static interface AsyncInterface1 {
+		@Property("value7")
+		@Resource("resources/res2.properties")
+		String value7();
+	}
+
+	public static class AsyncClass3 {
+		@Property("async.missing")
+		@Required
+		String value;
+	}
+
+	private ExecutorService executor;
+
+	@After
+	public void shutdown() {
+		if (executor != null) executor.shutdownNow();
+	}
+
+	@Test
+	public void shouldBePopulateClassOnExecutor() throws Exception {
+		AtomicInteger tasks = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(2);
+		AsyncClass1 config = PropertyLoader.getInstance()
+			.asyncExecutor(task -> {
+				tasks.incrementAndGet();
+				executor.execute(task);
+			})
+			.populateAsync(AsyncClass1.class)
+			.get(10, TimeUnit.SECONDS);
+		assertThat(config.value5, is(equalTo("res1val5")));
+		assertThat(config.value6, is(equalTo("res2val6")));
+		assertThat(config.value, is(equalTo("default1")));
+		assertThat(config.child.value1, is(equalTo("res1subval1")));
+		assertThat(tasks.get(), is(equalTo(5)));
+	}
+
+	@Test
+	public void shouldBeLoadResourcesConcurrently() {
+		Queue<Runnable> tasks = new ArrayDeque<>();
+		CompletableFuture<AsyncClass1> future = PropertyLoader.getInstance()
+			.asyncExecutor(tasks::add)
+			.populateAsync(AsyncClass1.class);
+		assertThat(future.isDone(), is(equalTo(false)));
+		assertThat(tasks.size(), is(equalTo(1)));
+		tasks.poll().run();
+		assertThat(tasks.size(), is(equalTo(3)));
+		while (!tasks.isEmpty())
+			tasks.poll().run();
+		assertThat(future.isDone(), is(equalTo(true)));
+		assertThat(future.join().child.value1, is(equalTo("res1subval1")));
+	}
+
+	@Test
+	public void shouldBePopulateObjectAsync() throws Exception {
+		AsyncClass1 object = new AsyncClass1();
+		AsyncClass1 config = PropertyLoader.getInstance().populateAsync(object).get(10, TimeUnit.SECONDS);
+		assertThat(config, is(sameInstance(object)));
+		assertThat(config.value6, is(equalTo("res2val6")));
+	}
+
+	@Test
+	public void shouldBePopulateAllAsync() throws Exception {
+		executor = Executors.newFixedThreadPool(4);
+		Object[] configs = PropertyLoader.getInstance()
+			.asyncExecutor(executor)
+			.populateAllAsync(AsyncClass1.class, AsyncInterface1.class, AsyncClass2.class)
+			.get(10, TimeUnit.SECONDS);
+		assertThat(configs.length, is(equalTo(3)));
+		assertThat(((AsyncClass1) configs[0]).value5, is(equalTo("res1val5")));
+		assertThat(((AsyncInterface1) configs[1]).value7(), is(equalTo("res2val7")));
+		assertThat(((AsyncClass2) configs[2]).value1, is(nullValue()));
+	}
+
+	@Test
+	public void shouldBeCompleteExceptionallyWhenRejected() throws Exception {
+		executor = Executors.newSingleThreadExecutor();
+		executor.shutdown();
+		CompletableFuture<AsyncClass1> future = PropertyLoader.getInstance().asyncExecutor(executor).populateAsync(AsyncClass1.class);
+		assertThat(future.isCompletedExceptionally(), is(equalTo(true)));
+		try {
+			future.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), is(instanceOf(RejectedExecutionException.class)));
+		}
+	}
+
+	@Test
+	public void shouldBeFailChildrenRejectedDuringAsyncPopulate() throws Exception {
+		executor = Executors.newSingleThreadExecutor();
+		executor.shutdown();
+		CompletableFuture<AsyncClass1> future = PropertyLoader.getInstance()
+			.childExecutor(executor)
+			.asyncExecutor(Runnable::run)
+			.populateAsync(AsyncClass1.class);
+		assertThat(future.isCompletedExceptionally(), is(equalTo(true)));
+		try {
+			future.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), is(instanceOf(PropertyLoaderException.class)));
+			assertThat(e.getCause().getCause(), is(instanceOf(RejectedExecutionException.class)));
+		}
+	}
+
+	@Test
+	public void shouldBeLoadSessionSlotOnceOutsideMapLock() throws Exception {
+		BindingPlan plan = PropertyLoader.getInstance().bindingPlan(AsyncClass1.class, false, null, null);
+		PropertyLoader.Session session = new PropertyLoader.Session(System.getProperties());
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger loads = new AtomicInteger();
+		PrepProperties properties = new PrepProperties();
+		executor = Executors.newFixedThreadPool(2);
+		Future<PrepProperties> first = executor.submit(() ->
+			session.slotProperties(plan.slot(0), AsyncClass1.class, () -> {
+				loads.incrementAndGet();
+				loading.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return properties;
+			}));
+		assertThat(loading.await(10, TimeUnit.SECONDS), is(equalTo(true)));
+		PrepProperties other = session.slotProperties(plan.slot(1), AsyncClass1.class, PrepProperties::new);
+		assertThat(other, is(not(sameInstance(properties))));
+		Future<PrepProperties> second = executor.submit(() ->
+			session.slotProperties(plan.slot(0), AsyncClass1.class, () -> {
+				loads.incrementAndGet();
+				return new PrepProperties();
+			}));
+		release.countDown();
+		assertThat(first.get(10, TimeUnit.SECONDS), is(sameInstance(properties)));
+		assertThat(second.get(10, TimeUnit.SECONDS), is(sameInstance(properties)));
+		assertThat(loads.get(), is(equalTo(1)));
+	}
+
+	@Test
+	public void shouldBeCompleteExceptionally() throws Exception {
+		CompletableFuture<AsyncClass3> future = PropertyLoader.getInstance().asyncExecutor(Runnable::run).populateAsync(AsyncClass3.class);
+		assertThat(future.isCompletedExceptionally(), is(equalTo(true)));
+		try {
+			future.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), is(instanceOf(PropertyLoaderException.class)));
+			assertThat(e.getCause().getMessage(), containsString("async.missing"));
+		}
+	}
+}
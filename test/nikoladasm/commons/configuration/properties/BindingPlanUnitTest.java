@@ -0,0 +1,202 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+import nikoladasm.commons.configuration.properties.annotations.*;
+
+public class BindingPlanUnitTest {
+
+	public static class CollectableLoader extends PropertyLoader {
+	}
+
+	public static class PlanClass3 {
+		@Property("value1")
+		public String value1;
+	}
+
+	// Defines its own copy of CollectableLoader, everything else comes from the parent
+	private static class CollectableClassLoader extends ClassLoader {
+		CollectableClassLoader() {
+			super(BindingPlanUnitTest.class.getClassLoader());
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!name.equals(CollectableLoader.class.getName())) return super.loadClass(name, resolve);
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> clazz = findLoadedClass(name);
+				if (clazz != null) return clazz;
+				try (InputStream is = getParent().getResourceAsStream(name.replace('.', '/')+".class")) {
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					byte[] buffer = new byte[4096];
+					for (int read; (read = is.read(buffer)) != -1;)
+						bytes.write(buffer, 0, read);
+					return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+				} catch (IOException e) {
+					throw new ClassNotFoundException(name, e);
+				}
+			}
+		}
+	}
+
+	@Context("dev")
+	@Resource("resources/res1.properties")
+	public static class PlanClass1 {
+
+		@Property("value5")
+		@Resource("resources/res1.properties")
+		@Required
+		public String value5;
+
+		@Property("value7")
+		@Resource("resources/res1.properties")
+		@DefaultValue("def")
+		public String value7;
+
+		@Property("value6")
+		@Resource(source=Resource.Type.FILE, value="resources/res2.properties")
+		@ContextPrefix("--")
+		public String value6;
+
+		@Property("value8")
+		public String value8;
+
+		@Child(prefix="sub")
+		@Context("")
+		public PlanClass2 child;
+	}
+
+	public static class PlanClass2 {
+		@Property("value1")
+		public String value1;
+	}
+
+	@Test
+	public void shouldBeGetFlattenedSteps() {
+		BindingPlan plan = PropertyLoader.getInstance().bindingPlan(PlanClass1.class, false, null, "top");
+		assertThat(plan.stepsCount(), is(equalTo(5)));
+		BindingPlan.Step step = plan.step(0);
+		assertThat(step.key(), is(equalTo("top.value5")));
+		assertThat(step.context(), is(equalTo("dev")));
+		assertThat(step.required(), is(true));
+		BindingPlan.Step step2 = plan.step(1);
+		assertThat(step2.defaultValue(), is(equalTo("def")));
+		assertThat(step2.required(), is(false));
+		assertThat(plan.step(2).contextPrefix(), is(equalTo("--")));
+		BindingPlan.Step child = plan.step(4);
+		assertThat(child.isChild(), is(true));
+		assertThat(child.childType(), is(equalTo((Object) PlanClass2.class)));
+		assertThat(child.childPrefix(), is(equalTo("sub")));
+		assertThat(child.context(), is(equalTo("")));
+	}
+
+	@Test
+	public void shouldBeShareResourceSlots() {
+		BindingPlan plan = PropertyLoader.getInstance().bindingPlan(PlanClass1.class, false, null, null);
+		assertThat(plan.slotsCount(), is(equalTo(2)));
+		assertThat(plan.step(0).elementSlot(), is(equalTo(plan.step(0).classSlot())));
+		assertThat(plan.step(1).elementSlot(), is(equalTo(plan.step(0).elementSlot())));
+		assertThat(plan.step(2).elementSlot(), is(not(equalTo(plan.step(0).elementSlot()))));
+		assertThat(plan.step(3).elementSlot(), is(equalTo(-1)));
+	}
+
+	@Test
+	public void shouldBeReuseCompiledPlan() {
+		BindingPlan plan = PropertyLoader.getInstance().bindingPlan(PlanClass1.class, false, "prod", null);
+		assertThat(PropertyLoader.getInstance().bindingPlan(PlanClass1.class, false, "prod", null), is(sameInstance(plan)));
+		assertThat(PropertyLoader.getInstance().bindingPlan(PlanClass1.class, false, "test", null), is(not(sameInstance(plan))));
+		assertThat(PropertyLoader.getInstance().required(true).bindingPlan(PlanClass1.class, false, "prod", null), is(not(sameInstance(plan))));
+	}
+
+	@Test
+	public void shouldBeBoundCompiledPlans() {
+		PropertyLoader loader = PropertyLoader.getInstance();
+		for (int i=0; i < PropertyMetadata.MAX_BINDING_PLANS*3; i++)
+			loader.bindingPlan(PlanClass2.class, false, null, "prefix"+i);
+		assertThat(PropertyMetadata.of(PlanClass2.class).bindingPlansCount() <= PropertyMetadata.MAX_BINDING_PLANS, is(true));
+		BindingPlan plan = loader.bindingPlan(PlanClass2.class, false, null, "last");
+		assertThat(loader.bindingPlan(PlanClass2.class, false, null, "last"), is(sameInstance(plan)));
+	}
+
+	@Test
+	public void shouldBeKeepRecentlyUsedPlans() {
+		PropertyLoader loader = PropertyLoader.getInstance();
+		BindingPlan hot = loader.bindingPlan(PlanClass2.class, false, null, "hot");
+		for (int i=0; i < PropertyMetadata.MAX_BINDING_PLANS*3; i++) {
+			loader.bindingPlan(PlanClass2.class, false, null, "cold"+i);
+			assertThat(loader.bindingPlan(PlanClass2.class, false, null, "hot"), is(sameInstance(hot)));
+		}
+	}
+
+	@Test
+	public void shouldBeEvictPlansReferencingClassLoader() {
+		PropertyLoader loader = PropertyLoader.getInstance();
+		PropertyLoader.BindingPlanKey key = new PropertyLoader.BindingPlanKey(loader, false, null, null);
+		assertThat(key.references(PropertyLoader.class.getClassLoader()), is(true));
+		ClassLoader other = new ClassLoader(null) {};
+		assertThat(key.references(other), is(false));
+		BindingPlan plan = loader.bindingPlan(PlanClass1.class, false, "evict", null);
+		PropertyMetadata.evict(other);
+		assertThat(loader.bindingPlan(PlanClass1.class, false, "evict", null), is(sameInstance(plan)));
+		PropertyMetadata.of(PlanClass1.class).evictPlans(PropertyLoader.class.getClassLoader());
+		assertThat(PropertyMetadata.of(PlanClass1.class).bindingPlansCount(), is(equalTo(0)));
+	}
+
+	@Test
+	public void shouldBePurgePlansOfCollectedLoaderClasses() throws Exception {
+		PropertyMetadata metadata = PropertyMetadata.of(PlanClass3.class);
+		int count = metadata.bindingPlansCount();
+		Class<?> loaderClass = new CollectableClassLoader().loadClass(CollectableLoader.class.getName());
+		WeakReference<Class<?>> reference = new WeakReference<>(loaderClass);
+		PropertyLoader loader = (PropertyLoader) loaderClass.getConstructor().newInstance();
+		loader.bindingPlan(PlanClass3.class, false, null, "collectable");
+		assertThat(metadata.bindingPlansCount(), is(equalTo(count+1)));
+		PropertyLoader.BindingPlanKey key = new PropertyLoader.BindingPlanKey(loader, false, null, "collectable");
+		loader = null;
+		loaderClass = null;
+		for (int i=0; i < 100 && (reference.get() != null || metadata.bindingPlansCount() != count); i++) {
+			System.gc();
+			Thread.sleep(10);
+			PropertyLoader.getInstance().bindingPlan(PlanClass1.class, false, null, "purge");
+		}
+		assertThat(reference.get(), is(nullValue()));
+		assertThat(metadata.bindingPlansCount(), is(equalTo(count)));
+		assertThat(key.equals(key), is(true));
+		assertThat(key.equals(new PropertyLoader.BindingPlanKey(PropertyLoader.getInstance(), false, null, "collectable")), is(false));
+	}
+
+	@Test
+	public void shouldBePopulateWithCompiledPlan() {
+		PlanClass1 conf = PropertyLoader.getInstance().populate(PlanClass1.class);
+		assertThat(conf.value5, is(equalTo("res1val5")));
+		assertThat(conf.value7, is(equalTo("res1val7")));
+		assertThat(conf.child.value1, is(nullValue()));
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import nikoladasm.commons.configuration.properties.annotations.Child;
+import nikoladasm.commons.configuration.properties.annotations.DefaultValue;
+import nikoladasm.commons.configuration.properties.annotations.Property;
+import nikoladasm.commons.configuration.properties.annotations.Required;
+import nikoladasm.commons.configuration.properties.annotations.Resource;
+
+public class ChildExecutorUnitTest {
+
+	public static class ParallelClass1 {
+		@Property("value1")
+		@DefaultValue("root")
+		String value1;
+
+		@Child(prefix="sub")
+		ParallelClass2 child1;
+
+		@Property("value7")
+		@Resource("resources/res1.properties")
+		String value7;
+
+		@Child(prefix="sub")
+		ParallelClass2 child2;
+
+		@Child(prefix="deep")
+		ParallelClass3 child3;
+	}
+
+	public static class ParallelClass2 {
+		@Property("value1")
+		@Resource("resources/res1.properties")
+		String value1;
+	}
+
+	public static class ParallelClass3 {
+		@Child(prefix="deeper")
+		ParallelClass4 child1;
+
+		@Child(prefix="deeper")
+		ParallelClass4 child2;
+	}
+
+	public static class ParallelClass4 {
+		@Child(prefix="sub")
+		ParallelClass2 child1;
+
+		@Child(prefix="sub")
+		ParallelClass2 child2;
+	}
+
+	public static class ParallelClass5 {
+		@Property("parallel.missing1")
+		@Required
+		String value1;
+
+		@Child(prefix="first")
+		ParallelClass6 child1;
+
+		@Child(prefix="second")
+		ParallelClass6 child2;
+	}
+
+	public static class ParallelClass6 {
+		@Property("parallel.missing2")
+		@Required
+		String value1;
+	}
+
+	private ExecutorService executor;
+
+	@After
+	public void shutdown() {
+		if (executor != null) executor.shutdownNow();
+	}
+
+	@Test
+	public void shouldBePopulateChildrenOnExecutor() {
+		AtomicInteger tasks = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(4);
+		ParallelClass1 config = PropertyLoader.getInstance()
+			.childExecutor(task -> {
+				tasks.incrementAndGet();
+				executor.execute(task);
+			})
+			.populate(ParallelClass1.class);
+		assertThat(config.value1, is(equalTo("root")));
+		assertThat(config.value7, is(equalTo("res1val7")));
+		assertThat(config.child1.value1, is(equalTo("res1subval1")));
+		assertThat(config.child2.value1, is(equalTo("res1subval1")));
+		assertThat(config.child1, is(not(sameInstance(config.child2))));
+		assertThat(config.child3.child2.child1.value1, is(equalTo("res1subval1")));
+		assertThat(tasks.get(), is(equalTo(9)));
+	}
+
+	@Test
+	public void shouldBeNotDeadlockOnSingleThreadExecutor() {
+		executor = Executors.newSingleThreadExecutor();
+		ParallelClass1 config = PropertyLoader.getInstance().childExecutor(executor).populate(ParallelClass1.class);
+		assertThat(config.child3.child1, is(notNullValue()));
+		assertThat(config.child3.child2.child2, is(notNullValue()));
+	}
+
+	@Test
+	public void shouldBeRunRejectedChildrenInCallerThread() {
+		executor = Executors.newSingleThreadExecutor();
+		executor.shutdown();
+		ParallelClass1 config = PropertyLoader.getInstance().childExecutor(executor).populate(ParallelClass1.class);
+		assertThat(config.child2.value1, is(equalTo("res1subval1")));
+	}
+
+	@Test
+	public void shouldBeAggregateErrors() {
+		executor = Executors.newFixedThreadPool(2);
+		try {
+			PropertyLoader.getInstance().childExecutor(executor).populate(ParallelClass5.class);
+			fail();
+		} catch (PropertyLoaderException e) {
+			assertThat(e.getMessage(), containsString("3 errors"));
+			assertThat(e.getCause().getMessage(), containsString("parallel.missing1"));
+			assertThat(e.getSuppressed().length, is(equalTo(2)));
+			assertThat(e.getSuppressed()[0].getMessage(), containsString("first.parallel.missing2"));
+			assertThat(e.getSuppressed()[1].getMessage(), containsString("second.parallel.missing2"));
+		}
+	}
+}
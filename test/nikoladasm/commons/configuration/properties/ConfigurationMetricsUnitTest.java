@@ -0,0 +1,212 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nikoladasm.commons.configuration.properties.annotations.DefaultValue;
+import nikoladasm.commons.configuration.properties.annotations.Property;
+import nikoladasm.commons.configuration.properties.annotations.Resource;
+import nikoladasm.commons.configuration.properties.extproperties.ResourceCache;
+
+public class ConfigurationMetricsUnitTest {
+
+	@Resource("resources/res1.properties")
+	public static class MetricsClass1 {
+		@Property("value5")
+		String value5;
+
+		@Property("metrics.int")
+		@DefaultValue("42")
+		int intValue;
+	}
+
+	public static interface MetricsInterface1 {
+		@Property("metrics.int")
+		@DefaultValue("42")
+		int intValue();
+	}
+
+	public static class MetricsClass2 {
+		@Property("metrics.int")
+		@DefaultValue("illegal")
+		int intValue;
+	}
+
+	// Defines its own copies of this test class, MetricsClass1 and its binder
+	private static class IsolatingClassLoader extends ClassLoader {
+		IsolatingClassLoader() {
+			super(ConfigurationMetricsUnitTest.class.getClassLoader());
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!name.startsWith(ConfigurationMetricsUnitTest.class.getName())) return super.loadClass(name, resolve);
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> clazz = findLoadedClass(name);
+				if (clazz != null) return clazz;
+				try (InputStream is = getParent().getResourceAsStream(name.replace('.', '/')+".class")) {
+					if (is == null) throw new ClassNotFoundException(name);
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					byte[] buffer = new byte[4096];
+					for (int read; (read = is.read(buffer)) != -1;)
+						bytes.write(buffer, 0, read);
+					return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+				} catch (IOException e) {
+					throw new ClassNotFoundException(name, e);
+				}
+			}
+		}
+	}
+
+	private ConfigurationMetrics metrics;
+	private PropertyLoader loader;
+
+	@Before
+	public void setUp() {
+		metrics = new ConfigurationMetrics("test");
+		loader = PropertyLoader.getInstance()
+			.resourceCache(new ResourceCache(ResourceCache.DEFAULT_MAX_SIZE))
+			.metrics(metrics);
+	}
+
+	@After
+	public void tearDown() {
+		metrics.unregister();
+	}
+
+	@Test
+	public void shouldBeRecordPopulateMetrics() {
+		loader.populate(MetricsClass1.class);
+		loader.populate(MetricsClass1.class);
+		String className = MetricsClass1.class.getName();
+		assertThat(metrics.getPopulateCount(), is(equalTo(2L)));
+		assertThat(metrics.getPopulateCounts().get(className), is(equalTo(2L)));
+		assertThat(metrics.getPopulateMaxMillis().get(className) > 0.0, is(true));
+		assertThat(metrics.getPopulateAverageMillis().get(className) <= metrics.getPopulateMaxMillis().get(className), is(true));
+		assertThat(metrics.getBindingPlanCompilations(), is(equalTo(1L)));
+		assertThat(metrics.getConverterLookups(), is(equalTo(2L)));
+		assertThat(metrics.getConverterFailures(), is(equalTo(0L)));
+		assertThat(metrics.getConverterLookupMillis() > 0.0, is(true));
+		assertThat(metrics.getConverterReuses(), is(equalTo(2L)));
+		assertThat(metrics.getResourceCacheSize(), is(equalTo(1)));
+		assertThat(metrics.getResourceCacheHits(), is(equalTo(1L)));
+		assertThat(metrics.getResourceCacheHitRatio(), is(equalTo(0.5)));
+		Map<String,Long> lastLoads = metrics.getLastLoadTimestamps();
+		assertThat(lastLoads.size(), is(equalTo(1)));
+		assertThat(lastLoads.keySet().iterator().next(), containsString("res1.properties"));
+		assertThat(lastLoads.values().iterator().next() > 0L, is(true));
+	}
+
+	@Test
+	public void shouldBeNotRecordCacheHitsAsLoads() throws Exception {
+		loader.populate(MetricsClass1.class);
+		long lastLoad = metrics.getLastLoadTimestamps().values().iterator().next();
+		Thread.sleep(20);
+		loader.populate(MetricsClass1.class);
+		assertThat(metrics.getResourceCacheHits(), is(equalTo(1L)));
+		assertThat(metrics.getLastLoadTimestamps().values().iterator().next(), is(equalTo(lastLoad)));
+	}
+
+	@Test
+	public void shouldBeCountOnlyOwnResourceCacheLookups() {
+		ResourceCache cache = new ResourceCache(ResourceCache.DEFAULT_MAX_SIZE);
+		loader.resourceCache(cache);
+		PropertyLoader.getInstance().resourceCache(cache).populate(MetricsClass1.class);
+		loader.populate(MetricsClass1.class);
+		assertThat(cache.hits(), is(equalTo(1L)));
+		assertThat(metrics.getResourceCacheHits(), is(equalTo(1L)));
+		assertThat(metrics.getResourceCacheMisses(), is(equalTo(0L)));
+		metrics.reset();
+		assertThat(metrics.getResourceCacheHits(), is(equalTo(0L)));
+		assertThat(metrics.getResourceCacheHitRatio(), is(equalTo(0.0)));
+		assertThat(cache.hits(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void shouldBeSeparateSameNamedClasses() throws Exception {
+		Class<?> other = new IsolatingClassLoader().loadClass(MetricsClass1.class.getName());
+		assertThat(other, is(not(sameInstance((Object) MetricsClass1.class))));
+		loader.populate(MetricsClass1.class);
+		assertThat(loader.populate(other).getClass(), is(sameInstance((Object) other)));
+		loader.populate(other);
+		assertThat(metrics.getPopulateCount(), is(equalTo(3L)));
+		Map<String,Long> counts = metrics.getPopulateCounts();
+		assertThat(counts.size(), is(equalTo(2)));
+		String className = MetricsClass1.class.getName();
+		assertThat(counts.get(className+"@"+Integer.toHexString(System.identityHashCode(MetricsClass1.class.getClassLoader()))), is(equalTo(1L)));
+		assertThat(counts.get(className+"@"+Integer.toHexString(System.identityHashCode(other.getClassLoader()))), is(equalTo(2L)));
+	}
+
+	@Test
+	public void shouldBeRecordFailures() {
+		try {
+			loader.populate(MetricsClass2.class);
+			fail("Illegal value must fail");
+		} catch (PropertyLoaderException e) {}
+		assertThat(metrics.getPopulateFailures(), is(equalTo(1L)));
+		assertThat(metrics.getPopulateCount(), is(equalTo(0L)));
+	}
+
+	@Test
+	public void shouldBeRecordReloads() {
+		loader.reloadableProxies(true);
+		MetricsInterface1 config = loader.populate(MetricsInterface1.class);
+		assertThat(loader.reload(config), is(true));
+		assertThat(metrics.getReloadCount(), is(equalTo(1L)));
+		assertThat(metrics.getPopulateCount(), is(equalTo(2L)));
+		metrics.reset();
+		assertThat(metrics.getReloadCount(), is(equalTo(0L)));
+		assertThat(metrics.getPopulateCounts().isEmpty(), is(true));
+	}
+
+	@Test
+	public void shouldBeExposeMXBean() throws Exception {
+		ObjectName name = metrics.register();
+		assertThat(metrics.register(), is(sameInstance(name)));
+		loader.populate(MetricsClass1.class);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		assertThat(server.isRegistered(name), is(true));
+		assertThat(server.getAttribute(name, "PopulateCount"), is(equalTo((Object) 1L)));
+		TabularData counts = (TabularData) server.getAttribute(name, "PopulateCounts");
+		CompositeData row = counts.get(new Object[]{MetricsClass1.class.getName()});
+		assertThat(row.get("value"), is(equalTo((Object) 1L)));
+		server.invoke(name, "reset", null, null);
+		assertThat(server.getAttribute(name, "PopulateCount"), is(equalTo((Object) 0L)));
+		metrics.unregister();
+		assertThat(server.isRegistered(name), is(false));
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+import org.junit.Test;
+
+public class InjectorsUnitTest {
+
+	public static class InjectorClass1 {
+		public static final String CONSTANT = "constant";
+
+		public int intValue;
+		private String privateValue;
+		private Integer boxedValue;
+		private long longValue;
+		private String methodValue;
+
+		public void longValue(long value) {
+			longValue = value;
+		}
+
+		public void methodValue(String value) {
+			methodValue = value;
+		}
+
+		public void intMethodValue(int value) {
+			intValue = value;
+		}
+
+		public void failingMethod(String value) {
+			throw new IllegalStateException();
+		}
+
+		public void errorMethod(String value) {
+			throw new OutOfMemoryError();
+		}
+	}
+
+	static class InjectorClass2 {
+		private String value;
+
+		private InjectorClass2() {}
+
+		void value(String value) {
+			this.value = value;
+		}
+
+		void errorValue(String value) {
+			throw new OutOfMemoryError();
+		}
+	}
+
+	public static abstract class InjectorClass3 {}
+
+	@Test
+	public void shouldBeSetFieldValues() throws Exception {
+		InjectorClass1 object = new InjectorClass1();
+		Injectors.field(InjectorClass1.class.getField("intValue")).inject(object, 42);
+		Injectors.field(InjectorClass1.class.getDeclaredField("privateValue")).inject(object, "value");
+		assertThat(object.intValue, is(equalTo(42)));
+		assertThat(object.privateValue, is(equalTo("value")));
+	}
+
+	@Test(expected=PropertyLoaderException.class)
+	public void shouldBeGetExceptionForStaticFinalField() throws Exception {
+		Injectors.field(InjectorClass1.class.getField("CONSTANT")).inject(null, "value");
+	}
+
+	@Test(expected=PropertyLoaderException.class)
+	public void shouldBeGetExceptionForNullPrimitiveValue() throws Exception {
+		Injectors.field(InjectorClass1.class.getField("intValue")).inject(new InjectorClass1(), null);
+	}
+
+	@Test
+	public void shouldBeCallMethods() throws Exception {
+		InjectorClass1 object = new InjectorClass1();
+		Injectors.method(InjectorClass1.class.getMethod("methodValue", String.class)).inject(object, "value");
+		Injectors.method(InjectorClass1.class.getMethod("longValue", long.class)).inject(object, 7L);
+		assertThat(object.methodValue, is(equalTo("value")));
+		assertThat(object.longValue, is(equalTo(7L)));
+		InjectorClass2 object2 = Injectors.constructor(InjectorClass2.class).newInstance();
+		Injectors.method(InjectorClass2.class.getDeclaredMethod("value", String.class)).inject(object2, "value2");
+		assertThat(object2.value, is(equalTo("value2")));
+	}
+
+	@Test
+	public void shouldBeSetPrimitiveValuesWithoutBoxing() throws Exception {
+		InjectorClass1 object = new InjectorClass1();
+		Injectors.field(InjectorClass1.class.getField("intValue")).injectInt(object, 42);
+		Injectors.field(InjectorClass1.class.getDeclaredField("longValue")).injectLong(object, 7L);
+		assertThat(object.intValue, is(equalTo(42)));
+		assertThat(object.longValue, is(equalTo(7L)));
+		Injectors.method(InjectorClass1.class.getMethod("intMethodValue", int.class)).injectInt(object, 43);
+		Injectors.method(InjectorClass1.class.getMethod("longValue", long.class)).injectLong(object, 8L);
+		assertThat(object.intValue, is(equalTo(43)));
+		assertThat(object.longValue, is(equalTo(8L)));
+	}
+
+	@Test
+	public void shouldBeBoxPrimitiveValuesForWrapperMembers() throws Exception {
+		InjectorClass1 object = new InjectorClass1();
+		Injectors.field(InjectorClass1.class.getDeclaredField("boxedValue")).injectInt(object, 42);
+		assertThat(object.boxedValue, is(equalTo(42)));
+	}
+
+	@Test(expected=PropertyLoaderException.class)
+	public void shouldBeGetExceptionWhenMethodFails() throws Exception {
+		Injectors.method(InjectorClass1.class.getMethod("failingMethod", String.class)).inject(new InjectorClass1(), "value");
+	}
+
+	@Test(expected=OutOfMemoryError.class)
+	public void shouldBeRethrowErrorFromLinkedMethod() throws Exception {
+		Injectors.method(InjectorClass1.class.getMethod("errorMethod", String.class)).inject(new InjectorClass1(), "value");
+	}
+
+	@Test(expected=OutOfMemoryError.class)
+	public void shouldBeRethrowErrorFromReflectiveMethod() throws Exception {
+		Injectors.method(InjectorClass2.class.getDeclaredMethod("errorValue", String.class)).inject(Injectors.constructor(InjectorClass2.class).newInstance(), "value");
+	}
+
+	@Test
+	public void shouldBeCreateInstances() {
+		assertThat(Injectors.constructor(InjectorClass1.class).newInstance(), is(instanceOf(InjectorClass1.class)));
+	}
+
+	@Test(expected=PropertyLoaderException.class)
+	public void shouldBeGetExceptionForAbstractClass() {
+		Injectors.constructor(InjectorClass3.class).newInstance();
+	}
+}
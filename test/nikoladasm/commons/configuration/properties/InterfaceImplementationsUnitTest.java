@@ -0,0 +1,221 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import org.junit.Test;
+
+import nikoladasm.commons.configuration.properties.annotations.Child;
+import nikoladasm.commons.configuration.properties.annotations.DefaultValue;
+import nikoladasm.commons.configuration.properties.annotations.Property;
+import nikoladasm.commons.configuration.properties.annotations.Resource;
+
+public class InterfaceImplementationsUnitTest {
+
+	public static interface ImplInterface1 {
+		@Property("impl.string")
+		@DefaultValue("string")
+		String stringValue();
+
+		@Property("impl.int")
+		@DefaultValue("42")
+		int intValue();
+
+		@Property("impl.long")
+		@DefaultValue("9000000000")
+		long longValue();
+
+		@Property("impl.double")
+		@DefaultValue("1.5")
+		double doubleValue();
+
+		@Property("impl.boolean")
+		@DefaultValue("true")
+		boolean booleanValue();
+
+		@Property("impl.list")
+		@DefaultValue("1,2,3")
+		List<Integer> listValue();
+
+		@Property("impl.array")
+		@DefaultValue("a,b")
+		String[] arrayValue();
+
+		@Property("value5")
+		@Resource("resources/res1.properties")
+		String resourceValue();
+
+		@Child(prefix="sub")
+		ImplInterface2 child();
+
+		String nonPropertyValue();
+
+		int nonPropertyPrimitiveValue();
+
+		default String defaultValue() {
+			return "default";
+		}
+	}
+
+	public static interface ImplInterface2 {
+		@Property("value1")
+		@Resource("resources/res1.properties")
+		String value1();
+	}
+
+	public static interface ImplInterface3 {
+		@Property("impl.missing")
+		int missingValue();
+	}
+
+	static interface ImplInterface4 {
+		@Property("impl.string")
+		@DefaultValue("string")
+		String stringValue();
+	}
+
+	public static interface ImplInterface5 {
+		@Property("impl.string")
+		@DefaultValue("string")
+		String stringValue();
+
+		@Override
+		boolean equals(Object object);
+
+		@Override
+		int hashCode();
+
+		@Override
+		String toString();
+	}
+
+	private PropertyLoader loader = PropertyLoader.getInstance().generatedImplementations(true);
+
+	@Test
+	public void shouldBeGetValuesFromGeneratedImplementation() {
+		ImplInterface1 config = loader.populate(ImplInterface1.class);
+		assertThat(Proxy.isProxyClass(config.getClass()), is(false));
+		assertThat(config.getClass().getName(), is(equalTo(ImplInterface1.class.getName()+InterfaceImplementations.CLASS_NAME_SUFFIX)));
+		assertThat(config.stringValue(), is(equalTo("string")));
+		assertThat(config.intValue(), is(equalTo(42)));
+		assertThat(config.longValue(), is(equalTo(9000000000L)));
+		assertThat(config.doubleValue(), is(equalTo(1.5)));
+		assertThat(config.booleanValue(), is(true));
+		assertThat(config.listValue().get(2), is(equalTo(3)));
+		assertThat(config.arrayValue()[1], is(equalTo("b")));
+		assertThat(config.resourceValue(), is(equalTo("res1val5")));
+		assertThat(config.child().value1(), is(equalTo("res1subval1")));
+		assertThat(Proxy.isProxyClass(config.child().getClass()), is(false));
+	}
+
+	@Test
+	public void shouldBeGetSameValuesAsProxy() {
+		ImplInterface1 generated = loader.populate(ImplInterface1.class);
+		ImplInterface1 proxy = PropertyLoader.getInstance().populate(ImplInterface1.class);
+		assertThat(Proxy.isProxyClass(proxy.getClass()), is(true));
+		assertThat(generated.stringValue(), is(equalTo(proxy.stringValue())));
+		assertThat(generated.intValue(), is(equalTo(proxy.intValue())));
+		assertThat(generated.listValue(), is(equalTo(proxy.listValue())));
+		assertThat(generated.nonPropertyValue(), is(nullValue()));
+		assertThat(proxy.nonPropertyValue(), is(nullValue()));
+	}
+
+	@Test
+	public void shouldBeMatchProxyHashCodeAndToString() {
+		ImplInterface1 generated = loader.populate(ImplInterface1.class);
+		ImplInterface1 proxy = PropertyLoader.getInstance().populate(ImplInterface1.class);
+		assertThat(generated.hashCode(), is(equalTo(proxy.hashCode())));
+		assertThat(generated.toString(), is(equalTo(proxy.toString())));
+		assertThat(generated.child().toString(), is(equalTo(proxy.child().toString())));
+	}
+
+	@Test
+	public void shouldBeCompareByValuesLikeProxy() {
+		PropertyLoader proxyLoader = PropertyLoader.getInstance();
+		ImplInterface2 generated1 = loader.populate(ImplInterface2.class);
+		ImplInterface2 generated2 = loader.populate(ImplInterface2.class);
+		ImplInterface2 generated3 = loader.populate(null, "sub", ImplInterface2.class);
+		ImplInterface2 proxy1 = proxyLoader.populate(ImplInterface2.class);
+		ImplInterface2 proxy2 = proxyLoader.populate(ImplInterface2.class);
+		ImplInterface2 proxy3 = proxyLoader.populate(null, "sub", ImplInterface2.class);
+		assertThat(generated1.equals(generated1), is(equalTo(proxy1.equals(proxy1))));
+		assertThat(generated1.equals(generated2), is(equalTo(proxy1.equals(proxy2))));
+		assertThat(generated1.equals(generated2), is(true));
+		assertThat(generated1.hashCode(), is(equalTo(generated2.hashCode())));
+		assertThat(generated1.equals(generated3), is(equalTo(proxy1.equals(proxy3))));
+		assertThat(generated1.equals(generated3), is(false));
+		assertThat(generated1.equals(null), is(equalTo(proxy1.equals(null))));
+		assertThat(generated1.equals("value"), is(equalTo(proxy1.equals("value"))));
+		assertThat(generated1.equals(proxy1), is(false));
+		assertThat(proxy1.equals(generated1), is(false));
+		assertThat(generated3.toString(), is(equalTo(proxy3.toString())));
+	}
+
+	@Test
+	public void shouldBeUseValueSemanticsForRedeclaredMethods() {
+		ImplInterface5 generated1 = loader.populate(ImplInterface5.class);
+		ImplInterface5 generated2 = loader.populate(ImplInterface5.class);
+		ImplInterface5 proxy1 = PropertyLoader.getInstance().populate(ImplInterface5.class);
+		ImplInterface5 proxy2 = PropertyLoader.getInstance().populate(ImplInterface5.class);
+		assertThat(Proxy.isProxyClass(generated1.getClass()), is(false));
+		assertThat(generated1, is(not(sameInstance(generated2))));
+		assertThat(generated1.equals(generated2), is(true));
+		assertThat(generated1.equals(generated2), is(equalTo(proxy1.equals(proxy2))));
+		assertThat(generated1.hashCode(), is(equalTo(generated2.hashCode())));
+		assertThat(generated1.hashCode(), is(equalTo(proxy1.hashCode())));
+		assertThat(generated1.toString(), is(equalTo(proxy1.toString())));
+		assertThat(generated1.toString(), is(equalTo("ImplInterface5{stringValue=string}")));
+	}
+
+	@Test(expected=NullPointerException.class)
+	public void shouldBeGetExceptionForNonPropertyPrimitiveValue() {
+		loader.populate(ImplInterface1.class).nonPropertyPrimitiveValue();
+	}
+
+	@Test
+	public void shouldBeOverrideDefaultMethods() {
+		assertThat(loader.populate(ImplInterface1.class).defaultValue(), is(nullValue()));
+	}
+
+	@Test
+	public void shouldBeReuseGeneratedClass() {
+		assertThat(loader.populate(ImplInterface1.class).getClass(),
+			is(sameInstance(loader.populate(ImplInterface1.class).getClass())));
+	}
+
+	@Test
+	public void shouldBeFallBackToProxyForMissingPrimitiveValue() {
+		ImplInterface3 config = loader.populate(ImplInterface3.class);
+		assertThat(Proxy.isProxyClass(config.getClass()), is(true));
+	}
+
+	@Test
+	public void shouldBeFallBackToProxyForNonPublicInterface() {
+		assertThat(InterfaceImplementations.isSupported(ImplInterface4.class), is(false));
+		ImplInterface4 config = loader.populate(ImplInterface4.class);
+		assertThat(Proxy.isProxyClass(config.getClass()), is(true));
+		assertThat(config.stringValue(), is(equalTo("string")));
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import nikoladasm.commons.configuration.properties.annotations.Child;
+import nikoladasm.commons.configuration.properties.annotations.DefaultValue;
+import nikoladasm.commons.configuration.properties.annotations.Property;
+import nikoladasm.commons.configuration.properties.annotations.Resource;
+
+public class LazyChildUnitTest {
+
+	private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+	public static class LazyChildClass {
+		@Property("value1")
+		@Resource("resources/res1.properties")
+		String value1;
+
+		public LazyChildClass() {
+			INSTANCES.incrementAndGet();
+		}
+	}
+
+	public static class OtherResourceClass {
+		@Property("value1")
+		@Resource("resources/res2.properties")
+		String value1;
+	}
+
+	public static interface LazyChildInterface {
+		@Property("lazy.child")
+		@DefaultValue("child")
+		String childValue();
+	}
+
+	public static class LazyParentClass {
+		@Property("lazy.parent")
+		@DefaultValue("parent")
+		String parentValue;
+
+		@Child(prefix="sub")
+		Lazy<LazyChildClass> lazyChild;
+
+		@Child(prefix="sub", lazy=true)
+		LazyChildInterface lazyInterface;
+
+		@Child(prefix="sub")
+		LazyChildInterface eagerInterface;
+	}
+
+	public static class IllegalLazyClass {
+		@Child(prefix="sub", lazy=true)
+		LazyChildClass child;
+	}
+
+	@Before
+	public void setUp() {
+		INSTANCES.set(0);
+	}
+
+	@Test
+	public void shouldBePopulateLazyValueOnFirstAccess() {
+		LazyParentClass config = PropertyLoader.getInstance().populate(LazyParentClass.class);
+		assertThat(config.parentValue, is(equalTo("parent")));
+		assertThat(config.lazyChild.isLoaded(), is(false));
+		assertThat(INSTANCES.get(), is(equalTo(0)));
+		LazyChildClass child = config.lazyChild.get();
+		assertThat(child.value1, is(equalTo("res1subval1")));
+		assertThat(config.lazyChild.get(), is(sameInstance(child)));
+		assertThat(INSTANCES.get(), is(equalTo(1)));
+	}
+
+	@Test
+	public void shouldBePopulateLazyInterfaceChild() {
+		LazyParentClass config = PropertyLoader.getInstance().populate(LazyParentClass.class);
+		assertThat(Proxy.getInvocationHandler(config.lazyInterface), is(instanceOf(LazyProxyHandler.class)));
+		assertThat(Proxy.getInvocationHandler(config.eagerInterface), is(not(instanceOf(LazyProxyHandler.class))));
+		assertThat(config.lazyInterface.childValue(), is(equalTo("child")));
+		assertThat(config.lazyInterface, is(equalTo(config.eagerInterface)));
+	}
+
+	@Test
+	public void shouldBePopulateLazyChildrenWithChildExecutor() {
+		LazyParentClass config = PropertyLoader.getInstance()
+			.childExecutor(Runnable::run)
+			.populate(LazyParentClass.class);
+		assertThat(config.lazyChild.isLoaded(), is(false));
+		assertThat(config.lazyChild.get().value1, is(equalTo("res1subval1")));
+	}
+
+	@Test
+	public void shouldBeSeedLazyChildWithItsLoadedSlotsOnly() {
+		PropertyLoader loader = PropertyLoader.getInstance();
+		PropertyLoader.Session session = new PropertyLoader.Session(System.getProperties());
+		BindingPlan plan = loader.bindingPlan(LazyChildClass.class, false, null, "sub");
+		assertThat(session.seed(plan).session().slotsCount(), is(equalTo(0)));
+		loader.populate(null, "sub", LazyChildClass.class, session);
+		loader.populate(null, null, OtherResourceClass.class, session);
+		assertThat(session.slotsCount(), is(equalTo(2)));
+		PropertyLoader.Session seeded = session.seed(plan).session();
+		assertThat(seeded.slotsCount(), is(equalTo(1)));
+		assertThat(loader.populate(null, "sub", LazyChildClass.class, seeded).value1, is(equalTo("res1subval1")));
+		assertThat(seeded.slotsCount(), is(equalTo(1)));
+	}
+
+	@Test(expected = PropertyLoaderException.class)
+	public void shouldBeThrowExceptionForLazyClassChild() {
+		PropertyLoader.getInstance().populate(IllegalLazyClass.class);
+	}
+
+	@Test
+	public void shouldBeLoadLazyOnce() {
+		AtomicInteger calls = new AtomicInteger();
+		Lazy<String> lazy = Lazy.of(() -> "value"+calls.incrementAndGet());
+		assertThat(lazy.toString(), is(equalTo("Lazy[not loaded]")));
+		assertThat(lazy.get(), is(equalTo("value1")));
+		assertThat(lazy.get(), is(equalTo("value1")));
+		assertThat(Lazy.value("value").isLoaded(), is(true));
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import nikoladasm.commons.configuration.properties.annotations.Child;
+import nikoladasm.commons.configuration.properties.annotations.Context;
+import nikoladasm.commons.configuration.properties.annotations.DefaultValue;
+import nikoladasm.commons.configuration.properties.annotations.Property;
+import nikoladasm.commons.configuration.properties.annotations.Required;
+import nikoladasm.commons.configuration.properties.annotations.UseConverter;
+import nikoladasm.commons.configuration.properties.converters.Converter;
+
+public class LazyProxyHandlerUnitTest {
+
+	private static final AtomicInteger CONVERSIONS = new AtomicInteger();
+
+	public static class CountingConverter implements Converter<String> {
+		@Override
+		public String convert(String source) throws Exception {
+			CONVERSIONS.incrementAndGet();
+			Thread.sleep(5);
+			return source;
+		}
+	}
+
+	private static final CountDownLatch BLOCKED = new CountDownLatch(1);
+	private static final CountDownLatch RELEASED = new CountDownLatch(1);
+
+	public static class BlockingConverter implements Converter<String> {
+		@Override
+		public String convert(String source) throws Exception {
+			BLOCKED.countDown();
+			RELEASED.await();
+			return source;
+		}
+	}
+
+	public static interface BlockingInterface {
+		@Property("lazy.blocked")
+		@DefaultValue("blocked")
+		@UseConverter(BlockingConverter.class)
+		String blockedValue();
+
+		@Property("lazy.free")
+		@DefaultValue("free")
+		String freeValue();
+	}
+
+	public static interface LazyChild {
+		@Property("lazy.child")
+		@DefaultValue("child")
+		String childValue();
+	}
+
+	public static interface LazyInterface {
+		@Property("lazy.counted")
+		@DefaultValue("counted")
+		@UseConverter(CountingConverter.class)
+		String countedValue();
+
+		@Property("lazy.int")
+		@DefaultValue("42")
+		int intValue();
+
+		@Property("lazy.required")
+		@Required
+		String requiredValue();
+
+		@Child(prefix="")
+		LazyChild child();
+
+		String nonPropertyValue();
+	}
+
+	public static interface EagerInterface {
+		@Property("lazy.int")
+		@DefaultValue("42")
+		int intValue();
+	}
+
+	public static interface ContextInterface {
+		@Property("lazy.context")
+		@Context("dev")
+		String devValue();
+
+		@Property("lazy.context")
+		String plainValue();
+	}
+
+	private PropertyLoader loader;
+
+	@Before
+	public void setUp() {
+		CONVERSIONS.set(0);
+		loader = PropertyLoader.getInstance().lazyProxies(true);
+	}
+
+	private static LazyProxyHandler handler(Object proxy) {
+		return (LazyProxyHandler) Proxy.getInvocationHandler(proxy);
+	}
+
+	@Test
+	public void shouldBeResolveOnFirstInvocation() throws Exception {
+		LazyInterface config = loader.populate(LazyInterface.class);
+		LazyProxyHandler handler = handler(config);
+		assertThat(handler.isResolved(LazyInterface.class.getMethod("intValue")), is(false));
+		assertThat(config.intValue(), is(equalTo(42)));
+		assertThat(handler.isResolved(LazyInterface.class.getMethod("intValue")), is(true));
+		assertThat(handler.isResolved(LazyInterface.class.getMethod("countedValue")), is(false));
+		assertThat(CONVERSIONS.get(), is(equalTo(0)));
+		assertThat(config.child().childValue(), is(equalTo("child")));
+		assertThat(config.nonPropertyValue(), is(nullValue()));
+	}
+
+	@Test
+	public void shouldBeFailOnInvocationOfMissingRequiredProperty() {
+		LazyInterface config = loader.populate(LazyInterface.class);
+		assertThat(config.intValue(), is(equalTo(42)));
+		try {
+			config.requiredValue();
+			fail("Required property must fail");
+		} catch (PropertyLoaderException e) {
+			assertThat(e.getMessage(), containsString("lazy.required"));
+		}
+	}
+
+	@Test
+	public void shouldBeResolveOnceUnderContention() throws Exception {
+		LazyInterface config = loader.populate(LazyInterface.class);
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[8];
+		String[] results = new String[threads.length];
+		for (int i=0; i < threads.length; i++) {
+			int index = i;
+			threads[i] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				results[index] = config.countedValue();
+			});
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+		for (String result : results)
+			assertThat(result, is(equalTo("counted")));
+		assertThat(CONVERSIONS.get(), is(equalTo(1)));
+	}
+
+	@Test
+	public void shouldBeNotWaitForOtherSlots() throws Exception {
+		BlockingInterface config = loader.populate(BlockingInterface.class);
+		Thread blocked = new Thread(config::blockedValue);
+		blocked.start();
+		try {
+			assertThat(BLOCKED.await(10, TimeUnit.SECONDS), is(true));
+			assertThat(config.freeValue(), is(equalTo("free")));
+		} finally {
+			RELEASED.countDown();
+			blocked.join();
+		}
+		assertThat(config.blockedValue(), is(equalTo("blocked")));
+	}
+
+	@Test
+	public void shouldBePreload() {
+		System.setProperty("lazy.required", "value");
+		LazyInterface config;
+		try {
+			config = loader.preload(loader.populate(LazyInterface.class));
+		} finally {
+			System.clearProperty("lazy.required");
+		}
+		assertThat(handler(config).isPreloaded(), is(true));
+		assertThat(CONVERSIONS.get(), is(equalTo(1)));
+		assertThat(config.requiredValue(), is(equalTo("value")));
+		assertThat(config.countedValue(), is(equalTo("counted")));
+		assertThat(CONVERSIONS.get(), is(equalTo(1)));
+	}
+
+	@Test
+	public void shouldBeEqualToEagerProxy() {
+		EagerInterface lazy = loader.populate(EagerInterface.class);
+		EagerInterface eager = PropertyLoader.getInstance().populate(EagerInterface.class);
+		assertThat(lazy.equals(eager), is(true));
+		assertThat(eager.equals(lazy), is(true));
+		assertThat(lazy.hashCode(), is(equalTo(eager.hashCode())));
+		assertThat(lazy.toString(), is(equalTo(eager.toString())));
+	}
+
+	@Test
+	public void shouldBeResolveDifferentContextsConcurrently() throws Exception {
+		System.setProperty("lazy.context", "plain");
+		System.setProperty("%dev.lazy.context", "dev");
+		try {
+			for (int round=0; round < 200; round++) {
+				ContextInterface config = loader.populate(ContextInterface.class);
+				CountDownLatch start = new CountDownLatch(1);
+				String[] results = new String[2];
+				Thread dev = new Thread(() -> {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					results[0] = config.devValue();
+				});
+				Thread plain = new Thread(() -> {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					results[1] = config.plainValue();
+				});
+				dev.start();
+				plain.start();
+				start.countDown();
+				dev.join();
+				plain.join();
+				assertThat(results[0], is(equalTo("dev")));
+				assertThat(results[1], is(equalTo("plain")));
+			}
+		} finally {
+			System.clearProperty("lazy.context");
+			System.clearProperty("%dev.lazy.context");
+		}
+	}
+}
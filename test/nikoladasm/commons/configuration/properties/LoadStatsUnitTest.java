@@ -0,0 +1,106 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+import org.junit.Test;
+
+import nikoladasm.commons.configuration.properties.annotations.DefaultValue;
+import nikoladasm.commons.configuration.properties.annotations.IncludeKey;
+import nikoladasm.commons.configuration.properties.annotations.Property;
+import nikoladasm.commons.configuration.properties.annotations.Resource;
+import nikoladasm.commons.configuration.properties.extproperties.ResourceCache;
+
+public class LoadStatsUnitTest {
+
+	@Resource("resources/top.properties")
+	@IncludeKey("include")
+	public static class StatsClass1 {
+		@Property("parent.key1")
+		String parentValue;
+
+		@Property("child1.key1")
+		String childValue;
+
+		@Property("stats.int")
+		@DefaultValue("7")
+		int intValue;
+	}
+
+	private static String scope(LoadStats stats, String suffix) {
+		for (String scope : stats.scopes())
+			if (scope.endsWith(suffix)) return scope;
+		return null;
+	}
+
+	private static void assertStats(LoadStats stats, int expectedMisses) {
+		String className = StatsClass1.class.getName();
+		assertThat(stats.counter(className, LoadStats.Phase.RESOLVE).count(), is(equalTo(3L)));
+		assertThat(stats.counter(className, LoadStats.Phase.CONVERT).count(), is(equalTo(3L)));
+		assertThat(stats.counter(className, LoadStats.Phase.INJECT).count(), is(equalTo(3L)));
+		String top = scope(stats, "resources/top.properties");
+		assertThat(top, is(notNullValue()));
+		assertThat(stats.counter(top, LoadStats.Phase.IO).count(), is(equalTo((long) expectedMisses)));
+		assertThat(stats.counter(top, LoadStats.Phase.PARSE).count(), is(equalTo((long) expectedMisses)));
+		assertThat(stats.counter("resources/child1.properties", LoadStats.Phase.INCLUDE).count(), is(equalTo(1L)));
+		assertThat(stats.total(LoadStats.Phase.INCLUDE).count(), is(equalTo(3L)));
+		assertThat(stats.bytesRead(top) > 0, is(true));
+	}
+
+	@Test
+	public void shouldBeRecordStatsWithCache() {
+		LoadStats stats = new LoadStats();
+		PropertyLoader loader = PropertyLoader.getInstance()
+			.resourceCache(new ResourceCache(ResourceCache.DEFAULT_MAX_SIZE))
+			.loadStats(stats);
+		StatsClass1 config = loader.populate(StatsClass1.class);
+		assertThat(config.parentValue, is(equalTo("parent.value1")));
+		assertThat(config.childValue, is(equalTo("child1.value1")));
+		assertStats(stats, 1);
+		assertThat(stats.cacheMisses(), is(equalTo(4L)));
+		assertThat(stats.cacheHitRate(), is(equalTo(0.0)));
+		stats.reset();
+		loader.populate(StatsClass1.class);
+		assertThat(stats.cacheHits(), is(equalTo(4L)));
+		assertThat(stats.cacheHitRate(), is(equalTo(1.0)));
+		assertThat(stats.bytesRead(), is(equalTo(0L)));
+	}
+
+	@Test
+	public void shouldBeRecordStatsWithoutCache() {
+		LoadStats stats = new LoadStats();
+		PropertyLoader.getInstance()
+			.resourceCache(null)
+			.loadStats(stats)
+			.populate(StatsClass1.class);
+		assertStats(stats, 1);
+		assertThat(stats.cacheHits() + stats.cacheMisses(), is(equalTo(0L)));
+		assertThat(stats.toString(), containsString(StatsClass1.class.getName()+": RESOLVE="));
+	}
+
+	@Test
+	public void shouldBeDisabledByDefault() {
+		PropertyLoader loader = PropertyLoader.getInstance();
+		assertThat(loader.loadStats(), is(nullValue()));
+		assertThat(loader.populate(StatsClass1.class).parentValue, is(equalTo("parent.value1")));
+	}
+}
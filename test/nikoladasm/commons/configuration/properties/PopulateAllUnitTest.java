@@ -0,0 +1,132 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import nikoladasm.commons.configuration.properties.annotations.Child;
+import nikoladasm.commons.configuration.properties.annotations.DefaultValue;
+import nikoladasm.commons.configuration.properties.annotations.Property;
+import nikoladasm.commons.configuration.properties.annotations.Resource;
+import nikoladasm.commons.configuration.properties.extproperties.PrepProperties;
+import nikoladasm.commons.configuration.properties.extproperties.ResourceCache;
+
+public class PopulateAllUnitTest {
+
+	@Resource("resources/res1.properties")
+	public static class BatchClass1 {
+		@Property("value5")
+		String value5;
+
+		@Property("batch.value")
+		@DefaultValue("default1")
+		String value;
+	}
+
+	public static class BatchClass2 {
+		@Property("value7")
+		@Resource("resources/res1.properties")
+		String value7;
+
+		@Child(prefix="sub")
+		BatchClass3 child;
+	}
+
+	public static class BatchClass3 {
+		@Property("value1")
+		@Resource("resources/res1.properties")
+		String value1;
+	}
+
+	public static interface BatchInterface1 {
+		@Property("value5")
+		@Resource("resources/res1.properties")
+		String value5();
+
+		@Property("batch.value")
+		@DefaultValue("default2")
+		String value();
+	}
+
+	@Test
+	public void shouldBePopulateAllClasses() {
+		Object[] configs = PropertyLoader.getInstance().populateAll(BatchClass1.class, BatchClass2.class, BatchInterface1.class);
+		assertThat(configs.length, is(equalTo(3)));
+		BatchClass1 config1 = (BatchClass1) configs[0];
+		BatchClass2 config2 = (BatchClass2) configs[1];
+		BatchInterface1 config3 = (BatchInterface1) configs[2];
+		assertThat(config1.value5, is(equalTo("res1val5")));
+		assertThat(config1.value, is(equalTo("default1")));
+		assertThat(config2.value7, is(equalTo("res1val7")));
+		assertThat(config2.child.value1, is(equalTo("res1subval1")));
+		assertThat(config3.value5(), is(equalTo("res1val5")));
+		assertThat(config3.value(), is(equalTo("default2")));
+	}
+
+	@Test
+	public void shouldBePopulateAllObjects() {
+		BatchClass1 config1 = new BatchClass1();
+		BatchClass2 config2 = new BatchClass2();
+		Object[] configs = PropertyLoader.getInstance().populateAll(config1, config2);
+		assertThat(configs[0], is(sameInstance(config1)));
+		assertThat(config1.value5, is(equalTo("res1val5")));
+		assertThat(config2.child.value1, is(equalTo("res1subval1")));
+	}
+
+	@Test
+	public void shouldBeLoadSharedResourcesOnce() {
+		ResourceCache cache = new ResourceCache(ResourceCache.DEFAULT_MAX_SIZE);
+		PropertyLoader.getInstance().resourceCache(cache).populateAll(BatchClass1.class, BatchClass2.class, BatchClass1.class);
+		assertThat(cache.misses(), is(equalTo(1L)));
+		assertThat(cache.hits(), is(equalTo(0L)));
+	}
+
+	@Test
+	public void shouldBeShareSlotsAndValues() {
+		Properties properties = new Properties();
+		properties.setProperty("batch.value", "sys");
+		PropertyLoader.Session session = new PropertyLoader.Session(properties);
+		PropertyLoader loader = PropertyLoader.getInstance();
+		BatchClass1 config1 = loader.populate(null, null, BatchClass1.class, session);
+		BatchClass1 config2 = loader.populate(null, null, BatchClass1.class, session);
+		assertThat(config1.value, is(equalTo("sys")));
+		assertThat(config2.value, is(equalTo("sys")));
+		assertThat(session.slotsCount(), is(equalTo(1)));
+		assertThat(session.valuesCount(), is(equalTo(3)));
+	}
+
+	@Test
+	public void shouldBeMemoizeMissingValues() {
+		PropertyLoader.Session session = new PropertyLoader.Session(new Properties());
+		PrepProperties properties = session.sysProperties();
+		int[] calls = new int[1];
+		for (int i=0; i < 3; i++)
+			assertThat(session.value(properties, "missing", null, null, () -> {
+				calls[0]++;
+				return null;
+			}), is(nullValue()));
+		assertThat(calls[0], is(equalTo(1)));
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import nikoladasm.commons.configuration.properties.annotations.DefaultValue;
+import nikoladasm.commons.configuration.properties.annotations.Property;
+
+public class PropertiesProxyHandlerUnitTest {
+
+	public static interface HandlerInterface1 {
+		@Property("handler.string")
+		@DefaultValue("value")
+		String stringValue();
+
+		@Property("handler.int")
+		@DefaultValue("42")
+		int intValue();
+
+		@Property("handler.array")
+		@DefaultValue("1,2")
+		int[] arrayValue();
+
+		String nonPropertyValue();
+	}
+
+	public static interface HandlerInterface2 {
+		@Property("handler.string")
+		@DefaultValue("value")
+		String stringValue();
+	}
+
+	@Test
+	public void shouldBeGetValuesBySlot() {
+		HandlerInterface1 config = PropertyLoader.getInstance().populate(HandlerInterface1.class);
+		for (int i=0; i < 3; i++) {
+			assertThat(config.stringValue(), is(equalTo("value")));
+			assertThat(config.intValue(), is(equalTo(42)));
+			assertThat(config.arrayValue()[1], is(equalTo(2)));
+			assertThat(config.nonPropertyValue(), is(nullValue()));
+		}
+	}
+
+	@Test
+	public void shouldBeEqualForSameValues() {
+		HandlerInterface1 config1 = PropertyLoader.getInstance().populate(HandlerInterface1.class);
+		HandlerInterface1 config2 = PropertyLoader.getInstance().populate(HandlerInterface1.class);
+		assertThat(config1.equals(config1), is(true));
+		assertThat(config1.equals(config2), is(true));
+		assertThat(config1.hashCode(), is(equalTo(config2.hashCode())));
+		assertThat(config1.equals(null), is(false));
+		assertThat(config1.equals("value"), is(false));
+	}
+
+	@Test
+	public void shouldBeNotEqualForDifferentValues() {
+		HandlerInterface1 config1 = PropertyLoader.getInstance().populate(HandlerInterface1.class);
+		System.setProperty("handler.int", "43");
+		try {
+			HandlerInterface1 config2 = PropertyLoader.getInstance().populate(HandlerInterface1.class);
+			assertThat(config1.equals(config2), is(false));
+		} finally {
+			System.clearProperty("handler.int");
+		}
+	}
+
+	@Test
+	public void shouldBeNotEqualForDifferentInterfaces() {
+		HandlerInterface1 config1 = PropertyLoader.getInstance().populate(HandlerInterface1.class);
+		HandlerInterface2 config2 = PropertyLoader.getInstance().populate(HandlerInterface2.class);
+		assertThat(config1.equals(config2), is(false));
+	}
+
+	@Test
+	public void shouldBeGetToString() {
+		HandlerInterface1 config = PropertyLoader.getInstance().populate(HandlerInterface1.class);
+		assertThat(config.toString(), containsString("HandlerInterface1{"));
+		assertThat(config.toString(), containsString("stringValue=value"));
+		assertThat(config.toString(), containsString("intValue=42"));
+		assertThat(config.toString(), containsString("arrayValue=[1, 2]"));
+		assertThat(config.toString(), is(sameInstance(config.toString())));
+	}
+
+	@Test
+	public void shouldBeGetValuesFromMapHandler() throws Exception {
+		Method method = HandlerInterface2.class.getMethod("stringValue");
+		Map<Method,Object> values = new HashMap<>();
+		values.put(method, "map");
+		HandlerInterface2 config = (HandlerInterface2) Proxy.newProxyInstance(
+			HandlerInterface2.class.getClassLoader(),
+			new Class<?>[]{HandlerInterface2.class},
+			new PropertiesProxyHandler(values));
+		assertThat(config.stringValue(), is(equalTo("map")));
+		assertThat(config.toString(), is(equalTo("Proxy{stringValue=map}")));
+	}
+
+	@Test
+	public void shouldBeReloadReloadableProxy() {
+		PropertyLoader loader = PropertyLoader.getInstance().reloadableProxies(true);
+		HandlerInterface1 config = loader.populate(HandlerInterface1.class);
+		String toString = config.toString();
+		System.setProperty("handler.int", "43");
+		try {
+			assertThat(loader.reload(config), is(true));
+		} finally {
+			System.clearProperty("handler.int");
+		}
+		assertThat(config.intValue(), is(equalTo(43)));
+		assertThat(config.toString(), is(not(equalTo(toString))));
+		assertThat(config.toString(), containsString("intValue=43"));
+	}
+
+	@Test
+	public void shouldBeNotReloadNonReloadableProxy() {
+		PropertyLoader loader = PropertyLoader.getInstance();
+		assertThat(loader.reload(loader.populate(HandlerInterface1.class)), is(false));
+		assertThat(loader.reload("value"), is(false));
+	}
+
+	@Test
+	public void shouldBeReadConsistentSnapshotsWhileUpdating() throws Exception {
+		Method method = HandlerInterface1.class.getMethod("stringValue");
+		Method intMethod = HandlerInterface1.class.getMethod("intValue");
+		Map<Method,Object> values = new HashMap<>();
+		values.put(method, "0");
+		values.put(intMethod, 0);
+		PropertiesProxyHandler handler = new PropertiesProxyHandler(HandlerInterface1.class, values);
+		HandlerInterface1 config = (HandlerInterface1) Proxy.newProxyInstance(
+			HandlerInterface1.class.getClassLoader(),
+			new Class<?>[]{HandlerInterface1.class},
+			handler);
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicReference<String> inconsistent = new AtomicReference<>();
+		Thread[] readers = new Thread[4];
+		for (int i=0; i < readers.length; i++) {
+			readers[i] = new Thread(() -> {
+				while (running.get()) {
+					String value = config.toString();
+					int start = value.indexOf("stringValue=") + 12;
+					String stringValue = value.substring(start, value.indexOf(',', start));
+					if (!value.contains("intValue="+stringValue+","))
+						inconsistent.compareAndSet(null, value);
+				}
+			});
+			readers[i].start();
+		}
+		for (int i=1; i <= 2000; i++) {
+			Map<Method,Object> newValues = new HashMap<>();
+			newValues.put(method, String.valueOf(i));
+			newValues.put(intMethod, i);
+			handler.update(newValues);
+		}
+		running.set(false);
+		for (Thread reader : readers)
+			reader.join();
+		assertThat(inconsistent.get(), is(nullValue()));
+		assertThat(config.intValue(), is(equalTo(2000)));
+		assertThat(config.stringValue(), is(equalTo("2000")));
+	}
+}
@@ -0,0 +1,380 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+import static nikoladasm.commons.configuration.properties.annotations.Resource.Type.FILE;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nikoladasm.commons.configuration.properties.annotations.DefaultValue;
+import nikoladasm.commons.configuration.properties.annotations.IncludeKey;
+import nikoladasm.commons.configuration.properties.annotations.Property;
+import nikoladasm.commons.configuration.properties.annotations.Resource;
+import nikoladasm.commons.configuration.properties.extproperties.PropertiesDiff;
+import nikoladasm.commons.configuration.properties.extproperties.ResourceCache;
+
+public class PropertiesReloaderUnitTest {
+
+	@Resource(source=FILE, value="${reload.dir}/reload1.properties")
+	@IncludeKey("include")
+	public static class ReloadClass1 {
+		@Property("reload.value")
+		@DefaultValue("default")
+		String value;
+
+		@Property("reload.included")
+		String included;
+	}
+
+	public static class ReloadClass2 {
+		@Property("reload.value")
+		@Resource(source=FILE, value="${reload.dir}/reload2.properties")
+		String value;
+	}
+
+	@Resource(source=FILE, value="${reload.dir}/reload1.properties")
+	public static interface ReloadInterface1 {
+		@Property("reload.value")
+		@DefaultValue("default")
+		String value();
+
+		@Property("reload.number")
+		@DefaultValue("0")
+		int number();
+	}
+
+	@Resource(source=FILE, value="${reload.dir}/reload1.properties")
+	public static class ReloadClass3 {
+		@Property("reload.a")
+		int a;
+
+		@Property("reload.b")
+		int b;
+
+		@Property("reload.c")
+		int c;
+	}
+
+	private File directory;
+	private PropertiesReloader reloader;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("reloader").toFile();
+		System.setProperty("reload.dir", directory.getAbsolutePath());
+		reloader = new PropertiesReloader(PropertyLoader.getInstance()
+			.resourceCache(new ResourceCache(ResourceCache.DEFAULT_MAX_SIZE)))
+			.debounceMillis(50)
+			.pollMillis(50);
+	}
+
+	@After
+	public void tearDown() {
+		reloader.close();
+		System.clearProperty("reload.dir");
+		File[] files = directory.listFiles();
+		if (files != null)
+			for (File file : files)
+				file.delete();
+		directory.delete();
+	}
+
+	private Path write(String name, String content) throws IOException {
+		Path path = new File(directory, name).toPath();
+		Files.write(path, content.getBytes(StandardCharsets.ISO_8859_1));
+		return path.toAbsolutePath().normalize();
+	}
+
+	private static void await(Supplier<Boolean> condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (!condition.get() && System.currentTimeMillis() < deadline)
+			Thread.sleep(20);
+		assertThat(condition.get(), is(true));
+	}
+
+	@Test
+	public void shouldBeReloadRegisteredObject() throws IOException {
+		Path file = write("reload1.properties", "reload.value=1");
+		ReloadClass1 config = reloader.register(new ReloadClass1());
+		assertThat(config.value, is(equalTo("1")));
+		assertThat(reloader.trackedFiles().contains(file), is(true));
+		write("reload1.properties", "reload.value=2");
+		reloader.reload();
+		assertThat(config.value, is(equalTo("2")));
+		assertThat(reloader.reloads(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void shouldBeKeepAllValuesOnFailedReload() throws IOException {
+		write("reload1.properties", "reload.a=1\nreload.b=1\nreload.c=1");
+		ReloadClass3 config = reloader.register(new ReloadClass3());
+		write("reload1.properties", "reload.a=2\nreload.b=2\nreload.c=illegal");
+		reloader.reload();
+		assertThat(reloader.failures(), is(equalTo(1L)));
+		assertThat(config.a, is(equalTo(1)));
+		assertThat(config.b, is(equalTo(1)));
+		assertThat(config.c, is(equalTo(1)));
+		write("reload1.properties", "reload.a=3\nreload.b=3\nreload.c=3");
+		reloader.reload();
+		assertThat(config.a, is(equalTo(3)));
+		assertThat(config.c, is(equalTo(3)));
+	}
+
+	@Test
+	public void shouldBeTrackIncludes() throws IOException {
+		write("reload1.properties", "reload.value=1\ninclude="+new File(directory, "included.properties").getPath().replace('\\', '/'));
+		Path included = write("included.properties", "reload.included=a");
+		ReloadClass1 config = reloader.register(ReloadClass1.class);
+		assertThat(config.included, is(equalTo("a")));
+		assertThat(reloader.trackedFiles().contains(included), is(true));
+		write("included.properties", "reload.included=b");
+		reloader.reload(Collections.singleton(included));
+		assertThat(config.included, is(equalTo("b")));
+	}
+
+	@Test
+	public void shouldBeTrackMissingFiles() throws IOException {
+		ReloadClass1 config = reloader.register(new ReloadClass1());
+		assertThat(config.value, is(equalTo("default")));
+		Path file = write("reload1.properties", "reload.value=created");
+		reloader.reload(Collections.singleton(file));
+		assertThat(config.value, is(equalTo("created")));
+	}
+
+	@Test
+	public void shouldBeReloadOnlyAffectedRegistrations() throws IOException {
+		Path file1 = write("reload1.properties", "reload.value=1");
+		write("reload2.properties", "reload.value=1");
+		ReloadClass1 config1 = reloader.register(new ReloadClass1());
+		ReloadClass2 config2 = reloader.register(new ReloadClass2());
+		write("reload1.properties", "reload.value=2");
+		write("reload2.properties", "reload.value=2");
+		reloader.reload(Collections.singleton(file1));
+		assertThat(config1.value, is(equalTo("2")));
+		assertThat(config2.value, is(equalTo("1")));
+	}
+
+	@Test
+	public void shouldBeTrackFilesPerReloaderOnSharedLoader() throws Exception {
+		Path file1 = write("reload1.properties", "reload.value=1");
+		Path file2 = write("reload2.properties", "reload.value=2");
+		List<File> seen = Collections.synchronizedList(new ArrayList<>());
+		PropertyLoader loader = reloader.loader();
+		Consumer<File> listener = seen::add;
+		loader.fileListener(listener);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try (PropertiesReloader other = new PropertiesReloader(loader)) {
+			for (int i=0; i < 20; i++) {
+				CompletableFuture<ReloadClass1> config1 = CompletableFuture.supplyAsync(() -> reloader.register(new ReloadClass1()), executor);
+				CompletableFuture<ReloadClass2> config2 = CompletableFuture.supplyAsync(() -> other.register(new ReloadClass2()), executor);
+				assertThat(config1.get(10, TimeUnit.SECONDS).value, is(equalTo("1")));
+				assertThat(config2.get(10, TimeUnit.SECONDS).value, is(equalTo("2")));
+			}
+			assertThat(reloader.trackedFiles(), is(equalTo(Collections.singleton(file1))));
+			assertThat(other.trackedFiles(), is(equalTo(Collections.singleton(file2))));
+			assertThat(loader.fileListener(), is(sameInstance(listener)));
+			assertThat(seen.size() >= 40, is(true));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void shouldBeReloadInterfaceProxy() throws IOException {
+		write("reload1.properties", "reload.value=1\nreload.number=1");
+		ReloadInterface1 config = reloader.register(ReloadInterface1.class);
+		String toString = config.toString();
+		assertThat(config.value(), is(equalTo("1")));
+		write("reload1.properties", "reload.value=2\nreload.number=2");
+		reloader.reload();
+		assertThat(config.value(), is(equalTo("2")));
+		assertThat(config.number(), is(equalTo(2)));
+		assertThat(config.toString(), is(not(equalTo(toString))));
+	}
+
+	@Test
+	public void shouldBeKeepValuesWhenReloadFails() throws IOException {
+		write("reload1.properties", "reload.number=1");
+		ReloadInterface1 config = reloader.register(ReloadInterface1.class);
+		write("reload1.properties", "reload.number=illegal");
+		reloader.reload();
+		assertThat(config.number(), is(equalTo(1)));
+		assertThat(reloader.failures(), is(equalTo(1L)));
+		assertThat(reloader.lastFailure(), is(instanceOf(PropertyLoaderException.class)));
+	}
+
+	@Test
+	public void shouldBeUnregister() throws IOException {
+		write("reload1.properties", "reload.value=1");
+		ReloadClass1 config = reloader.register(new ReloadClass1());
+		assertThat(reloader.unregister(config), is(true));
+		write("reload1.properties", "reload.value=2");
+		reloader.reload();
+		assertThat(config.value, is(equalTo("1")));
+	}
+
+	@Test
+	public void shouldBeReloadOnWatchEvents() throws Exception {
+		write("reload1.properties", "reload.value=1");
+		ReloadClass1 config = reloader.register(new ReloadClass1());
+		reloader.start();
+		write("reload1.properties", "reload.value=watched");
+		await(() -> "watched".equals(config.value));
+	}
+
+	@Test
+	public void shouldBeReloadByPolling() throws Exception {
+		write("reload1.properties", "reload.value=1");
+		ReloadClass1 config = reloader.polling(true).register(new ReloadClass1());
+		reloader.start();
+		Thread.sleep(100);
+		write("reload1.properties", "reload.value=polled!");
+		await(() -> "polled!".equals(config.value));
+	}
+
+	@Test
+	public void shouldBeNotReloadFilesRegisteredAfterStart() throws Exception {
+		write("reload1.properties", "reload.value=1");
+		reloader.polling(true).start();
+		reloader.register(new ReloadClass1());
+		Thread.sleep(300);
+		assertThat(reloader.reloads(), is(equalTo(0L)));
+	}
+
+	@Test
+	public void shouldBeCloseFromListener() throws Exception {
+		write("reload1.properties", "reload.value=1");
+		CompletableFuture<Boolean> closed = new CompletableFuture<>();
+		reloader.changes().addListener("reload.value", changes -> {
+			reloader.close();
+			closed.complete(reloader.isRunning());
+		});
+		reloader.register(new ReloadClass1());
+		reloader.polling(true).start();
+		write("reload1.properties", "reload.value=changed");
+		assertThat(closed.get(10, TimeUnit.SECONDS), is(false));
+	}
+
+	@Test
+	public void shouldBeNotifyChangeListeners() throws IOException {
+		write("reload1.properties", "reload.value=1\ndb.pool.size=10\ndb.url=url");
+		List<PropertiesDiff.Change> poolChanges = new ArrayList<>();
+		List<PropertiesDiff.Change> valueChanges = new ArrayList<>();
+		List<PropertiesDiff.Change> urlChanges = new ArrayList<>();
+		reloader.changes()
+			.addPrefixListener("db.pool.", poolChanges::addAll)
+			.addListener("reload.value", valueChanges::addAll)
+			.addListener("db.url", urlChanges::addAll);
+		reloader.register(new ReloadClass1());
+		write("reload1.properties", "reload.value=1\ndb.pool.size=20\ndb.pool.min=2\ndb.url=url");
+		reloader.reload();
+		assertThat(poolChanges.size(), is(equalTo(2)));
+		assertThat(poolChanges.get(0), is(equalTo(new PropertiesDiff.Change("db.pool.min", null, "2"))));
+		assertThat(poolChanges.get(1), is(equalTo(new PropertiesDiff.Change("db.pool.size", "10", "20"))));
+		assertThat(valueChanges.isEmpty(), is(true));
+		assertThat(urlChanges.isEmpty(), is(true));
+	}
+
+	@Test
+	public void shouldBeNotifyListenerAddedAfterRegistration() throws IOException {
+		write("reload1.properties", "reload.value=4");
+		reloader.register(new ReloadClass1());
+		List<PropertiesDiff.Change> valueChanges = new ArrayList<>();
+		reloader.changes().addListener("reload.value", valueChanges::addAll);
+		write("reload1.properties", "reload.value=5");
+		reloader.reload();
+		assertThat(valueChanges, is(equalTo(Collections.singletonList(new PropertiesDiff.Change("reload.value", "4", "5")))));
+	}
+
+	@Test
+	public void shouldBeDiffAppliedValues() throws IOException {
+		write("reload1.properties", "reload.value=1");
+		List<PropertiesDiff.Change> valueChanges = new ArrayList<>();
+		reloader.changes().addListener("reload.value", valueChanges::addAll);
+		ReloadClass1 config = reloader.register(new ReloadClass1());
+		System.setProperty("reload.value", "system");
+		try {
+			write("reload1.properties", "reload.value=2");
+			reloader.reload();
+		} finally {
+			System.clearProperty("reload.value");
+		}
+		assertThat(config.value, is(equalTo("system")));
+		assertThat(valueChanges, is(equalTo(Collections.singletonList(new PropertiesDiff.Change("reload.value", "1", "system")))));
+	}
+
+	@Test
+	public void shouldBeDiffOnlyKeysUnderRegistrationPrefix() throws IOException {
+		write("reload1.properties", "a.reload.value=1\nb.reload.value=1\nother=1");
+		List<List<PropertiesDiff.Change>> published = new ArrayList<>();
+		reloader.changes().addPrefixListener("", published::add);
+		ReloadClass1 first = reloader.register(null, "a", new ReloadClass1());
+		ReloadClass1 second = reloader.register(null, "b", new ReloadClass1());
+		assertThat(first.value, is(equalTo("1")));
+		assertThat(second.value, is(equalTo("1")));
+		write("reload1.properties", "a.reload.value=1\nb.reload.value=1\nother=2");
+		reloader.reload();
+		assertThat(published.isEmpty(), is(true));
+		write("reload1.properties", "a.reload.value=1\nb.reload.value=2\nother=2");
+		reloader.reload();
+		assertThat(second.value, is(equalTo("2")));
+		assertThat(published.size(), is(equalTo(1)));
+		assertThat(published.get(0), is(equalTo(Collections.singletonList(new PropertiesDiff.Change("b.reload.value", "1", "2")))));
+		assertThat(PropertyLoader.getInstance().snapshot(null, "a", ReloadClass1.class).keySet(),
+			is(equalTo(Collections.singleton("a.reload.value"))));
+	}
+
+	@Test
+	public void shouldBeNotifyListenersOnExecutor() throws Exception {
+		write("reload1.properties", "reload.value=1");
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			CompletableFuture<String> thread = new CompletableFuture<>();
+			reloader.changes()
+				.executor(executor)
+				.addListener("reload.value", changes -> thread.complete(Thread.currentThread().getName()));
+			reloader.register(new ReloadClass1());
+			write("reload1.properties", "reload.value=2");
+			reloader.reload();
+			assertThat(thread.get(10, TimeUnit.SECONDS), is(not(equalTo(Thread.currentThread().getName()))));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
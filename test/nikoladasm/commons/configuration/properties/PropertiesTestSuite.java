@@ -23,13 +23,33 @@ import org.junit.runners.Suite;
 
 import nikoladasm.commons.configuration.properties.converters.ConvertersTestSuite;
 import nikoladasm.commons.configuration.properties.extproperties.*;
+import nikoladasm.commons.configuration.properties.processor.PropertyBinderProcessorUnitTest;
 
 @Suite.SuiteClasses( 
 		{ConPropertiesUnitTest.class,
 		RefPropertiesUnitTest.class,
 		PrepPropertiesUnitTest.class,
 		TypedPropertiesUnitTest.class,
+		ResourceCacheUnitTest.class,
+		EnvironmentSnapshotUnitTest.class,
+		ReferenceTemplateUnitTest.class,
+		PropertiesDiffUnitTest.class,
 		ConvertersTestSuite.class,
+		PropertyMetadataUnitTest.class,
+		BindingPlanUnitTest.class,
+		InjectorsUnitTest.class,
+		InterfaceImplementationsUnitTest.class,
+		PropertiesProxyHandlerUnitTest.class,
+		LazyProxyHandlerUnitTest.class,
+		LazyChildUnitTest.class,
+		LoadStatsUnitTest.class,
+		ConfigurationMetricsUnitTest.class,
+		ChildExecutorUnitTest.class,
+		AsyncPopulateUnitTest.class,
+		PopulateAllUnitTest.class,
+		ReadPathAllocationUnitTest.class,
+		PropertiesReloaderUnitTest.class,
+		PropertyBinderProcessorUnitTest.class,
 		PropertyLoaderUnitTest.class}
 )
 
@@ -23,6 +23,8 @@ import static org.junit.Assert.*;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Before;
 
@@ -35,6 +37,7 @@ import nikoladasm.commons.configuration.properties.PropertyLoader;
 import nikoladasm.commons.configuration.properties.PropertyLoaderException;
 import nikoladasm.commons.configuration.properties.annotations.*;
 import nikoladasm.commons.configuration.properties.converters.Converter;
+import nikoladasm.commons.configuration.properties.extproperties.ResourceCache;
 
 public class PropertyLoaderUnitTest {
 
@@ -247,6 +250,22 @@ public class PropertyLoaderUnitTest {
 		};
 	}
 	
+	@Resource("resources/res1.properties")
+	public static class ConfigClass14 {
+		
+		@Property("value5")
+		@Resource("resources/res1.properties")
+		public String value5;
+		
+		@Property("value7")
+		@Resource("resources/res1.properties")
+		public String value7;
+		
+		@Property("sub.value1")
+		@Resource("resources/res1.properties")
+		public String value1;
+	}
+	
 	public static class CustomClass {
 		private int value;
 		public CustomClass(int value) {
@@ -642,6 +661,20 @@ public class PropertyLoaderUnitTest {
 		assertThat(conf12.getProperty("child3.key2"), is(equalTo("child3.value2")));
 	}
 
+	@Test
+	public void shouldBeGetCorrectValueFromPropertiesClassWithConcurrentIncludes() {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			PropertyLoader.getInstance().includeExecutor(executor).populate(null, conf12);
+		} finally {
+			executor.shutdownNow();
+		}
+		assertThat(conf12.getProperty("parent.key1"), is(equalTo("parent.value1")));
+		assertThat(conf12.getProperty("child1.key1"), is(equalTo("child1.value1")));
+		assertThat(conf12.getProperty("child2.key2"), is(equalTo("child2.value2")));
+		assertThat(conf12.getProperty("child3.key1"), is(equalTo("child3.value1")));
+	}
+
 	@Test
 	public void shouldBeGetValueWithCorrectOrderindMethodCall() {
 		System.getProperties().setProperty("value51", "A");
@@ -650,6 +683,34 @@ public class PropertyLoaderUnitTest {
 		PropertyLoader.getInstance().populate(null, conf13);
 		assertThat(conf13.result, is(equalTo("CAB")));
 	}
-	
-	
-}
\ No newline at end of file
+
+	@Test
+	public void shouldBeParseSharedResourceOnce() {
+		ResourceCache cache = new ResourceCache(ResourceCache.DEFAULT_MAX_SIZE);
+		ConfigClass14 conf14 = PropertyLoader.getInstance().resourceCache(cache).populate(null, ConfigClass14.class);
+		assertThat(conf14.value5, is(equalTo("res1val5")));
+		assertThat(conf14.value7, is(equalTo("res1val7")));
+		assertThat(conf14.value1, is(equalTo("res1subval1")));
+		assertThat(cache.misses(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void shouldBeRejectCombinedProxyModes() {
+		PropertyLoader loader = PropertyLoader.getInstance().lazyProxies(true);
+		try {
+			loader.reloadableProxies(true);
+			fail("Combined proxy modes must be rejected");
+		} catch (IllegalStateException e) {}
+		try {
+			loader.generatedImplementations(true);
+			fail("Combined proxy modes must be rejected");
+		} catch (IllegalStateException e) {}
+		assertThat(loader.lazyProxies(), is(true));
+		loader.lazyProxies(false).reloadableProxies(true);
+		try {
+			loader.lazyProxies(true);
+			fail("Combined proxy modes must be rejected");
+		} catch (IllegalStateException e) {}
+		assertThat(loader.reloadableProxies(false).generatedImplementations(true).generatedImplementations(), is(true));
+	}
+}
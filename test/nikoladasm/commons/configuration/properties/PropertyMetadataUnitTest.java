@@ -0,0 +1,134 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static nikoladasm.commons.configuration.properties.annotations.Resource.Type.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import org.junit.Test;
+
+import nikoladasm.commons.configuration.properties.annotations.*;
+
+public class PropertyMetadataUnitTest {
+
+	@Context("dev")
+	@Resource("resources/res1.properties")
+	public static class MetadataClass1 {
+
+		@Property("value1")
+		@Resource(priority=1, value="resources/res1.properties")
+		@Resource(priority=2, source=FILE, value="resources/res2.properties")
+		public String value1;
+
+		@Child(prefix="sub")
+		public MetadataClass2 value2;
+
+		public String nonPropertyValue;
+
+		@Property("value3")
+		@MethodPriority(MethodPriority.DEFAULT_PRIORITY+1)
+		public void value3(String value) {}
+
+		@Property("value4")
+		@MethodPriority(MethodPriority.DEFAULT_PRIORITY-1)
+		public void value4(String value) {}
+	}
+
+	public static class MetadataClass2 {
+		@Property("value1")
+		public String value1;
+	}
+
+	@Test
+	public void shouldBeGetSameMetadataForSameClass() throws Exception {
+		PropertyMetadata metadata = PropertyMetadata.of(MetadataClass1.class);
+		assertThat(PropertyMetadata.of(MetadataClass1.class), is(sameInstance(metadata)));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Callable<PropertyMetadata> task = () -> PropertyMetadata.of(MetadataClass1.class);
+			for (Future<PropertyMetadata> future : executor.invokeAll(Arrays.asList(task, task, task, task)))
+				assertThat(future.get(), is(sameInstance(metadata)));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void shouldBeGetNewMetadataAfterEviction() {
+		PropertyMetadata metadata = PropertyMetadata.of(MetadataClass2.class);
+		PropertyMetadata.evict(MetadataClass2.class);
+		PropertyMetadata newMetadata = PropertyMetadata.of(MetadataClass2.class);
+		assertThat(newMetadata, is(not(sameInstance(metadata))));
+		PropertyMetadata.evict(MetadataClass2.class.getClassLoader());
+		assertThat(PropertyMetadata.of(MetadataClass2.class), is(not(sameInstance(newMetadata))));
+	}
+
+	@Test
+	public void shouldBeGetAnnotatedFieldsWithSortedResources() {
+		List<PropertyMetadata.Element<Field>> fields = PropertyMetadata.of(MetadataClass1.class).fields();
+		assertThat(fields.size(), is(equalTo(2)));
+		PropertyMetadata.Element<Field> field = fields.get(0);
+		assertThat(field.member().getName(), is(equalTo("value1")));
+		assertThat(field.resources()[0].priority(), is(equalTo(2)));
+		assertThat(field.resources()[1].priority(), is(equalTo(1)));
+		assertThat(fields.get(1).resources(), is(nullValue()));
+		assertThat(fields.get(1).propertyInfo(null).isChild(), is(true));
+	}
+
+	@Test
+	public void shouldBeGetSettersSortedByPriority() {
+		List<PropertyMetadata.Element<Method>> setters = PropertyMetadata.of(MetadataClass1.class).setters();
+		assertThat(setters.size(), is(equalTo(2)));
+		assertThat(setters.get(0).member().getName(), is(equalTo("value4")));
+		assertThat(setters.get(1).member().getName(), is(equalTo("value3")));
+	}
+
+	@Test
+	public void shouldBeGetPropertyInfoInheritedFromParent() {
+		PropertyMetadata metadata = PropertyMetadata.of(MetadataClass1.class);
+		PropertyInfo loaderInfo = new PropertyInfo();
+		loaderInfo.required(true);
+		PropertyInfo classInfo = metadata.classPropertyInfo(loaderInfo);
+		assertThat(classInfo.context(), is(equalTo("dev")));
+		assertThat(metadata.classResources().length, is(equalTo(1)));
+		PropertyInfo fieldInfo = metadata.fields().get(0).propertyInfo(classInfo);
+		assertThat(fieldInfo.key(), is(equalTo("value1")));
+		assertThat(fieldInfo.context(), is(equalTo("dev")));
+		assertThat(fieldInfo.required(), is(true));
+		assertThat(fieldInfo.parentInfo(), is(sameInstance(classInfo)));
+		assertThat(metadata.fields().get(0).propertyInfo(classInfo), is(not(sameInstance(fieldInfo))));
+	}
+
+	@Test
+	public void shouldBeUseBinderUnlessDisabled() {
+		boolean disabled = Boolean.getBoolean(PropertyBinder.DISABLED_PROPERTY);
+		assertThat(PropertyMetadata.of(MetadataClass2.class).binder() == null, is(disabled));
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.extproperties;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class EnvironmentSnapshotUnitTest {
+
+	@After
+	public void tearDown() {
+		EnvironmentSnapshot.stopRefresh();
+		EnvironmentSnapshot.live();
+		System.clearProperty("snapshot.key");
+	}
+
+	@Test
+	public void shouldBeShareCurrentSnapshot() {
+		EnvironmentSnapshot snapshot = EnvironmentSnapshot.current();
+		assertThat(EnvironmentSnapshot.current(), is(sameInstance(snapshot)));
+		assertThat(snapshot.frozen(), is(false));
+		assertThat(snapshot.env("PATH"), is(equalTo(System.getenv("PATH"))));
+	}
+
+	@Test
+	public void shouldBeSeeSystemPropertyChangesInLiveSnapshot() {
+		System.setProperty("snapshot.key", "value1");
+		assertThat(RefProperties.resolve(null, "${SYS:snapshot.key}"), is(equalTo("value1")));
+		System.setProperty("snapshot.key", "value2");
+		assertThat(RefProperties.resolve(null, "${SYS:snapshot.key}"), is(equalTo("value2")));
+	}
+
+	@Test
+	public void shouldBeKeepFrozenSystemPropertiesUntilRefresh() {
+		System.setProperty("snapshot.key", "value1");
+		EnvironmentSnapshot frozen = EnvironmentSnapshot.freeze();
+		System.setProperty("snapshot.key", "value2");
+		assertThat(frozen.frozen(), is(true));
+		assertThat(RefProperties.resolve(null, "${SYS:snapshot.key}"), is(equalTo("value1")));
+		EnvironmentSnapshot refreshed = EnvironmentSnapshot.refresh();
+		assertThat(refreshed.frozen(), is(true));
+		assertThat(refreshed.version() > frozen.version(), is(true));
+		assertThat(RefProperties.resolve(null, "${SYS:snapshot.key}"), is(equalTo("value2")));
+	}
+
+	@Test
+	public void shouldBeRefreshFrozenSnapshotOnTimer() throws Exception {
+		System.setProperty("snapshot.key", "value1");
+		long version = EnvironmentSnapshot.freeze().version();
+		System.setProperty("snapshot.key", "value2");
+		EnvironmentSnapshot.refreshEvery(10, TimeUnit.MILLISECONDS);
+		assertThat(EnvironmentSnapshot.isRefreshing(), is(true));
+		long deadline = System.currentTimeMillis()+5000;
+		while (EnvironmentSnapshot.current().version() == version && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertThat(RefProperties.resolve(null, "${SYS:snapshot.key}"), is(equalTo("value2")));
+		EnvironmentSnapshot.stopRefresh();
+		assertThat(EnvironmentSnapshot.isRefreshing(), is(false));
+	}
+
+	@Test
+	public void shouldBeNotRefreshAfterStop() throws Exception {
+		for (int i=0; i < 20; i++) {
+			EnvironmentSnapshot.freeze();
+			EnvironmentSnapshot.refreshEvery(1, TimeUnit.MILLISECONDS);
+			Thread.sleep(2);
+			EnvironmentSnapshot.stopRefresh();
+			long version = EnvironmentSnapshot.live().version();
+			Thread.sleep(5);
+			assertThat(EnvironmentSnapshot.current().version(), is(equalTo(version)));
+			assertThat(EnvironmentSnapshot.current().frozen(), is(false));
+		}
+	}
+
+	@Test
+	public void shouldBeKeepModeChangedDuringRefresh() throws Exception {
+		EnvironmentSnapshot.freeze();
+		EnvironmentSnapshot.refreshEvery(1, TimeUnit.MILLISECONDS);
+		for (int i=0; i < 200; i++) {
+			EnvironmentSnapshot.live();
+			assertThat(EnvironmentSnapshot.current().frozen(), is(false));
+			EnvironmentSnapshot.freeze();
+			assertThat(EnvironmentSnapshot.current().frozen(), is(true));
+		}
+	}
+
+	@Test
+	public void shouldBeResolveFromInstanceSnapshot() {
+		Properties sys = new Properties();
+		sys.setProperty("host", "sys.host");
+		sys.setProperty("%dev.host", "dev.host");
+		EnvironmentSnapshot snapshot = EnvironmentSnapshot.of(Collections.singletonMap("SNAPSHOT_HOME", "/snapshot"), sys);
+		RefProperties properties = new RefProperties();
+		properties.environment(snapshot);
+		properties.setProperty("home", "${ENV:SNAPSHOT_HOME}/conf");
+		properties.setProperty("host", "${sys:host}");
+		assertThat(properties.environment(), is(sameInstance(snapshot)));
+		assertThat(properties.getProperty("home"), is(equalTo("/snapshot/conf")));
+		assertThat(properties.getProperty("host"), is(equalTo("sys.host")));
+		properties.context("dev");
+		assertThat(properties.getProperty("host"), is(equalTo("dev.host")));
+	}
+
+	@Test
+	public void shouldBeReturnValueWithoutReferencesAsIs() {
+		String value = "plain value";
+		assertThat(RefProperties.resolve(null, value), is(sameInstance(value)));
+	}
+}
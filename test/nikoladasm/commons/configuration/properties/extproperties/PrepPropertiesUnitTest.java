@@ -22,6 +22,17 @@ import static org.junit.Assert.*;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -48,4 +59,394 @@ public class PrepPropertiesUnitTest {
 		assertThat(properties.getProperty("child3.key2"), is(equalTo("child3.value2")));
 	}
 
+	@Test
+	public void shouldBeResolveOnceAfterLoad() throws IOException {
+		properties.resolveOnce(true);
+		properties.load(new StringReader("a=${b}/a\nb=${c}/b\nc=base\nmissing=${none}/${c}"));
+		assertThat(properties.frozen(), is(true));
+		assertThat(properties.getProperty("a"), is(equalTo("base/b/a")));
+		assertThat(properties.getProperty("b"), is(equalTo("base/b")));
+		assertThat(properties.getProperty("missing"), is(equalTo("${none}/base")));
+		assertThat(properties.getProperty("none"), is(nullValue()));
+		assertThat(properties.getProperty("none", "${c}"), is(equalTo("base")));
+	}
+	
+	@Test
+	public void shouldBeResolveOnceWithIncludedProperties() throws IOException {
+		properties.includeKey("include").includesDelimiter(",").resolveOnce(true);
+		InputStream is = this.getClass().getClassLoader().getResourceAsStream("resources/top.properties");
+		properties.load(is);
+		assertThat(properties.frozen(), is(true));
+		assertThat(properties.getProperty("include"), is(nullValue()));
+		assertThat(properties.getProperty("parent.key1"), is(equalTo("parent.value1")));
+		assertThat(properties.getProperty("child3.key2"), is(equalTo("child3.value2")));
+	}
+	
+	@Test
+	public void shouldBeReportCyclicReferences() throws IOException {
+		properties.resolveOnce(true);
+		properties.load(new StringReader("a=${b}\nb=${c}\nc=${a}\nd=${a}\ne=value"));
+		assertThat(properties.frozen(), is(true));
+		assertThat(properties.getProperty("e"), is(equalTo("value")));
+		try {
+			properties.getProperty("a");
+			fail("Cyclic references must be reported");
+		} catch (PropertiesException e) {
+			assertThat(e.getMessage(), is(equalTo("Cyclic property reference: a -> b -> c -> a")));
+		}
+		try {
+			properties.getProperty("d", "default");
+			fail("Cyclic references must be reported");
+		} catch (PropertiesException e) {
+			assertThat(e.getMessage(), is(equalTo("Cyclic property reference: d -> a -> b -> c -> a")));
+		}
+	}
+	
+	@Test
+	public void shouldBeReportSelfReference() {
+		properties.setProperty("path", "${path}/bin");
+		properties.setProperty("home", "/home");
+		properties.resolveOnce(true);
+		assertThat(properties.getProperty("home"), is(equalTo("/home")));
+		try {
+			properties.getProperty("path");
+			fail("Self reference must be reported");
+		} catch (PropertiesException e) {
+			assertThat(e.getMessage(), is(equalTo("Cyclic property reference: path -> path")));
+		}
+	}
+	
+	@Test
+	public void shouldBeFreezeOnlyOwnKeys() throws IOException {
+		ConProperties defaults = new ConProperties();
+		defaults.setProperty("x", "${y}");
+		defaults.setProperty("y", "${x}");
+		defaults.setProperty("base", "default");
+		defaults.setProperty("unused", "${base}/unused");
+		PrepProperties properties = new PrepProperties(defaults);
+		properties.resolveOnce(true);
+		properties.load(new StringReader("a=${base}/a"));
+		assertThat(properties.getProperty("a"), is(equalTo("default/a")));
+		assertThat(properties.frozen.values.keySet(), is(equalTo(new HashSet<>(Arrays.asList("a", "base")))));
+		assertThat(properties.getProperty("unused"), is(equalTo("default/unused")));
+		try {
+			properties.getProperty("x");
+			fail("Cyclic references must be reported");
+		} catch (PropertiesException e) {
+			assertThat(e.getMessage(), is(equalTo("Cyclic property reference: x -> y -> x")));
+		}
+	}
+	
+	@Test
+	public void shouldBeFreezeOverSystemProperties() throws IOException {
+		System.setProperty("freeze.base", "sys");
+		try {
+			PrepProperties properties = new PrepProperties(System.getProperties());
+			properties.resolveOnce(true);
+			properties.load(new StringReader("a=${b}\nb=${a}\nc=${freeze.base}/c"));
+			assertThat(properties.frozen(), is(true));
+			assertThat(properties.getProperty("c"), is(equalTo("sys/c")));
+			System.setProperty("freeze.base", "changed");
+			assertThat(properties.getProperty("freeze.base"), is(equalTo("sys")));
+			assertThat(properties.getProperty("c"), is(equalTo("sys/c")));
+			try {
+				properties.getProperty("a");
+				fail("Cyclic references must be reported");
+			} catch (PropertiesException e) {
+				assertThat(e.getMessage(), is(equalTo("Cyclic property reference: a -> b -> a")));
+			}
+		} finally {
+			System.clearProperty("freeze.base");
+		}
+	}
+	
+	@Test
+	public void shouldBeFreezeAgainAfterViewChange() throws IOException {
+		properties.resolveOnce(true);
+		properties.load(new StringReader("a=${b}/a\nb=base"));
+		assertThat(properties.getProperty("a"), is(equalTo("base/a")));
+		properties.entrySet().stream()
+			.filter(entry -> entry.getKey().equals("b"))
+			.forEach(entry -> entry.setValue("other"));
+		assertThat(properties.frozen(), is(false));
+		assertThat(properties.getProperty("a"), is(equalTo("other/a")));
+	}
+	
+	@Test
+	public void shouldBeFreezeAgainAfterChange() throws IOException {
+		properties.resolveOnce(true);
+		properties.load(new StringReader("a=${b}/a\nb=base"));
+		properties.setProperty("b", "other");
+		assertThat(properties.frozen(), is(false));
+		assertThat(properties.getProperty("a"), is(equalTo("other/a")));
+		assertThat(properties.frozen(), is(true));
+		properties.resolveOnce(false);
+		assertThat(properties.frozen(), is(false));
+		assertThat(properties.getProperty("a"), is(equalTo("other/a")));
+	}
+	
+	@Test
+	public void shouldBeFreezeForActiveContext() throws IOException {
+		properties.resolveOnce(true);
+		properties.load(new StringReader("a=${b}/a\nb=base\n%dev.b=dev"));
+		assertThat(properties.getProperty("a"), is(equalTo("base/a")));
+		properties.context("dev");
+		assertThat(properties.getProperty("a"), is(equalTo("dev/a")));
+		assertThat(properties.getProperty("b"), is(equalTo("dev")));
+		assertThat(properties.getProperty("%dev.b"), is(equalTo("dev")));
+	}
+
+	private static final Map<String,String> FRAGMENTS = new HashMap<>();
+	
+	static {
+		FRAGMENTS.put("root", "include=a,b,c\nkey=root");
+		FRAGMENTS.put("a", "key=a\na.key=a\ninclude=a1,a2");
+		FRAGMENTS.put("a1", "key=a1\nnested=a1");
+		FRAGMENTS.put("a2", "nested=a2\na2.key=${a.key}");
+		FRAGMENTS.put("b", "key=b\nb.key=b");
+		FRAGMENTS.put("c", "c.key=c");
+	}
+	
+	private static PrepProperties.PropertyLoader fragmentLoader(Set<String> threads) {
+		return (path, resourceClazz, properties) -> {
+			threads.add(Thread.currentThread().getName());
+			try {
+				if (path.equals("a")) Thread.sleep(50);
+				properties.load(new StringReader(FRAGMENTS.get(path)));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		};
+	}
+	
+	private static PrepProperties fragments(ExecutorService executor, Set<String> threads) throws IOException {
+		PrepProperties properties = new PrepProperties()
+			.includeKey("include")
+			.propertyLoader(fragmentLoader(threads))
+			.includeExecutor(executor);
+		properties.load(new StringReader(FRAGMENTS.get("root")));
+		return properties;
+	}
+	
+	@Test
+	public void shouldBeMergeConcurrentIncludesInDeclarationOrder() throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			Set<String> threads = ConcurrentHashMap.newKeySet();
+			PrepProperties sequential = fragments(null, ConcurrentHashMap.newKeySet());
+			PrepProperties concurrent = fragments(executor, threads);
+			assertThat(concurrent, is(equalTo(sequential)));
+			assertThat(concurrent.getProperty("key"), is(equalTo("b")));
+			assertThat(concurrent.getProperty("nested"), is(equalTo("a2")));
+			assertThat(concurrent.getProperty("a2.key"), is(equalTo("a")));
+			assertThat(concurrent.getProperty("include"), is(nullValue()));
+			assertThat(threads.size() > 1, is(true));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void shouldBeLoadNestedIncludesWithSingleThreadExecutor() throws IOException {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			PrepProperties concurrent = fragments(executor, ConcurrentHashMap.newKeySet());
+			assertThat(concurrent, is(equalTo(fragments(null, ConcurrentHashMap.newKeySet()))));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void shouldBeLoadClassPathIncludesConcurrently() throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			properties.includeKey("include").includesDelimiter(",").includeExecutor(executor);
+			InputStream is = this.getClass().getClassLoader().getResourceAsStream("resources/top.properties");
+			properties.load(is);
+			assertThat(properties.getProperty("parent.key1"), is(equalTo("parent.value1")));
+			assertThat(properties.getProperty("child1.key2"), is(equalTo("child1.value2")));
+			assertThat(properties.getProperty("child2.key1"), is(equalTo("child2.value1")));
+			assertThat(properties.getProperty("child3.key2"), is(equalTo("child3.value2")));
+			assertThat(properties.getProperty("include"), is(nullValue()));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void shouldBePropagateIncludeFailures() throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			properties.includeKey("include").includeExecutor(executor).propertyLoader((path, resourceClazz, properties) -> {
+				if (path.equals("bad")) throw new PropertiesException("Can't load "+path);
+			});
+			properties.load(new StringReader("include=good,bad\nkey=value"));
+			fail("Include failure must be propagated");
+		} catch (PropertiesException e) {
+			assertThat(e.getMessage(), is(equalTo("Can't load bad")));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static PrepProperties.PropertyLoader mapLoader(Map<String,String> files, Map<String,AtomicInteger> loads) {
+		return (path, resourceClazz, properties) -> {
+			loads.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+			try {
+				properties.load(new StringReader(files.get(path)));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+	}
+	
+	private static PrepProperties graphProperties(Map<String,String> files, Map<String,AtomicInteger> loads, ExecutorService executor) throws IOException {
+		PrepProperties properties = new PrepProperties()
+			.includeKey("include")
+			.propertyLoader(mapLoader(files, loads))
+			.includeExecutor(executor);
+		properties.load(new StringReader(files.get("root")));
+		return properties;
+	}
+	
+	private static Map<String,String> diamond() {
+		Map<String,String> files = new HashMap<>();
+		files.put("root", "include=b,c");
+		files.put("b", "b=b\ninclude=d");
+		files.put("c", "c=c\nkey=c\ninclude=d");
+		files.put("d", "key=d\nd=d");
+		return files;
+	}
+	
+	@Test
+	public void shouldBeLoadDiamondIncludeOnce() throws IOException {
+		Map<String,AtomicInteger> loads = new ConcurrentHashMap<>();
+		PrepProperties properties = graphProperties(diamond(), loads, null);
+		assertThat(loads.get("d").get(), is(equalTo(1)));
+		assertThat(properties.getProperty("key"), is(equalTo("d")));
+		assertThat(properties.getProperty("d"), is(equalTo("d")));
+		IncludeGraph graph = properties.includeGraph();
+		assertThat(graph.size(), is(equalTo(3)));
+		assertThat(graph.roots().size(), is(equalTo(2)));
+		assertThat(graph.roots().get(0).includes().get(0), is(sameInstance(graph.roots().get(1).includes().get(0))));
+		assertThat(graph.merged().size(), is(equalTo(3)));
+		assertThat(graph.merged().get(1).path(), is(equalTo("c")));
+		assertThat(graph.merged().get(2).path(), is(equalTo("d")));
+		assertThat(graph.toString(), containsString("  d (already included)"));
+	}
+	
+	@Test
+	public void shouldBeLoadDiamondIncludeOnceConcurrently() throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Map<String,AtomicInteger> loads = new ConcurrentHashMap<>();
+			PrepProperties properties = graphProperties(diamond(), loads, executor);
+			assertThat(loads.get("d").get(), is(equalTo(1)));
+			assertThat(properties.getProperty("key"), is(equalTo("d")));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void shouldBeSkipIncludeWithSameContent() throws IOException {
+		Map<String,String> files = new HashMap<>();
+		files.put("root", "include=x,z,y");
+		files.put("x", "same=value\nkey=x");
+		files.put("y", "same=value\nkey=x");
+		files.put("z", "key=z");
+		PrepProperties properties = graphProperties(files, new ConcurrentHashMap<>(), null);
+		assertThat(properties.getProperty("key"), is(equalTo("x")));
+		IncludeGraph graph = properties.includeGraph();
+		IncludeGraph.Node x = graph.roots().get(0);
+		assertThat(x.isDuplicate(), is(true));
+		assertThat(x.duplicateOf(), is(sameInstance(graph.roots().get(2))));
+		assertThat(graph.merged().size(), is(equalTo(2)));
+		assertThat(graph.toString(), containsString("x (same content as y)"));
+	}
+	
+	@Test
+	public void shouldBeKeepLastIncludeWinsForDiamond() throws IOException {
+		Map<String,String> files = new HashMap<>();
+		files.put("root", "include=b,c");
+		files.put("b", "include=d\nkey=b");
+		files.put("c", "include=d\nshared=c");
+		files.put("d", "key=d\nshared=d");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (ExecutorService includeExecutor : new ExecutorService[]{null, executor}) {
+				PrepProperties properties = graphProperties(files, new ConcurrentHashMap<>(), includeExecutor);
+				assertThat(properties.getProperty("key"), is(equalTo("d")));
+				assertThat(properties.getProperty("shared"), is(equalTo("d")));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void shouldBeResolveNestedIncludeWithSiblingKeys() throws IOException {
+		Map<String,String> files = new HashMap<>();
+		files.put("root", "include=b,c\nbase=sub");
+		files.put("b", "dir=${base}/dir");
+		files.put("c", "include=${dir}/x\nc=c");
+		files.put("sub/dir/x", "x=x\ninclude=${dir}/y");
+		files.put("sub/dir/y", "y=y");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (ExecutorService includeExecutor : new ExecutorService[]{null, executor}) {
+				PrepProperties properties = graphProperties(files, new ConcurrentHashMap<>(), includeExecutor);
+				assertThat(properties.getProperty("x"), is(equalTo("x")));
+				assertThat(properties.getProperty("y"), is(equalTo("y")));
+				assertThat(properties.getProperty("include"), is(nullValue()));
+				assertThat(properties.includeGraph().roots().get(1).includes().get(0).path(), is(equalTo("sub/dir/x")));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void shouldBeFailFastOnIncludeCycle() throws IOException {
+		Map<String,String> files = new HashMap<>();
+		files.put("root", "include=p");
+		files.put("p", "p=p\ninclude=q");
+		files.put("q", "q=q\ninclude=p");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (ExecutorService includeExecutor : new ExecutorService[]{null, executor}) {
+				PrepProperties properties = new PrepProperties()
+					.includeKey("include")
+					.propertyLoader(mapLoader(files, new ConcurrentHashMap<>()))
+					.includeExecutor(includeExecutor);
+				try {
+					properties.load(new StringReader(files.get("root")));
+					fail("Include cycle must be reported");
+				} catch (PropertiesException e) {
+					assertThat(e.getMessage(), is(equalTo("Cyclic include: p -> q -> p")));
+				}
+				assertThat(properties.getProperty("p"), is(nullValue()));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void shouldBeExposeClassPathIncludeGraph() throws IOException {
+		properties.includeKey("include").includesDelimiter(",");
+		InputStream is = this.getClass().getClassLoader().getResourceAsStream("resources/top.properties");
+		properties.load(is);
+		IncludeGraph graph = properties.includeGraph();
+		assertThat(graph.size(), is(equalTo(3)));
+		assertThat(graph.roots().get(0).path(), is(equalTo("resources/child1.properties")));
+		assertThat(graph.roots().get(0).size(), is(equalTo(2)));
+		assertThat(graph.roots().get(0).includes().isEmpty(), is(true));
+		assertThat(graph.roots().get(1).path(), is(equalTo("resources/sub/child2.properties")));
+		assertThat(graph.roots().get(1).includes().get(0).path(), is(equalTo("resources/sub/child3.properties")));
+		assertThat(graph.roots().get(1).location(), containsString("child2.properties"));
+	}
 }
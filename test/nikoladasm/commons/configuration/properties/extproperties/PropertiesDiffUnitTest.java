@@ -0,0 +1,96 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.extproperties;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PropertiesDiffUnitTest {
+
+	private static PrepProperties properties(String content) throws IOException {
+		PrepProperties properties = new PrepProperties();
+		properties.load(new StringReader(content));
+		return properties;
+	}
+
+	@Test
+	public void shouldBeSnapshotResolvedValues() throws IOException {
+		Map<String,String> snapshot = PropertiesDiff.snapshot(properties("par1=25\npar2=${par1}0"));
+		assertThat(snapshot.get("par1"), is(equalTo("25")));
+		assertThat(snapshot.get("par2"), is(equalTo("250")));
+		assertThat(snapshot.size(), is(equalTo(2)));
+	}
+
+	@Test
+	public void shouldBeSnapshotWithContext() throws IOException {
+		PrepProperties properties = properties("par1=25\n%test.par1=38\n%test.par2=40\n%prod.par3=50");
+		Map<String,String> snapshot = PropertiesDiff.snapshot(properties, null, "test");
+		assertThat(snapshot.get("par1"), is(equalTo("38")));
+		assertThat(snapshot.get("par2"), is(equalTo("40")));
+		assertThat(snapshot.containsKey("par3"), is(false));
+		assertThat(PropertiesDiff.snapshot(properties, null, null).get("par1"), is(equalTo("25")));
+	}
+
+	@Test
+	public void shouldBeKeepActiveContext() throws IOException {
+		PrepProperties properties = properties("par1=25\n%dev.par1=30\n%prod.par1=38");
+		properties.context("dev");
+		Map<String,String> snapshot = PropertiesDiff.snapshot(properties, null, "prod");
+		assertThat(snapshot.get("par1"), is(equalTo("38")));
+		assertThat(properties.context(), is(equalTo("dev")));
+		assertThat(properties.getProperty("par1"), is(equalTo("30")));
+	}
+
+	@Test
+	public void shouldBeSnapshotDefaultsChain() throws IOException {
+		PrepProperties defaults = properties("par1=25\npar2=30");
+		PrepProperties properties = new PrepProperties(defaults);
+		properties.load(new StringReader("par2=31"));
+		Map<String,String> snapshot = PropertiesDiff.snapshot(properties);
+		assertThat(snapshot.get("par1"), is(equalTo("25")));
+		assertThat(snapshot.get("par2"), is(equalTo("31")));
+	}
+
+	@Test
+	public void shouldBeDiffSnapshots() {
+		Map<String,String> oldSnapshot = new HashMap<>();
+		oldSnapshot.put("a", "1");
+		oldSnapshot.put("b", "2");
+		oldSnapshot.put("c", "3");
+		Map<String,String> newSnapshot = new HashMap<>();
+		newSnapshot.put("b", "2");
+		newSnapshot.put("c", "4");
+		newSnapshot.put("d", "5");
+		List<PropertiesDiff.Change> changes = PropertiesDiff.diff(oldSnapshot, newSnapshot);
+		assertThat(changes.size(), is(equalTo(3)));
+		assertThat(changes.get(0), is(equalTo(new PropertiesDiff.Change("a", "1", null))));
+		assertThat(changes.get(0).type(), is(equalTo(PropertiesDiff.Type.REMOVED)));
+		assertThat(changes.get(1).type(), is(equalTo(PropertiesDiff.Type.MODIFIED)));
+		assertThat(changes.get(2).type(), is(equalTo(PropertiesDiff.Type.ADDED)));
+		assertThat(PropertiesDiff.diff(newSnapshot, newSnapshot).isEmpty(), is(true));
+	}
+}
@@ -20,7 +20,12 @@ package nikoladasm.commons.configuration.properties.extproperties;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Test;
 
@@ -66,4 +71,249 @@ public class RefPropertiesUnitTest {
 		assertThat(path4, is(equalTo("//hje//resor/tds/hnc//resor/tds")));
 	}
 
+	private RefProperties memoized() {
+		RefProperties properties = new RefProperties().memoize(true);
+		properties.setProperty("base.url", "http://host");
+		properties.setProperty("version", "v1");
+		properties.setProperty("api", "${base.url}/api/${version}");
+		properties.setProperty("other", "value");
+		return properties;
+	}
+	
+	@Test
+	public void shouldBeMemoizeResolvedValues() {
+		RefProperties properties = memoized();
+		String api = properties.getProperty("api");
+		assertThat(api, is(equalTo("http://host/api/v1")));
+		assertThat(properties.getProperty("api"), is(sameInstance(api)));
+		assertThat(properties.memoized(), is(equalTo(3)));
+		properties.memoize(false);
+		assertThat(properties.memoized(), is(equalTo(0)));
+		assertThat(properties.getProperty("api"), is(equalTo("http://host/api/v1")));
+	}
+	
+	@Test
+	public void shouldBeInvalidateOnlyDependentValues() {
+		RefProperties properties = memoized();
+		properties.getProperty("api");
+		properties.getProperty("other");
+		assertThat(properties.memoized(), is(equalTo(4)));
+		properties.setProperty("version", "v2");
+		assertThat(properties.memoized(), is(equalTo(2)));
+		assertThat(properties.getProperty("api"), is(equalTo("http://host/api/v2")));
+		properties.remove("other");
+		assertThat(properties.memoized(), is(equalTo(3)));
+		assertThat(properties.getProperty("other"), is(nullValue()));
+		assertThat(properties.getProperty("other", "default"), is(equalTo("default")));
+	}
+	
+	@Test
+	public void shouldBeInvalidateOnLoad() throws IOException {
+		RefProperties properties = memoized();
+		properties.getProperty("api");
+		properties.load(new StringReader("base.url=https://other\n"));
+		assertThat(properties.getProperty("api"), is(equalTo("https://other/api/v1")));
+		properties.clear();
+		assertThat(properties.memoized(), is(equalTo(0)));
+		assertThat(properties.getProperty("api"), is(nullValue()));
+	}
+	
+	@Test
+	public void shouldBeInvalidateOnKeySetChanges() {
+		RefProperties properties = memoized();
+		assertThat(properties.getProperty("api"), is(equalTo("http://host/api/v1")));
+		properties.keySet().removeIf(key -> key.equals("version"));
+		assertThat(properties.getProperty("api"), is(equalTo("http://host/api/${version}")));
+		properties.setProperty("version", "v1");
+		assertThat(properties.getProperty("api"), is(equalTo("http://host/api/v1")));
+		properties.keySet().remove("version");
+		assertThat(properties.getProperty("api"), is(equalTo("http://host/api/${version}")));
+	}
+	
+	@Test
+	public void shouldBeInvalidateOnEntrySetChanges() {
+		RefProperties properties = memoized();
+		assertThat(properties.getProperty("api"), is(equalTo("http://host/api/v1")));
+		for (Map.Entry<Object,Object> entry : properties.entrySet())
+			if (entry.getKey().equals("version")) entry.setValue("v2");
+		assertThat(properties.getProperty("api"), is(equalTo("http://host/api/v2")));
+		for (Iterator<Map.Entry<Object,Object>> iterator = properties.entrySet().iterator(); iterator.hasNext();)
+			if (iterator.next().getKey().equals("version")) iterator.remove();
+		assertThat(properties.getProperty("api"), is(equalTo("http://host/api/${version}")));
+	}
+	
+	@Test
+	public void shouldBeInvalidateOnValuesChanges() {
+		RefProperties properties = memoized();
+		assertThat(properties.getProperty("api"), is(equalTo("http://host/api/v1")));
+		properties.values().removeIf(value -> value.equals("v1"));
+		assertThat(properties.getProperty("api"), is(equalTo("http://host/api/${version}")));
+		assertThat(properties.containsKey("version"), is(false));
+	}
+	
+	@Test
+	public void shouldBeInvalidateOnDefaultsChange() {
+		ConProperties defaults = new ConProperties();
+		defaults.setProperty("version", "v1");
+		RefProperties properties = new RefProperties(defaults).memoize(true);
+		properties.setProperty("api", "/api/${version}");
+		assertThat(properties.getProperty("api"), is(equalTo("/api/v1")));
+		defaults.setProperty("version", "v2");
+		assertThat(properties.getProperty("api"), is(equalTo("/api/v2")));
+	}
+	
+	@Test
+	public void shouldBeNotMemoizeOverPlainDefaults() {
+		Properties defaults = new Properties();
+		defaults.setProperty("version", "v1");
+		RefProperties properties = new RefProperties(new ConProperties(defaults)).memoize(true);
+		properties.setProperty("api", "/api/${version}");
+		assertThat(properties.getProperty("api"), is(equalTo("/api/v1")));
+		assertThat(properties.memoized(), is(equalTo(0)));
+		assertThat(properties.memoizing(), is(false));
+		defaults.setProperty("version", "v2");
+		assertThat(properties.getProperty("api"), is(equalTo("/api/v2")));
+		defaults.setProperty("other", "${version}");
+		assertThat(properties.getProperty("other"), is(equalTo("v2")));
+		defaults.remove("other");
+		assertThat(properties.getProperty("other"), is(nullValue()));
+	}
+	
+	@Test
+	public void shouldBeSeeSystemPropertyChanges() {
+		RefProperties properties = new RefProperties(System.getProperties()).memoize(true);
+		properties.setProperty("api", "/api/${memo.version}");
+		System.setProperty("memo.version", "v1");
+		try {
+			assertThat(properties.getProperty("api"), is(equalTo("/api/v1")));
+			System.setProperty("memo.version", "v2");
+			assertThat(properties.getProperty("api"), is(equalTo("/api/v2")));
+		} finally {
+			System.clearProperty("memo.version");
+		}
+	}
+	
+	@Test
+	public void shouldBeMemoizeOverSystemPropertiesOfFrozenEnvironment() {
+		System.setProperty("memo.version", "v1");
+		try {
+			RefProperties properties = new RefProperties(System.getProperties()).memoize(true);
+			properties.setProperty("api", "/api/${memo.version}");
+			assertThat(properties.memoizing(), is(false));
+			properties.environment(EnvironmentSnapshot.of(System.getenv(), System.getProperties()));
+			assertThat(properties.memoizing(), is(true));
+			assertThat(properties.getProperty("api"), is(equalTo("/api/v1")));
+			assertThat(properties.memoized(), is(equalTo(2)));
+			System.setProperty("memo.version", "v2");
+			assertThat(properties.getProperty("api"), is(equalTo("/api/v1")));
+			properties.environment(EnvironmentSnapshot.of(System.getenv(), System.getProperties()));
+			assertThat(properties.getProperty("api"), is(equalTo("/api/v2")));
+		} finally {
+			System.clearProperty("memo.version");
+		}
+	}
+	
+	@Test
+	public void shouldBeReportCyclicReferencesWithoutMemoization() {
+		RefProperties properties = new RefProperties(System.getProperties());
+		properties.setProperty("a", "${b}");
+		properties.setProperty("b", "${a}");
+		try {
+			properties.getProperty("a");
+			fail("Cyclic references must be reported");
+		} catch (PropertiesException e) {
+			assertThat(e.getMessage(), containsString("Cyclic property reference"));
+		}
+		try {
+			RefProperties.resolve(properties, "${a}");
+			fail("Cyclic references must be reported");
+		} catch (PropertiesException e) {
+			assertThat(e.getMessage(), containsString("Cyclic property reference"));
+		}
+	}
+	
+	@Test
+	public void shouldBeNotKeepStaleValuesUnderConcurrentChanges() throws Exception {
+		RefProperties properties = memoized();
+		AtomicBoolean running = new AtomicBoolean(true);
+		Thread reader = new Thread(() -> {
+			while (running.get())
+				properties.getProperty("api");
+		});
+		reader.start();
+		try {
+			for (int i=0; i < 2000; i++)
+				properties.setProperty("version", "v"+i);
+		} finally {
+			running.set(false);
+			reader.join();
+		}
+		assertThat(properties.getProperty("api"), is(equalTo("http://host/api/v1999")));
+	}
+	
+	@Test
+	public void shouldBeMemoizePerContext() {
+		RefProperties properties = memoized();
+		properties.setProperty("%dev.version", "dev");
+		assertThat(properties.getProperty("api"), is(equalTo("http://host/api/v1")));
+		properties.context("dev");
+		assertThat(properties.getProperty("api"), is(equalTo("http://host/api/dev")));
+		properties.setProperty("%dev.base.url", "http://dev");
+		assertThat(properties.getProperty("api"), is(equalTo("http://dev/api/dev")));
+		properties.context(null);
+		assertThat(properties.getProperty("api"), is(equalTo("http://host/api/v1")));
+	}
+	
+	@Test
+	public void shouldBeNotMemoizeLiveSystemProperties() {
+		RefProperties properties = new RefProperties().memoize(true);
+		properties.setProperty("sys", "${SYS:test.memo.syskey}");
+		System.setProperty("test.memo.syskey", "value1");
+		try {
+			assertThat(properties.getProperty("sys"), is(equalTo("value1")));
+			System.setProperty("test.memo.syskey", "value2");
+			assertThat(properties.getProperty("sys"), is(equalTo("value2")));
+			assertThat(properties.memoized(), is(equalTo(0)));
+		} finally {
+			System.clearProperty("test.memo.syskey");
+		}
+	}
+	
+	@Test
+	public void shouldBeMemoizeFrozenSystemPropertiesUntilRefresh() {
+		RefProperties properties = new RefProperties().memoize(true);
+		properties.setProperty("sys", "${SYS:test.memo.syskey}");
+		System.setProperty("test.memo.syskey", "value1");
+		try {
+			EnvironmentSnapshot.freeze();
+			assertThat(properties.getProperty("sys"), is(equalTo("value1")));
+			assertThat(properties.memoized(), is(equalTo(1)));
+			System.setProperty("test.memo.syskey", "value2");
+			assertThat(properties.getProperty("sys"), is(equalTo("value1")));
+			EnvironmentSnapshot.refresh();
+			assertThat(properties.getProperty("sys"), is(equalTo("value2")));
+		} finally {
+			EnvironmentSnapshot.live();
+			System.clearProperty("test.memo.syskey");
+		}
+	}
+	
+	@Test
+	public void shouldBeReportCyclicReferencesWhenMemoized() {
+		RefProperties properties = new RefProperties().memoize(true);
+		properties.setProperty("a", "${b}");
+		properties.setProperty("b", "x${a}");
+		properties.setProperty("c", "${a}");
+		properties.setProperty("d", "value");
+		try {
+			properties.getProperty("c");
+			fail("Cyclic references must be reported");
+		} catch (PropertiesException e) {
+			assertThat(e.getMessage(), is(equalTo("Cyclic property reference: a -> b -> a")));
+		}
+		assertThat(properties.getProperty("d"), is(equalTo("value")));
+		assertThat(properties.memoized(), is(equalTo(1)));
+		properties.setProperty("b", "fixed");
+		assertThat(properties.getProperty("c"), is(equalTo("fixed")));
+	}
 }
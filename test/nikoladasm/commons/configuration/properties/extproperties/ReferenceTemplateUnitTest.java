@@ -0,0 +1,148 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.extproperties;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import nikoladasm.commons.configuration.properties.extproperties.ReferenceTemplate.Kind;
+import nikoladasm.commons.configuration.properties.extproperties.ReferenceTemplate.Segment;
+
+public class ReferenceTemplateUnitTest {
+
+	@Test
+	public void shouldBeCompileLiteralAndReferenceSegments() {
+		ReferenceTemplate template = ReferenceTemplate.compile("/${path.1}/conf/${ENV:HOME}${sys:user.dir}");
+		List<Segment> segments = template.segments();
+		assertThat(template.references(), is(equalTo(3)));
+		assertThat(segments.size(), is(equalTo(5)));
+		assertThat(segments.get(0).isReference(), is(false));
+		assertThat(segments.get(0).text(), is(equalTo("/")));
+		assertThat(segments.get(1).kind(), is(equalTo(Kind.PROPERTY)));
+		assertThat(segments.get(1).name(), is(equalTo("path.1")));
+		assertThat(segments.get(1).text(), is(equalTo("${path.1}")));
+		assertThat(segments.get(2).text(), is(equalTo("/conf/")));
+		assertThat(segments.get(3).kind(), is(equalTo(Kind.ENV)));
+		assertThat(segments.get(3).name(), is(equalTo("HOME")));
+		assertThat(segments.get(4).kind(), is(equalTo(Kind.SYS)));
+		assertThat(segments.get(4).name(), is(equalTo("user.dir")));
+	}
+
+	@Test
+	public void shouldBeTreatMalformedReferencesAsLiterals() {
+		assertThat(ReferenceTemplate.compile("no references").hasReferences(), is(false));
+		assertThat(ReferenceTemplate.compile("$ {key}").hasReferences(), is(false));
+		assertThat(ReferenceTemplate.compile("${}").hasReferences(), is(false));
+		assertThat(ReferenceTemplate.compile("${key").hasReferences(), is(false));
+		assertThat(ReferenceTemplate.compile("value$").hasReferences(), is(false));
+		ReferenceTemplate template = ReferenceTemplate.compile("$${}${key}");
+		assertThat(template.references(), is(equalTo(1)));
+		assertThat(template.segments().get(0).text(), is(equalTo("$${}")));
+		assertThat(template.segments().get(1).name(), is(equalTo("key")));
+	}
+
+	@Test
+	public void shouldBeRenderResolvedReferencesAndKeepUnresolved() {
+		ReferenceTemplate template = ReferenceTemplate.compile("${a}-${missing}-${a}-${ENV:b}");
+		String value = template.render((kind, name) -> {
+			if (kind == Kind.PROPERTY && name.equals("a")) return "1";
+			if (kind == Kind.ENV && name.equals("b")) return "2";
+			return null;
+		});
+		assertThat(value, is(equalTo("1-${missing}-1-2")));
+	}
+
+	@Test
+	public void shouldBeReturnSourceWhenNothingResolved() {
+		String source = "prefix ${missing} suffix";
+		ReferenceTemplate template = ReferenceTemplate.compile(source);
+		assertThat(template.render((kind, name) -> null), is(sameInstance(source)));
+	}
+
+	@Test
+	public void shouldBeCacheCompiledTemplates() {
+		ReferenceTemplate.clearCache();
+		ReferenceTemplate template = ReferenceTemplate.template("${cached.key}");
+		assertThat(ReferenceTemplate.template("${cached.key}"), is(sameInstance(template)));
+		assertThat(ReferenceTemplate.cacheSize(), is(equalTo(1)));
+		for (int i = 0; i < ReferenceTemplate.DEFAULT_CACHE_SIZE+10; i++)
+			ReferenceTemplate.template("${key."+i+"}");
+		assertThat(ReferenceTemplate.cacheSize(), is(equalTo(ReferenceTemplate.DEFAULT_CACHE_SIZE)));
+		assertThat(ReferenceTemplate.template("${cached.key}"), is(sameInstance(template)));
+		ReferenceTemplate uncached = ReferenceTemplate.template("${uncached.key}");
+		assertThat(uncached.render((kind, name) -> "value"), is(equalTo("value")));
+		assertThat(ReferenceTemplate.template("${uncached.key}"), is(not(sameInstance(uncached))));
+		ReferenceTemplate.clearCache();
+		assertThat(ReferenceTemplate.cacheSize(), is(equalTo(0)));
+	}
+
+	@Test
+	public void shouldBeShareTemplatesBetweenConcurrentReaders() throws Exception {
+		ReferenceTemplate.clearCache();
+		int threads = 4;
+		ReferenceTemplate[][] templates = new ReferenceTemplate[threads][64];
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				ReferenceTemplate[] seen = templates[t];
+				futures.add(executor.submit(() -> {
+					start.await();
+					for (int round = 0; round < 1000; round++)
+						for (int i = 0; i < seen.length; i++) {
+							ReferenceTemplate template = ReferenceTemplate.template("${shared."+i+"}/x");
+							if (seen[i] == null) seen[i] = template;
+							assertThat(template, is(sameInstance(seen[i])));
+						}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures)
+				future.get(30, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+		for (int t = 1; t < threads; t++)
+			for (int i = 0; i < templates[t].length; i++)
+				assertThat(templates[t][i], is(sameInstance(templates[0][i])));
+		assertThat(ReferenceTemplate.cacheSize(), is(equalTo(64)));
+	}
+
+	@Test
+	public void shouldBeResolveNestedReferencesThroughTemplates() {
+		RefProperties properties = new RefProperties();
+		properties.setProperty("path.1", "/resor");
+		properties.setProperty("path.2", "${path.1}/tds");
+		properties.setProperty("path.3", "/${path.2}/${Env:REFERENCE_TEMPLATE_MISSING}/${path.2}");
+		assertThat(properties.getProperty("path.3"), is(equalTo("//resor/tds/${Env:REFERENCE_TEMPLATE_MISSING}//resor/tds")));
+	}
+}
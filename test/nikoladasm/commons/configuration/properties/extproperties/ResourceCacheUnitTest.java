@@ -0,0 +1,151 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.extproperties;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+
+public class ResourceCacheUnitTest {
+
+	private ResourceCache cache = new ResourceCache(2);
+
+	private File tempFile(String content) throws IOException {
+		File file = File.createTempFile("resource-cache", ".properties");
+		file.deleteOnExit();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.ISO_8859_1));
+		return file;
+	}
+
+	private static void collect(WeakReference<?> reference) throws InterruptedException {
+		for (int i=0; i < 100 && reference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertThat(reference.get(), is(nullValue()));
+	}
+
+	@Test
+	public void shouldBeParseClassPathResourceOnce() {
+		for (int i=0; i < 10; i++) {
+			PrepProperties properties = new PrepProperties();
+			assertThat(cache.loadFromClassPath("resources/res1.properties", this.getClass(), properties), is(true));
+			assertThat(properties.getProperty("value5"), is(equalTo("res1val5")));
+		}
+		assertThat(cache.misses(), is(equalTo(1L)));
+		assertThat(cache.hits(), is(equalTo(9L)));
+	}
+
+	@Test
+	public void shouldBeNotLoadMissingResources() {
+		PrepProperties properties = new PrepProperties();
+		assertThat(cache.loadFromClassPath("resources/missing.properties", this.getClass(), properties), is(false));
+		assertThat(cache.loadFromFile("missing.properties", properties), is(false));
+		assertThat(cache.size(), is(equalTo(0)));
+	}
+
+	@Test
+	public void shouldBeReparseModifiedFile() throws IOException {
+		File file = tempFile("key=1");
+		PrepProperties properties = new PrepProperties();
+		cache.loadFromFile(file.getPath(), properties);
+		assertThat(properties.getProperty("key"), is(equalTo("1")));
+		Files.write(file.toPath(), "key=22".getBytes(StandardCharsets.ISO_8859_1));
+		properties = new PrepProperties();
+		cache.loadFromFile(file.getPath(), properties);
+		assertThat(properties.getProperty("key"), is(equalTo("22")));
+		assertThat(cache.misses(), is(equalTo(2L)));
+	}
+
+	@Test
+	public void shouldBeEvictLeastRecentlyUsedEntry() throws IOException {
+		File file1 = tempFile("key=1");
+		File file2 = tempFile("key=2");
+		File file3 = tempFile("key=3");
+		PrepProperties properties = new PrepProperties();
+		cache.loadFromFile(file1.getPath(), properties);
+		cache.loadFromFile(file2.getPath(), properties);
+		cache.loadFromFile(file1.getPath(), properties);
+		cache.loadFromFile(file3.getPath(), properties);
+		assertThat(cache.size(), is(equalTo(2)));
+		assertThat(cache.misses(), is(equalTo(3L)));
+		cache.loadFromFile(file1.getPath(), properties);
+		assertThat(cache.misses(), is(equalTo(3L)));
+		cache.loadFromFile(file2.getPath(), properties);
+		assertThat(cache.misses(), is(equalTo(4L)));
+	}
+
+	@Test
+	public void shouldBeGetIncludesThroughCache() throws IOException {
+		ResourceCache cache = new ResourceCache(ResourceCache.DEFAULT_MAX_SIZE);
+		for (int i=0; i < 2; i++) {
+			PrepProperties properties = new PrepProperties();
+			properties.includeKey("include").propertyLoader(cache.propertyLoader());
+			cache.loadFromClassPath("resources/top.properties", this.getClass(), properties);
+			assertThat(properties.getProperty("child3.key2"), is(equalTo("child3.value2")));
+		}
+		assertThat(cache.misses(), is(equalTo(4L)));
+		assertThat(cache.hits(), is(equalTo(4L)));
+	}
+
+	@Test
+	public void shouldBeNotMatchKeysOfCollectedClassLoaders() throws InterruptedException {
+		ClassLoader loader1 = new ClassLoader(null) {};
+		ClassLoader loader2 = new ClassLoader(null) {};
+		WeakReference<ClassLoader> reference1 = new WeakReference<>(loader1);
+		WeakReference<ClassLoader> reference2 = new WeakReference<>(loader2);
+		ResourceCache.Key key1 = new ResourceCache.Key("location", false, loader1);
+		ResourceCache.Key key2 = new ResourceCache.Key("location", false, loader2);
+		assertThat(key1.equals(new ResourceCache.Key("location", false, loader1)), is(true));
+		loader1 = null;
+		loader2 = null;
+		collect(reference1);
+		collect(reference2);
+		assertThat(key1.equals(key1), is(true));
+		assertThat(key1.equals(key2), is(false));
+		assertThat(key1.equals(new ResourceCache.Key("location", false, null)), is(false));
+		assertThat(new ResourceCache.Key("location", false, null).equals(key1), is(false));
+	}
+
+	@Test
+	public void shouldBePurgeEntriesOfCollectedClassLoaders() throws Exception {
+		URL classes = ResourceCache.class.getProtectionDomain().getCodeSource().getLocation();
+		URLClassLoader loader = new URLClassLoader(new URL[]{classes}, null);
+		WeakReference<ClassLoader> reference = new WeakReference<>(loader);
+		PrepProperties properties = new PrepProperties();
+		assertThat(cache.loadFromClassPath("resources/res1.properties", loader.loadClass(ResourceCache.class.getName()), properties), is(true));
+		assertThat(cache.size(), is(equalTo(1)));
+		loader.close();
+		loader = null;
+		collect(reference);
+		for (int i=0; i < 100 && cache.size() != 0; i++)
+			Thread.sleep(10);
+		assertThat(cache.size(), is(equalTo(0)));
+	}
+}
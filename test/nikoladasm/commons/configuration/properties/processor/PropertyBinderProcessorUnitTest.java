@@ -0,0 +1,153 @@
+/*
+ *  Common Configuration
+ *  Copyright (C) 2016  Nikolay Platov
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nikoladasm.commons.configuration.properties.processor;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import nikoladasm.commons.configuration.properties.PropertyBinder;
+import nikoladasm.commons.configuration.properties.PropertyInfo;
+import nikoladasm.commons.configuration.properties.PropertyLoader;
+import nikoladasm.commons.configuration.properties.PropertyLoaderException;
+import nikoladasm.commons.configuration.properties.PropertyMetadata;
+import nikoladasm.commons.configuration.properties.annotations.*;
+
+public class PropertyBinderProcessorUnitTest {
+
+	public static class BinderBaseClass {
+		@Property("binder.base")
+		@DefaultValue("base")
+		String baseValue;
+	}
+
+	@Context("ctx")
+	@Resource("resources/res1.properties")
+	public static class BinderClass1 extends BinderBaseClass {
+		@Property("binder.int")
+		@DefaultValue("42")
+		int intValue;
+
+		@Property("binder.list")
+		@DefaultValue("1,2,3")
+		List<Integer> listValue;
+
+		@Property("value5")
+		String resourceValue;
+
+		@Child(prefix="sub")
+		BinderClass2 child;
+
+		String methodValue1;
+		long methodValue2;
+
+		@Property("binder.method1")
+		@DefaultValue("method")
+		@MethodPriority(2)
+		public void methodValue1(String value) {
+			methodValue1 = value;
+		}
+
+		@Property("binder.method2")
+		@DefaultValue("7")
+		@MethodPriority(1)
+		public void methodValue2(long value) {
+			methodValue2 = value;
+		}
+	}
+
+	public static class BinderClass2 {
+		@Property("value1")
+		@Resource("resources/res1.properties")
+		String value1;
+	}
+
+	public static class BinderClass3 {
+		@Property("binder.private")
+		@DefaultValue("private")
+		private String privateValue;
+
+		public String privateValue() {
+			return privateValue;
+		}
+	}
+
+	public static class BinderClass4 {
+		@Property("binder.missing")
+		int missingValue;
+	}
+
+	@Test
+	public void shouldBeGenerateBinder() {
+		PropertyBinder binder = PropertyMetadata.of(BinderClass1.class).binder();
+		assertThat(binder, is(notNullValue()));
+		assertThat(binder.getClass().getName(), is(equalTo(BinderClass1.class.getName()+PropertyBinder.CLASS_NAME_SUFFIX)));
+		assertThat(binder.type(), is(equalTo(BinderClass1.class)));
+	}
+
+	@Test
+	public void shouldBeGenerateSameMetadataAsReflection() {
+		PropertyMetadata metadata = PropertyMetadata.of(BinderClass1.class);
+		PropertyInfo classInfo = metadata.classPropertyInfo(null);
+		assertThat(classInfo.context(), is(equalTo("ctx")));
+		assertThat(metadata.classResources()[0].path(0), is(equalTo("resources/res1.properties")));
+		List<PropertyMetadata.Element<?>> bindings = metadata.bindings();
+		assertThat(bindings.size(), is(equalTo(metadata.fields().size()+metadata.setters().size())));
+		for (int i=0; i < metadata.fields().size(); i++) {
+			PropertyInfo reflected = metadata.fields().get(i).propertyInfo(null);
+			PropertyInfo generated = bindings.get(i).propertyInfo(null);
+			assertThat(bindings.get(i).member(), is(equalTo(metadata.fields().get(i).member().getName())));
+			assertThat(generated.key(), is(equalTo(reflected.key())));
+			assertThat(generated.prefix(), is(equalTo(reflected.prefix())));
+			assertThat(generated.type(), is(equalTo(reflected.type())));
+			assertThat(generated.genericType(), is(equalTo(reflected.genericType())));
+			assertThat(generated.defaultValue(), is(equalTo(reflected.defaultValue())));
+		}
+		assertThat(bindings.get(metadata.fields().size()).member(), is(equalTo("methodValue2")));
+	}
+
+	@Test
+	public void shouldBePopulateThroughBinder() {
+		BinderClass1 config = PropertyLoader.getInstance().populate(BinderClass1.class);
+		assertThat(config.baseValue, is(equalTo("base")));
+		assertThat(config.intValue, is(equalTo(42)));
+		assertThat(config.listValue.get(2), is(equalTo(3)));
+		assertThat(config.resourceValue, is(equalTo("res1val5")));
+		assertThat(config.child.value1, is(equalTo("res1subval1")));
+		assertThat(config.methodValue1, is(equalTo("method")));
+		assertThat(config.methodValue2, is(equalTo(7L)));
+	}
+
+	@Test
+	public void shouldBeUseReflectionForPrivateMembers() {
+		assertThat(PropertyMetadata.of(BinderClass3.class).binder(), is(nullValue()));
+		BinderClass3 config = PropertyLoader.getInstance().populate(BinderClass3.class);
+		assertThat(config.privateValue(), is(equalTo("private")));
+	}
+
+	@Test(expected=PropertyLoaderException.class)
+	public void shouldBeGetExceptionForNullPrimitiveValue() {
+		assertThat(PropertyMetadata.of(BinderClass4.class).binder(), is(notNullValue()));
+		PropertyLoader.getInstance().populate(BinderClass4.class);
+	}
+}